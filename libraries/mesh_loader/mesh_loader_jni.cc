@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <jni.h>
+
+#include <cstring>
+#include <string>
+
+#include "obj_parser.h"
+
+#define JNI_METHOD(return_type, method_name) \
+  JNIEXPORT return_type JNICALL              \
+      Java_com_contentful_ar_rendering_NativeMeshLoader_##method_name
+
+namespace {
+inline jlong jptr(mesh_loader::ObjMesh *mesh) {
+  return reinterpret_cast<intptr_t>(mesh);
+}
+
+inline mesh_loader::ObjMesh *native(jlong ptr) {
+  return reinterpret_cast<mesh_loader::ObjMesh *>(ptr);
+}
+
+void ThrowException(JNIEnv *env, const char *class_name,
+                    const std::string &message) {
+  jclass exception_class = env->FindClass(class_name);
+  if (exception_class != nullptr) {
+    env->ThrowNew(exception_class, message.c_str());
+  }
+}
+
+// @return the address of a direct buffer with room for at least the given
+// number of bytes, otherwise nullptr with a pending IllegalArgumentException.
+void *GetDirectAddress(JNIEnv *env, jobject buffer, size_t bytes) {
+  void *address = env->GetDirectBufferAddress(buffer);
+  if (address == nullptr) {
+    ThrowException(env, "java/lang/IllegalArgumentException",
+                   "Buffer is not direct.");
+    return nullptr;
+  }
+  if (static_cast<size_t>(env->GetDirectBufferCapacity(buffer)) < bytes) {
+    ThrowException(env, "java/lang/IllegalArgumentException",
+                   "Buffer is smaller than " + std::to_string(bytes) +
+                       " bytes.");
+    return nullptr;
+  }
+  return address;
+}
+
+template <typename T>
+bool CopyToBuffer(JNIEnv *env, const std::vector<T> &values, jobject buffer) {
+  const size_t bytes = values.size() * sizeof(T);
+  void *address = GetDirectAddress(env, buffer, bytes);
+  if (address == nullptr) {
+    return false;
+  }
+  if (bytes > 0) {
+    memcpy(address, values.data(), bytes);
+  }
+  return true;
+}
+
+// @return the bytes of a string, which is not necessarily valid modified UTF-8
+// as expected by NewStringUTF.
+jbyteArray ToByteArray(JNIEnv *env, const std::string &value) {
+  jbyteArray array = env->NewByteArray(static_cast<jsize>(value.size()));
+  if (array != nullptr) {
+    env->SetByteArrayRegion(array, 0, static_cast<jsize>(value.size()),
+                            reinterpret_cast<const jbyte *>(value.data()));
+  }
+  return array;
+}
+}  // namespace
+
+extern "C" {
+
+JNI_METHOD(jlong, parseObj)
+(JNIEnv *env, jclass, jobject source, jint offset, jint length) {
+  const char *data = static_cast<const char *>(
+      GetDirectAddress(env, source, static_cast<size_t>(offset) + length));
+  if (data == nullptr) {
+    return 0;
+  }
+
+  mesh_loader::ObjMesh *mesh = new mesh_loader::ObjMesh();
+  std::string error;
+  if (!mesh_loader::ParseObj(data + offset, length, mesh, &error)) {
+    delete mesh;
+    ThrowException(env, "java/io/IOException", error);
+    return 0;
+  }
+  if (!mesh_loader::FitsShortIndices(*mesh, &error)) {
+    delete mesh;
+    ThrowException(env, "java/io/IOException", error);
+    return 0;
+  }
+  return jptr(mesh);
+}
+
+JNI_METHOD(jint, getVertexCount)
+(JNIEnv *, jclass, jlong native_mesh) {
+  return static_cast<jint>(native(native_mesh)->vertex_count());
+}
+
+JNI_METHOD(jint, getIndexCount)
+(JNIEnv *, jclass, jlong native_mesh) {
+  return static_cast<jint>(native(native_mesh)->indices.size());
+}
+
+JNI_METHOD(void, copyMesh)
+(JNIEnv *env, jclass, jlong native_mesh, jobject vertices, jobject tex_coords,
+ jobject normals, jobject indices) {
+  const mesh_loader::ObjMesh *mesh = native(native_mesh);
+  if (!CopyToBuffer(env, mesh->positions, vertices) ||
+      !CopyToBuffer(env, mesh->tex_coords, tex_coords) ||
+      !CopyToBuffer(env, mesh->normals, normals)) {
+    return;
+  }
+
+  uint16_t *index_data = static_cast<uint16_t *>(
+      GetDirectAddress(env, indices, mesh->indices.size() * sizeof(uint16_t)));
+  if (index_data == nullptr) {
+    return;
+  }
+  for (size_t i = 0; i < mesh->indices.size(); ++i) {
+    index_data[i] = static_cast<uint16_t>(mesh->indices[i]);
+  }
+}
+
+JNI_METHOD(jint, getMaterialGroupCount)
+(JNIEnv *, jclass, jlong native_mesh) {
+  return static_cast<jint>(native(native_mesh)->material_groups.size());
+}
+
+JNI_METHOD(void, copyMaterialGroups)
+(JNIEnv *env, jclass, jlong native_mesh, jintArray ranges) {
+  const mesh_loader::ObjMesh *mesh = native(native_mesh);
+  std::vector<jint> values;
+  for (const mesh_loader::ObjMaterialGroup &group : mesh->material_groups) {
+    values.push_back(static_cast<jint>(group.index_offset));
+    values.push_back(static_cast<jint>(group.index_count));
+  }
+  if (static_cast<size_t>(env->GetArrayLength(ranges)) < values.size()) {
+    ThrowException(env, "java/lang/IllegalArgumentException",
+                   "Array is smaller than " + std::to_string(values.size()) +
+                       " values.");
+    return;
+  }
+  env->SetIntArrayRegion(ranges, 0, static_cast<jsize>(values.size()),
+                         values.data());
+}
+
+JNI_METHOD(jbyteArray, getMaterialName)
+(JNIEnv *env, jclass, jlong native_mesh, jint group) {
+  return ToByteArray(env, native(native_mesh)->material_groups[group].material);
+}
+
+JNI_METHOD(jbyteArray, getMaterialLibrary)
+(JNIEnv *env, jclass, jlong native_mesh) {
+  return ToByteArray(env, native(native_mesh)->material_library);
+}
+
+JNI_METHOD(void, destroyMesh)
+(JNIEnv *, jclass, jlong native_mesh) {
+  delete native(native_mesh);
+}
+
+}  // extern "C"
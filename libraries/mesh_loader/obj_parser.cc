@@ -0,0 +1,437 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#include "obj_parser.h"
+
+#include <cmath>
+#include <cstring>
+#include <unordered_map>
+
+namespace mesh_loader {
+
+namespace {
+
+// Each face corner is identified by one 64 bit key, packing its position index
+// and its texture coordinate and normal index plus one, so zero means missing.
+constexpr int kPositionBits = 22;
+constexpr int kAttributeBits = 21;
+constexpr size_t kMaxPositions = size_t(1) << kPositionBits;
+constexpr size_t kMaxAttributes = (size_t(1) << kAttributeBits) - 1;
+constexpr size_t kMissing = static_cast<size_t>(-1);
+
+// Only significant digits up to this count are accumulated, so the mantissa
+// always fits into 64 bits.
+constexpr int kMaxMantissaDigits = 19;
+
+const double kPowersOfTen[] = {1e0,  1e1,  1e2,  1e3,  1e4,  1e5,
+                               1e6,  1e7,  1e8,  1e9,  1e10, 1e11,
+                               1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+                               1e18, 1e19, 1e20, 1e21, 1e22};
+constexpr int kMaxExactPower = 22;
+
+// The unparsed rest of one line.
+struct Cursor {
+  const char* position;
+  const char* end;
+};
+
+inline bool IsBlank(char c) { return c == ' ' || c == '\t' || c == '\r'; }
+
+inline bool IsDigit(char c) { return c >= '0' && c <= '9'; }
+
+inline bool AtTokenEnd(const Cursor& cursor) {
+  return cursor.position == cursor.end || IsBlank(*cursor.position);
+}
+
+void SkipBlanks(Cursor* cursor) {
+  while (cursor->position < cursor->end && IsBlank(*cursor->position)) {
+    ++cursor->position;
+  }
+}
+
+// @return the rest of the line without surrounding blanks, as names may
+// contain spaces.
+std::string ParseName(Cursor* cursor) {
+  SkipBlanks(cursor);
+  const char* end = cursor->end;
+  while (end > cursor->position && IsBlank(*(end - 1))) {
+    --end;
+  }
+  std::string name(cursor->position, end);
+  cursor->position = cursor->end;
+  return name;
+}
+
+// Parses a decimal floating point number, like strtof but without reading
+// past the end of the line, which is not null terminated.
+bool ParseFloat(Cursor* cursor, float* out_value) {
+  SkipBlanks(cursor);
+  const char* p = cursor->position;
+  const char* end = cursor->end;
+
+  bool negative = false;
+  if (p < end && (*p == '-' || *p == '+')) {
+    negative = *p == '-';
+    ++p;
+  }
+
+  uint64_t mantissa = 0;
+  int digits = 0;
+  int exponent = 0;
+  bool has_digits = false;
+  for (; p < end && IsDigit(*p); ++p) {
+    if (digits < kMaxMantissaDigits) {
+      mantissa = mantissa * 10 + (*p - '0');
+      if (mantissa != 0) {
+        ++digits;
+      }
+    } else {
+      ++exponent;
+    }
+    has_digits = true;
+  }
+  if (p < end && *p == '.') {
+    for (++p; p < end && IsDigit(*p); ++p) {
+      if (digits < kMaxMantissaDigits) {
+        mantissa = mantissa * 10 + (*p - '0');
+        if (mantissa != 0) {
+          ++digits;
+        }
+        --exponent;
+      }
+      has_digits = true;
+    }
+  }
+  if (!has_digits) {
+    return false;
+  }
+
+  if (p < end && (*p == 'e' || *p == 'E')) {
+    const char* q = p + 1;
+    bool negative_exponent = false;
+    if (q < end && (*q == '-' || *q == '+')) {
+      negative_exponent = *q == '-';
+      ++q;
+    }
+    if (q < end && IsDigit(*q)) {
+      int value = 0;
+      for (; q < end && IsDigit(*q); ++q) {
+        if (value < 10000) {
+          value = value * 10 + (*q - '0');
+        }
+      }
+      exponent += negative_exponent ? -value : value;
+      p = q;
+    }
+  }
+
+  Cursor rest = {p, end};
+  if (!AtTokenEnd(rest)) {
+    return false;
+  }
+
+  double value = static_cast<double>(mantissa);
+  if (exponent < 0) {
+    value = -exponent <= kMaxExactPower ? value / kPowersOfTen[-exponent]
+                                        : value * std::pow(10.0, exponent);
+  } else if (exponent > 0) {
+    value = exponent <= kMaxExactPower ? value * kPowersOfTen[exponent]
+                                       : value * std::pow(10.0, exponent);
+  }
+  *out_value = static_cast<float>(negative ? -value : value);
+  cursor->position = p;
+  return true;
+}
+
+// Appends count values, of which only the first required ones must be present.
+// Missing optional values are zero, values after count are ignored.
+bool ParseFloats(Cursor* cursor, int required, int count,
+                 std::vector<float>* out_values) {
+  for (int i = 0; i < count; ++i) {
+    float value = 0.0f;
+    if (!ParseFloat(cursor, &value) && i < required) {
+      return false;
+    }
+    out_values->push_back(value);
+  }
+  return true;
+}
+
+bool ParseIndex(Cursor* cursor, int64_t* out_index) {
+  const char* p = cursor->position;
+  const char* end = cursor->end;
+
+  bool negative = false;
+  if (p < end && (*p == '-' || *p == '+')) {
+    negative = *p == '-';
+    ++p;
+  }
+  if (p == end || !IsDigit(*p)) {
+    return false;
+  }
+
+  int64_t value = 0;
+  for (; p < end && IsDigit(*p); ++p) {
+    if (value < static_cast<int64_t>(kMaxPositions)) {
+      value = value * 10 + (*p - '0');
+    }
+  }
+  *out_index = negative ? -value : value;
+  cursor->position = p;
+  return true;
+}
+
+// Converts a one-based, or negative relative, OBJ index to a zero-based one.
+bool ResolveIndex(int64_t index, size_t count, size_t* out_index) {
+  if (index > 0 && static_cast<size_t>(index) <= count) {
+    *out_index = static_cast<size_t>(index - 1);
+    return true;
+  }
+  if (index < 0 && static_cast<size_t>(-index) <= count) {
+    *out_index = count - static_cast<size_t>(-index);
+    return true;
+  }
+  return false;
+}
+
+class ObjParser {
+ public:
+  explicit ObjParser(ObjMesh* mesh) : mesh_(mesh) {}
+
+  bool Parse(const char* data, size_t length, std::string* out_error) {
+    const char* end = data + length;
+    int line_number = 0;
+    for (const char* line = data; line < end;) {
+      ++line_number;
+      const char* line_end =
+          static_cast<const char*>(memchr(line, '\n', end - line));
+      if (line_end == nullptr) {
+        line_end = end;
+      }
+
+      Cursor cursor = {line, line_end};
+      SkipBlanks(&cursor);
+      const char* keyword = cursor.position;
+      while (!AtTokenEnd(cursor)) {
+        ++cursor.position;
+      }
+      const std::string::size_type keyword_length = cursor.position - keyword;
+
+      bool parsed = true;
+      if (keyword_length == 1 && keyword[0] == 'v') {
+        parsed = ParseFloats(&cursor, 3, 3, &positions_);
+      } else if (keyword_length == 2 && keyword[0] == 'v' &&
+                 keyword[1] == 't') {
+        // The optional third texture coordinate is ignored.
+        parsed = ParseFloats(&cursor, 1, 2, &tex_coords_);
+      } else if (keyword_length == 2 && keyword[0] == 'v' &&
+                 keyword[1] == 'n') {
+        parsed = ParseFloats(&cursor, 3, 3, &normals_);
+      } else if (keyword_length == 1 && keyword[0] == 'f') {
+        parsed = ParseFace(&cursor);
+      } else if (keyword_length == 6 &&
+                 memcmp(keyword, "usemtl", keyword_length) == 0) {
+        material_ = ParseName(&cursor);
+        group_ = kMissing;
+      } else if (keyword_length == 6 &&
+                 memcmp(keyword, "mtllib", keyword_length) == 0 &&
+                 mesh_->material_library.empty()) {
+        mesh_->material_library = ParseName(&cursor);
+      }
+
+      if (!parsed) {
+        if (out_error != nullptr) {
+          *out_error = "Invalid '" + std::string(keyword, keyword_length) +
+                       "' on line " + std::to_string(line_number) + ".";
+        }
+        return false;
+      }
+      line = line_end + 1;
+    }
+    SortByMaterial();
+    return true;
+  }
+
+ private:
+  // Parses the corners of one polygon, each 'v', 'v/vt', 'v//vn' or
+  // 'v/vt/vn', and appends it as a triangle fan.
+  bool ParseFace(Cursor* cursor) {
+    polygon_.clear();
+    for (SkipBlanks(cursor); cursor->position < cursor->end;
+         SkipBlanks(cursor)) {
+      int64_t index = 0;
+      size_t position = 0;
+      size_t tex_coord = kMissing;
+      size_t normal = kMissing;
+      if (!ParseIndex(cursor, &index) ||
+          !ResolveIndex(index, positions_.size() / 3, &position)) {
+        return false;
+      }
+      if (cursor->position < cursor->end && *cursor->position == '/') {
+        ++cursor->position;
+        if (cursor->position < cursor->end && *cursor->position != '/') {
+          if (!ParseIndex(cursor, &index) ||
+              !ResolveIndex(index, tex_coords_.size() / 2, &tex_coord)) {
+            return false;
+          }
+        }
+        if (cursor->position < cursor->end && *cursor->position == '/') {
+          ++cursor->position;
+          if (!ParseIndex(cursor, &index) ||
+              !ResolveIndex(index, normals_.size() / 3, &normal)) {
+            return false;
+          }
+        }
+      }
+      if (!AtTokenEnd(*cursor) || position >= kMaxPositions ||
+          (tex_coord != kMissing && tex_coord >= kMaxAttributes) ||
+          (normal != kMissing && normal >= kMaxAttributes)) {
+        return false;
+      }
+      polygon_.push_back(AddVertex(position, tex_coord, normal));
+    }
+
+    if (polygon_.size() < 3) {
+      return false;
+    }
+    if (group_ == kMissing) {
+      group_ = FindGroup(material_);
+    }
+    for (size_t i = 2; i < polygon_.size(); ++i) {
+      mesh_->indices.push_back(polygon_[0]);
+      mesh_->indices.push_back(polygon_[i - 1]);
+      mesh_->indices.push_back(polygon_[i]);
+      triangle_groups_.push_back(static_cast<uint32_t>(group_));
+    }
+    return true;
+  }
+
+  // @return the index of the material group of the given material, appending
+  // it if no face used the material yet.
+  size_t FindGroup(const std::string& material) {
+    auto inserted =
+        groups_.insert(std::make_pair(material, mesh_->material_groups.size()));
+    if (inserted.second) {
+      mesh_->material_groups.push_back(ObjMaterialGroup{material, 0, 0});
+    }
+    return inserted.first->second;
+  }
+
+  // Reorders the triangles, keeping their order within each material, so the
+  // indices of every material group form one range.
+  void SortByMaterial() {
+    std::vector<ObjMaterialGroup>& groups = mesh_->material_groups;
+    for (uint32_t group : triangle_groups_) {
+      groups[group].index_count += 3;
+    }
+    size_t offset = 0;
+    for (ObjMaterialGroup& group : groups) {
+      group.index_offset = offset;
+      offset += group.index_count;
+    }
+    if (groups.size() < 2) {
+      return;
+    }
+
+    std::vector<uint32_t> sorted(mesh_->indices.size());
+    std::vector<size_t> next(groups.size());
+    for (size_t i = 0; i < groups.size(); ++i) {
+      next[i] = groups[i].index_offset;
+    }
+    for (size_t i = 0; i < triangle_groups_.size(); ++i) {
+      size_t& target = next[triangle_groups_[i]];
+      memcpy(&sorted[target], &mesh_->indices[3 * i], 3 * sizeof(uint32_t));
+      target += 3;
+    }
+    mesh_->indices.swap(sorted);
+  }
+
+  // @return the index of the vertex for the given corner, appending it to the
+  // mesh if it was not used by an earlier face.
+  uint32_t AddVertex(size_t position, size_t tex_coord, size_t normal) {
+    const uint64_t key =
+        static_cast<uint64_t>(position) |
+        static_cast<uint64_t>(tex_coord + 1) << kPositionBits |
+        static_cast<uint64_t>(normal + 1) << (kPositionBits + kAttributeBits);
+    const uint32_t next_index = static_cast<uint32_t>(mesh_->vertex_count());
+    auto inserted = vertices_.insert(std::make_pair(key, next_index));
+    if (!inserted.second) {
+      return inserted.first->second;
+    }
+
+    const float* xyz = &positions_[position * 3];
+    mesh_->positions.insert(mesh_->positions.end(), xyz, xyz + 3);
+    if (tex_coord != kMissing) {
+      const float* uv = &tex_coords_[tex_coord * 2];
+      mesh_->tex_coords.insert(mesh_->tex_coords.end(), uv, uv + 2);
+    } else {
+      mesh_->tex_coords.insert(mesh_->tex_coords.end(), 2, 0.0f);
+    }
+    if (normal != kMissing) {
+      const float* n = &normals_[normal * 3];
+      mesh_->normals.insert(mesh_->normals.end(), n, n + 3);
+    } else {
+      mesh_->normals.insert(mesh_->normals.end(), 3, 0.0f);
+    }
+    return next_index;
+  }
+
+  ObjMesh* mesh_;
+  // Attributes as listed in the file.
+  std::vector<float> positions_;
+  std::vector<float> tex_coords_;
+  std::vector<float> normals_;
+  // Output vertex index by packed corner key.
+  std::unordered_map<uint64_t, uint32_t> vertices_;
+  // Output vertex indices of the corners of the current face.
+  std::vector<uint32_t> polygon_;
+  // Material of the following faces and its group, kMissing until a face
+  // uses it.
+  std::string material_;
+  size_t group_ = kMissing;
+  // Material group index by material name.
+  std::unordered_map<std::string, size_t> groups_;
+  // Material group index per triangle.
+  std::vector<uint32_t> triangle_groups_;
+};
+
+}  // namespace
+
+bool ParseObj(const char* data, size_t length, ObjMesh* out_mesh,
+              std::string* out_error) {
+  out_mesh->positions.clear();
+  out_mesh->tex_coords.clear();
+  out_mesh->normals.clear();
+  out_mesh->indices.clear();
+  out_mesh->material_groups.clear();
+  out_mesh->material_library.clear();
+
+  ObjParser parser(out_mesh);
+  return parser.Parse(data, length, out_error);
+}
+
+bool FitsShortIndices(const ObjMesh& mesh, std::string* out_error) {
+  if (mesh.vertex_count() <= kMaxShortIndexedVertexCount) {
+    return true;
+  }
+  if (out_error != nullptr) {
+    *out_error = "Mesh has " + std::to_string(mesh.vertex_count()) +
+                 " vertices, 16 bit indices only address " +
+                 std::to_string(kMaxShortIndexedVertexCount) + ".";
+  }
+  return false;
+}
+
+}  // namespace mesh_loader
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef MESH_LOADER_OBJ_PARSER_H_
+#define MESH_LOADER_OBJ_PARSER_H_
+
+#include <cstddef>
+#include <cstdint>
+#include <string>
+#include <vector>
+
+namespace mesh_loader {
+
+// Meshes are drawn with 16 bit indices on OpenGL ES 2.0, which address at most
+// this many vertices.
+constexpr size_t kMaxShortIndexedVertexCount = 65536;
+
+// Contiguous range of the indices of all faces using one material.
+struct ObjMaterialGroup {
+  // Name given to 'usemtl', empty for faces listed before the first one.
+  std::string material;
+  size_t index_offset;
+  size_t index_count;
+};
+
+// Single-indexed triangle mesh, ready to be uploaded to OpenGL.
+struct ObjMesh {
+  // x, y, z per vertex.
+  std::vector<float> positions;
+  // u, v per vertex, zero for faces without texture coordinates.
+  std::vector<float> tex_coords;
+  // x, y, z per vertex, zero for faces without normals.
+  std::vector<float> normals;
+  // Three vertex indices per triangle.
+  std::vector<uint32_t> indices;
+  // Ranges of the indices, in the order the materials are first used.
+  std::vector<ObjMaterialGroup> material_groups;
+  // File given to the first 'mtllib', empty if there is none.
+  std::string material_library;
+
+  size_t vertex_count() const { return positions.size() / 3; }
+};
+
+// Parses the text of an OBJ file into a single-indexed triangle mesh.
+//
+// Polygons are triangulated as fans and every distinct combination of
+// position, texture coordinate and normal index becomes one vertex, so shared
+// corners are only stored once. The faces are sorted by their 'usemtl'
+// material, so each material is drawn from one range of the indices.
+// Everything but 'v', 'vt', 'vn', 'f', 'usemtl' and 'mtllib' lines is ignored,
+// the material library itself is not read. This code has no Android
+// dependencies and can be built and run on a desktop.
+//
+// @param data, the OBJ file content, does not need to be null terminated.
+// @param length, the number of bytes in data.
+// @param out_mesh, output mesh, cleared first.
+// @param out_error, output description of the first error, may be nullptr.
+// @return true if the file is parsed correctly, otherwise false.
+bool ParseObj(const char* data, size_t length, ObjMesh* out_mesh,
+              std::string* out_error);
+
+// Checks that all vertices of the mesh can be addressed by 16 bit indices.
+//
+// @param mesh, the parsed mesh.
+// @param out_error, output description of the error, may be nullptr.
+// @return true if the mesh has at most kMaxShortIndexedVertexCount vertices.
+bool FitsShortIndices(const ObjMesh& mesh, std::string* out_error);
+
+}  // namespace mesh_loader
+
+#endif  // MESH_LOADER_OBJ_PARSER_H_
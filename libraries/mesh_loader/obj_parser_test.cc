@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Host test of the OBJ parser, run by ctest on a desktop with the fixtures in
+// testdata:
+//   obj_parser_test path/to/testdata
+
+#include <cstdio>
+#include <fstream>
+#include <iterator>
+#include <sstream>
+#include <string>
+#include <vector>
+
+#include "obj_parser.h"
+
+namespace {
+
+int failures = 0;
+
+#define EXPECT(condition)                                                 \
+  do {                                                                    \
+    if (!(condition)) {                                                   \
+      std::fprintf(stderr, "%s:%d: %s\n", __FILE__, __LINE__, #condition); \
+      ++failures;                                                         \
+    }                                                                     \
+  } while (false)
+
+std::string testdata;
+
+bool ParseFile(const std::string& file_name, mesh_loader::ObjMesh* out_mesh) {
+  std::ifstream file(testdata + "/" + file_name, std::ios::binary);
+  const std::string content((std::istreambuf_iterator<char>(file)),
+                            std::istreambuf_iterator<char>());
+  std::string error;
+  if (content.empty() || !mesh_loader::ParseObj(content.data(), content.size(),
+                                                out_mesh, &error)) {
+    std::fprintf(stderr, "Failed to parse %s: %s\n", file_name.c_str(),
+                 error.c_str());
+    return false;
+  }
+  return true;
+}
+
+// @return the text of an OBJ file with the given number of vertices, all used
+// by a strip of triangles.
+std::string StripObj(size_t vertex_count) {
+  std::ostringstream obj;
+  for (size_t i = 0; i < vertex_count; ++i) {
+    obj << "v " << i << " " << i % 2 << " 0\n";
+  }
+  for (size_t i = 1; i + 2 <= vertex_count; ++i) {
+    obj << "f " << i << " " << i + 1 << " " << i + 2 << "\n";
+  }
+  return obj.str();
+}
+
+void TestTriangulatesPolygonsAsFans() {
+  mesh_loader::ObjMesh mesh;
+  if (!ParseFile("polygons.obj", &mesh)) {
+    ++failures;
+    return;
+  }
+  const std::vector<uint32_t> expected = {0, 1, 2, 0, 2, 3,
+                                          4, 5, 6, 4, 6, 7, 4, 7, 8};
+  EXPECT(mesh.indices == expected);
+  EXPECT(mesh.vertex_count() == 9);
+  // Faces without texture coordinates and normals get zeros.
+  EXPECT(mesh.tex_coords == std::vector<float>(2 * 9, 0.0f));
+  EXPECT(mesh.normals == std::vector<float>(3 * 9, 0.0f));
+  EXPECT(mesh.positions[3 * 7] == 2.5f && mesh.positions[3 * 7 + 1] == 2.0f);
+  EXPECT(mesh.material_groups.size() == 1);
+}
+
+void TestStoresSharedCornersOnce() {
+  mesh_loader::ObjMesh mesh;
+  if (!ParseFile("shared_vertices.obj", &mesh)) {
+    ++failures;
+    return;
+  }
+  // The second triangle reuses two corners of the first one, by relative
+  // indices. The third one only shares positions, with another normal.
+  const std::vector<uint32_t> expected = {0, 1, 2, 0, 2, 3, 4, 5, 6};
+  EXPECT(mesh.indices == expected);
+  EXPECT(mesh.vertex_count() == 7);
+  EXPECT(mesh.tex_coords.size() == 2 * 7 && mesh.normals.size() == 3 * 7);
+  EXPECT(mesh.tex_coords[2 * 3] == 0.0f && mesh.tex_coords[2 * 3 + 1] == 1.0f);
+  EXPECT(mesh.normals[3 * 3 + 2] == 1.0f);
+  EXPECT(mesh.normals[3 * 4 + 2] == -1.0f);
+}
+
+void TestGroupsFacesByMaterial() {
+  mesh_loader::ObjMesh mesh;
+  if (!ParseFile("materials.obj", &mesh)) {
+    ++failures;
+    return;
+  }
+  EXPECT(mesh.material_library == "materials.mtl");
+  EXPECT(mesh.material_groups.size() == 3);
+  if (mesh.material_groups.size() != 3) {
+    return;
+  }
+  // In the order the materials are first used, faces before any 'usemtl'
+  // first.
+  EXPECT(mesh.material_groups[0].material.empty());
+  EXPECT(mesh.material_groups[0].index_offset == 0);
+  EXPECT(mesh.material_groups[0].index_count == 3);
+  EXPECT(mesh.material_groups[1].material == "Red");
+  EXPECT(mesh.material_groups[1].index_offset == 3);
+  EXPECT(mesh.material_groups[1].index_count == 6);
+  EXPECT(mesh.material_groups[2].material == "Blue");
+  EXPECT(mesh.material_groups[2].index_offset == 9);
+  EXPECT(mesh.material_groups[2].index_count == 3);
+  // Both faces of Red, in the order of the file.
+  const std::vector<uint32_t> expected = {0, 1, 2, 0, 1, 3, 0, 2, 3, 1, 2, 3};
+  EXPECT(mesh.indices == expected);
+}
+
+void TestRejectsMeshesBeyondShortIndices() {
+  const size_t max_count = mesh_loader::kMaxShortIndexedVertexCount;
+  mesh_loader::ObjMesh mesh;
+  std::string error;
+
+  const std::string fitting = StripObj(max_count);
+  EXPECT(mesh_loader::ParseObj(fitting.data(), fitting.size(), &mesh, &error));
+  EXPECT(mesh.vertex_count() == max_count);
+  EXPECT(mesh_loader::FitsShortIndices(mesh, &error));
+
+  const std::string too_large = StripObj(max_count + 1);
+  EXPECT(mesh_loader::ParseObj(too_large.data(), too_large.size(), &mesh,
+                               &error));
+  EXPECT(mesh.vertex_count() == max_count + 1);
+  EXPECT(!mesh_loader::FitsShortIndices(mesh, &error));
+  EXPECT(error.find("65537") != std::string::npos);
+}
+
+void TestRejectsInvalidFaces() {
+  mesh_loader::ObjMesh mesh;
+  std::string error;
+  const std::string missing_vertex = "v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 4\n";
+  EXPECT(!mesh_loader::ParseObj(missing_vertex.data(), missing_vertex.size(),
+                                &mesh, &error));
+  EXPECT(error == "Invalid 'f' on line 4.");
+  const std::string line = "v 0 0 0\nv 1 0 0\nf 1 2\n";
+  EXPECT(!mesh_loader::ParseObj(line.data(), line.size(), &mesh, nullptr));
+}
+
+}  // namespace
+
+int main(int argc, char** argv) {
+  if (argc != 2) {
+    std::fprintf(stderr, "Usage: obj_parser_test path/to/testdata\n");
+    return 2;
+  }
+  testdata = argv[1];
+
+  TestTriangulatesPolygonsAsFans();
+  TestStoresSharedCornersOnce();
+  TestGroupsFacesByMaterial();
+  TestRejectsMeshesBeyondShortIndices();
+  TestRejectsInvalidFaces();
+
+  if (failures != 0) {
+    std::fprintf(stderr, "%d expectations failed.\n", failures);
+    return 1;
+  }
+  std::printf("All tests passed.\n");
+  return 0;
+}
@@ -30,15 +30,18 @@ import android.view.WindowManager;
 import android.widget.Toast;
 import com.google.ar.core.Frame;
 import com.google.ar.core.Session;
+import com.google.ar.core.examples.java.computervision.pipeline.EdgeDetectionStage;
+import com.google.ar.core.examples.java.computervision.pipeline.ImagePipeline;
 import com.google.ar.core.examples.java.computervision.rendering.BackgroundRenderer;
 import com.google.ar.core.examples.java.computervision.utility.CameraImageBuffer;
+import com.google.ar.core.examples.java.computervision.utility.CameraImageBufferPool;
 import com.google.ar.core.examples.java.computervision.utility.CameraPermissionHelper;
 import com.google.ar.core.examples.java.computervision.utility.DisplayRotationHelper;
-import com.google.ar.core.examples.java.computervision.utility.EdgeDetector;
 import com.google.ar.core.examples.java.computervision.utility.TextureReader;
 import com.google.ar.core.exceptions.UnavailableApkTooOldException;
 import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
 import com.google.ar.core.exceptions.UnavailableSdkTooOldException;
+import java.util.Locale;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
@@ -53,19 +56,35 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
   private Snackbar messageSnackbar;
   private DisplayRotationHelper displayRotationHelper;
 
+  // Frames read back at the same time: one processed by the pipeline, one completed and one being
+  // read by the GPU.
+  private static final int READBACK_BUFFER_COUNT = 3;
+  private static final int STATISTICS_LOG_INTERVAL_FRAMES = 300;
+
   private final BackgroundRenderer backgroundRenderer = new BackgroundRenderer();
-  private final CameraImageBuffer edgeImage = new CameraImageBuffer();
-  private final TextureReader textureReader = new TextureReader();
+  private final TextureReader textureReader = new TextureReader(READBACK_BUFFER_COUNT);
+  private final CameraImageBufferPool imageBufferPool =
+      new CameraImageBufferPool(BuildConfig.DEBUG);
+
+  // Detects edges in the newest camera image on a worker thread.
+  private final ImagePipeline imagePipeline =
+      new ImagePipeline(
+          imageBufferPool, ImagePipeline.Policy.LATEST_FRAME, 0, new EdgeDetectionStage());
+
+  // The edge image currently shown, returned to the pipeline once replaced.
+  private CameraImageBuffer edgeImage;
+  private int frameCount = 0;
 
   // ArCore full resolution texture has a size of 1920 x 1080.
   private static final int TEXTURE_WIDTH = 1920;
   private static final int TEXTURE_HEIGHT = 1080;
 
-  // We choose a lower sampling resolution.
-  private static final int IMAGE_WIDTH = 1024;
-  private static final int IMAGE_HEIGHT = 512;
-
-  private int frameBufferIndex = -1;
+  // We choose a lower sampling resolution, downsampled on the GPU. Reading back a quarter of the
+  // pixels, packed four grayscale pixels per texel, takes a quarter of the bandwidth of a full size
+  // read. Use 4 to reduce it further, to a sixteenth.
+  private static final int DOWNSAMPLE_FACTOR = 2;
+  private static final int IMAGE_WIDTH = TEXTURE_WIDTH / DOWNSAMPLE_FACTOR;
+  private static final int IMAGE_HEIGHT = TEXTURE_HEIGHT / DOWNSAMPLE_FACTOR;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -192,6 +211,18 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
     }
   }
 
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+    imagePipeline.shutdown();
+    // The rendering thread is stopped, so the edge image shown last is not drawn anymore.
+    if (edgeImage != null) {
+      imagePipeline.releaseResult(edgeImage);
+      edgeImage = null;
+    }
+    imageBufferPool.logOutstanding();
+  }
+
   @Override
   public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] results) {
     if (!CameraPermissionHelper.hasCameraPermission(this)) {
@@ -237,6 +268,7 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
     // The image format can be either IMAGE_FORMAT_RGBA or IMAGE_FORMAT_I8.
     // Set keepAspectRatio to false so that the output image covers the whole viewport.
     textureReader.create(CameraImageBuffer.IMAGE_FORMAT_I8, IMAGE_WIDTH, IMAGE_HEIGHT, false);
+    imagePipeline.attach(textureReader);
   }
 
   @Override
@@ -259,25 +291,26 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
     try {
       Frame frame = session.update();
 
-      // If there is a frame being requested previously, acquire the pixels and process it.
-      if (frameBufferIndex >= 0) {
-        CameraImageBuffer imageBuffer = textureReader.acquireFrame(frameBufferIndex);
+      // Hand the newest frame read back to the pipeline, without waiting for the GPU.
+      textureReader.update();
 
-        // Detect the edges from the captured grayscale image.
-        if (EdgeDetector.detect(edgeImage, imageBuffer)) {
-          // Set the edge image to renderer as overlay.
-          backgroundRenderer.setOverlayImage(edgeImage);
+      // Set the edge image to renderer as overlay, only if the pipeline produced a new one.
+      CameraImageBuffer newEdgeImage = imagePipeline.pollResult();
+      if (newEdgeImage != null) {
+        backgroundRenderer.setOverlayImage(newEdgeImage);
+        if (edgeImage != null) {
+          imagePipeline.releaseResult(edgeImage);
         }
-
-        // You should always release frame buffer after using. Otherwise the next call to
-        // submitFrame() may fail.
-        textureReader.releaseFrame(frameBufferIndex);
+        edgeImage = newEdgeImage;
       }
 
-      // Submit request for the texture from the current frame.
-      frameBufferIndex =
-          textureReader.submitFrame(
-              backgroundRenderer.getTextureId(), TEXTURE_WIDTH, TEXTURE_HEIGHT);
+      // Submit request for the texture from the current frame. This is skipped while all buffers
+      // are in use.
+      textureReader.submitFrame(backgroundRenderer.getTextureId(), TEXTURE_WIDTH, TEXTURE_HEIGHT);
+
+      if (++frameCount % STATISTICS_LOG_INTERVAL_FRAMES == 0) {
+        logStatistics();
+      }
 
       // Draw background video.
       backgroundRenderer.draw(frame);
@@ -288,6 +321,25 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
     }
   }
 
+  private void logStatistics() {
+    StringBuilder statistics = new StringBuilder();
+    statistics.append(
+        String.format(
+            Locale.US,
+            "readback submitted=%d delivered=%d dropped=%d stalls=%d latency_avg_ms=%.2f"
+                + " latency_max_ms=%.2f\n",
+            textureReader.getSubmittedFrameCount(),
+            textureReader.getDeliveredFrameCount(),
+            textureReader.getDroppedFrameCount(),
+            textureReader.getStallCount(),
+            textureReader.getAverageReadbackLatencyNanos() / 1e6,
+            textureReader.getMaxReadbackLatencyNanos() / 1e6));
+    imagePipeline.appendStatistics(statistics);
+    statistics.append('\n');
+    imageBufferPool.appendStatistics(statistics);
+    Log.d(TAG, statistics.toString());
+  }
+
   private void showSnackbarMessage(String message, boolean finishOnDismiss) {
     messageSnackbar =
         Snackbar.make(
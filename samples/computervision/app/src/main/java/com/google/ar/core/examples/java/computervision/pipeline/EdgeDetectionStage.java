@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.examples.java.computervision.pipeline;
+
+import com.google.ar.core.examples.java.computervision.utility.CameraImageBuffer;
+import com.google.ar.core.examples.java.computervision.utility.EdgeDetector;
+import com.google.ar.core.examples.java.computervision.utility.ImageFilter;
+import com.google.ar.core.examples.java.computervision.utility.Sobel;
+
+/** Detects edges in grayscale images through {@link EdgeDetector}. */
+public class EdgeDetectionStage implements ImageStage {
+  private final ImageFilter filter;
+
+  /** Creates a stage detecting edges with a {@link Sobel} kernel. */
+  public EdgeDetectionStage() {
+    this(new ImageFilter(new Sobel()));
+  }
+
+  public EdgeDetectionStage(ImageFilter filter) {
+    this.filter = filter;
+  }
+
+  @Override
+  public String getName() {
+    return filter.getKernel().getClass().getSimpleName();
+  }
+
+  @Override
+  public boolean process(CameraImageBuffer input, CameraImageBuffer output) {
+    return EdgeDetector.detect(output, input, filter);
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.examples.java.computervision.pipeline;
+
+import android.util.Log;
+import com.google.ar.core.examples.java.computervision.utility.CameraImageBuffer;
+import com.google.ar.core.examples.java.computervision.utility.CameraImageBufferPool;
+import com.google.ar.core.examples.java.computervision.utility.TextureReader;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a chain of {@link ImageStage}s on the camera frames read back by a {@link TextureReader},
+ * on a dedicated worker thread.
+ *
+ * <p>Every stage writes into a buffer from a {@link CameraImageBufferPool}, which is passed on as
+ * input of the next stage. The output of the last stage is kept as result until the OpenGL thread
+ * picks it up through {@link #pollResult()}; a newer result replaces one not picked up yet.
+ *
+ * <p>How frames arriving while the worker is busy are handled depends on the {@link Policy}. The
+ * time spent in every stage is measured and can be logged through {@link #appendStatistics}.
+ */
+public class ImagePipeline implements TextureReader.FrameListener {
+  /** Handling of camera frames which arrive while the worker is busy. */
+  public enum Policy {
+    /**
+     * The first stage works directly on the mapped pixel buffer, without copying it. While the
+     * worker is busy, the texture reader only keeps the newest frame. Lowest latency.
+     */
+    LATEST_FRAME,
+
+    /**
+     * Frames are copied into pooled buffers and queued, so the pixel buffers are recycled
+     * immediately. Once the queue is full, its oldest frame is dropped. Processes every frame as
+     * long as the worker keeps up on average.
+     */
+    QUEUE
+  }
+
+  private static final String TAG = ImagePipeline.class.getSimpleName();
+
+  // Longest wait for the frame being processed when shutting down, far longer than any stage takes.
+  private static final long SHUTDOWN_TIMEOUT_MS = 500;
+
+  private static final Executor CALLING_THREAD =
+      new Executor() {
+        @Override
+        public void execute(Runnable command) {
+          command.run();
+        }
+      };
+
+  private final CameraImageBufferPool pool;
+  private final Policy policy;
+  private final int queueCapacity;
+  private final ImageStage[] stages;
+  private final ExecutorService worker = Executors.newSingleThreadExecutor();
+  private TextureReader reader;
+
+  // Input of the QUEUE policy, guarded by itself.
+  private final ArrayDeque<CameraImageBuffer> queue = new ArrayDeque<>();
+  private boolean draining = false;
+  private final Runnable drainTask =
+      new Runnable() {
+        @Override
+        public void run() {
+          drainQueue();
+        }
+      };
+
+  // Guarded by this.
+  private CameraImageBuffer result;
+
+  // Statistics, guarded by stageNanos.
+  private final long[] stageNanos;
+  private final long[] stageMaxNanos;
+  private final long[] stageFrames;
+  private long processedFrames = 0;
+  private long droppedFrames = 0;
+  private long rejectedFrames = 0;
+  private long supersededResults = 0;
+
+  /**
+   * @param pool the pool providing the stage outputs.
+   * @param policy the handling of frames arriving while the worker is busy.
+   * @param queueCapacity the number of frames queued with {@link Policy#QUEUE}, ignored otherwise.
+   * @param stages the stages to run, in order.
+   */
+  public ImagePipeline(
+      CameraImageBufferPool pool, Policy policy, int queueCapacity, ImageStage... stages) {
+    if (stages.length == 0) {
+      throw new RuntimeException("At least one stage is needed.");
+    }
+    if (policy == Policy.QUEUE && queueCapacity < 1) {
+      throw new RuntimeException("Invalid queue capacity " + queueCapacity + ".");
+    }
+
+    this.pool = pool;
+    this.policy = policy;
+    this.queueCapacity = queueCapacity;
+    this.stages = stages.clone();
+    stageNanos = new long[stages.length];
+    stageMaxNanos = new long[stages.length];
+    stageFrames = new long[stages.length];
+  }
+
+  /**
+   * Starts processing the frames read back by the given reader. This function needs to be called
+   * from the OpenGL rendering thread, after the reader was created.
+   */
+  public void attach(TextureReader reader) {
+    this.reader = reader;
+    // Queued frames are copied right away on the OpenGL thread, during TextureReader.update().
+    reader.setFrameListener(this, policy == Policy.LATEST_FRAME ? worker : CALLING_THREAD);
+  }
+
+  /**
+   * Stops the worker thread, waiting for the frame it is processing. Frames still queued are not
+   * processed anymore. They are returned to the pool with the result not taken yet, so afterwards
+   * the pool only holds the results taken through {@link #pollResult()}.
+   */
+  public void shutdown() {
+    worker.shutdownNow();
+    try {
+      if (!worker.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        Log.w(TAG, "Worker still busy, the buffers of its frame are not released.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    synchronized (queue) {
+      while (!queue.isEmpty()) {
+        pool.release(queue.poll());
+      }
+    }
+    synchronized (this) {
+      if (result != null) {
+        pool.release(result);
+        result = null;
+      }
+    }
+  }
+
+  @Override
+  public void onFrameAvailable(int bufferIndex, CameraImageBuffer image) {
+    if (policy == Policy.LATEST_FRAME) {
+      process(image, bufferIndex);
+      return;
+    }
+
+    final CameraImageBuffer copy = pool.acquire(image.width, image.height, image.format);
+    image.buffer.position(0);
+    copy.buffer.position(0);
+    copy.buffer.put(image.buffer);
+    copy.buffer.position(0);
+    reader.recycleFrame(bufferIndex);
+
+    synchronized (queue) {
+      if (queue.size() == queueCapacity) {
+        pool.release(queue.poll());
+        synchronized (stageNanos) {
+          droppedFrames++;
+        }
+      }
+      queue.add(copy);
+      if (!draining) {
+        draining = true;
+        worker.execute(drainTask);
+      }
+    }
+  }
+
+  /**
+   * Takes the newest result of the last stage, if there is one which was not taken yet. This
+   * function needs to be called from the OpenGL rendering thread.
+   *
+   * @return the result, to be returned through {@link #releaseResult} once not needed anymore, or
+   *     null if there is no new result.
+   */
+  public synchronized CameraImageBuffer pollResult() {
+    final CameraImageBuffer newest = result;
+    result = null;
+    return newest;
+  }
+
+  /** Returns a result taken through {@link #pollResult()}. */
+  public void releaseResult(CameraImageBuffer image) {
+    pool.release(image);
+  }
+
+  /** Appends the frame counts and the average and maximum time per stage. */
+  public void appendStatistics(StringBuilder out) {
+    synchronized (stageNanos) {
+      out.append(
+          String.format(
+              Locale.US,
+              "pipeline processed=%d dropped=%d rejected=%d superseded=%d",
+              processedFrames,
+              droppedFrames,
+              rejectedFrames,
+              supersededResults));
+      for (int i = 0; i < stages.length; i++) {
+        out.append(
+            String.format(
+                Locale.US,
+                " %s_avg_ms=%.2f %s_max_ms=%.2f",
+                stages[i].getName(),
+                stageFrames[i] == 0 ? 0 : stageNanos[i] / (double) stageFrames[i] / 1e6,
+                stages[i].getName(),
+                stageMaxNanos[i] / 1e6));
+      }
+    }
+  }
+
+  private void drainQueue() {
+    while (true) {
+      final CameraImageBuffer next;
+      synchronized (queue) {
+        next = queue.poll();
+        if (next == null) {
+          draining = false;
+          return;
+        }
+      }
+
+      process(next, -1);
+      pool.release(next);
+    }
+  }
+
+  /**
+   * Runs all stages on one frame.
+   *
+   * @param bufferIndex the index to recycle the input with after the first stage, or -1 if the
+   *     input is owned by the caller.
+   */
+  private void process(CameraImageBuffer input, int bufferIndex) {
+    CameraImageBuffer current = input;
+    for (int i = 0; i < stages.length; i++) {
+      final CameraImageBuffer output = pool.acquire(current.width, current.height, current.format);
+
+      final long start = System.nanoTime();
+      final boolean passed = stages[i].process(current, output);
+      final long nanos = System.nanoTime() - start;
+      synchronized (stageNanos) {
+        stageNanos[i] += nanos;
+        stageMaxNanos[i] = Math.max(stageMaxNanos[i], nanos);
+        stageFrames[i]++;
+      }
+
+      if (current != input) {
+        pool.release(current);
+      } else if (bufferIndex >= 0) {
+        // The mapped pixel buffer is not needed by the following stages.
+        reader.recycleFrame(bufferIndex);
+      }
+      current = output;
+
+      if (!passed) {
+        pool.release(current);
+        synchronized (stageNanos) {
+          rejectedFrames++;
+        }
+        return;
+      }
+    }
+
+    synchronized (stageNanos) {
+      processedFrames++;
+    }
+    synchronized (this) {
+      if (result != null) {
+        pool.release(result);
+        synchronized (stageNanos) {
+          supersededResults++;
+        }
+      }
+      result = current;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.examples.java.computervision.pipeline;
+
+import com.google.ar.core.examples.java.computervision.utility.CameraImageBuffer;
+
+/** One step of an {@link ImagePipeline}, e.g. an image filter or a feature detector. */
+public interface ImageStage {
+  /** @return the name of the stage in the pipeline statistics. */
+  String getName();
+
+  /**
+   * Processes one camera image. Called on the pipeline's worker thread only.
+   *
+   * @param input the output of the previous stage, or the camera image for the first stage. The
+   *     first stage may get a view of the mapped pixel buffer, which is only valid during this
+   *     call.
+   * @param output a buffer of the same size and format as the input, for the result.
+   * @return false to drop the frame, true to pass the output on to the next stage.
+   */
+  boolean process(CameraImageBuffer input, CameraImageBuffer output);
+}
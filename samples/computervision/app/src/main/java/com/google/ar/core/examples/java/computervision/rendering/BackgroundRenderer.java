@@ -49,10 +49,16 @@ public class BackgroundRenderer {
   private int quadTexCoordAttrib;
   private int quadSplitterUniform;
   private int backgroundTextureId = -1;
-  private int overlayTextureId = -1;
+  // Double buffered, so an upload never has to wait for the frame still drawing the other one.
+  private final int[] overlayTextureIds = new int[] {-1, -1};
+  private int overlayFrontIndex = 0;
+  private int overlayTextureWidth = 0;
+  private int overlayTextureHeight = 0;
   private float splitterPosition = 0.5f;
 
   private CameraImageBuffer overlayImageBuffer;
+  private long overlayGeneration = 0;
+  private long uploadedOverlayGeneration = 0;
 
   public int getTextureId() {
     return backgroundTextureId;
@@ -67,8 +73,8 @@ public class BackgroundRenderer {
    */
   public void createOnGlThread(Context context) {
     // Generate the background texture.
-    int[] textures = new int[2];
-    GLES20.glGenTextures(2, textures, 0);
+    int[] textures = new int[3];
+    GLES20.glGenTextures(3, textures, 0);
     backgroundTextureId = textures[0];
     GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, backgroundTextureId);
     GLES20.glTexParameteri(
@@ -80,11 +86,21 @@ public class BackgroundRenderer {
     GLES20.glTexParameteri(
         GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
 
-    overlayTextureId = textures[1];
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, overlayTextureId);
-    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+    // The overlay textures are allocated with the size of the first overlay image.
+    for (int i = 0; i < overlayTextureIds.length; i++) {
+      overlayTextureIds[i] = textures[1 + i];
+      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, overlayTextureIds[i]);
+      GLES20.glTexParameteri(
+          GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+      GLES20.glTexParameteri(
+          GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+      GLES20.glTexParameteri(
+          GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+    }
+    overlayFrontIndex = 0;
+    overlayTextureWidth = 0;
+    overlayTextureHeight = 0;
+    uploadedOverlayGeneration = 0;
 
     int numVertices = 4;
     if (numVertices != QUAD_COORDS.length / COORDS_PER_VERTEX) {
@@ -136,12 +152,63 @@ public class BackgroundRenderer {
 
   /**
    * Sets new overlay image buffer. This image buffer is used to render side by side with background
-   * video.
+   * video. It is uploaded to the overlay texture once, by the next call to draw(), so it has to be
+   * set again whenever its content changed.
    *
    * @param imageBuffer the new image buffer for the overlay texture.
    */
   public void setOverlayImage(CameraImageBuffer imageBuffer) {
     overlayImageBuffer = imageBuffer;
+    overlayGeneration++;
+  }
+
+  /**
+   * Uploads the overlay image into the overlay texture not drawn by the last frame, which then
+   * becomes the one drawn. The textures are only reallocated when the image size changes, all
+   * other uploads just replace their content.
+   */
+  private void uploadOverlayImage() {
+    final int width = overlayImageBuffer.width;
+    final int height = overlayImageBuffer.height;
+    if (width != overlayTextureWidth || height != overlayTextureHeight) {
+      for (int textureId : overlayTextureIds) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        GLES20.glTexImage2D(
+            GLES20.GL_TEXTURE_2D,
+            0,
+            GLES20.GL_LUMINANCE,
+            width,
+            height,
+            0,
+            GLES20.GL_LUMINANCE,
+            GLES20.GL_UNSIGNED_BYTE,
+            null);
+      }
+      overlayTextureWidth = width;
+      overlayTextureHeight = height;
+    }
+
+    final int backIndex = 1 - overlayFrontIndex;
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, overlayTextureIds[backIndex]);
+
+    // Rows of single byte pixels are not padded to four bytes.
+    GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+    ByteBuffer pixelBuffer = overlayImageBuffer.buffer;
+    pixelBuffer.position(0);
+    GLES20.glTexSubImage2D(
+        GLES20.GL_TEXTURE_2D,
+        0,
+        0,
+        0,
+        width,
+        height,
+        GLES20.GL_LUMINANCE,
+        GLES20.GL_UNSIGNED_BYTE,
+        pixelBuffer);
+    GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+
+    overlayFrontIndex = backIndex;
+    uploadedOverlayGeneration = overlayGeneration;
   }
 
   /**
@@ -187,25 +254,13 @@ public class BackgroundRenderer {
     GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, backgroundTextureId);
 
     GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
-
-    // Apply overlay image buffer
-    if (overlayImageBuffer != null
+    // Apply overlay image buffer, if it changed since the last upload.
+    if (overlayGeneration != uploadedOverlayGeneration
+        && overlayImageBuffer != null
         && overlayImageBuffer.format == CameraImageBuffer.IMAGE_FORMAT_I8) {
-      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, overlayTextureId);
-
-      ByteBuffer pixelBuffer = overlayImageBuffer.buffer;
-      pixelBuffer.position(0);
-      GLES20.glTexImage2D(
-          GLES20.GL_TEXTURE_2D,
-          0,
-          GLES20.GL_LUMINANCE,
-          overlayImageBuffer.width,
-          overlayImageBuffer.height,
-          0,
-          GLES20.GL_LUMINANCE,
-          GLES20.GL_UNSIGNED_BYTE,
-          pixelBuffer);
+      uploadOverlayImage();
     }
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, overlayTextureIds[overlayFrontIndex]);
 
     GLES20.glUseProgram(quadProgram);
 
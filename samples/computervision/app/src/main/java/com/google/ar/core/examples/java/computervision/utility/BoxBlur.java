@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.examples.java.computervision.utility;
+
+/** Averages every pixel with its eight neighbours, e.g. to suppress noise before thresholding. */
+public class BoxBlur extends ImageKernel {
+  // 1/9 in 16 bit fixed point, so the inner loop needs no division.
+  private static final int ONE_NINTH = 7282;
+
+  @Override
+  public int getRadius() {
+    return 1;
+  }
+
+  @Override
+  public void filterRow(
+      byte[] above, byte[] row, byte[] below, byte[] output, int outputOffset, int width) {
+    output[outputOffset] = 0;
+    output[outputOffset + width - 1] = 0;
+
+    for (int i = 1; i < width - 1; i++) {
+      final int sum =
+          (above[i - 1] & 0xFF) + (above[i] & 0xFF) + (above[i + 1] & 0xFF)
+              + (row[i - 1] & 0xFF) + (row[i] & 0xFF) + (row[i + 1] & 0xFF)
+              + (below[i - 1] & 0xFF) + (below[i] & 0xFF) + (below[i + 1] & 0xFF);
+      output[outputOffset + i] = (byte) ((sum * ONE_NINTH) >> 16);
+    }
+  }
+}
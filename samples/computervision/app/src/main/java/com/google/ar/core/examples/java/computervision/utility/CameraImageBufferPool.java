@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.examples.java.computervision.utility;
+
+import android.util.Log;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+
+/**
+ * Reuses {@link CameraImageBuffer}s of the same width, height and format, so processing a stream
+ * of camera images does not allocate once every size was seen. All buffers are direct and in
+ * native byte order, so they can be passed to OpenGL without copying. Can be used from several
+ * threads.
+ *
+ * <p>Every buffer returned by {@link #acquire} has to be passed to {@link #release} exactly once.
+ * In debug mode, the pool additionally detects releasing a buffer twice or releasing a buffer it
+ * did not hand out, and detaches the pixels from released buffers, so any later use of them fails
+ * immediately. The buffers not released yet can be logged, including where they were acquired in
+ * debug mode.
+ */
+public class CameraImageBufferPool {
+  private static final String TAG = CameraImageBufferPool.class.getSimpleName();
+
+  // Set as pixels of released buffers in debug mode. Has no capacity, so every access throws.
+  private static final ByteBuffer RELEASED = ByteBuffer.allocateDirect(0).asReadOnlyBuffer();
+
+  private final boolean debug;
+  private final ArrayList<Bucket> buckets = new ArrayList<>();
+
+  // Debug mode only: the pixels of every outstanding buffer, and where it was acquired.
+  private final IdentityHashMap<CameraImageBuffer, Throwable> acquiredAt;
+  private final IdentityHashMap<CameraImageBuffer, ByteBuffer> releasedPixels;
+
+  /** Creates a pool without debug checks. */
+  public CameraImageBufferPool() {
+    this(false);
+  }
+
+  /**
+   * @param debug whether to check every release and to detach the pixels of released buffers,
+   *     e.g. BuildConfig.DEBUG.
+   */
+  public CameraImageBufferPool(boolean debug) {
+    this.debug = debug;
+    acquiredAt = debug ? new IdentityHashMap<CameraImageBuffer, Throwable>() : null;
+    releasedPixels = debug ? new IdentityHashMap<CameraImageBuffer, ByteBuffer>() : null;
+  }
+
+  /**
+   * Returns a buffer of the given size and format, reusing a released one if possible. The content
+   * of the buffer is undefined.
+   *
+   * @param width the width of the image, in pixels.
+   * @param height the height of the image, in pixels.
+   * @param format the format of the image.
+   */
+  public synchronized CameraImageBuffer acquire(int width, int height, int format) {
+    final Bucket bucket = getBucket(width, height, format);
+    CameraImageBuffer image = bucket.free.poll();
+    if (image == null) {
+      final int size = width * height * (format == CameraImageBuffer.IMAGE_FORMAT_RGBA ? 4 : 1);
+      image =
+          new CameraImageBuffer(
+              width,
+              height,
+              format,
+              ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder()));
+      bucket.allocated++;
+    } else if (debug) {
+      image.buffer = releasedPixels.remove(image);
+    }
+
+    bucket.outstanding++;
+    if (debug) {
+      acquiredAt.put(image, new Throwable("Acquired here"));
+    }
+    image.buffer.clear();
+    return image;
+  }
+
+  /**
+   * Returns a buffer acquired earlier to the pool, with the size and format it was acquired with.
+   * The buffer must not be used anymore afterwards.
+   */
+  public synchronized void release(CameraImageBuffer image) {
+    if (debug && acquiredAt.remove(image) == null) {
+      throw new IllegalStateException("Buffer released twice or not acquired from this pool.");
+    }
+
+    final Bucket bucket = getBucket(image.width, image.height, image.format);
+    if (bucket.outstanding == 0) {
+      throw new IllegalStateException("More buffers released than acquired.");
+    }
+    bucket.outstanding--;
+    bucket.free.add(image);
+
+    if (debug) {
+      releasedPixels.put(image, image.buffer);
+      image.buffer = RELEASED;
+    }
+  }
+
+  /** @return the number of buffers acquired and not released yet. */
+  public synchronized int getOutstandingCount() {
+    int outstanding = 0;
+    for (Bucket bucket : buckets) {
+      outstanding += bucket.outstanding;
+    }
+    return outstanding;
+  }
+
+  /** @return the number of buffers allocated by this pool so far. */
+  public synchronized int getAllocatedCount() {
+    int allocated = 0;
+    for (Bucket bucket : buckets) {
+      allocated += bucket.allocated;
+    }
+    return allocated;
+  }
+
+  /** Appends the number of allocated and outstanding buffers per size and format. */
+  public synchronized void appendStatistics(StringBuilder out) {
+    out.append("pool");
+    for (Bucket bucket : buckets) {
+      out.append(
+          String.format(
+              Locale.US,
+              " %dx%d/%d allocated=%d outstanding=%d",
+              bucket.width,
+              bucket.height,
+              bucket.format,
+              bucket.allocated,
+              bucket.outstanding));
+    }
+  }
+
+  /**
+   * Logs a warning for every buffer not released yet, with where it was acquired in debug mode.
+   * Useful when the owner of the pool shuts down.
+   */
+  public synchronized void logOutstanding() {
+    if (debug) {
+      for (Throwable acquired : acquiredAt.values()) {
+        Log.w(TAG, "Buffer not released.", acquired);
+      }
+    } else if (getOutstandingCount() > 0) {
+      Log.w(TAG, getOutstandingCount() + " buffers not released.");
+    }
+  }
+
+  private Bucket getBucket(int width, int height, int format) {
+    // Only a few sizes are used at the same time, a linear search is fastest and does not box.
+    for (int i = 0; i < buckets.size(); i++) {
+      final Bucket bucket = buckets.get(i);
+      if (bucket.width == width && bucket.height == height && bucket.format == format) {
+        return bucket;
+      }
+    }
+
+    final Bucket bucket = new Bucket(width, height, format);
+    buckets.add(bucket);
+    return bucket;
+  }
+
+  /** The buffers of one size and format. */
+  private static class Bucket {
+    final int width;
+    final int height;
+    final int format;
+    final ArrayDeque<CameraImageBuffer> free = new ArrayDeque<>();
+    int allocated = 0;
+    int outstanding = 0;
+
+    Bucket(int width, int height, int format) {
+      this.width = width;
+      this.height = height;
+      this.format = format;
+    }
+  }
+}
@@ -17,13 +17,12 @@ package com.google.ar.core.examples.java.computervision.utility;
 
 import android.util.Log;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /** Detects edges from input grayscale image. */
 public class EdgeDetector {
   private static final String TAG = EdgeDetector.class.getSimpleName();
-
-  private static byte[] s_ImageBuffer = new byte[0];
-  private static int s_ImageBufferSize = 0;
+  private static final ImageFilter SOBEL = new ImageFilter(new Sobel());
 
   /**
    * Detects edges from the input grayscale image.
@@ -33,6 +32,20 @@ public class EdgeDetector {
    * @return False if the outputImage buffer is too small, True otherwise.
    */
   public static boolean detect(CameraImageBuffer outputImage, CameraImageBuffer inputImage) {
+    return detect(outputImage, inputImage, SOBEL);
+  }
+
+  /**
+   * Detects edges from the input grayscale image with the given filter, e.g. a {@link Scharr}
+   * kernel.
+   *
+   * @param outputImage Output image buffer, which has a size of width * height.
+   * @param inputImage Input image, read in place.
+   * @param filter the filter to apply.
+   * @return False if the outputImage buffer is too small, True otherwise.
+   */
+  public static boolean detect(
+      CameraImageBuffer outputImage, CameraImageBuffer inputImage, ImageFilter filter) {
     if (inputImage == null || inputImage.format != CameraImageBuffer.IMAGE_FORMAT_I8) {
       Log.e(TAG, "Invalid input image!");
       return false;
@@ -51,65 +64,14 @@ public class EdgeDetector {
       outputImage.width = inputImage.width;
       outputImage.height = inputImage.height;
       outputImage.format = inputImage.format;
-      outputImage.buffer = ByteBuffer.allocate(inputImage.width * inputImage.height);
+      // Direct, like the buffers of CameraImageBufferPool, so it can be uploaded without a copy.
+      outputImage.buffer =
+          ByteBuffer.allocateDirect(inputImage.width * inputImage.height)
+              .order(ByteOrder.nativeOrder());
     }
 
-    sobel(outputImage.buffer, inputImage.buffer, inputImage.width, inputImage.height);
+    filter.apply(outputImage.buffer, inputImage.buffer, inputImage.width, inputImage.height);
 
     return true;
   }
-
-  private static void sobel(
-      ByteBuffer outputBuffer, ByteBuffer inputBuffer, int width, int height) {
-    // Adjust buffer size if necessary.
-    final int bufferSize = width * height;
-    if (s_ImageBuffer.length < bufferSize || bufferSize < s_ImageBufferSize) {
-      s_ImageBuffer = new byte[bufferSize];
-      s_ImageBufferSize = bufferSize;
-    }
-
-    inputBuffer.position(0);
-    inputBuffer.get(s_ImageBuffer);
-
-    outputBuffer.position(0);
-    byte[] outputPixel = outputBuffer.array();
-
-    // Detect edges.
-    int threshold = 128 * 128;
-
-    for (int j = 1; j < height - 1; j++) {
-      for (int i = 1; i < width - 1; i++) {
-        // Offset of the pixel at [i, j] of the input image.
-        int offset = (j * width) + i;
-
-        // Neighbour pixels around the pixel at [i, j].
-        int a00 = s_ImageBuffer[offset - width - 1];
-        int a01 = s_ImageBuffer[offset - width];
-        int a02 = s_ImageBuffer[offset - width + 1];
-        int a10 = s_ImageBuffer[offset - 1];
-        int a12 = s_ImageBuffer[offset + 1];
-        int a20 = s_ImageBuffer[offset + width - 1];
-        int a21 = s_ImageBuffer[offset + width];
-        int a22 = s_ImageBuffer[offset + width + 1];
-
-        // Sobel X filter:
-        //   -1, 0, 1,
-        //   -2, 0, 2,
-        //   -1, 0, 1
-        int xSum = -a00 - (2 * a10) - a20 + a02 + (2 * a12) + a22;
-
-        // Sobel Y filter:
-        //    1, 2, 1,
-        //    0, 0, 0,
-        //   -1, -2, -1
-        int ySum = a00 + (2 * a01) + a02 - a20 - (2 * a21) - a22;
-
-        if ((xSum * xSum) + (ySum * ySum) > threshold) {
-          outputPixel[(j * width) + i] = (byte) 0xFF;
-        } else {
-          outputPixel[(j * width) + i] = (byte) 0x1F;
-        }
-      }
-    }
-  }
 }
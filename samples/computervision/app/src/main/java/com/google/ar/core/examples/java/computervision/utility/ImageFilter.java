@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.examples.java.computervision.utility;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies an {@link ImageKernel} to 8-bit grayscale images, splitting the image into stripes of
+ * rows which are filtered in parallel on a {@link ForkJoinPool}.
+ *
+ * <p>The input is read directly from its buffer, e.g. the mapped pixel buffer returned by {@link
+ * TextureReader#acquireFrame}: every stripe slides a window of three rows over its part of the
+ * image, so each input row is read once instead of copying the whole image first. Heap output
+ * buffers are written in place.
+ *
+ * <p>A filter can be used from several threads at the same time.
+ */
+public class ImageFilter {
+  // Below this, the overhead of forking outweighs the parallel speed up.
+  private static final int MIN_STRIPE_ROWS = 32;
+  private static final int STRIPES_PER_THREAD = 4;
+
+  private final ImageKernel kernel;
+  private final ForkJoinPool pool;
+  private final ThreadLocal<RowWindow> windows =
+      new ThreadLocal<RowWindow>() {
+        @Override
+        protected RowWindow initialValue() {
+          return new RowWindow();
+        }
+      };
+
+  /** Creates a filter running on the common fork/join pool. */
+  public ImageFilter(ImageKernel kernel) {
+    this(kernel, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * @param kernel the kernel to apply.
+   * @param pool the pool to filter the stripes on, or null to filter on the calling thread only.
+   */
+  public ImageFilter(ImageKernel kernel, ForkJoinPool pool) {
+    if (kernel == null) {
+      throw new IllegalArgumentException("Kernel cannot be null.");
+    }
+    this.kernel = kernel;
+    this.pool = pool;
+  }
+
+  public ImageKernel getKernel() {
+    return kernel;
+  }
+
+  /**
+   * Filters an image, blocking until all stripes are done.
+   *
+   * @param outputBuffer Output image of size width * height, written in place if backed by an
+   *     array.
+   * @param inputBuffer Input image of size width * height. Its position is not changed.
+   */
+  public void apply(ByteBuffer outputBuffer, ByteBuffer inputBuffer, int width, int height) {
+    final int size = width * height;
+    if (inputBuffer.capacity() < size || outputBuffer.capacity() < size) {
+      throw new IllegalArgumentException(
+          "Buffers too small for an image of " + width + "x" + height + ".");
+    }
+
+    final int threads = pool == null ? 1 : pool.getParallelism();
+    final int stripeRows =
+        Math.max(MIN_STRIPE_ROWS, (height + threads * STRIPES_PER_THREAD - 1)
+            / (threads * STRIPES_PER_THREAD));
+    if (threads == 1 || height <= stripeRows) {
+      filterRows(outputBuffer, inputBuffer, width, height, 0, height);
+    } else {
+      pool.invoke(new StripeTask(outputBuffer, inputBuffer, width, height, 0, height, stripeRows));
+    }
+  }
+
+  private void filterRows(
+      ByteBuffer outputBuffer, ByteBuffer inputBuffer, int width, int height, int start, int end) {
+    final RowWindow window = windows.get();
+    window.ensureCapacity(width);
+
+    // Stripes run concurrently, so each of them needs its own buffer positions.
+    final ByteBuffer input = window.view(0, inputBuffer);
+    final ByteBuffer output = outputBuffer.hasArray() ? outputBuffer : window.view(1, outputBuffer);
+    final byte[] outputRows = output.hasArray() ? output.array() : window.output;
+
+    final int radius = kernel.getRadius();
+    final int first = Math.max(start, radius);
+    final int last = Math.min(end, height - radius);
+
+    for (int y = start; y < first; y++) {
+      clearRow(output, outputRows, y, width);
+    }
+
+    byte[] above = window.rows[0];
+    byte[] row = window.rows[1];
+    byte[] below = window.rows[2];
+    if (radius > 0 && first < last) {
+      readRow(input, above, first - 1, width);
+      readRow(input, row, first, width);
+    }
+
+    for (int y = first; y < last; y++) {
+      final int outputOffset = output.hasArray() ? output.arrayOffset() + y * width : 0;
+      if (radius == 0) {
+        readRow(input, row, y, width);
+        kernel.filterRow(row, row, row, outputRows, outputOffset, width);
+      } else {
+        readRow(input, below, y + 1, width);
+        kernel.filterRow(above, row, below, outputRows, outputOffset, width);
+
+        // Slide the window down by one row.
+        final byte[] oldest = above;
+        above = row;
+        row = below;
+        below = oldest;
+      }
+
+      if (!output.hasArray()) {
+        output.position(y * width);
+        output.put(outputRows, 0, width);
+      }
+    }
+
+    for (int y = Math.max(start, last); y < end; y++) {
+      clearRow(output, outputRows, y, width);
+    }
+  }
+
+  private static void readRow(ByteBuffer input, byte[] row, int y, int width) {
+    input.position(y * width);
+    input.get(row, 0, width);
+  }
+
+  private static void clearRow(ByteBuffer output, byte[] outputRows, int y, int width) {
+    if (output.hasArray()) {
+      final int offset = output.arrayOffset() + y * width;
+      Arrays.fill(outputRows, offset, offset + width, (byte) 0);
+    } else {
+      Arrays.fill(outputRows, 0, width, (byte) 0);
+      output.position(y * width);
+      output.put(outputRows, 0, width);
+    }
+  }
+
+  /** Rows read and written by one thread, reused across images. */
+  private static class RowWindow {
+    final byte[][] rows = new byte[3][0];
+    byte[] output = new byte[0];
+
+    // Views of the last input and output buffers, reused while the same buffers are filtered.
+    private final ByteBuffer[] sources = new ByteBuffer[2];
+    private final ByteBuffer[] views = new ByteBuffer[2];
+
+    ByteBuffer view(int index, ByteBuffer source) {
+      if (sources[index] != source) {
+        sources[index] = source;
+        views[index] = source.duplicate();
+      }
+      return views[index];
+    }
+
+    void ensureCapacity(int width) {
+      if (output.length < width) {
+        for (int i = 0; i < rows.length; i++) {
+          rows[i] = new byte[width];
+        }
+        output = new byte[width];
+      }
+    }
+  }
+
+  /** Splits the rows in halves until a stripe is small enough to be filtered directly. */
+  private class StripeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ByteBuffer output;
+    private final ByteBuffer input;
+    private final int width;
+    private final int height;
+    private final int start;
+    private final int end;
+    private final int stripeRows;
+
+    StripeTask(
+        ByteBuffer output,
+        ByteBuffer input,
+        int width,
+        int height,
+        int start,
+        int end,
+        int stripeRows) {
+      this.output = output;
+      this.input = input;
+      this.width = width;
+      this.height = height;
+      this.start = start;
+      this.end = end;
+      this.stripeRows = stripeRows;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= stripeRows) {
+        filterRows(output, input, width, height, start, end);
+        return;
+      }
+
+      final int middle = start + (end - start) / 2;
+      invokeAll(
+          new StripeTask(output, input, width, height, start, middle, stripeRows),
+          new StripeTask(output, input, width, height, middle, end, stripeRows));
+    }
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.examples.java.computervision.utility;
+
+/**
+ * A filter over 8-bit grayscale images computing each output row from the input rows around it.
+ * Kernels are stateless, so one instance can filter several row stripes in parallel, see {@link
+ * ImageFilter}.
+ *
+ * <p>Rows are passed as plain arrays and columns are addressed by index only, so the inner loops
+ * can be compiled to vector instructions where the runtime supports it.
+ */
+public abstract class ImageKernel {
+  /**
+   * @return the number of rows above and below an output row read by {@link #filterRow}, 0 or 1.
+   *     The output rows within this distance of the image border are cleared to 0.
+   */
+  public abstract int getRadius();
+
+  /**
+   * Filters one row of the image.
+   *
+   * @param above the input row above, same as {@code row} for kernels with a radius of 0.
+   * @param row the input row at the position of the output row.
+   * @param below the input row below, same as {@code row} for kernels with a radius of 0.
+   * @param output the output image row, starting at {@code outputOffset}.
+   * @param outputOffset the index of the first pixel of the row in {@code output}.
+   * @param width the number of pixels per row.
+   */
+  public abstract void filterRow(
+      byte[] above, byte[] row, byte[] below, byte[] output, int outputOffset, int width);
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.examples.java.computervision.utility;
+
+/**
+ * Scharr edge filter. Like {@link Sobel}, but with weights giving a more rotation invariant
+ * gradient, at the same cost.
+ */
+public class Scharr extends ImageKernel {
+  /** The Scharr weights are four times the Sobel weights, this matches {@link Sobel}'s default. */
+  public static final int DEFAULT_THRESHOLD = 4 * Sobel.DEFAULT_THRESHOLD;
+
+  private final int thresholdSquared;
+
+  public Scharr() {
+    this(DEFAULT_THRESHOLD);
+  }
+
+  /** @param threshold the gradient magnitude above which a pixel is marked as edge. */
+  public Scharr(int threshold) {
+    thresholdSquared = threshold * threshold;
+  }
+
+  @Override
+  public int getRadius() {
+    return 1;
+  }
+
+  @Override
+  public void filterRow(
+      byte[] above, byte[] row, byte[] below, byte[] output, int outputOffset, int width) {
+    output[outputOffset] = 0;
+    output[outputOffset + width - 1] = 0;
+
+    for (int i = 1; i < width - 1; i++) {
+      final int a00 = above[i - 1] & 0xFF;
+      final int a01 = above[i] & 0xFF;
+      final int a02 = above[i + 1] & 0xFF;
+      final int a10 = row[i - 1] & 0xFF;
+      final int a12 = row[i + 1] & 0xFF;
+      final int a20 = below[i - 1] & 0xFF;
+      final int a21 = below[i] & 0xFF;
+      final int a22 = below[i + 1] & 0xFF;
+
+      // Scharr X filter:
+      //    -3, 0,  3,
+      //   -10, 0, 10,
+      //    -3, 0,  3
+      final int xSum = 3 * (a02 + a22 - a00 - a20) + 10 * (a12 - a10);
+
+      // Scharr Y filter:
+      //    3,  10,  3,
+      //    0,   0,  0,
+      //   -3, -10, -3
+      final int ySum = 3 * (a00 + a02 - a20 - a22) + 10 * (a01 - a21);
+
+      output[outputOffset + i] =
+          (xSum * xSum) + (ySum * ySum) > thresholdSquared ? Sobel.EDGE : Sobel.NO_EDGE;
+    }
+  }
+}
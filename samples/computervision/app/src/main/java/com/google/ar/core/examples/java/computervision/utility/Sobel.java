@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.examples.java.computervision.utility;
+
+/**
+ * Sobel edge filter, marking pixels whose gradient magnitude exceeds a threshold with 0xFF and
+ * all other pixels with 0x1F. Does not depend on Android, so it can be benchmarked on a desktop
+ * JVM.
+ */
+public class Sobel extends ImageKernel {
+  /** The gradient magnitude threshold used by {@link EdgeDetector}. */
+  public static final int DEFAULT_THRESHOLD = 128;
+
+  static final byte EDGE = (byte) 0xFF;
+  static final byte NO_EDGE = (byte) 0x1F;
+
+  private final int thresholdSquared;
+
+  public Sobel() {
+    this(DEFAULT_THRESHOLD);
+  }
+
+  /** @param threshold the gradient magnitude above which a pixel is marked as edge. */
+  public Sobel(int threshold) {
+    thresholdSquared = threshold * threshold;
+  }
+
+  @Override
+  public int getRadius() {
+    return 1;
+  }
+
+  @Override
+  public void filterRow(
+      byte[] above, byte[] row, byte[] below, byte[] output, int outputOffset, int width) {
+    output[outputOffset] = 0;
+    output[outputOffset + width - 1] = 0;
+
+    for (int i = 1; i < width - 1; i++) {
+      // Neighbour pixels around the pixel at i.
+      final int a00 = above[i - 1] & 0xFF;
+      final int a01 = above[i] & 0xFF;
+      final int a02 = above[i + 1] & 0xFF;
+      final int a10 = row[i - 1] & 0xFF;
+      final int a12 = row[i + 1] & 0xFF;
+      final int a20 = below[i - 1] & 0xFF;
+      final int a21 = below[i] & 0xFF;
+      final int a22 = below[i + 1] & 0xFF;
+
+      // Sobel X filter:
+      //   -1, 0, 1,
+      //   -2, 0, 2,
+      //   -1, 0, 1
+      final int xSum = -a00 - (2 * a10) - a20 + a02 + (2 * a12) + a22;
+
+      // Sobel Y filter:
+      //    1, 2, 1,
+      //    0, 0, 0,
+      //   -1, -2, -1
+      final int ySum = a00 + (2 * a01) + a02 - a20 - (2 * a21) - a22;
+
+      output[outputOffset + i] =
+          (xSum * xSum) + (ySum * ySum) > thresholdSquared ? EDGE : NO_EDGE;
+    }
+  }
+}
@@ -24,6 +24,8 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * Helper class for ARCore apps to read camera image from an OpenGL OES texture.
@@ -55,21 +57,50 @@ import java.nio.IntBuffer;
  *
  * <p>releaseFrame(bufferIndex);
  *
- * <p>Note: To use any of the above two methods, you need to call create() routine to initialize the
+ * <p>(C) Listener method: this method never blocks the OpenGL thread. You set a {@link
+ * FrameListener} and call submitFrame() and update() once per rendered frame. Every submitted read
+ * is guarded by a fence, update() checks the fences without waiting and hands the newest completed
+ * frame to the listener on its executor. While the listener is busy, older completed frames are
+ * dropped in favor of newer ones, so a slow consumer never stalls rendering. The listener has to
+ * pass each frame back through recycleFrame(), from any thread.
+ *
+ * <p>The image is scaled to the requested output size on the GPU, averaging the texels covered by
+ * every output pixel, so reading a half or quarter sized image is an actual downsample instead of
+ * skipping texels. Grayscale images are packed four pixels per RGBA texel, so the read uses the
+ * RGBA format every GPU supports natively. setRegionOfInterest() limits the read to part of the
+ * texture.
+ *
+ * <p>The number of frames in flight is set through the constructor. Use at least three buffers for
+ * the listener method: one held by the listener, one completed and one being read by the GPU.
+ *
+ * <p>Note: To use any of the above methods, you need to call create() routine to initialize the
  * reader before calling any of the reading routine. You will also need to call destroy() method to
  * release the internal resource when you are done with the reader.
  */
 public class TextureReader {
   private static final String TAG = TextureReader.class.getSimpleName();
 
-  // By default, we create only two internal buffers. So you can only hold more than one buffer
-  // index in your app without releasing it. If you need to hold more than one buffers, you can
-  // increase the bufferCount member.
-  private final int bufferCount = 2;
+  /** The number of internal buffers created by the default constructor. */
+  public static final int DEFAULT_BUFFER_COUNT = 2;
+
+  // States of the internal buffers. Only RECYCLED is set from other threads than the OpenGL thread.
+  private static final int BUFFER_FREE = 0;
+  private static final int BUFFER_PENDING = 1;
+  private static final int BUFFER_READY = 2;
+  private static final int BUFFER_ACQUIRED = 3;
+  private static final int BUFFER_DELIVERED = 4;
+  private static final int BUFFER_RECYCLED = 5;
+
+  private final int bufferCount;
   private int[] frameBuffer;
   private int[] texture;
   private int[] pbo;
-  private Boolean[] bufferUsed;
+  private final AtomicIntegerArray bufferState;
+  private final long[] fence;
+  private final long[] submitTime;
+  private final long[] sequence;
+  private final Delivery[] deliveries;
+  private long nextSequence = 0;
   private int frontIndex = -1;
   private int backIndex = -1;
 
@@ -79,12 +110,72 @@ public class TextureReader {
   private int imageHeight = 0;
   private int pixelBufferSize = 0;
   private Boolean keepAspectRatio = false;
+  private float roiMinU = 0;
+  private float roiMinV = 0;
+  private float roiMaxU = 1;
+  private float roiMaxV = 1;
+  private final float[] texCoords = new float[QUAD_TEXCOORDS.length];
+  private final IntBuffer viewport = IntBuffer.allocate(4);
+
+  private FrameListener frameListener;
+  private Executor frameListenerExecutor;
+
+  // Statistics, written on the OpenGL thread only.
+  private volatile long submittedFrames = 0;
+  private volatile long deliveredFrames = 0;
+  private volatile long droppedFrames = 0;
+  private volatile long stalls = 0;
+  private volatile long completedReads = 0;
+  private volatile long totalReadbackLatency = 0;
+  private volatile long maxReadbackLatency = 0;
+
+  /** Receives frames read back by the listener method. */
+  public interface FrameListener {
+    /**
+     * Called on the listener's executor with a completed frame. The image maps the internal
+     * buffer and stays valid until the frame is passed to {@link #recycleFrame(int)}, which has
+     * to happen exactly once for every call.
+     *
+     * @param bufferIndex the index to pass to recycleFrame().
+     * @param image the pixels of the frame.
+     */
+    void onFrameAvailable(int bufferIndex, CameraImageBuffer image);
+  }
+
+  /** Creates a reader with {@link #DEFAULT_BUFFER_COUNT} internal buffers. */
+  public TextureReader() {
+    this(DEFAULT_BUFFER_COUNT);
+  }
+
+  /**
+   * Creates a reader with the given number of internal buffers, i.e. the number of frames which
+   * can be read or held by the application at the same time.
+   *
+   * @param bufferCount the number of internal buffers, at least 2.
+   */
+  public TextureReader(int bufferCount) {
+    if (bufferCount < 2) {
+      throw new RuntimeException("At least two buffers are needed.");
+    }
+
+    this.bufferCount = bufferCount;
+    bufferState = new AtomicIntegerArray(bufferCount);
+    fence = new long[bufferCount];
+    submitTime = new long[bufferCount];
+    sequence = new long[bufferCount];
+    deliveries = new Delivery[bufferCount];
+    for (int i = 0; i < bufferCount; i++) {
+      deliveries[i] = new Delivery(i);
+    }
+  }
 
   private FloatBuffer quadVertices;
   private FloatBuffer quadTexCoord;
   private int quadProgram;
   private int quadPositionAttrib;
   private int quadTexCoordAttrib;
+  private int quadPixelStepUniform;
+  private int quadTapOffsetUniform;
   private static final int COORDS_PER_VERTEX = 3;
   private static final int TEXCOORDS_PER_VERTEX = 2;
   private static final int FLOAT_SIZE = 4;
@@ -111,25 +202,47 @@ public class TextureReader {
           + "   v_TexCoord = a_TexCoord;\n"
           + "}";
 
+  // Both fragment shaders average four bilinear taps around the center of every output pixel,
+  // u_TapOffset apart, covering up to 4x4 texels when downsampling. Texture coordinates need high
+  // precision, as a texel of the camera texture is less than 1/1000 wide.
   private static final String QUAD_RENDERING_FRAGMENT_SHADER_RGBA =
       "// Fragment shader that renders to a RGBA texture.\n"
           + "#extension GL_OES_EGL_image_external : require\n"
-          + "precision mediump float;\n"
+          + "precision highp float;\n"
           + "varying vec2 v_TexCoord;\n"
           + "uniform samplerExternalOES sTexture;\n"
+          + "uniform vec2 u_TapOffset;\n"
           + "void main() {\n"
-          + "    gl_FragColor = texture2D(sTexture, v_TexCoord);\n"
+          + "    gl_FragColor = 0.25 * (\n"
+          + "        texture2D(sTexture, v_TexCoord - u_TapOffset)\n"
+          + "        + texture2D(sTexture, v_TexCoord + vec2(u_TapOffset.x, -u_TapOffset.y))\n"
+          + "        + texture2D(sTexture, v_TexCoord + vec2(-u_TapOffset.x, u_TapOffset.y))\n"
+          + "        + texture2D(sTexture, v_TexCoord + u_TapOffset));\n"
           + "}";
 
+  // Every texel of the target holds four horizontally adjacent grayscale pixels, u_PixelStep apart.
   private static final String QUAD_RENDERING_FRAGMENT_SHADER_I8 =
-      "// Fragment shader that renders to a grayscale texture.\n"
+      "// Fragment shader that renders to a grayscale texture, packed four pixels per texel.\n"
           + "#extension GL_OES_EGL_image_external : require\n"
-          + "precision mediump float;\n"
+          + "precision highp float;\n"
           + "varying vec2 v_TexCoord;\n"
           + "uniform samplerExternalOES sTexture;\n"
+          + "uniform vec2 u_TapOffset;\n"
+          + "uniform vec2 u_PixelStep;\n"
+          + "float luminance(vec2 uv) {\n"
+          + "    vec4 color = 0.25 * (\n"
+          + "        texture2D(sTexture, uv - u_TapOffset)\n"
+          + "        + texture2D(sTexture, uv + vec2(u_TapOffset.x, -u_TapOffset.y))\n"
+          + "        + texture2D(sTexture, uv + vec2(-u_TapOffset.x, u_TapOffset.y))\n"
+          + "        + texture2D(sTexture, uv + u_TapOffset));\n"
+          + "    return dot(color.rgb, vec3(0.299, 0.587, 0.114));\n"
+          + "}\n"
           + "void main() {\n"
-          + "    vec4 color = texture2D(sTexture, v_TexCoord);\n"
-          + "    gl_FragColor.r = color.r * 0.299 + color.g * 0.587 + color.b * 0.114;\n"
+          + "    gl_FragColor = vec4(\n"
+          + "        luminance(v_TexCoord - vec2(1.5 * u_PixelStep.x, 0.0)),\n"
+          + "        luminance(v_TexCoord - vec2(0.5 * u_PixelStep.x, 0.0)),\n"
+          + "        luminance(v_TexCoord + vec2(0.5 * u_PixelStep.x, 0.0)),\n"
+          + "        luminance(v_TexCoord + vec2(1.5 * u_PixelStep.x, 0.0)));\n"
           + "}";
 
   /**
@@ -137,7 +250,8 @@ public class TextureReader {
    *
    * @param format the format of the output pixel buffer. It can be one of the two values:
    *     CameraImageBuffer.IMAGE_FORMAT_RGBA or CameraImageBuffer.IMAGE_FORMAT_I8.
-   * @param width the width of the output image.
+   * @param width the width of the output image, a multiple of 4 for IMAGE_FORMAT_I8. Use a half or
+   *     a quarter of the texture width to read a downsampled image.
    * @param height the height of the output image.
    * @param keepAspectRatio whether or not to keep aspect ratio. If true, the output image may be
    *     cropped if the image aspect ratio is different from the texture aspect ratio. If false, the
@@ -148,6 +262,9 @@ public class TextureReader {
         && format != CameraImageBuffer.IMAGE_FORMAT_I8) {
       throw new RuntimeException("Image format not supported.");
     }
+    if (format == CameraImageBuffer.IMAGE_FORMAT_I8 && width % 4 != 0) {
+      throw new RuntimeException("Grayscale image width must be a multiple of 4.");
+    }
 
     this.keepAspectRatio = keepAspectRatio;
     imageFormat = format;
@@ -166,24 +283,24 @@ public class TextureReader {
     pbo = new int[bufferCount];
     frameBuffer = new int[bufferCount];
     texture = new int[bufferCount];
-    bufferUsed = new Boolean[bufferCount];
     GLES30.glGenBuffers(bufferCount, pbo, 0);
     GLES20.glGenFramebuffers(bufferCount, frameBuffer, 0);
     GLES20.glGenTextures(bufferCount, texture, 0);
 
     for (int i = 0; i < bufferCount; i++) {
-      bufferUsed[i] = false;
+      bufferState.set(i, BUFFER_FREE);
+      fence[i] = 0;
       GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBuffer[i]);
 
       GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture[i]);
       GLES30.glTexImage2D(
           GLES30.GL_TEXTURE_2D,
           0,
-          imageFormat == CameraImageBuffer.IMAGE_FORMAT_I8 ? GLES30.GL_R8 : GLES30.GL_RGBA,
-          imageWidth,
+          GLES30.GL_RGBA,
+          getTargetWidth(),
           imageHeight,
           0,
-          imageFormat == CameraImageBuffer.IMAGE_FORMAT_I8 ? GLES30.GL_RED : GLES30.GL_RGBA,
+          GLES30.GL_RGBA,
           GLES30.GL_UNSIGNED_BYTE,
           null);
       GLES20.glTexParameteri(
@@ -249,12 +366,38 @@ public class TextureReader {
 
     quadPositionAttrib = GLES20.glGetAttribLocation(quadProgram, "a_Position");
     quadTexCoordAttrib = GLES20.glGetAttribLocation(quadProgram, "a_TexCoord");
+    quadTapOffsetUniform = GLES20.glGetUniformLocation(quadProgram, "u_TapOffset");
+    quadPixelStepUniform = GLES20.glGetUniformLocation(quadProgram, "u_PixelStep");
     int texLoc = GLES20.glGetUniformLocation(quadProgram, "sTexture");
     GLES20.glUniform1i(texLoc, 0);
   }
 
+  /**
+   * Limits the read to a part of the texture, e.g. to only process the center of the camera image.
+   * The output image keeps its size, so this also increases its resolution. The region is given in
+   * texture coordinates, from 0 to 1.
+   *
+   * @param minU the left border of the region.
+   * @param minV the bottom border of the region.
+   * @param maxU the right border of the region.
+   * @param maxV the top border of the region.
+   */
+  public void setRegionOfInterest(float minU, float minV, float maxU, float maxV) {
+    if (minU < 0 || minV < 0 || maxU > 1 || maxV > 1 || minU >= maxU || minV >= maxV) {
+      throw new RuntimeException("Invalid region of interest.");
+    }
+
+    roiMinU = minU;
+    roiMinV = minV;
+    roiMaxU = maxU;
+    roiMaxV = maxV;
+  }
+
   /** Destroy the texture reader. */
   public void destroy() {
+    for (int i = 0; i < bufferCount; i++) {
+      deleteFence(i);
+    }
     if (frameBuffer != null) {
       GLES20.glDeleteFramebuffers(bufferCount, frameBuffer, 0);
       frameBuffer = null;
@@ -274,35 +417,37 @@ public class TextureReader {
    * immediately. Instead, it returns a frame buffer index, which can be used to acquire the frame
    * buffer later through acquireFrame().
    *
-   * <p>If there is no enough frame buffer available, an exception will be thrown.
+   * <p>If there is no frame buffer available, because all of them are being read or held by the
+   * application, no request is submitted and -1 is returned. This is counted as stall.
    *
    * @param textureId the id of the input OpenGL texture.
    * @param textureWidth width of the texture in pixels.
    * @param textureHeight height of the texture in pixels.
-   * @return the index to the frame buffer this request is associated to. You should use this index
-   *     to acquire the frame using acquireFrame(); and you should release the frame buffer using
-   *     releaseBuffer() routine after using of the frame.
+   * @return the index to the frame buffer this request is associated to, or -1. You should use
+   *     this index to acquire the frame using acquireFrame(); and you should release the frame
+   *     buffer using releaseBuffer() routine after using of the frame. With a FrameListener set,
+   *     the frame is delivered by update() instead.
    */
   public int submitFrame(int textureId, int textureWidth, int textureHeight) {
     // Find next buffer.
     int bufferIndex = -1;
     for (int i = 0; i < bufferCount; i++) {
-      if (!bufferUsed[i]) {
+      if (bufferState.get(i) == BUFFER_FREE) {
         bufferIndex = i;
         break;
       }
     }
     if (bufferIndex == -1) {
-      throw new RuntimeException("No buffer available.");
+      stalls++;
+      return -1;
     }
 
     // Bind both read and write to framebuffer.
     GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBuffer[bufferIndex]);
 
     // Save and setup viewport
-    IntBuffer viewport = IntBuffer.allocate(4);
     GLES20.glGetIntegerv(GLES20.GL_VIEWPORT, viewport);
-    GLES20.glViewport(0, 0, imageWidth, imageHeight);
+    GLES20.glViewport(0, 0, getTargetWidth(), imageHeight);
 
     // Draw texture to framebuffer.
     drawTexture(textureId, textureWidth, textureHeight);
@@ -312,13 +457,7 @@ public class TextureReader {
     GLES30.glReadBuffer(GLES30.GL_COLOR_ATTACHMENT0);
 
     GLES30.glReadPixels(
-        0,
-        0,
-        imageWidth,
-        imageHeight,
-        imageFormat == CameraImageBuffer.IMAGE_FORMAT_I8 ? GLES30.GL_RED : GLES20.GL_RGBA,
-        GLES20.GL_UNSIGNED_BYTE,
-        0);
+        0, 0, getTargetWidth(), imageHeight, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 0);
 
     // Restore viewport.
     GLES20.glViewport(viewport.get(0), viewport.get(1), viewport.get(2), viewport.get(3));
@@ -326,7 +465,13 @@ public class TextureReader {
     GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
     GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
 
-    bufferUsed[bufferIndex] = true;
+    // Signaled once the GPU wrote the pixels to the PBO, so they can be mapped without waiting.
+    fence[bufferIndex] = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    submitTime[bufferIndex] = System.nanoTime();
+    sequence[bufferIndex] = nextSequence++;
+    submittedFrames++;
+
+    bufferState.set(bufferIndex, BUFFER_PENDING);
     return bufferIndex;
   }
 
@@ -334,6 +479,9 @@ public class TextureReader {
    * Acquires the frame requested earlier. This routine returns a CameraImageBuffer object that
    * contains the pixels mapped to the frame buffer requested previously through submitFrame().
    *
+   * <p>If the GPU did not finish reading the frame yet, this call blocks until it did, which is
+   * counted as stall. Use isFrameReady() to avoid that.
+   *
    * <p>If input buffer index is invalid, an exception will be thrown.
    *
    * @param bufferIndex the index to the frame buffer to be acquired. It has to be a frame index
@@ -341,21 +489,40 @@ public class TextureReader {
    * @return a CameraImageBuffer object if succeed. Null otherwise.
    */
   public CameraImageBuffer acquireFrame(int bufferIndex) {
-    if (bufferIndex < 0 || bufferIndex >= bufferCount || !bufferUsed[bufferIndex]) {
+    if (bufferIndex < 0 || bufferIndex >= bufferCount) {
+      throw new RuntimeException("Invalid buffer index.");
+    }
+    final int state = bufferState.get(bufferIndex);
+    if (state != BUFFER_PENDING && state != BUFFER_READY) {
       throw new RuntimeException("Invalid buffer index.");
     }
 
-    // Bind the current PB and acquire the pixel buffer.
-    GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pbo[bufferIndex]);
-    ByteBuffer mapped =
-        (ByteBuffer)
-            GLES30.glMapBufferRange(
-                GLES30.GL_PIXEL_PACK_BUFFER, 0, pixelBufferSize, GLES30.GL_MAP_READ_BIT);
+    final boolean ready = state == BUFFER_READY || pollFence(bufferIndex);
+    final ByteBuffer mapped = mapBuffer(bufferIndex);
+    if (!ready) {
+      // Mapping waited for the GPU to finish the read.
+      stalls++;
+      completeRead(bufferIndex);
+    }
+    bufferState.set(bufferIndex, BUFFER_ACQUIRED);
 
     // Wrap the mapped buffer into CameraImageBuffer object.
-    CameraImageBuffer buffer = new CameraImageBuffer(imageWidth, imageHeight, imageFormat, mapped);
+    return new CameraImageBuffer(imageWidth, imageHeight, imageFormat, mapped);
+  }
 
-    return buffer;
+  /**
+   * Checks without blocking whether the frame requested earlier can be acquired without waiting
+   * for the GPU.
+   *
+   * @param bufferIndex the index returned from submitFrame().
+   * @return true if acquireFrame() will not block.
+   */
+  public boolean isFrameReady(int bufferIndex) {
+    if (bufferIndex < 0 || bufferIndex >= bufferCount) {
+      throw new RuntimeException("Invalid buffer index.");
+    }
+    final int state = bufferState.get(bufferIndex);
+    return state == BUFFER_READY || (state == BUFFER_PENDING && pollFence(bufferIndex));
   }
 
   /**
@@ -366,13 +533,199 @@ public class TextureReader {
    *     returned from submitFrame().
    */
   public void releaseFrame(int bufferIndex) {
-    if (bufferIndex < 0 || bufferIndex >= bufferCount || !bufferUsed[bufferIndex]) {
+    if (bufferIndex < 0
+        || bufferIndex >= bufferCount
+        || bufferState.get(bufferIndex) != BUFFER_ACQUIRED) {
       throw new RuntimeException("Invalid buffer index.");
     }
+    unmapBuffer(bufferIndex);
+    bufferState.set(bufferIndex, BUFFER_FREE);
+  }
+
+  /**
+   * Sets the listener receiving frames read back with the listener method. This function needs to
+   * be called from the OpenGL rendering thread.
+   *
+   * @param listener the listener, or null to stop delivering frames.
+   * @param executor the executor to call the listener on, typically a single background thread.
+   */
+  public void setFrameListener(FrameListener listener, Executor executor) {
+    if (listener != null && executor == null) {
+      throw new RuntimeException("Executor cannot be null.");
+    }
+    frameListener = listener;
+    frameListenerExecutor = executor;
+  }
+
+  /**
+   * Checks the frames submitted earlier without blocking, unmaps the frames recycled by the
+   * listener and delivers the newest completed frame if the listener is idle. This function needs
+   * to be called from the OpenGL rendering thread, once per rendered frame.
+   */
+  public void update() {
+    boolean listenerBusy = false;
+    int newest = -1;
+    for (int i = 0; i < bufferCount; i++) {
+      switch (bufferState.get(i)) {
+        case BUFFER_RECYCLED:
+          unmapBuffer(i);
+          bufferState.set(i, BUFFER_FREE);
+          break;
+        case BUFFER_DELIVERED:
+          listenerBusy = true;
+          break;
+        case BUFFER_PENDING:
+          if (frameListener != null && pollFence(i) && isNewer(i, newest)) {
+            newest = i;
+          }
+          break;
+        case BUFFER_READY:
+          if (frameListener != null && isNewer(i, newest)) {
+            newest = i;
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    if (newest == -1) {
+      return;
+    }
+
+    // Only the newest completed frame is kept, the listener would not get to the older ones.
+    for (int i = 0; i < bufferCount; i++) {
+      if (i != newest && bufferState.get(i) == BUFFER_READY) {
+        bufferState.set(i, BUFFER_FREE);
+        droppedFrames++;
+      }
+    }
+
+    if (!listenerBusy) {
+      final Delivery delivery = deliveries[newest];
+      delivery.listener = frameListener;
+      delivery.image.width = imageWidth;
+      delivery.image.height = imageHeight;
+      delivery.image.format = imageFormat;
+      delivery.image.buffer = mapBuffer(newest);
+      bufferState.set(newest, BUFFER_DELIVERED);
+      deliveredFrames++;
+      frameListenerExecutor.execute(delivery);
+    }
+  }
+
+  /**
+   * Returns a frame delivered to the {@link FrameListener}. Can be called from any thread, the
+   * buffer is unmapped on the next call to update().
+   *
+   * @param bufferIndex the index passed to the listener.
+   */
+  public void recycleFrame(int bufferIndex) {
+    if (bufferIndex < 0
+        || bufferIndex >= bufferCount
+        || !bufferState.compareAndSet(bufferIndex, BUFFER_DELIVERED, BUFFER_RECYCLED)) {
+      throw new RuntimeException("Invalid buffer index.");
+    }
+  }
+
+  /** @return the number of read requests submitted. */
+  public long getSubmittedFrameCount() {
+    return submittedFrames;
+  }
+
+  /** @return the number of frames handed to the listener. */
+  public long getDeliveredFrameCount() {
+    return deliveredFrames;
+  }
+
+  /** @return the number of completed frames skipped because the listener was busy. */
+  public long getDroppedFrameCount() {
+    return droppedFrames;
+  }
+
+  /**
+   * @return the number of times submitFrame() found no free buffer or acquireFrame() had to wait
+   *     for the GPU.
+   */
+  public long getStallCount() {
+    return stalls;
+  }
+
+  /**
+   * @return the average time from submitting a frame until its read was found complete, in
+   *     nanoseconds. Fences are checked once per update(), so this includes up to one frame of
+   *     polling delay.
+   */
+  public long getAverageReadbackLatencyNanos() {
+    final long reads = completedReads;
+    return reads == 0 ? 0 : totalReadbackLatency / reads;
+  }
+
+  /** @return the longest readback latency seen, in nanoseconds. */
+  public long getMaxReadbackLatencyNanos() {
+    return maxReadbackLatency;
+  }
+
+  /** Resets all statistics. This function needs to be called from the OpenGL rendering thread. */
+  public void resetStatistics() {
+    submittedFrames = 0;
+    deliveredFrames = 0;
+    droppedFrames = 0;
+    stalls = 0;
+    completedReads = 0;
+    totalReadbackLatency = 0;
+    maxReadbackLatency = 0;
+  }
+
+  private boolean isNewer(int bufferIndex, int otherIndex) {
+    return otherIndex == -1 || sequence[bufferIndex] > sequence[otherIndex];
+  }
+
+  /**
+   * Checks the fence of a pending buffer without blocking, marking the buffer as ready once the
+   * GPU is done with it.
+   */
+  private boolean pollFence(int bufferIndex) {
+    final int status = GLES30.glClientWaitSync(fence[bufferIndex], 0, 0);
+    if (status != GLES30.GL_ALREADY_SIGNALED && status != GLES30.GL_CONDITION_SATISFIED) {
+      return false;
+    }
+
+    completeRead(bufferIndex);
+    bufferState.set(bufferIndex, BUFFER_READY);
+    return true;
+  }
+
+  private void completeRead(int bufferIndex) {
+    final long latency = System.nanoTime() - submitTime[bufferIndex];
+    completedReads++;
+    totalReadbackLatency += latency;
+    maxReadbackLatency = Math.max(maxReadbackLatency, latency);
+    deleteFence(bufferIndex);
+  }
+
+  private void deleteFence(int bufferIndex) {
+    if (fence[bufferIndex] != 0) {
+      GLES30.glDeleteSync(fence[bufferIndex]);
+      fence[bufferIndex] = 0;
+    }
+  }
+
+  private ByteBuffer mapBuffer(int bufferIndex) {
+    // Bind the current PB and acquire the pixel buffer.
+    GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pbo[bufferIndex]);
+    ByteBuffer mapped =
+        (ByteBuffer)
+            GLES30.glMapBufferRange(
+                GLES30.GL_PIXEL_PACK_BUFFER, 0, pixelBufferSize, GLES30.GL_MAP_READ_BIT);
+    GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+    return mapped;
+  }
+
+  private void unmapBuffer(int bufferIndex) {
     GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pbo[bufferIndex]);
     GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
     GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
-    bufferUsed[bufferIndex] = false;
   }
 
   /**
@@ -406,6 +759,27 @@ public class TextureReader {
     return null;
   }
 
+  /** Calls the listener with one frame on its executor. */
+  private class Delivery implements Runnable {
+    private final int bufferIndex;
+    private final CameraImageBuffer image = new CameraImageBuffer();
+    private FrameListener listener;
+
+    Delivery(int bufferIndex) {
+      this.bufferIndex = bufferIndex;
+    }
+
+    @Override
+    public void run() {
+      listener.onFrameAvailable(bufferIndex, image);
+    }
+  }
+
+  /** @return the width of the render target, which holds four grayscale pixels per texel. */
+  private int getTargetWidth() {
+    return imageFormat == CameraImageBuffer.IMAGE_FORMAT_I8 ? imageWidth / 4 : imageWidth;
+  }
+
   /** Draws texture to full screen. */
   private void drawTexture(int textureId, int textureWidth, int textureHeight) {
     // Disable features that we don't use.
@@ -427,33 +801,47 @@ public class TextureReader {
     GLES20.glVertexAttribPointer(
         quadPositionAttrib, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadVertices);
 
-    // Calculate the texture coordinates.
+    // Calculate the texture coordinates of the region read.
+    float roiWidth = roiMaxU - roiMinU;
+    float roiHeight = roiMaxV - roiMinV;
+    float offsetU = 0;
+    float offsetV = 0;
     if (keepAspectRatio) {
       int renderWidth = 0;
       int renderHeight = 0;
-      float textureAspectRatio = (float) (textureWidth) / textureHeight;
+      float regionWidth = textureWidth * roiWidth;
+      float regionHeight = textureHeight * roiHeight;
+      float textureAspectRatio = regionWidth / regionHeight;
       float imageAspectRatio = (float) (imageWidth) / imageHeight;
       if (textureAspectRatio < imageAspectRatio) {
         renderWidth = imageWidth;
-        renderHeight = textureHeight * imageWidth / textureWidth;
+        renderHeight = (int) (regionHeight * imageWidth / regionWidth);
       } else {
-        renderWidth = textureWidth * imageHeight / textureHeight;
+        renderWidth = (int) (regionWidth * imageHeight / regionHeight);
         renderHeight = imageHeight;
       }
-      float offsetU = (float) (renderWidth - imageWidth) / renderWidth / 2;
-      float offsetV = (float) (renderHeight - imageHeight) / renderHeight / 2;
-
-      float[] texCoords =
-          new float[] {
-            offsetU, offsetV, offsetU, 1 - offsetV, 1 - offsetU, offsetV, 1 - offsetU, 1 - offsetV
-          };
+      offsetU = (float) (renderWidth - imageWidth) / renderWidth / 2;
+      offsetV = (float) (renderHeight - imageHeight) / renderHeight / 2;
+    }
 
-      quadTexCoord.put(texCoords);
-      quadTexCoord.position(0);
-    } else {
-      quadTexCoord.put(QUAD_TEXCOORDS);
-      quadTexCoord.position(0);
+    float minU = roiMinU + offsetU * roiWidth;
+    float maxU = roiMaxU - offsetU * roiWidth;
+    float minV = roiMinV + offsetV * roiHeight;
+    float maxV = roiMaxV - offsetV * roiHeight;
+    for (int i = 0; i < texCoords.length; i += 2) {
+      texCoords[i] = QUAD_TEXCOORDS[i] == 0 ? minU : maxU;
+      texCoords[i + 1] = QUAD_TEXCOORDS[i + 1] == 0 ? minV : maxV;
     }
+    quadTexCoord.put(texCoords);
+    quadTexCoord.position(0);
+
+    // The size of one output pixel in texture coordinates, and the offset of the four taps from
+    // its center: a single bilinear tap covers 2x2 texels, four taps one texel from the center
+    // cover 4x4 texels.
+    float pixelStepU = (maxU - minU) / imageWidth;
+    float pixelStepV = (maxV - minV) / imageHeight;
+    float texelsPerPixelU = pixelStepU * textureWidth;
+    float texelsPerPixelV = pixelStepV * textureHeight;
 
     // Set the texture coordinates.
     GLES20.glVertexAttribPointer(
@@ -464,14 +852,29 @@ public class TextureReader {
     GLES20.glEnableVertexAttribArray(quadTexCoordAttrib);
 
     GLES20.glUseProgram(quadProgram);
+    GLES20.glUniform2f(quadPixelStepUniform, pixelStepU, pixelStepV);
+    GLES20.glUniform2f(
+        quadTapOffsetUniform,
+        Math.max(0, (texelsPerPixelU - 2) / 2) / textureWidth,
+        Math.max(0, (texelsPerPixelV - 2) / 2) / textureHeight);
 
-    // Select input texture.
+    // Select input texture. Linear filtering makes every tap average 2x2 texels.
     GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
     GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+    GLES20.glTexParameteri(
+        GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+    GLES20.glTexParameteri(
+        GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
 
     // Draw a quad with texture.
     GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
 
+    // The background renderer draws the camera texture unfiltered.
+    GLES20.glTexParameteri(
+        GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+    GLES20.glTexParameteri(
+        GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+
     // Disable vertex arrays
     GLES20.glDisableVertexAttribArray(quadPositionAttrib);
     GLES20.glDisableVertexAttribArray(quadTexCoordAttrib);
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.ar.core.examples.java.computervision.utility;
+
+/** Binarizes an image, setting pixels at or above a level to 0xFF and all others to 0. */
+public class Threshold extends ImageKernel {
+  private final int level;
+
+  /** @param level the lowest input value mapped to 0xFF, from 0 to 255. */
+  public Threshold(int level) {
+    if (level < 0 || level > 255) {
+      throw new IllegalArgumentException("Invalid threshold level " + level + ".");
+    }
+    this.level = level;
+  }
+
+  @Override
+  public int getRadius() {
+    return 0;
+  }
+
+  @Override
+  public void filterRow(
+      byte[] above, byte[] row, byte[] below, byte[] output, int outputOffset, int width) {
+    for (int i = 0; i < width; i++) {
+      output[outputOffset + i] = (row[i] & 0xFF) >= level ? (byte) 0xFF : 0;
+    }
+  }
+}
@@ -30,12 +30,17 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.contentful.ar.io.AssetsSaver;
+import com.contentful.ar.io.ContentStore;
+import com.contentful.ar.io.ModelIndex;
 import com.contentful.ar.rendering.ObjectRenderer;
 import com.contentful.ar.rendering.ObjectRendererFactory;
 import com.contentful.ar.rendering.Scene;
-import com.contentful.ar.rendering.XmlLayoutRenderer;
+import com.contentful.ar.rendering.gl.GlResourceTracker;
+import com.contentful.ar.rendering.gl.Gles20Backend;
+import com.contentful.ar.rendering.gl.TextureRegistry;
 import com.contentful.ar.vault.VaultManager;
 import com.contentful.ar.vault.models.Model;
+import com.google.ar.core.Anchor;
 import com.google.ar.core.ArCoreApk;
 import com.google.ar.core.Camera;
 import com.google.ar.core.Config;
@@ -47,12 +52,16 @@ import com.google.ar.core.Session;
 import com.google.ar.core.Trackable;
 import com.google.ar.core.TrackingState;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.function.Predicate;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * This is a simple example that shows how to create an augmented reality (AR) application using
@@ -62,6 +71,14 @@ import java.util.function.Predicate;
 public class HelloArActivity extends AppCompatActivity {
   private static final String TAG = HelloArActivity.class.getSimpleName();
   public static final String XML_UI_MODEL_NAME = "XML UI";
+  public static final String EXTRA_BENCHMARK = "benchmark";
+  public static final String EXTRA_PROFILE = "profile";
+  public static final String PROFILE_FILE_NAME = "frame_profile.json";
+  public static final String EXTRA_RECORD = "record";
+  private static final String RECORDING_FILE_EXTENSION = ".rec";
+  private static final long PROFILE_OVERLAY_INTERVAL_MS = 500;
+  // Selects the model placed by the next tap, carrying its file name, "" for the XML UI.
+  private static final int COMMAND_SELECT_OBJECT = Scene.COMMAND_USER;
 
   // Rendering. The Renderers are created here, and initialized when the GL surface is created.
   private GLSurfaceView mSurfaceView;
@@ -72,19 +89,52 @@ public class HelloArActivity extends AppCompatActivity {
   private Snackbar loadingMessageSnackbar = null;
 
   // Tap handling and UI.
-  private ArrayBlockingQueue<MotionEvent> queuedTaps = new ArrayBlockingQueue<>(16);
+  private final TapQueue queuedTaps = new TapQueue(16);
+  private final TapQueue.Tap tap = new TapQueue.Tap();
+  // Only accessed on the GL thread, selections are posted to the scene.
   private String nextObject = "parrot.obj";
 
+  // Renderers are created off the GL thread, as the factory hits the file system. Assets are
+  // imported on the same thread first, so they exist once the first renderer is created.
+  private final ExecutorService placementExecutor = Executors.newSingleThreadExecutor();
+  private final Queue<PendingPlacement> readyPlacements = new ConcurrentLinkedQueue<>();
+
   private ObjectRendererFactory objectFactory;
   private boolean installRequested = false;
 
-  private List<String> models = new ArrayList<>();
+  // Metadata of all imported models, so pickers open without touching any model file.
+  private ModelIndex modelIndex;
+  // Meshes and textures of all imported models, each content stored once.
+  private ContentStore contentStore;
+  // Set on the UI thread once the index and the store are loaded. Downloads are only started
+  // afterwards, as storing a model into an unloaded store drops all models stored before, and
+  // models checked against an unloaded index are downloaded again. The model pickers are enabled
+  // then too, so they never list a partial index.
+  private boolean storesLoaded = false;
+  private boolean bindVaultOnLoad = false;
+
+  private TextView profileOverlay;
+  private final StringBuilder profileSummary = new StringBuilder();
+  private final Runnable profileOverlayUpdater = new Runnable() {
+    @Override
+    public void run() {
+      profileSummary.setLength(0);
+      scene.getProfiler().appendSummary(profileSummary);
+      profileSummary.append('\n');
+      GlResourceTracker.of(Gles20Backend.INSTANCE).appendReport(profileSummary);
+      TextureRegistry.of(Gles20Backend.INSTANCE).appendReport(profileSummary);
+      contentStore.appendReport(profileSummary);
+      profileOverlay.setText(profileSummary.toString());
+      profileOverlay.postDelayed(this, PROFILE_OVERLAY_INTERVAL_MS);
+    }
+  };
 
   private final View.OnTouchListener tapListener = new View.OnTouchListener() {
     @Override
     public boolean onTouch(View v, MotionEvent event) {
+      scene.onInteraction();
       if (event.getAction() == MotionEvent.ACTION_UP) {
-        // Queue tap if there is space. Tap is lost if queue is full.
+        // Queue a copy of the tap if there is space. Tap is lost if queue is full.
         queuedTaps.offer(event);
       }
       return true;
@@ -101,65 +151,56 @@ public class HelloArActivity extends AppCompatActivity {
     public void trackingPlane() {
       hideLoadingMessage();
     }
-  };
 
-  private View.OnClickListener offlineButtonClicked = new View.OnClickListener() {
     @Override
-    public void onClick(View view) {
-      final List<String> assets = new ArrayList<>();
-
-      try {
-        assets.addAll(Arrays.asList(getAssets().list("")));
-      } catch (IOException e) {
-        Log.e(TAG, "Could not list assets.", e);
-        return;
-      }
-      assets.removeIf(new Predicate<String>() {
-        @Override public boolean test(String s) {
-          return !s.contains(".obj");
-        }
-      });
-      assets.add(XML_UI_MODEL_NAME);
+    public void placementVisible(long latencyMillis) {
+      Log.i(TAG, "Tap to visible object took " + latencyMillis + "ms.");
+    }
 
-      final String items[] = new String[assets.size()];
-      for (int i = 0; i < items.length; ++i) {
-        items[i] = assets.get(i);
+    @Override
+    public void onCommand(int command, float value, Object argument) {
+      if (command == COMMAND_SELECT_OBJECT) {
+        nextObject = (String) argument;
       }
+    }
+  };
 
-      new AlertDialog.Builder(HelloArActivity.this)
-          .setTitle("Select build-in models")
-          .setItems(items, new DialogInterface.OnClickListener() {
-            @Override public void onClick(DialogInterface dialog, int which) {
-              String selection = assets.get(which);
-              ((TextView) findViewById(R.id.selected_object)).setText(selection);
-              if (XML_UI_MODEL_NAME.equals(selection)) {
-                selection = "";
-              }
-              nextObject = selection;
-            }
-          }).show();
+  private View.OnClickListener offlineButtonClicked = new View.OnClickListener() {
+    @Override
+    public void onClick(View view) {
+      final List<ModelIndex.Entry> entries = modelIndex.getEntries(ModelIndex.Source.ASSET);
+      entries.add(new ModelIndex.Entry(XML_UI_MODEL_NAME, XML_UI_MODEL_NAME,
+          ModelIndex.Source.ASSET, "", 0, 0, null, null));
+      showModelPicker("Select build-in models", entries);
     }
   };
 
   private View.OnClickListener contentfulButtonClicked = new View.OnClickListener() {
     @Override
     public void onClick(View view) {
-      final String items[] = new String[models.size()];
-      for (int i = 0; i < items.length; ++i) {
-        items[i] = models.get(i) + ".obj";
-      }
-
-      new AlertDialog.Builder(HelloArActivity.this)
-          .setTitle("Select contentful models")
-          .setItems(items, new DialogInterface.OnClickListener() {
-            @Override public void onClick(DialogInterface dialog, int which) {
-              nextObject = models.get(which) + ".obj";
-              ((TextView) findViewById(R.id.selected_object)).setText(nextObject);
-            }
-          }).show();
+      showModelPicker("Select contentful models",
+          modelIndex.getEntries(ModelIndex.Source.CONTENTFUL));
     }
   };
 
+  private void showModelPicker(String title, final List<ModelIndex.Entry> entries) {
+    new AlertDialog.Builder(HelloArActivity.this)
+        .setTitle(title)
+        .setAdapter(new ModelListAdapter(this, entries), new DialogInterface.OnClickListener() {
+          @Override public void onClick(DialogInterface dialog, int which) {
+            final ModelIndex.Entry selection = entries.get(which);
+            ((TextView) findViewById(R.id.selected_object)).setText(selection.getTitle());
+            final String objectName = XML_UI_MODEL_NAME.equals(selection.getFileName())
+                ? "" : selection.getFileName();
+            scene.post(COMMAND_SELECT_OBJECT, 0, objectName);
+            if (selection.getSource() == ModelIndex.Source.CONTENTFUL) {
+              // An update of this model may still be pending behind other downloads.
+              vaultManager.prioritize(selection.getFileName());
+            }
+          }
+        }).show();
+  }
+
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
@@ -168,15 +209,55 @@ public class HelloArActivity extends AppCompatActivity {
 
     setupButtons();
 
-    objectFactory = new ObjectRendererFactory(getExternalFilesDir(null).getAbsolutePath());
+    contentStore = new ContentStore(getExternalFilesDir(null));
+    objectFactory = new ObjectRendererFactory(
+        getExternalFilesDir(null).getAbsolutePath(), contentStore);
     scene = new Scene(this, mSurfaceView, drawCallback);
+    // Benchmark mode, e.g. `adb shell am start -n com.contentful.ar/.HelloArActivity --ez
+    // benchmark true`, logs frame times and battery drain every minute.
+    scene.setBenchmarkEnabled(getIntent().getBooleanExtra(EXTRA_BENCHMARK, false));
+    // Profiling mode shows per frame timings in an overlay and dumps them as json on pause.
+    scene.getProfiler().setEnabled(getIntent().getBooleanExtra(EXTRA_PROFILE, false));
+    profileOverlay = findViewById(R.id.perf_overlay);
 
     // Set up tap listener.
     mSurfaceView.setOnTouchListener(tapListener);
 
-    vaultManager = new VaultManager();
+    modelIndex = new ModelIndex(new File(getExternalFilesDir(null), ModelIndex.FILE_NAME));
+    vaultManager = new VaultManager(contentStore, modelIndex);
 
-    AssetsSaver.copyApkAssetsToSdcard(this);
+    placementExecutor.execute(new Runnable() {
+      @Override public void run() {
+        try {
+          modelIndex.load();
+        } catch (IOException e) {
+          Log.e(TAG, "Could not load model index.", e);
+          return;
+        }
+        try {
+          contentStore.load();
+        } catch (IOException e) {
+          Log.e(TAG, "Could not load content store.", e);
+          return;
+        }
+        runOnUiThread(new Runnable() {
+          @Override public void run() {
+            storesLoaded = true;
+            findViewById(R.id.main_button_contentful).setEnabled(true);
+            if (bindVaultOnLoad) {
+              bindVault();
+            }
+          }
+        });
+        AssetsSaver.copyApkAssetsToSdcard(getApplicationContext(), contentStore, modelIndex);
+        // The built-in models are listed once all of them are imported.
+        runOnUiThread(new Runnable() {
+          @Override public void run() {
+            findViewById(R.id.main_button_offline).setEnabled(true);
+          }
+        });
+      }
+    });
   }
 
   @Override
@@ -208,16 +289,28 @@ public class HelloArActivity extends AppCompatActivity {
 
       session.resume();
       scene.bind(session);
+
+      if (getIntent().getBooleanExtra(EXTRA_RECORD, false)) {
+        // Every resume starts a new recording, to be replayed off-device.
+        scene.startRecording(new File(getExternalFilesDir(null),
+            "session-" + System.currentTimeMillis() + RECORDING_FILE_EXTENSION));
+      }
     } else {
       CameraPermissionHelper.requestCameraPermission(this);
     }
 
+    if (storesLoaded) {
+      bindVault();
+    } else {
+      bindVaultOnLoad = true;
+    }
+  }
+
+  private void bindVault() {
+    bindVaultOnLoad = false;
     vaultManager.bind(this, new VaultManager.Listener() {
       @Override public void onModelReceived(Model model) {
         info(model.title());
-        if (!models.contains(model.title())) {
-          models.add(model.title());
-        }
       }
 
       @Override public void error(String message) {
@@ -230,20 +323,64 @@ public class HelloArActivity extends AppCompatActivity {
     });
   }
 
+  @Override
+  protected void onStart() {
+    super.onStart();
+    if (scene.getProfiler().isEnabled()) {
+      profileOverlay.setVisibility(View.VISIBLE);
+      profileOverlay.post(profileOverlayUpdater);
+    }
+  }
+
+  @Override
+  protected void onStop() {
+    super.onStop();
+    profileOverlay.removeCallbacks(profileOverlayUpdater);
+  }
+
   @Override
   public void onPause() {
     super.onPause();
     // Note that the order matters - GLSurfaceView is paused first so that it does not try
     // to query the session. If Session is paused before GLSurfaceView, GLSurfaceView may
     // still call session.update() and create a SessionPausedException.
+    scene.stopRecording();
+    if (isFinishing()) {
+      // Before unbinding, which pauses the GL thread and makes its context non-current.
+      scene.destroy();
+    }
     scene.unbind();
     if (session != null) {
       session.pause();
     }
 
+    bindVaultOnLoad = false;
     if (vaultManager != null) {
       vaultManager.unbind();
     }
+
+    if (scene.getProfiler().isEnabled()) {
+      dumpProfile();
+    }
+  }
+
+  /**
+   * Writes the frame profile, to be pulled from the device for performance tracking.
+   */
+  private void dumpProfile() {
+    final File file = new File(getExternalFilesDir(null), PROFILE_FILE_NAME);
+    try (Writer writer = new FileWriter(file)) {
+      scene.getProfiler().writeJson(writer);
+      Log.i(TAG, "Frame profile written to '" + file.getAbsolutePath() + "'.");
+    } catch (IOException e) {
+      Log.e(TAG, "Could not write frame profile.", e);
+    }
+  }
+
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+    placementExecutor.shutdownNow();
   }
 
   @Override
@@ -272,14 +409,27 @@ public class HelloArActivity extends AppCompatActivity {
   }
 
   private void handleTap(Frame frame) {
-    // Handle taps. Handling only one tap per frame, as taps are usually low frequency
-    // compared to frame rate.
-    MotionEvent tap = queuedTaps.poll();
+    // Attach renderers the placement executor finished creating.
+    PendingPlacement placement;
+    while ((placement = readyPlacements.poll()) != null) {
+      if (placement.renderers.length == 0) {
+        placement.anchor.detach();
+      } else {
+        scene.addRenderers(
+            placement.trackable,
+            placement.anchor,
+            placement.tapTime,
+            placement.renderers
+        );
+      }
+    }
+
+    // Handle taps. Handling only the latest tap per frame, as taps are usually low frequency
+    // compared to frame rate and bursts in between frames are coalesced.
     Camera camera = frame.getCamera();
-    if (tap != null
-        && tap.getAction() == MotionEvent.ACTION_UP
+    if (queuedTaps.pollLatest(tap) > 0
         && camera.getTrackingState() == TrackingState.TRACKING) {
-      for (HitResult hit : frame.hitTest(tap)) {
+      for (HitResult hit : frame.hitTest(tap.x, tap.y)) {
         // Check if any plane was hit, and if it was hit inside the plane polygon.
         Trackable trackable = hit.getTrackable();
         if ((trackable instanceof Plane && ((Plane) trackable).isPoseInPolygon(hit.getHitPose()))
@@ -287,30 +437,8 @@ public class HelloArActivity extends AppCompatActivity {
             && ((Point) trackable).getOrientationMode()
             == Point.OrientationMode.ESTIMATED_SURFACE_NORMAL)) {
 
-          final ObjectRenderer shadow = objectFactory.create("andy_shadow.obj");
-          if (shadow != null) {
-            shadow.setBlendMode(ObjectRenderer.BlendMode.Shadow);
-            scene.addRenderer(
-                shadow,
-                trackable,
-                hit.createAnchor()
-            );
-          }
-
-          final ObjectRenderer object;
-          if (nextObject.length() != 0) {
-            object = objectFactory.create(nextObject);
-          } else {
-            object = new XmlLayoutRenderer(getApplicationContext(), R.layout.ar_sample_layout);
-          }
-
-          if (object != null) {
-            scene.addRenderer(
-                object,
-                trackable,
-                hit.createAnchor()
-            );
-          }
+          // The anchor has to be created from this frame, the renderers can follow later.
+          createRenderers(trackable, hit.createAnchor(), nextObject, tap.timeMillis);
 
           // Hits are sorted by depth. Consider only closest hit on a plane.
           break;
@@ -319,6 +447,58 @@ public class HelloArActivity extends AppCompatActivity {
     }
   }
 
+  private void createRenderers(
+      final Trackable trackable,
+      final Anchor anchor,
+      final String objectName,
+      final long tapTime) {
+    placementExecutor.execute(new Runnable() {
+      @Override public void run() {
+        final List<ObjectRenderer> renderers = new ArrayList<>(2);
+        final ObjectRenderer shadow = objectFactory.create("andy_shadow.obj");
+        if (shadow != null) {
+          shadow.setBlendMode(ObjectRenderer.BlendMode.Shadow);
+          renderers.add(shadow);
+        }
+
+        if (objectName.length() == 0) {
+          // Views need a Looper, so the layout of the panel is inflated on the UI thread.
+          runOnUiThread(new Runnable() {
+            @Override public void run() {
+              addRenderer(renderers, objectFactory.createPanel(
+                  getApplicationContext(), R.layout.ar_sample_layout));
+              offerPlacement(trackable, anchor, tapTime, renderers);
+            }
+          });
+          return;
+        }
+
+        addRenderer(renderers, objectFactory.create(objectName));
+        offerPlacement(trackable, anchor, tapTime, renderers);
+      }
+    });
+  }
+
+  private static void addRenderer(List<ObjectRenderer> renderers, ObjectRenderer renderer) {
+    if (renderer != null) {
+      renderers.add(renderer);
+    }
+  }
+
+  /**
+   * Hands the renderers over to the GL thread, which attaches them with its next frame.
+   */
+  private void offerPlacement(
+      Trackable trackable, Anchor anchor, long tapTime, List<ObjectRenderer> renderers) {
+    // Object and shadow share one anchor, halving the anchors ARCore needs to track.
+    readyPlacements.offer(new PendingPlacement(
+        trackable,
+        anchor,
+        tapTime,
+        renderers.toArray(new ObjectRenderer[renderers.size()])
+    ));
+  }
+
   private void showLoadingMessage() {
     runOnUiThread(new Runnable() {
       @Override
@@ -345,19 +525,33 @@ public class HelloArActivity extends AppCompatActivity {
   }
 
 
+  private static class PendingPlacement {
+    final Trackable trackable;
+    final Anchor anchor;
+    final long tapTime;
+    final ObjectRenderer[] renderers;
+
+    PendingPlacement(Trackable trackable, Anchor anchor, long tapTime, ObjectRenderer[] renderers) {
+      this.trackable = trackable;
+      this.anchor = anchor;
+      this.tapTime = tapTime;
+      this.renderers = renderers;
+    }
+  }
+
   private void setupButtons() {
     findViewById(R.id.main_button_offline).setOnClickListener(offlineButtonClicked);
     findViewById(R.id.main_button_contentful).setOnClickListener(contentfulButtonClicked);
     findViewById(R.id.main_button_plus).setOnClickListener(new View.OnClickListener() {
       @Override
       public void onClick(View view) {
-        scene.setScaleFactor(scene.getScaleFactor() * 1.5f);
+        scene.scaleBy(1.5f);
       }
     });
     findViewById(R.id.main_button_minus).setOnClickListener(new View.OnClickListener() {
       @Override
       public void onClick(View view) {
-        scene.setScaleFactor(scene.getScaleFactor() / 1.5f);
+        scene.scaleBy(1 / 1.5f);
       }
     });
   }
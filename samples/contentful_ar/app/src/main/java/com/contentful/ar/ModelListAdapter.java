@@ -0,0 +1,73 @@
+package com.contentful.ar;
+
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.contentful.ar.io.ModelIndex;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Lists models of the {@link ModelIndex} with their thumbnails and metadata, e.g. in a picker
+ * dialog. Thumbnails are only converted to bitmaps once their rows are shown.
+ */
+class ModelListAdapter extends ArrayAdapter<ModelIndex.Entry> {
+  private final LayoutInflater inflater;
+  private final Map<String, Bitmap> thumbnails = new HashMap<>();
+
+  ModelListAdapter(Context context, List<ModelIndex.Entry> entries) {
+    super(context, R.layout.model_list_item, entries);
+    inflater = LayoutInflater.from(context);
+  }
+
+  @Override
+  public View getView(int position, View convertView, ViewGroup parent) {
+    final View view = convertView != null
+        ? convertView : inflater.inflate(R.layout.model_list_item, parent, false);
+    final ModelIndex.Entry entry = getItem(position);
+
+    ((TextView) view.findViewById(R.id.model_title)).setText(entry.getTitle());
+    final TextView details = view.findViewById(R.id.model_details);
+    if (entry.getFileSize() > 0) {
+      details.setText(String.format(Locale.US, "%d triangles, %d KB, %.2f x %.2f x %.2f",
+          entry.getTriangleCount(),
+          (entry.getFileSize() + 1023) / 1024,
+          entry.getExtent(0), entry.getExtent(1), entry.getExtent(2)));
+      details.setVisibility(View.VISIBLE);
+    } else {
+      details.setVisibility(View.GONE);
+    }
+    ((ImageView) view.findViewById(R.id.model_thumbnail)).setImageBitmap(getThumbnail(entry));
+    return view;
+  }
+
+  private Bitmap getThumbnail(ModelIndex.Entry entry) {
+    final byte[] luminance = entry.getThumbnail();
+    if (luminance == null) {
+      return null;
+    }
+
+    Bitmap bitmap = thumbnails.get(entry.getFileName());
+    if (bitmap == null) {
+      final int[] colors = new int[luminance.length];
+      for (int i = 0; i < colors.length; ++i) {
+        final int value = luminance[i] & 0xFF;
+        colors[i] = value == 0 ? 0 : 0xFF000000 | value << 16 | value << 8 | value;
+      }
+      bitmap = Bitmap.createBitmap(colors, ModelIndex.THUMBNAIL_SIZE, ModelIndex.THUMBNAIL_SIZE,
+          Bitmap.Config.ARGB_8888);
+      thumbnails.put(entry.getFileName(), bitmap);
+    }
+    return bitmap;
+  }
+}
@@ -0,0 +1,109 @@
+package com.contentful.ar;
+
+
+import android.view.MotionEvent;
+
+/**
+ * Single producer, single consumer queue of taps, handed from the UI thread to the GL thread.
+ * <p>
+ * Only the coordinates and time of each tap are copied into primitive ring buffers, so the
+ * {@link MotionEvent} which gets recycled by the framework is never retained. Bursts of taps are
+ * coalesced twice: taps following the last accepted one within {@link #COALESCE_WINDOW_MS} are
+ * dropped by the producer, and the consumer only ever sees the latest tap queued since its last
+ * poll.
+ */
+public class TapQueue {
+  static final long COALESCE_WINDOW_MS = 150;
+
+  private final float[] xs;
+  private final float[] ys;
+  private final long[] times;
+  private final int mask;
+
+  // Written by the producer only.
+  private volatile long tail = 0;
+  private long lastAcceptedTime = Long.MIN_VALUE;
+  // Written by the consumer only.
+  private volatile long head = 0;
+
+  /**
+   * @param capacity number of taps which can be held, rounded up to the next power of two.
+   */
+  public TapQueue(int capacity) {
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+
+    xs = new float[size];
+    ys = new float[size];
+    times = new long[size];
+    mask = size - 1;
+  }
+
+  /**
+   * Copies the tap out of the given event. Must only be called from the UI thread.
+   *
+   * @return false if the tap was coalesced into a previous one or the queue is full.
+   */
+  public boolean offer(MotionEvent event) {
+    final long time = event.getEventTime();
+    if (time - lastAcceptedTime < COALESCE_WINDOW_MS) {
+      return false;
+    }
+
+    final long currentTail = tail;
+    if (currentTail - head > mask) {
+      // Tap is lost if queue is full.
+      return false;
+    }
+
+    final int index = (int) (currentTail & mask);
+    xs[index] = event.getX();
+    ys[index] = event.getY();
+    times[index] = time;
+    lastAcceptedTime = time;
+
+    // Publish the slot only after it got written.
+    tail = currentTail + 1;
+    return true;
+  }
+
+  /**
+   * Takes all queued taps and keeps only the latest. Must only be called from the GL thread.
+   *
+   * @param out holder receiving the latest tap, reused by the caller to avoid allocations.
+   * @return the number of queued taps coalesced into {@code out}, 0 if there were none.
+   */
+  public int pollLatest(Tap out) {
+    final long currentHead = head;
+    final long currentTail = tail;
+    if (currentHead == currentTail) {
+      return 0;
+    }
+
+    final int index = (int) ((currentTail - 1) & mask);
+    out.x = xs[index];
+    out.y = ys[index];
+    out.timeMillis = times[index];
+
+    head = currentTail;
+    return (int) (currentTail - currentHead);
+  }
+
+  /**
+   * Drops all pending taps. Must only be called from the GL thread.
+   */
+  public void clear() {
+    head = tail;
+  }
+
+  /**
+   * Position and {@link android.os.SystemClock#uptimeMillis()} time of a tap.
+   */
+  public static class Tap {
+    public float x;
+    public float y;
+    public long timeMillis;
+  }
+}
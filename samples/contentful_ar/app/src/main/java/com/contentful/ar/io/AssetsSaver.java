@@ -1,29 +1,51 @@
 package com.contentful.ar.io;
 
 
+import android.app.ActivityManager;
 import android.content.Context;
+import android.content.pm.PackageManager;
 import android.content.res.AssetManager;
 import android.util.Log;
 
+import com.contentful.ar.rendering.GlLimits;
+import com.contentful.ar.rendering.Mesh;
+import com.contentful.ar.rendering.MeshCache;
 import com.contentful.ar.vault.models.Model;
 import com.contentful.vault.Asset;
 
-import org.apache.commons.io.IOUtils;
-
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
 
-import okhttp3.OkHttpClient;
+import okhttp3.Call;
 import okhttp3.Request;
 import okhttp3.Response;
 
 public class AssetsSaver {
   private static final String TAG = AssetsSaver.class.getSimpleName();
+  private static final String TEXTURE_EXTENSION = ".png";
+  private static final String MATERIAL_LIBRARY_EXTENSION = ".mtl";
+  // Decoded by Android, e.g. as textures of the materials of OBJ files.
+  private static final String[] IMAGE_EXTENSIONS = {TEXTURE_EXTENSION, ".jpg", ".jpeg"};
+  private static final String GLB_CONTENT_TYPE = "model/gltf-binary";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  // Devices reporting at least this memory class get the highest texture quality.
+  private static final int HIGH_QUALITY_MEMORY_CLASS_MB = 256;
 
-  public static void copyApkAssetsToSdcard(Context context) {
+  /**
+   * Copies all assets of the apk to the external files directory, adding models not indexed since
+   * the app was last updated to the index. Meshes, material libraries and textures are added to
+   * the content store, which resolves the files OBJ files reference.
+   */
+  public static void copyApkAssetsToSdcard(Context context, ContentStore store, ModelIndex index) {
     final AssetManager assets = context.getAssets();
     final String[] assetArray;
     try {
@@ -39,6 +61,15 @@ public class AssetsSaver {
       return;
     }
 
+    // Assets only change with the apk.
+    String revision;
+    try {
+      revision = String.valueOf(context.getPackageManager()
+          .getPackageInfo(context.getPackageName(), 0).lastUpdateTime);
+    } catch (PackageManager.NameNotFoundException e) {
+      revision = "";
+    }
+
     for (final String file : assetArray) {
       final String localCopyName = outputDir.getAbsolutePath() + "/" + file;
 
@@ -47,9 +78,12 @@ public class AssetsSaver {
         continue;
       }
 
+      final boolean stored = isStored(file);
+      final File copyFile = new File(stored ? localCopyName + ".part" : localCopyName);
+      final MessageDigest digest = ContentStore.newDigest();
       OutputStream outputStream;
       try {
-        outputStream = new FileOutputStream(localCopyName);
+        outputStream = new FileOutputStream(copyFile);
       } catch (FileNotFoundException e) {
         Log.e(TAG, "Could not open copy file: '" + localCopyName + "'.");
         outputStream = null;
@@ -57,15 +91,58 @@ public class AssetsSaver {
 
       if (outputStream != null) {
         try {
-          IOUtils.copy(assets.open(file), outputStream);
+          Streams.copy(assets.open(file),
+              stored ? new DigestOutputStream(outputStream, digest) : outputStream);
         } catch (IOException e) {
           Log.i(TAG, "Could not open asset file: '" + file + "'.");
+          copyFile.delete();
+          continue;
+        }
+
+        File localFile = copyFile;
+        if (stored) {
+          try {
+            localFile = store.add(file, copyFile, digest.digest());
+          } catch (IOException e) {
+            Log.e(TAG, "Could not store asset file: '" + file + "'.", e);
+            copyFile.delete();
+            continue;
+          }
+        }
+
+        if (isModel(file) && !index.isCurrent(file, revision)) {
+          indexModel(index, file, file, ModelIndex.Source.ASSET, revision, localFile);
         }
       }
     }
   }
 
-  public static void downloadContentfulAssetsToSdCard(Context context, Model model) {
+  /**
+   * @return the name of the downloaded mesh of a Contentful model, as listed in the index. Its
+   *     extension selects the loader, GLB for binary glTF assets, OBJ otherwise.
+   */
+  public static String getContentfulFileName(Model model) {
+    final Map<String, Object> file = getMeshAsset(model).file();
+    final boolean glb = GLB_CONTENT_TYPE.equals(file.get("contentType"))
+        || Mesh.isGlb(String.valueOf(file.get("fileName")));
+    return model.title() + (glb ? Mesh.GLB_EXTENSION : Mesh.OBJ_EXTENSION);
+  }
+
+  /**
+   * Downloads the mesh and texture of a model to the external files directory and indexes it,
+   * unless this revision of the model was downloaded before. The compressed mesh is downloaded if
+   * the model has one. The texture is requested in the
+   * variant fitting the device, see {@link TextureRequest}. The mesh is decoded while it is
+   * downloaded and kept in the {@link MeshCache} for the first renderer of the model, with the
+   * textures of its material library if the content store has it. Both are added to the content
+   * store, so assets shared between models are stored once.
+   *
+   * @param calls makes all requests, tagged with the given tag, so they can be cancelled.
+   * @param tag   the tag of all requests of this download.
+   */
+  public static void downloadContentfulAssetsToSdCard(Context context, Call.Factory calls,
+                                                      Object tag, ContentStore store, Model model,
+                                                      ModelIndex index) {
     final File outputDir = context.getExternalFilesDir(null);
     if (outputDir == null) {
       Log.e(TAG, "Could not find default external directory");
@@ -73,40 +150,205 @@ public class AssetsSaver {
     }
 
     final String title = model.title();
+    final String fileName = getContentfulFileName(model);
+    // GLB models may come without texture, embedding theirs.
+    final Asset texture = model.texture();
+    final String textureUrl = texture != null ? "https:" + texture.file().get("url") : null;
+    final int textureWidth = texture != null ? getImageDetail(texture, "width") : 0;
+    final int textureHeight = texture != null ? getImageDetail(texture, "height") : 0;
+    final TextureRequest textureRequest = createTextureRequest(context);
+    final String textureKey = texture != null ? textureRequest.getKey(
+        textureUrl, texture.mimeType(), textureWidth, textureHeight) : null;
+    // Another variant of the texture, e.g. after the quality tier changed, is a new revision.
+    final String revision = model.updatedAt() + "/" + (texture != null ? textureKey : "embedded");
+
+    final String localObjFile = outputDir.getAbsolutePath() + "/" + fileName;
+    // Whatever format the variant has, the decoder detects it from the content.
+    final String localTextureFile = outputDir.getAbsolutePath() + "/" + title + TEXTURE_EXTENSION;
+    if (index.isCurrent(fileName, revision)
+        && store.resolve(new File(localObjFile)).exists()
+        && (texture == null || store.resolve(new File(localTextureFile)).exists())) {
+      return;
+    }
 
-    final String localObjFile = outputDir.getAbsolutePath() + "/" + title + ".obj";
-    final String localTextureFile = outputDir.getAbsolutePath() + "/" + title + ".png";
     try {
-      saveAsset(model.model(), localObjFile);
-      saveAsset(model.texture(), localTextureFile);
+      if (texture != null) {
+        // Every variant is stored under its own name, so going back to one needs no download.
+        final String variantFileName = getTextureVariantFileName(title, textureUrl, textureKey);
+        if (!store.resolve(new File(outputDir, variantFileName)).exists()) {
+          saveAsset(calls, tag,
+              textureRequest.buildUrl(textureUrl, texture.mimeType(), textureWidth, textureHeight),
+              store, outputDir.getAbsolutePath() + "/" + variantFileName);
+        }
+        // Renderers load the texture by the name of the model.
+        store.link(new File(localTextureFile).getName(), variantFileName);
+      }
+      // The mesh comes last, so it is placeable as soon as it is saved.
+      final Mesh mesh = saveModel(calls, tag,
+          "https:" + getMeshAsset(model).file().get("url"), store, localObjFile);
+      // Renderers load the model by the name it is imported as.
+      final File storedObjFile = store.resolve(new File(localObjFile));
+      MeshCache.put(new File(localObjFile).getAbsolutePath(), mesh);
+      try {
+        index.index(fileName, title, ModelIndex.Source.CONTENTFUL, revision, storedObjFile, mesh);
+      } catch (IOException e) {
+        Log.e(TAG, "Could not index model: '" + localObjFile + "'.", e);
+      }
     } catch (FileNotFoundException e) {
       Log.e(TAG, "Could not open copy file: '" + localObjFile + "'.");
     } catch (IllegalStateException e) {
       Log.e(TAG, "Could not download asset: '" + e.getMessage() + "'.");
     } catch (IOException e) {
-      Log.i(TAG, "Could not download asset: '" + model.model().url() + "'.");
+      Log.i(TAG, "Could not download asset: '" + getMeshAsset(model).url() + "'.");
     }
   }
 
-  private static void saveAsset(Asset asset, String localObjFile) throws IOException {
-    final OutputStream modelOutput = new FileOutputStream(localObjFile);
+  /**
+   * @return the compressed mesh of the model if it has one, smaller and faster to decode than the
+   *     OBJ file, otherwise its model file.
+   */
+  private static Asset getMeshAsset(Model model) {
+    return model.compressedModel() != null ? model.compressedModel() : model.model();
+  }
+
+  /**
+   * @return the name a variant of a texture is stored as, telling the variants of the texture apart
+   *     by their key, and the textures a model had over time by their url.
+   */
+  private static String getTextureVariantFileName(String title, String url, String key) {
+    final MessageDigest digest = ContentStore.newDigest();
+    digest.update((url + '\n' + key).getBytes(UTF_8));
+    // The first 64 bits of the digest are plenty for the few variants of a model.
+    return title + "." + ContentStore.toHex(Arrays.copyOf(digest.digest(), 8))
+        + TEXTURE_EXTENSION;
+  }
+
+  private static TextureRequest createTextureRequest(Context context) {
+    final ActivityManager activityManager =
+        (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
 
-    final Response response = fetchAsset("https:" + asset.file().get("url"));
-    IOUtils.copy(response.body().byteStream(), modelOutput);
+    final TextureRequest.Quality quality;
+    if (activityManager == null) {
+      quality = TextureRequest.Quality.MEDIUM;
+    } else if (activityManager.isLowRamDevice()) {
+      quality = TextureRequest.Quality.LOW;
+    } else if (activityManager.getMemoryClass() >= HIGH_QUALITY_MEMORY_CLASS_MB) {
+      quality = TextureRequest.Quality.HIGH;
+    } else {
+      quality = TextureRequest.Quality.MEDIUM;
+    }
+    return new TextureRequest(GlLimits.getMaxTextureSize(), quality);
+  }
+
+  /**
+   * @return a detail of an image asset, like its width, or 0 if it is not known.
+   */
+  private static int getImageDetail(Asset asset, String name) {
+    final Object details = asset.file().get("details");
+    if (!(details instanceof Map)) {
+      return 0;
+    }
+    final Object image = ((Map<?, ?>) details).get("image");
+    if (!(image instanceof Map)) {
+      return 0;
+    }
+    final Object value = ((Map<?, ?>) image).get(name);
+    return value instanceof Number ? ((Number) value).intValue() : 0;
+  }
+
+  private static boolean isModel(String fileName) {
+    return fileName.toLowerCase(Locale.US).endsWith(Mesh.OBJ_EXTENSION) || Mesh.isGlb(fileName);
+  }
+
+  private static boolean isStored(String fileName) {
+    final String lowerCase = fileName.toLowerCase(Locale.US);
+    if (isModel(fileName) || lowerCase.endsWith(MATERIAL_LIBRARY_EXTENSION)) {
+      return true;
+    }
+    for (final String extension : IMAGE_EXTENSIONS) {
+      if (lowerCase.endsWith(extension)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void indexModel(ModelIndex index, String fileName, String title,
+                                 ModelIndex.Source source, String revision, File localFile) {
+    try {
+      index.index(fileName, title, source, revision, localFile);
+    } catch (IOException e) {
+      Log.e(TAG, "Could not index model: '" + localFile + "'.", e);
+    }
+  }
+
+  /**
+   * Downloads next to the local file first, so cancelled or failed downloads never replace it,
+   * and adds it to the content store, under the name of the local file.
+   */
+  private static void saveAsset(Call.Factory calls, Object tag, String url, ContentStore store,
+                                String localFile) throws IOException {
+    final Response response = fetchAsset(calls, tag, url);
+    final File partFile = new File(localFile + ".part");
+    final MessageDigest digest = ContentStore.newDigest();
+    try {
+      Streams.copy(response.body().byteStream(),
+          new DigestOutputStream(new FileOutputStream(partFile), digest));
+    } catch (IOException e) {
+      partFile.delete();
+      throw e;
+    }
+    storeAsset(store, partFile, localFile, digest);
+  }
+
+  /**
+   * Downloads a model file like {@link #saveAsset}, decoding its mesh from the bytes as they
+   * arrive, so the file is never read back.
+   *
+   * @return the mesh of the file.
+   */
+  private static Mesh saveModel(Call.Factory calls, Object tag, String url, ContentStore store,
+                                String localFile) throws IOException {
+    final Response response = fetchAsset(calls, tag, url);
+    final File partFile = new File(localFile + ".part");
+    final MessageDigest digest = ContentStore.newDigest();
+    final Mesh mesh;
+    try (TeeInputStream input = new TeeInputStream(response.body().byteStream(),
+        new DigestOutputStream(new FileOutputStream(partFile), digest))) {
+      mesh = Mesh.load(localFile, input, store);
+      input.drain();
+    } catch (IOException e) {
+      partFile.delete();
+      throw e;
+    }
+    storeAsset(store, partFile, localFile, digest);
+    return mesh;
+  }
+
+  private static void storeAsset(ContentStore store, File partFile, String localFile,
+                                 MessageDigest digest) throws IOException {
+    try {
+      store.add(new File(localFile).getName(), partFile, digest.digest());
+    } catch (IOException e) {
+      partFile.delete();
+      throw e;
+    }
   }
 
-  private static Response fetchAsset(String url) throws IOException {
-    final Response response = new OkHttpClient.Builder()
-        .build()
+  private static Response fetchAsset(Call.Factory calls, Object tag, String url)
+      throws IOException {
+    final Response response = calls
         .newCall(
             new Request.Builder()
                 .url(url)
+                .tag(tag)
                 .build()
         ).execute();
 
     if (response.isSuccessful()) {
       return response;
     } else {
+      response.close();
       throw new IllegalStateException(url);
     }
   }
@@ -0,0 +1,269 @@
+package com.contentful.ar.io;
+
+
+import com.contentful.ar.rendering.Mesh;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Stores imported meshes, material libraries and textures once per content, however many models
+ * use them.
+ * <p>
+ * Files are added with the digest of their bytes, computed while they are written, and moved to
+ * the {@link #DIRECTORY_NAME content directory}, named by that digest, unless a file with the
+ * same content is stored already. The path the file was imported as, relative to the import
+ * directory, becomes an alias, persisted in the content directory, which {@link #resolve(File)}
+ * maps back to the stored file. Files referenced by stored ones, like the material library of an
+ * OBJ file, are resolved relative to the alias of the referencing file, so models in different
+ * directories may reference different files of the same name. Files no longer referenced by any
+ * alias get deleted.
+ * <p>
+ * This class does not depend on Android, so it can be benchmarked on a desktop JVM. All methods
+ * are thread safe, {@link #load()} and {@link #add} are meant to be called off the UI thread.
+ * Files can only be added once the store is loaded.
+ */
+public class ContentStore implements Mesh.FileResolver {
+  public static final String DIRECTORY_NAME = "content";
+
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+  private static final String ALIASES_FILE_NAME = "aliases";
+  private static final int MAGIC = 0x43535441;
+  private static final int VERSION = 1;
+
+  private final File directory;
+  private final File contentDirectory;
+  private final File aliasesFile;
+  // Stored file name per alias, and size per stored file name.
+  private final Map<String, String> aliases = new HashMap<>();
+  private final Map<String, Long> sizes = new HashMap<>();
+  // Adding before loading would persist the new alias only, dropping all stored files.
+  private boolean loaded = false;
+
+  /**
+   * @param directory the import directory, which aliases are relative to.
+   */
+  public ContentStore(File directory) {
+    this.directory = directory;
+    this.contentDirectory = new File(directory, DIRECTORY_NAME);
+    this.aliasesFile = new File(contentDirectory, ALIASES_FILE_NAME);
+  }
+
+  /**
+   * @return a digest to compute the content of a file with, e.g. through a
+   *     {@link java.security.DigestOutputStream} while writing it.
+   */
+  public static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform provides SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Replaces all aliases by the persisted ones, and deletes stored files none of them references,
+   * e.g. after a crash while adding.
+   */
+  public synchronized void load() throws IOException {
+    aliases.clear();
+    sizes.clear();
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(aliasesFile)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Invalid content aliases '" + aliasesFile + "'.");
+      }
+      final int count = in.readInt();
+      for (int i = 0; i < count; ++i) {
+        aliases.put(in.readUTF(), in.readUTF());
+      }
+    } catch (FileNotFoundException e) {
+      // Nothing stored yet.
+    } catch (EOFException e) {
+      throw new IOException("Truncated content aliases '" + aliasesFile + "'.", e);
+    }
+
+    final File[] stored = contentDirectory.listFiles();
+    for (int i = 0; stored != null && i < stored.length; ++i) {
+      final String name = stored[i].getName();
+      if (aliases.containsValue(name)) {
+        sizes.put(name, stored[i].length());
+      } else if (!name.equals(ALIASES_FILE_NAME)) {
+        stored[i].delete();
+      }
+    }
+    // Aliases of stored files deleted by someone else fall back to the imported name.
+    aliases.values().retainAll(sizes.keySet());
+    loaded = true;
+  }
+
+  /**
+   * Stores a file under the given alias, replacing the previous file of the alias. The file is
+   * moved, or deleted if its content is stored already.
+   *
+   * @param alias  the path the file is imported as, relative to the import directory, with '/'
+   *               as separator.
+   * @param file   the file to store, on the same file system as the import directory.
+   * @param digest of all bytes of the file, from a digest created by {@link #newDigest()}.
+   * @return the stored file.
+   * @throws IllegalStateException if the store was not {@link #load() loaded} yet.
+   */
+  public synchronized File add(String alias, File file, byte[] digest) throws IOException {
+    if (!loaded) {
+      throw new IllegalStateException("Content store '" + contentDirectory + "' is not loaded.");
+    }
+    final String name = toHex(digest) + getExtension(alias);
+    final File stored = new File(contentDirectory, name);
+    if (sizes.containsKey(name)) {
+      file.delete();
+    } else {
+      if (!contentDirectory.isDirectory() && !contentDirectory.mkdirs()) {
+        throw new IOException("Could not create '" + contentDirectory + "'.");
+      }
+      final long size = file.length();
+      if (!file.renameTo(stored)) {
+        throw new IOException("Could not store '" + file + "'.");
+      }
+      sizes.put(name, size);
+    }
+    putAlias(alias, name);
+    return stored;
+  }
+
+  /**
+   * Stores the file of another alias under the given alias too, replacing the previous file of the
+   * alias, e.g. to import one of several stored variants of a file by a common name.
+   *
+   * @param alias  the path to import the file as, like for {@link #add}.
+   * @param target the alias of the stored file.
+   * @return the stored file.
+   * @throws FileNotFoundException if nothing is stored for the target alias.
+   * @throws IllegalStateException if the store was not {@link #load() loaded} yet.
+   */
+  public synchronized File link(String alias, String target) throws IOException {
+    if (!loaded) {
+      throw new IllegalStateException("Content store '" + contentDirectory + "' is not loaded.");
+    }
+    final String name = aliases.get(target);
+    if (name == null) {
+      throw new FileNotFoundException("Nothing stored for '" + target + "'.");
+    }
+    putAlias(alias, name);
+    return new File(contentDirectory, name);
+  }
+
+  /**
+   * @param file a file below the import directory, by the path it was imported as, e.g. a model
+   *             file or a file it references relative to its alias.
+   * @return the stored file for the given one, or the given file if it is not stored here.
+   */
+  @Override public File resolve(File file) {
+    final String alias = getAlias(file);
+    if (alias == null) {
+      return file;
+    }
+    final String name;
+    synchronized (this) {
+      name = aliases.get(alias);
+    }
+    return name == null ? file : new File(contentDirectory, name);
+  }
+
+  /**
+   * @return the bytes not stored because their content was stored for another alias already.
+   */
+  public synchronized long getSavedBytes() {
+    long saved = 0;
+    for (final String name : aliases.values()) {
+      saved += sizes.get(name);
+    }
+    for (final long size : sizes.values()) {
+      saved -= size;
+    }
+    return saved;
+  }
+
+  /**
+   * Appends the number of aliases and stored files, and the bytes deduplication saved.
+   */
+  public synchronized void appendReport(StringBuilder out) {
+    long stored = 0;
+    for (final long size : sizes.values()) {
+      stored += size;
+    }
+    out.append(String.format(Locale.US, "content  %4d files %4d stored %8.1f KB, %.1f KB saved\n",
+        aliases.size(), sizes.size(), stored / 1024.0, getSavedBytes() / 1024.0));
+  }
+
+  private void putAlias(String alias, String name) throws IOException {
+    final String replaced = aliases.put(alias, name);
+    write();
+    // A file imported before it got stored here is not needed anymore.
+    new File(directory, alias).delete();
+    if (replaced != null && !aliases.containsValue(replaced)) {
+      sizes.remove(replaced);
+      new File(contentDirectory, replaced).delete();
+    }
+  }
+
+  /**
+   * Rewrites all aliases, replacing the old file only once complete.
+   */
+  private void write() throws IOException {
+    final File written = new File(aliasesFile.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(written)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(aliases.size());
+      for (final Map.Entry<String, String> alias : aliases.entrySet()) {
+        out.writeUTF(alias.getKey());
+        out.writeUTF(alias.getValue());
+      }
+    }
+    if (!written.renameTo(aliasesFile)) {
+      throw new IOException("Could not replace content aliases '" + aliasesFile + "'.");
+    }
+  }
+
+  /**
+   * @return the path of the file relative to the import directory, with '/' as separator, or null
+   *     if the file is not below it.
+   */
+  private String getAlias(File file) {
+    final String path = file.getAbsolutePath();
+    final String prefix = directory.getAbsolutePath() + File.separator;
+    if (!path.startsWith(prefix)) {
+      return null;
+    }
+    return path.substring(prefix.length()).replace(File.separatorChar, '/');
+  }
+
+  private static String getExtension(String fileName) {
+    final int dot = fileName.lastIndexOf('.');
+    return dot < 0 ? "" : fileName.substring(dot).toLowerCase(Locale.US);
+  }
+
+  static String toHex(byte[] bytes) {
+    final StringBuilder hex = new StringBuilder(2 * bytes.length);
+    for (final byte value : bytes) {
+      hex.append(Character.forDigit((value >> 4) & 0xF, 16))
+          .append(Character.forDigit(value & 0xF, 16));
+    }
+    return hex.toString();
+  }
+}
@@ -0,0 +1,338 @@
+package com.contentful.ar.io;
+
+
+import com.contentful.ar.rendering.Mesh;
+import com.contentful.ar.rendering.MeshThumbnail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persisted metadata and thumbnails of all imported models, so model pickers can be filled
+ * without scanning, opening or parsing any model file.
+ * <p>
+ * Entries are created once, when {@link AssetsSaver} imports a model, and appended to a log
+ * file. Loading keeps the last record per file name and compacts the log once most of its
+ * records are outdated, or if it ends with a partially written record.
+ * <p>
+ * This class does not depend on Android, so it can be benchmarked on a desktop JVM. All methods
+ * are thread safe, {@link #load()} and {@link #index} are meant to be called off the UI thread.
+ * Models can only be indexed once the index is loaded.
+ */
+public class ModelIndex {
+  public static final String FILE_NAME = "models.idx";
+  public static final int THUMBNAIL_SIZE = 64;
+
+  private static final int MAGIC = 0x4D494458;
+  private static final int VERSION = 1;
+  // Compacting only pays off once the log holds a few outdated records.
+  private static final int MIN_COMPACT_RECORDS = 16;
+
+  public enum Source {
+    ASSET, CONTENTFUL
+  }
+
+  private final File file;
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+  // Guards the log file, held without holding this, so lookups are not blocked by writes.
+  private final Object fileLock = new Object();
+  // Guarded by fileLock. Entries put before loading would be replaced by the persisted ones, and
+  // models checked against an unloaded index would all be imported again.
+  private boolean loaded = false;
+
+  public ModelIndex(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Replaces all entries by the ones persisted in the log file, if there is one.
+   */
+  public void load() throws IOException {
+    synchronized (fileLock) {
+      final Map<String, Entry> loaded = new LinkedHashMap<>();
+      int records = 0;
+      boolean damaged = false;
+      try (DataInputStream in = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(file)))) {
+        damaged = in.readInt() != MAGIC || in.readInt() != VERSION;
+        while (!damaged) {
+          in.mark(1);
+          if (in.read() == -1) {
+            break;
+          }
+          in.reset();
+
+          final Entry entry;
+          try {
+            entry = Entry.read(in);
+          } catch (IOException e) {
+            // Keep everything before a partially written or corrupt record.
+            damaged = true;
+            break;
+          }
+          // Reinserting moves updated entries to the end, so the newest models are listed last.
+          loaded.remove(entry.fileName);
+          loaded.put(entry.fileName, entry);
+          records++;
+        }
+      } catch (FileNotFoundException e) {
+        // Nothing indexed yet.
+      } catch (EOFException e) {
+        // Shorter than the header.
+        damaged = true;
+      }
+
+      synchronized (this) {
+        entries.clear();
+        entries.putAll(loaded);
+      }
+      this.loaded = true;
+      if (damaged || records >= MIN_COMPACT_RECORDS && records > 2 * loaded.size()) {
+        compact();
+      }
+    }
+  }
+
+  /**
+   * @return the entry of the given model file, or null if it was not indexed.
+   */
+  public synchronized Entry get(String fileName) {
+    return entries.get(fileName);
+  }
+
+  /**
+   * @return whether the model file is indexed with the given revision.
+   */
+  public synchronized boolean isCurrent(String fileName, String revision) {
+    final Entry entry = entries.get(fileName);
+    return entry != null && entry.revision.equals(revision);
+  }
+
+  /**
+   * @return a snapshot of the entries of all models from the given source, in import order.
+   */
+  public synchronized List<Entry> getEntries(Source source) {
+    final List<Entry> result = new ArrayList<>(entries.size());
+    for (final Entry entry : entries.values()) {
+      if (entry.source == source) {
+        result.add(entry);
+      }
+    }
+    return result;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Loads an imported OBJ or GLB file, renders its thumbnail and adds its entry.
+   *
+   * @param fileName the name the model is selected by, relative to the import directory.
+   * @param revision identifies the imported version, so unchanged models are not indexed again.
+   */
+  public Entry index(String fileName, String title, Source source, String revision,
+                     File objFile) throws IOException {
+    return index(fileName, title, source, revision, objFile, Mesh.load(objFile));
+  }
+
+  /**
+   * Adds the entry of an imported model file, which was already loaded, e.g. while downloading
+   * it.
+   *
+   * @param mesh the content of the file.
+   */
+  public Entry index(String fileName, String title, Source source, String revision,
+                     File objFile, Mesh mesh) throws IOException {
+    final float[] bounds = MeshThumbnail.computeBounds(mesh.getVertices());
+    final Entry entry = new Entry(fileName, title, source, revision, objFile.length(),
+        mesh.getIndices().limit() / 3, bounds,
+        MeshThumbnail.render(mesh, bounds, THUMBNAIL_SIZE));
+    put(entry);
+    return entry;
+  }
+
+  /**
+   * Adds or replaces the entry of a model and appends it to the log file.
+   *
+   * @throws IllegalStateException if the index was not {@link #load() loaded} yet.
+   */
+  public void put(Entry entry) throws IOException {
+    synchronized (fileLock) {
+      if (!loaded) {
+        throw new IllegalStateException("Model index '" + file + "' is not loaded.");
+      }
+      final boolean created = !file.exists() || file.length() == 0;
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(file, true)))) {
+        if (created) {
+          writeHeader(out);
+        }
+        entry.write(out);
+      }
+
+      synchronized (this) {
+        entries.remove(entry.fileName);
+        entries.put(entry.fileName, entry);
+      }
+    }
+  }
+
+  /**
+   * Rewrites the log with one record per entry, replacing the old log only once complete.
+   */
+  private void compact() throws IOException {
+    final List<Entry> snapshot;
+    synchronized (this) {
+      snapshot = new ArrayList<>(entries.values());
+    }
+
+    final File compacted = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(compacted)))) {
+      writeHeader(out);
+      for (final Entry entry : snapshot) {
+        entry.write(out);
+      }
+    }
+    if (!compacted.renameTo(file)) {
+      throw new IOException("Could not replace model index '" + file + "'.");
+    }
+  }
+
+  private static void writeHeader(DataOutputStream out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+  }
+
+  /**
+   * Metadata of one imported model.
+   */
+  public static final class Entry {
+    private final String fileName;
+    private final String title;
+    private final Source source;
+    private final String revision;
+    private final long fileSize;
+    private final int triangleCount;
+    private final float[] bounds;
+    private final byte[] thumbnail;
+
+    /**
+     * @param bounds    min x, y, z followed by max x, y, z.
+     * @param thumbnail {@link #THUMBNAIL_SIZE} squared luminance values, 0 for the background, or
+     *                  null if there is none.
+     */
+    public Entry(String fileName, String title, Source source, String revision, long fileSize,
+                 int triangleCount, float[] bounds, byte[] thumbnail) {
+      this.fileName = fileName;
+      this.title = title;
+      this.source = source;
+      this.revision = revision;
+      this.fileSize = fileSize;
+      this.triangleCount = triangleCount;
+      this.bounds = bounds;
+      this.thumbnail = thumbnail;
+    }
+
+    public String getFileName() {
+      return fileName;
+    }
+
+    public String getTitle() {
+      return title;
+    }
+
+    public Source getSource() {
+      return source;
+    }
+
+    public String getRevision() {
+      return revision;
+    }
+
+    public long getFileSize() {
+      return fileSize;
+    }
+
+    public int getTriangleCount() {
+      return triangleCount;
+    }
+
+    /**
+     * @return the size of the model along x, y and z.
+     */
+    public float getExtent(int axis) {
+      return bounds[3 + axis] - bounds[axis];
+    }
+
+    public float[] getBounds() {
+      return bounds.clone();
+    }
+
+    /**
+     * @return the thumbnail as {@link #THUMBNAIL_SIZE} squared luminance values, 0 for the
+     *     background, or null if there is none. Must not be modified.
+     */
+    public byte[] getThumbnail() {
+      return thumbnail;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeUTF(fileName);
+      out.writeUTF(title);
+      out.writeByte(source.ordinal());
+      out.writeUTF(revision);
+      out.writeLong(fileSize);
+      out.writeInt(triangleCount);
+      for (int i = 0; i < 6; ++i) {
+        out.writeFloat(bounds[i]);
+      }
+      if (thumbnail == null) {
+        out.writeInt(0);
+      } else {
+        out.writeInt(thumbnail.length);
+        out.write(thumbnail);
+      }
+    }
+
+    static Entry read(DataInputStream in) throws IOException {
+      final String fileName = in.readUTF();
+      final String title = in.readUTF();
+      final int source = in.readUnsignedByte();
+      if (source >= Source.values().length) {
+        throw new IOException("Unknown source " + source + " of '" + fileName + "'.");
+      }
+      final String revision = in.readUTF();
+      final long fileSize = in.readLong();
+      final int triangleCount = in.readInt();
+      final float[] bounds = new float[6];
+      for (int i = 0; i < 6; ++i) {
+        bounds[i] = in.readFloat();
+      }
+      final int thumbnailLength = in.readInt();
+      if (thumbnailLength < 0 || thumbnailLength > THUMBNAIL_SIZE * THUMBNAIL_SIZE) {
+        throw new IOException("Invalid thumbnail of '" + fileName + "'.");
+      }
+      byte[] thumbnail = null;
+      if (thumbnailLength > 0) {
+        thumbnail = new byte[thumbnailLength];
+        in.readFully(thumbnail);
+      }
+      return new Entry(fileName, title, Source.values()[source], revision, fileSize,
+          triangleCount, bounds, thumbnail);
+    }
+  }
+}
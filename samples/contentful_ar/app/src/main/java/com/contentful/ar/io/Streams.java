@@ -0,0 +1,59 @@
+package com.contentful.ar.io;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Stream helpers without Android dependencies, so file copies can be benchmarked on a desktop
+ * JVM.
+ */
+public final class Streams {
+  static final int BUFFER_SIZE = 64 * 1024;
+
+  private Streams() {
+  }
+
+  /**
+   * Copies all bytes from input to output, closing both streams afterwards, even on failure.
+   *
+   * @return the number of bytes copied.
+   */
+  public static long copy(InputStream input, OutputStream output) throws IOException {
+    try (InputStream in = input; OutputStream out = output) {
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      long count = 0;
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+        count += read;
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Reads all remaining bytes of a stream into a direct buffer, e.g. for passing them to native
+   * code. The stream is not closed.
+   *
+   * @param sizeHint the expected number of bytes, e.g. from {@link InputStream#available()}.
+   * @return a buffer positioned at 0 with its limit at the number of bytes read.
+   */
+  public static ByteBuffer readDirect(InputStream in, int sizeHint) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(sizeHint, BUFFER_SIZE));
+    final byte[] chunk = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = in.read(chunk)) != -1) {
+      if (buffer.remaining() < read) {
+        buffer.flip();
+        buffer = ByteBuffer.allocateDirect(Math.max(2 * buffer.capacity(), buffer.limit() + read))
+            .put(buffer);
+      }
+      buffer.put(chunk, 0, read);
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
@@ -0,0 +1,86 @@
+package com.contentful.ar.io;
+
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies all bytes read from a stream to an output, so a download can be parsed and saved in
+ * one pass.
+ * <p>
+ * This class does not depend on Android.
+ */
+class TeeInputStream extends FilterInputStream {
+  private final OutputStream copy;
+
+  /**
+   * @param input the stream to read from, closed with this stream.
+   * @param copy  receives every byte read, closed with this stream.
+   */
+  TeeInputStream(InputStream input, OutputStream copy) {
+    super(input);
+    this.copy = copy;
+  }
+
+  @Override public int read() throws IOException {
+    final int value = in.read();
+    if (value != -1) {
+      copy.write(value);
+    }
+    return value;
+  }
+
+  @Override public int read(byte[] buffer, int offset, int length) throws IOException {
+    final int read = in.read(buffer, offset, length);
+    if (read > 0) {
+      copy.write(buffer, offset, read);
+    }
+    return read;
+  }
+
+  /**
+   * Reads instead of skipping, so skipped bytes are copied as well.
+   */
+  @Override public long skip(long count) throws IOException {
+    final byte[] buffer = new byte[(int) Math.min(count, Streams.BUFFER_SIZE)];
+    long skipped = 0;
+    while (skipped < count) {
+      final int read = read(buffer, 0, (int) Math.min(count - skipped, buffer.length));
+      if (read == -1) {
+        break;
+      }
+      skipped += read;
+    }
+    return skipped;
+  }
+
+  /**
+   * Reads and copies the rest of the stream, e.g. what a parser left after the data it needed.
+   */
+  void drain() throws IOException {
+    while (skip(Long.MAX_VALUE) > 0) {
+      // Skips until the end of the stream.
+    }
+  }
+
+  @Override public boolean markSupported() {
+    return false;
+  }
+
+  @Override public void mark(int readLimit) {
+  }
+
+  @Override public void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+
+  @Override public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      copy.close();
+    }
+  }
+}
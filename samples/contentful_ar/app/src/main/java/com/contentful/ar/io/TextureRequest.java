@@ -0,0 +1,103 @@
+package com.contentful.ar.io;
+
+
+import java.util.Locale;
+
+/**
+ * Picks the variant of a texture to download through the Contentful Images API, instead of the
+ * original file.
+ * <p>
+ * Textures are limited to what the device can sample and its quality tier. The longer side of
+ * an image of known size is scaled down to a power of two and the shorter side by the same
+ * factor, so the aspect ratio is kept. Images of unknown size are only limited to the largest
+ * power of two that fits. Images without alpha are requested as JPEG, all others as WebP.
+ * <p>
+ * This class does not depend on Android.
+ */
+public class TextureRequest {
+  // The Images API does not scale beyond this size.
+  static final int MAX_IMAGES_API_SIZE = 4000;
+  private static final String IMAGES_API_HOST = "images.ctfassets.net";
+
+  public enum Quality {
+    LOW(1024, 60), MEDIUM(2048, 75), HIGH(4096, 85);
+
+    private final int maxSize;
+    private final int compression;
+
+    Quality(int maxSize, int compression) {
+      this.maxSize = maxSize;
+      this.compression = compression;
+    }
+  }
+
+  private final int maxSize;
+  private final int compression;
+
+  /**
+   * @param maxTextureSize the largest texture the device supports, GL_MAX_TEXTURE_SIZE.
+   */
+  public TextureRequest(int maxTextureSize, Quality quality) {
+    this.maxSize = Math.min(MAX_IMAGES_API_SIZE, Math.min(maxTextureSize, quality.maxSize));
+    this.compression = quality.compression;
+  }
+
+  /**
+   * @param url      of the original image, as given by the asset, with or without scheme.
+   * @param mimeType of the original image.
+   * @param width    of the original image, 0 if unknown.
+   * @param height   of the original image, 0 if unknown.
+   * @return the url of the variant to download, or the given url if it is not served by the
+   *     Images API.
+   */
+  public String buildUrl(String url, String mimeType, int width, int height) {
+    if (!isImagesApiUrl(url)) {
+      return url;
+    }
+    return url + (url.indexOf('?') < 0 ? '?' : '&') + getQuery(mimeType, width, height);
+  }
+
+  /**
+   * @return identifies the variant requested for the given image, to tell apart downloads of
+   *     different variants, e.g. after the quality tier changed.
+   */
+  public String getKey(String url, String mimeType, int width, int height) {
+    return isImagesApiUrl(url) ? getQuery(mimeType, width, height) : "original";
+  }
+
+  private String getQuery(String mimeType, int width, int height) {
+    final StringBuilder query = new StringBuilder();
+    if (width > 0 && height > 0) {
+      // One factor for both sides, never scaling up.
+      final int longerSide = Math.max(width, height);
+      final double scale = floorPowerOfTwo(Math.min(longerSide, maxSize)) / (double) longerSide;
+      query.append("w=").append(Math.max(1, (int) Math.round(width * scale)))
+          .append("&h=").append(Math.max(1, (int) Math.round(height * scale)))
+          .append("&fit=scale&");
+    } else {
+      // Keeps the aspect ratio, only limiting the size.
+      final int size = floorPowerOfTwo(maxSize);
+      query.append("w=").append(size).append("&h=").append(size).append('&');
+    }
+    query.append("fm=").append(hasAlpha(mimeType) ? "webp" : "jpg");
+    query.append("&q=").append(compression);
+    return query.toString();
+  }
+
+  private static boolean isImagesApiUrl(String url) {
+    final int start = url.indexOf("//");
+    return start >= 0 && url.startsWith(IMAGES_API_HOST + "/", start + 2);
+  }
+
+  private static boolean hasAlpha(String mimeType) {
+    if (mimeType == null) {
+      return true;
+    }
+    final String type = mimeType.toLowerCase(Locale.US);
+    return !type.equals("image/jpeg") && !type.equals("image/jpg");
+  }
+
+  private static int floorPowerOfTwo(int value) {
+    return Integer.highestOneBit(Math.max(1, value));
+  }
+}
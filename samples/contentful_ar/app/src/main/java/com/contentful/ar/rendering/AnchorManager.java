@@ -0,0 +1,192 @@
+package com.contentful.ar.rendering;
+
+
+import com.google.ar.core.Anchor;
+import com.google.ar.core.Trackable;
+import com.google.ar.core.TrackingState;
+
+/**
+ * Owns the anchors of all placed objects.
+ * <p>
+ * Every placement shares one anchor between all of its renderers (e.g. an object and its
+ * shadow), so ARCore only has to update a single anchor per tap. Placements are stored in a
+ * fixed size ring buffer: once the capacity is reached the oldest placement is evicted in
+ * constant time and its anchor detached.
+ * <p>
+ * Must only be used from the OpenGL thread.
+ */
+public class AnchorManager {
+  public static final int DEFAULT_CAPACITY = 16;
+
+  private final Placement[] placements;
+  private int head = 0;
+  private int size = 0;
+
+  public AnchorManager() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public AnchorManager(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive, was " + capacity + ".");
+    }
+    placements = new Placement[capacity];
+  }
+
+  /**
+   * Adds a new placement, evicting the oldest one if the ring buffer is full.
+   *
+   * @param trackable the trackable hit by the tap.
+   * @param anchor    the single anchor shared by all renderers of this placement.
+   * @param tapTime   {@link android.os.SystemClock#uptimeMillis()} of the tap placing it.
+   * @param renderers the renderers to be attached to the anchor.
+   */
+  public void attach(
+      Trackable trackable, Anchor anchor, long tapTime, ObjectRenderer... renderers) {
+    final TrackableAttachment attachment = new TrackableAttachment(trackable, anchor);
+    final Placement placement = new Placement(attachment, tapTime, renderers);
+    if (size == placements.length) {
+      placements[head].destroy();
+      placements[head] = placement;
+      head = (head + 1) % placements.length;
+    } else {
+      placements[(head + size) % placements.length] = placement;
+      size++;
+    }
+  }
+
+  /**
+   * Detaches all anchors ARCore stopped tracking, in one pass over the ring buffer.
+   *
+   * @return the number of anchors detached.
+   */
+  public int detachStopped() {
+    int kept = 0;
+    for (int i = 0; i < size; ++i) {
+      final int index = (head + i) % placements.length;
+      final Placement placement = placements[index];
+      if (placement.isStopped()) {
+        placement.destroy();
+      } else {
+        placements[(head + kept) % placements.length] = placement;
+        kept++;
+      }
+    }
+
+    final int detached = size - kept;
+    for (int i = kept; i < size; ++i) {
+      placements[(head + i) % placements.length] = null;
+    }
+    size = kept;
+    return detached;
+  }
+
+  /**
+   * Detaches every anchor and forgets all placements.
+   */
+  public void detachAll() {
+    for (int i = 0; i < size; ++i) {
+      final int index = (head + i) % placements.length;
+      placements[index].destroy();
+      placements[index] = null;
+    }
+    head = 0;
+    size = 0;
+  }
+
+  /**
+   * @return the number of anchors currently attached to the session.
+   */
+  public int getLiveAnchorCount() {
+    return size;
+  }
+
+  /**
+   * @return the number of renderers attached to all live anchors.
+   */
+  public int getRendererCount() {
+    int count = 0;
+    for (int i = 0; i < size; ++i) {
+      count += get(i).renderers.length;
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of placements, oldest first, accessible through {@link #get(int)}.
+   */
+  public int size() {
+    return size;
+  }
+
+  public Placement get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of " + size + ".");
+    }
+    return placements[(head + index) % placements.length];
+  }
+
+  /**
+   * All renderers placed by one tap, sharing one anchor.
+   */
+  public static class Placement {
+    private final TrackableAttachment attachment;
+    private final ObjectRenderer[] renderers;
+    private final long tapTime;
+    private boolean visible = false;
+
+    Placement(TrackableAttachment attachment, long tapTime, ObjectRenderer[] renderers) {
+      this.attachment = attachment;
+      this.tapTime = tapTime;
+      this.renderers = renderers;
+    }
+
+    public boolean isTracking() {
+      return attachment.isTracking();
+    }
+
+    public ObjectRenderer[] getRenderers() {
+      return renderers;
+    }
+
+    /**
+     * Writes the current pose of the shared anchor, kept on its plane, as 4x4 column-major matrix.
+     */
+    public void getPoseMatrix(float[] matrix, int offset) {
+      attachment.getPose().toMatrix(matrix, offset);
+    }
+
+    /**
+     * Marks this placement as drawn, if all of its renderers are initialized.
+     *
+     * @return true only for the first frame actually showing the placement.
+     */
+    boolean markVisible() {
+      if (visible) {
+        return false;
+      }
+      for (final ObjectRenderer renderer : renderers) {
+        if (!renderer.isInitialized()) {
+          return false;
+        }
+      }
+      visible = true;
+      return true;
+    }
+
+    long getTapTime() {
+      return tapTime;
+    }
+
+    boolean isStopped() {
+      return attachment.getAnchor().getTrackingState() == TrackingState.STOPPED;
+    }
+
+    void destroy() {
+      for (final ObjectRenderer renderer : renderers) {
+        renderer.destroy();
+      }
+      attachment.getAnchor().detach();
+    }
+  }
+}
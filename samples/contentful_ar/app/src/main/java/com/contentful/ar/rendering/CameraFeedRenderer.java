@@ -22,6 +22,9 @@ import android.opengl.GLSurfaceView;
 import com.google.ar.core.Frame;
 import com.google.ar.core.Session;
 
+import com.contentful.ar.rendering.gl.GlResourceTracker;
+import com.contentful.ar.rendering.gl.Gles20Backend;
+
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
@@ -32,6 +35,11 @@ import javax.microedition.khronos.opengles.GL10;
 /**
  * This class renders the AR background from camera feed. It creates and hosts the texture
  * given to ARCore to be filled with the camera image.
+ * <p>
+ * The screen quad lives in a vertex buffer object: the positions never change, and the texture
+ * coordinates are only rewritten when ARCore reports a display geometry change. The camera image
+ * is sampled straight into the surface with one program, so rendering it at a lower resolution
+ * is a matter of the surface size, see {@link Scene#setResolutionScale(float)}.
  */
 public class CameraFeedRenderer {
   public static final float[] QUAD_COORDS = new float[]{
@@ -51,14 +59,23 @@ public class CameraFeedRenderer {
   private static final int TEXCOORDS_PER_VERTEX = 2;
   private static final int FLOAT_SIZE = 4;
   private static final int TEXTURE_TARGET = GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
-  private FloatBuffer mQuadVertices;
+
+  // Layout of the quad vertex buffer: positions, camera uvs.
+  private static final int POSITIONS_OFFSET = 0;
+  private static final int TEXCOORDS_OFFSET = QUAD_COORDS.length * FLOAT_SIZE;
+  private static final int QUAD_BUFFER_SIZE =
+      TEXCOORDS_OFFSET + QUAD_TEXCOORDS.length * FLOAT_SIZE;
+
   private FloatBuffer mQuadTexCoord;
   private FloatBuffer mQuadTexCoordTransformed;
+  private int mQuadBufferId;
   private int mQuadProgram;
   private int mQuadPositionParam;
   private int mQuadTexCoordParam;
   private int mTextureId = -1;
 
+  private final GlResourceTracker mResources = GlResourceTracker.of(Gles20Backend.INSTANCE);
+
   public int getTextureId() {
     return mTextureId;
   }
@@ -75,6 +92,8 @@ public class CameraFeedRenderer {
     int textures[] = new int[1];
     GLES20.glGenTextures(1, textures, 0);
     mTextureId = textures[0];
+    // Allocated and filled by ARCore.
+    mResources.register(this, GlResourceTracker.Kind.TEXTURE, mTextureId, 0);
     GLES20.glBindTexture(TEXTURE_TARGET, mTextureId);
     GLES20.glTexParameteri(TEXTURE_TARGET, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
     GLES20.glTexParameteri(TEXTURE_TARGET, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
@@ -86,12 +105,7 @@ public class CameraFeedRenderer {
       throw new RuntimeException("Unexpected number of vertices in BackgroundRenderer.");
     }
 
-    ByteBuffer bbVertices = ByteBuffer.allocateDirect(QUAD_COORDS.length * FLOAT_SIZE);
-    bbVertices.order(ByteOrder.nativeOrder());
-    mQuadVertices = bbVertices.asFloatBuffer();
-    mQuadVertices.put(QUAD_COORDS);
-    mQuadVertices.position(0);
-
+    // Only needed as input and output of Frame#transformDisplayUvCoords.
     ByteBuffer bbTexCoords = ByteBuffer.allocateDirect(
         numVertices * TEXCOORDS_PER_VERTEX * FLOAT_SIZE);
     bbTexCoords.order(ByteOrder.nativeOrder());
@@ -104,6 +118,21 @@ public class CameraFeedRenderer {
     bbTexCoordsTransformed.order(ByteOrder.nativeOrder());
     mQuadTexCoordTransformed = bbTexCoordsTransformed.asFloatBuffer();
 
+    // Upload the static quad. The camera uvs are filled in on the first display geometry change.
+    int buffers[] = new int[1];
+    GLES20.glGenBuffers(1, buffers, 0);
+    mQuadBufferId = buffers[0];
+    mResources.register(this, GlResourceTracker.Kind.BUFFER, mQuadBufferId, QUAD_BUFFER_SIZE);
+    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mQuadBufferId);
+    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, QUAD_BUFFER_SIZE, null, GLES20.GL_STATIC_DRAW);
+    GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, POSITIONS_OFFSET,
+        QUAD_COORDS.length * FLOAT_SIZE, toFloatBuffer(QUAD_COORDS));
+    GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, TEXCOORDS_OFFSET,
+        QUAD_TEXCOORDS.length * FLOAT_SIZE, mQuadTexCoord);
+    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+    ShaderUtil.checkGLError(TAG, "Quad buffer creation");
+
     final String basepath = context.getExternalFilesDir(null).getAbsolutePath();
     int vertexShader = ShaderUtil.loadGLShader(
         TAG,
@@ -114,20 +143,35 @@ public class CameraFeedRenderer {
         ShaderUtil.normalizeFileName("screenquad_fragment_oes.shader", basepath),
         GLES20.GL_FRAGMENT_SHADER);
 
+    mResources.register(this, GlResourceTracker.Kind.SHADER, vertexShader, 0);
+    mResources.register(this, GlResourceTracker.Kind.SHADER, fragmentShader, 0);
+
     mQuadProgram = GLES20.glCreateProgram();
     GLES20.glAttachShader(mQuadProgram, vertexShader);
     GLES20.glAttachShader(mQuadProgram, fragmentShader);
     GLES20.glLinkProgram(mQuadProgram);
-    GLES20.glUseProgram(mQuadProgram);
+    mResources.register(this, GlResourceTracker.Kind.PROGRAM, mQuadProgram, 0);
 
     ShaderUtil.checkGLError(TAG, "Program creation");
 
     mQuadPositionParam = GLES20.glGetAttribLocation(mQuadProgram, "a_Position");
     mQuadTexCoordParam = GLES20.glGetAttribLocation(mQuadProgram, "a_TexCoord");
 
+    // The sampler never changes, so set it once.
+    GLES20.glUseProgram(mQuadProgram);
+    GLES20.glUniform1i(GLES20.glGetUniformLocation(mQuadProgram, "sTexture"), 0);
+
     ShaderUtil.checkGLError(TAG, "Program parameters");
   }
 
+  /**
+   * Deletes all OpenGL resources of this renderer. Must be called on the OpenGL thread, the
+   * renderer must not be drawn afterwards.
+   */
+  public void destroy() {
+    mResources.release(this);
+  }
+
   /**
    * Draws the AR background image.  The image will be drawn such that virtual content rendered
    * with the matrices provided by {@link com.google.ar.core.Camera#getViewMatrix(float[], int)} and
@@ -137,10 +181,16 @@ public class CameraFeedRenderer {
    * @param frame The last {@code Frame} returned by {@link Session#update()}.
    */
   public void draw(Frame frame) {
+    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mQuadBufferId);
+
     // If display rotation changed (also includes view size change), we need to re-query the uv
-    // coordinates for the screen rect, as they may have changed as well.
+    // coordinates for the screen rect, as they may have changed as well. Otherwise the uvs
+    // already stored in the vertex buffer are reused.
     if (frame.hasDisplayGeometryChanged()) {
       frame.transformDisplayUvCoords(mQuadTexCoord, mQuadTexCoordTransformed);
+      mQuadTexCoordTransformed.position(0);
+      GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, TEXCOORDS_OFFSET,
+          QUAD_TEXCOORDS.length * FLOAT_SIZE, mQuadTexCoordTransformed);
     }
 
     // No need to test or write depth, the screen quad has arbitrary depth, and is expected
@@ -148,27 +198,29 @@ public class CameraFeedRenderer {
     GLES20.glDisable(GLES20.GL_DEPTH_TEST);
     GLES20.glDepthMask(false);
 
-    GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, mTextureId);
-
+    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+    GLES20.glBindTexture(TEXTURE_TARGET, mTextureId);
     GLES20.glUseProgram(mQuadProgram);
 
-    // Set the vertex positions.
+    // Set the vertex positions and texture coordinates from the bound quad buffer.
     GLES20.glVertexAttribPointer(
-        mQuadPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, mQuadVertices);
-
-    // Set the texture coordinates.
-    GLES20.glVertexAttribPointer(mQuadTexCoordParam, TEXCOORDS_PER_VERTEX,
-        GLES20.GL_FLOAT, false, 0, mQuadTexCoordTransformed);
+        mQuadPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, POSITIONS_OFFSET);
+    GLES20.glVertexAttribPointer(
+        mQuadTexCoordParam, TEXCOORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, TEXCOORDS_OFFSET);
 
     // Enable vertex arrays
     GLES20.glEnableVertexAttribArray(mQuadPositionParam);
     GLES20.glEnableVertexAttribArray(mQuadTexCoordParam);
 
     GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    FrameProfiler.recordDrawCall(2);
 
     // Disable vertex arrays
     GLES20.glDisableVertexAttribArray(mQuadPositionParam);
     GLES20.glDisableVertexAttribArray(mQuadTexCoordParam);
+    GLES20.glBindTexture(TEXTURE_TARGET, 0);
+
+    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
     // Restore the depth state for further drawing.
     GLES20.glDepthMask(true);
@@ -176,4 +228,12 @@ public class CameraFeedRenderer {
 
     ShaderUtil.checkGLError(TAG, "Draw");
   }
+
+  private static FloatBuffer toFloatBuffer(float[] values) {
+    FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * FLOAT_SIZE)
+        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    buffer.put(values);
+    buffer.position(0);
+    return buffer;
+  }
 }
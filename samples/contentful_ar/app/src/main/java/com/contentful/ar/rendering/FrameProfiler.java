@@ -0,0 +1,332 @@
+package com.contentful.ar.rendering;
+
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Measures where the time of each frame goes, without allocating on the render thread.
+ * <p>
+ * CPU time is measured per stage of {@link Scene#onDrawFrame}, draw calls and triangles are
+ * counted through {@link #recordDrawCall(int)}, and the GPU time of the whole frame is measured
+ * with timer queries where {@code GL_EXT_disjoint_timer_query} is available. All values are kept
+ * for a rolling window of frames, frame times additionally in histograms for percentiles.
+ * <p>
+ * The recording methods must only be called from the OpenGL thread, the reporting methods can
+ * be called from any thread.
+ */
+public class FrameProfiler {
+  private static final String TAG = FrameProfiler.class.getSimpleName();
+
+  public static final int STAGE_SESSION_UPDATE = 0;
+  public static final int STAGE_BACKGROUND = 1;
+  public static final int STAGE_POINT_CLOUD = 2;
+  public static final int STAGE_PLANES = 3;
+  public static final int STAGE_OBJECTS = 4;
+  public static final int STAGE_LOADS = 5;
+  static final int STAGE_COUNT = 6;
+  private static final String[] STAGE_NAMES = {
+      "session_update", "background", "point_cloud", "planes", "objects", "loads"
+  };
+
+  static final int WINDOW_FRAMES = 256;
+  private static final long BUCKET_NANOS = 250000;
+  private static final int BUCKET_COUNT = 400;
+
+  // Incremented by the renderers, collected once per frame.
+  private static int frameDrawCalls = 0;
+  private static int frameTriangles = 0;
+
+  private volatile boolean enabled = false;
+
+  // Current frame.
+  private long frameStart;
+  private final long[] stageStart = new long[STAGE_COUNT];
+  private final long[] stageNanos = new long[STAGE_COUNT];
+
+  // Rolling window, guarded by this.
+  private final long[][] stageHistory = new long[STAGE_COUNT][WINDOW_FRAMES];
+  private final long[] stageSums = new long[STAGE_COUNT];
+  private final int[] drawCallHistory = new int[WINDOW_FRAMES];
+  private final int[] triangleHistory = new int[WINDOW_FRAMES];
+  private long drawCallSum;
+  private long triangleSum;
+  private final Histogram cpuFrameTimes = new Histogram();
+  private final Histogram gpuFrameTimes = new Histogram();
+  private int windowIndex = 0;
+  private int windowSize = 0;
+  private long totalFrames = 0;
+
+  private final GpuTimer gpuTimer = new GpuTimer();
+
+  /**
+   * Counts one draw call of the current frame. Must be called on the OpenGL thread.
+   *
+   * @param triangles the number of triangles drawn, 0 for points and lines.
+   */
+  public static void recordDrawCall(int triangles) {
+    frameDrawCalls++;
+    frameTriangles += triangles;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Looks up GPU timer query support. Must be called on the OpenGL thread, typically from
+   * {@link Scene#onSurfaceCreated}.
+   */
+  public void createOnGlThread() {
+    gpuTimer.createOnGlThread();
+  }
+
+  public void beginFrame() {
+    frameDrawCalls = 0;
+    frameTriangles = 0;
+    if (!enabled) {
+      return;
+    }
+
+    for (int i = 0; i < STAGE_COUNT; ++i) {
+      stageNanos[i] = 0;
+    }
+    gpuTimer.begin();
+    frameStart = System.nanoTime();
+  }
+
+  public void begin(int stage) {
+    if (enabled) {
+      stageStart[stage] = System.nanoTime();
+    }
+  }
+
+  public void end(int stage) {
+    if (enabled) {
+      stageNanos[stage] += System.nanoTime() - stageStart[stage];
+    }
+  }
+
+  public void endFrame() {
+    if (!enabled) {
+      return;
+    }
+
+    final long frameNanos = System.nanoTime() - frameStart;
+    gpuTimer.end();
+
+    synchronized (this) {
+      if (windowSize == WINDOW_FRAMES) {
+        for (int i = 0; i < STAGE_COUNT; ++i) {
+          stageSums[i] -= stageHistory[i][windowIndex];
+        }
+        drawCallSum -= drawCallHistory[windowIndex];
+        triangleSum -= triangleHistory[windowIndex];
+      } else {
+        windowSize++;
+      }
+
+      for (int i = 0; i < STAGE_COUNT; ++i) {
+        stageHistory[i][windowIndex] = stageNanos[i];
+        stageSums[i] += stageNanos[i];
+      }
+      drawCallHistory[windowIndex] = frameDrawCalls;
+      triangleHistory[windowIndex] = frameTriangles;
+      drawCallSum += frameDrawCalls;
+      triangleSum += frameTriangles;
+      cpuFrameTimes.add(frameNanos);
+
+      windowIndex = (windowIndex + 1) % WINDOW_FRAMES;
+      totalFrames++;
+
+      gpuTimer.collect(gpuFrameTimes);
+    }
+  }
+
+  /**
+   * Appends a human readable summary of the rolling window, e.g. for a debug overlay.
+   */
+  public synchronized void appendSummary(StringBuilder out) {
+    final int frames = Math.max(1, windowSize);
+    out.append(String.format(Locale.US, "cpu p50 %.2f p95 %.2f p99 %.2f ms\n",
+        cpuFrameTimes.percentile(0.50) / 1e6,
+        cpuFrameTimes.percentile(0.95) / 1e6,
+        cpuFrameTimes.percentile(0.99) / 1e6));
+    if (gpuTimer.isSupported()) {
+      out.append(String.format(Locale.US, "gpu p50 %.2f p95 %.2f p99 %.2f ms\n",
+          gpuFrameTimes.percentile(0.50) / 1e6,
+          gpuFrameTimes.percentile(0.95) / 1e6,
+          gpuFrameTimes.percentile(0.99) / 1e6));
+    } else {
+      out.append("gpu n/a\n");
+    }
+    for (int i = 0; i < STAGE_COUNT; ++i) {
+      out.append(String.format(Locale.US, "%-14s %.2f ms\n",
+          STAGE_NAMES[i], stageSums[i] / (double) frames / 1e6));
+    }
+    out.append(String.format(Locale.US, "draws %d tris %d",
+        drawCallSum / frames, triangleSum / frames));
+  }
+
+  /**
+   * Writes the rolling window as one JSON object, for tracking performance in CI. Times are in
+   * milliseconds, stage times and counters are averages per frame.
+   */
+  public synchronized void writeJson(Writer out) throws IOException {
+    final int frames = Math.max(1, windowSize);
+    out.write("{\"frames\":" + totalFrames);
+    out.write(",\"window\":" + windowSize);
+    out.write(",\"cpu_ms\":");
+    writeJsonPercentiles(out, cpuFrameTimes);
+    out.write(",\"gpu_ms\":");
+    if (gpuTimer.isSupported()) {
+      writeJsonPercentiles(out, gpuFrameTimes);
+    } else {
+      out.write("null");
+    }
+    out.write(",\"stages_ms\":{");
+    for (int i = 0; i < STAGE_COUNT; ++i) {
+      if (i > 0) {
+        out.write(",");
+      }
+      out.write(String.format(Locale.US, "\"%s\":%.3f",
+          STAGE_NAMES[i], stageSums[i] / (double) frames / 1e6));
+    }
+    out.write("}");
+    out.write(",\"draw_calls\":" + drawCallSum / frames);
+    out.write(",\"triangles\":" + triangleSum / frames);
+    out.write("}\n");
+  }
+
+  private static void writeJsonPercentiles(Writer out, Histogram histogram) throws IOException {
+    out.write(String.format(Locale.US, "{\"p50\":%.3f,\"p95\":%.3f,\"p99\":%.3f}",
+        histogram.percentile(0.50) / 1e6,
+        histogram.percentile(0.95) / 1e6,
+        histogram.percentile(0.99) / 1e6));
+  }
+
+  /**
+   * Fixed bucket histogram over the last {@link #WINDOW_FRAMES} samples.
+   */
+  static class Histogram {
+    private final int[] buckets = new int[BUCKET_COUNT];
+    private final int[] history = new int[WINDOW_FRAMES];
+    private int index = 0;
+    private int size = 0;
+
+    void add(long nanos) {
+      if (size == WINDOW_FRAMES) {
+        buckets[history[index]]--;
+      } else {
+        size++;
+      }
+
+      final int bucket = (int) Math.min(BUCKET_COUNT - 1, nanos / BUCKET_NANOS);
+      buckets[bucket]++;
+      history[index] = bucket;
+      index = (index + 1) % WINDOW_FRAMES;
+    }
+
+    /**
+     * @return the upper bound of the bucket containing the given percentile, in nanoseconds.
+     */
+    long percentile(double fraction) {
+      if (size == 0) {
+        return 0;
+      }
+
+      final int rank = (int) Math.ceil(fraction * size);
+      int count = 0;
+      for (int i = 0; i < BUCKET_COUNT; ++i) {
+        count += buckets[i];
+        if (count >= rank) {
+          return (i + 1) * BUCKET_NANOS;
+        }
+      }
+      return BUCKET_COUNT * BUCKET_NANOS;
+    }
+  }
+
+  /**
+   * Measures the GPU time of whole frames with a small ring of timer queries, so results can be
+   * read back a few frames later without stalling.
+   */
+  private static class GpuTimer {
+    private static final String EXTENSION = "GL_EXT_disjoint_timer_query";
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+    private static final int QUERY_COUNT = 4;
+
+    private final int[] queries = new int[QUERY_COUNT];
+    private final int[] result = new int[1];
+    private boolean supported = false;
+    private boolean running = false;
+    private int next = 0;
+    private int pending = 0;
+
+    void createOnGlThread() {
+      final String version = GLES20.glGetString(GLES20.GL_VERSION);
+      final String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+
+      // Queries are only exposed through the OpenGL ES 3.0 entry points.
+      supported = version != null && version.startsWith("OpenGL ES 3")
+          && extensions != null && extensions.contains(EXTENSION);
+      if (supported) {
+        GLES30.glGenQueries(QUERY_COUNT, queries, 0);
+        next = 0;
+        pending = 0;
+      } else {
+        Log.i(TAG, EXTENSION + " not available, GPU times will not be measured.");
+      }
+    }
+
+    boolean isSupported() {
+      return supported;
+    }
+
+    void begin() {
+      if (supported && pending < QUERY_COUNT) {
+        GLES30.glBeginQuery(GL_TIME_ELAPSED_EXT, queries[next]);
+        running = true;
+      }
+    }
+
+    void end() {
+      if (running) {
+        GLES30.glEndQuery(GL_TIME_ELAPSED_EXT);
+        next = (next + 1) % QUERY_COUNT;
+        pending++;
+        running = false;
+      }
+    }
+
+    void collect(Histogram histogram) {
+      while (pending > 0) {
+        final int oldest = queries[(next - pending + QUERY_COUNT) % QUERY_COUNT];
+        GLES30.glGetQueryObjectuiv(oldest, GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+        if (result[0] == GLES20.GL_FALSE) {
+          return;
+        }
+
+        pending--;
+        GLES20.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+        if (result[0] != GLES20.GL_FALSE) {
+          // Timer values are unreliable, e.g. because the GPU changed its clock.
+          continue;
+        }
+
+        GLES30.glGetQueryObjectuiv(oldest, GLES30.GL_QUERY_RESULT, result, 0);
+        histogram.add(result[0] & 0xFFFFFFFFL);
+      }
+    }
+  }
+}
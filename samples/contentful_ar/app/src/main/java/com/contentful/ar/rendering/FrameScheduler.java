@@ -0,0 +1,328 @@
+package com.contentful.ar.rendering;
+
+
+import android.content.Context;
+import android.opengl.GLSurfaceView;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Paces the rendering of a {@link GLSurfaceView} in {@link GLSurfaceView#RENDERMODE_WHEN_DIRTY}.
+ * <p>
+ * Renders are requested from the display's vsync (through {@link Choreographer}) at a target
+ * rate depending on the state of the scene:
+ * <ul>
+ * <li>at display rate while the user interacts with a tracking scene,</li>
+ * <li>at camera rate once the view is idle or the camera is not tracking,</li>
+ * <li>capped further, with a reduced render resolution, while the device is hot.</li>
+ * </ul>
+ * Once the first object got placed, the plane and point cloud visualisation is only drawn
+ * while the user interacts, and the point cloud is updated every few frames only.
+ * <p>
+ * An optional benchmark mode logs frame rate, frame times and battery drain periodically, so
+ * power savings can be compared between builds in long running deployments.
+ */
+public class FrameScheduler implements Choreographer.FrameCallback {
+  private static final String TAG = FrameScheduler.class.getSimpleName();
+
+  public static final int CAMERA_FPS = 30;
+  private static final long ACTIVE_TIMEOUT_MS = 3000;
+  private static final long THERMAL_POLL_INTERVAL_MS = 1000;
+  private static final int POINT_CLOUD_UPDATE_INTERVAL = 4;
+
+  // Same values as PowerManager.THERMAL_STATUS_*, which is not available in our compile SDK.
+  static final int THERMAL_STATUS_NONE = 0;
+  static final int THERMAL_STATUS_LIGHT = 1;
+  static final int THERMAL_STATUS_MODERATE = 2;
+  static final int THERMAL_STATUS_SEVERE = 3;
+
+  private static final long BENCHMARK_WINDOW_MS = 60 * 1000;
+  private static final int BENCHMARK_MAX_FRAMES = 4096;
+
+  private final GLSurfaceView surfaceView;
+  private final PowerManager powerManager;
+  private final BatteryManager batteryManager;
+  private final float displayFps;
+  private Method thermalStatusMethod;
+
+  // Main thread state.
+  private Choreographer choreographer;
+  private boolean running = false;
+  private int vsyncsSinceRender = 0;
+  private long lastThermalPoll = 0;
+
+  // Shared between threads.
+  private volatile long lastInteraction = 0;
+  private volatile boolean tracking = false;
+  private volatile boolean placed = false;
+  private volatile int thermalStatus = THERMAL_STATUS_NONE;
+  private volatile int targetFps;
+
+  // GL thread state.
+  private long frameCount = 0;
+  // Whether the benchmark timed the start of the current frame.
+  private boolean benchmarkFrame = false;
+
+  private volatile boolean benchmarkEnabled = false;
+  // The benchmark is only touched on the GL thread, which resets it at the next frame.
+  private volatile boolean benchmarkResetRequested = false;
+  private final Benchmark benchmark = new Benchmark();
+
+  public FrameScheduler(Context context, GLSurfaceView surfaceView) {
+    this.surfaceView = surfaceView;
+    this.powerManager = context.getSystemService(PowerManager.class);
+    this.batteryManager = context.getSystemService(BatteryManager.class);
+    this.displayFps = Math.max(CAMERA_FPS,
+        context.getSystemService(WindowManager.class).getDefaultDisplay().getRefreshRate());
+    this.targetFps = (int) displayFps;
+
+    try {
+      thermalStatusMethod = PowerManager.class.getMethod("getCurrentThermalStatus");
+    } catch (NoSuchMethodException e) {
+      // Older devices: fall back to the power save mode.
+      thermalStatusMethod = null;
+    }
+  }
+
+  /**
+   * Starts requesting renders. Must be called from the main thread.
+   */
+  public void start() {
+    if (running) {
+      return;
+    }
+
+    running = true;
+    vsyncsSinceRender = 0;
+    lastInteraction = SystemClock.uptimeMillis();
+    choreographer = Choreographer.getInstance();
+    choreographer.postFrameCallback(this);
+  }
+
+  /**
+   * Stops requesting renders. Must be called from the main thread.
+   */
+  public void stop() {
+    running = false;
+    if (choreographer != null) {
+      choreographer.removeFrameCallback(this);
+    }
+  }
+
+  /**
+   * Records a user interaction, switching to display rate rendering. Can be called from any
+   * thread.
+   */
+  public void onInteraction() {
+    lastInteraction = SystemClock.uptimeMillis();
+  }
+
+  /**
+   * Records that an object got placed, from now on the plane visualisation will be throttled.
+   */
+  public void onPlacement() {
+    placed = true;
+    onInteraction();
+  }
+
+  /**
+   * Called on the GL thread at the start of every rendered frame.
+   */
+  public void onFrameStart() {
+    frameCount++;
+    benchmarkFrame = benchmarkEnabled;
+    if (benchmarkFrame) {
+      if (benchmarkResetRequested) {
+        benchmarkResetRequested = false;
+        benchmark.reset();
+      }
+      benchmark.frameStart();
+    }
+  }
+
+  /**
+   * Called on the GL thread at the end of every rendered frame.
+   *
+   * @param cameraTracking whether the camera was tracking in this frame.
+   */
+  public void onFrameEnd(boolean cameraTracking) {
+    tracking = cameraTracking;
+    if (benchmarkFrame) {
+      benchmark.frameEnd(isActive());
+    }
+  }
+
+  /**
+   * @return false if planes and point cloud should not be drawn in this frame.
+   */
+  public boolean shouldDrawPlanes() {
+    return !placed || isActive();
+  }
+
+  /**
+   * @return false if the point cloud of the last update can be drawn again in this frame.
+   */
+  public boolean shouldUpdatePointCloud() {
+    return !placed || frameCount % POINT_CLOUD_UPDATE_INTERVAL == 0;
+  }
+
+  /**
+   * @return the resolution scale the scene should at most be rendered at.
+   */
+  public float getResolutionScale() {
+    return thermalStatus >= THERMAL_STATUS_MODERATE ? 0.5f : 1.0f;
+  }
+
+  public int getTargetFps() {
+    return targetFps;
+  }
+
+  /**
+   * Enables periodically logging frame times and battery drain, tagged with
+   * {@code FrameScheduler}, starting with the next frame. Can be called from any thread.
+   */
+  public void setBenchmarkEnabled(boolean enabled) {
+    if (enabled && !benchmarkEnabled) {
+      // Requested first, so the GL thread never sees the benchmark enabled without it.
+      benchmarkResetRequested = true;
+    }
+    benchmarkEnabled = enabled;
+  }
+
+  @Override public void doFrame(long frameTimeNanos) {
+    if (!running) {
+      return;
+    }
+
+    final long now = SystemClock.uptimeMillis();
+    if (now - lastThermalPoll >= THERMAL_POLL_INTERVAL_MS) {
+      lastThermalPoll = now;
+      thermalStatus = readThermalStatus();
+    }
+
+    targetFps = computeTargetFps();
+    final int interval = Math.max(1, Math.round(displayFps / targetFps));
+    if (++vsyncsSinceRender >= interval) {
+      vsyncsSinceRender = 0;
+      surfaceView.requestRender();
+    }
+
+    choreographer.postFrameCallback(this);
+  }
+
+  private boolean isActive() {
+    return SystemClock.uptimeMillis() - lastInteraction < ACTIVE_TIMEOUT_MS;
+  }
+
+  private int computeTargetFps() {
+    int fps = tracking && isActive() ? (int) displayFps : CAMERA_FPS;
+
+    switch (thermalStatus) {
+      case THERMAL_STATUS_NONE:
+        break;
+      case THERMAL_STATUS_LIGHT:
+        fps = Math.min(fps, CAMERA_FPS);
+        break;
+      case THERMAL_STATUS_MODERATE:
+        fps = Math.min(fps, 24);
+        break;
+      default:
+        fps = Math.min(fps, 15);
+        break;
+    }
+
+    return fps;
+  }
+
+  private int readThermalStatus() {
+    if (thermalStatusMethod != null) {
+      try {
+        return (Integer) thermalStatusMethod.invoke(powerManager);
+      } catch (Exception e) {
+        Log.w(TAG, "Could not read thermal status, falling back to power save mode.", e);
+        thermalStatusMethod = null;
+      }
+    }
+
+    return powerManager.isPowerSaveMode() ? THERMAL_STATUS_LIGHT : THERMAL_STATUS_NONE;
+  }
+
+  /**
+   * Collects frame times on the GL thread and logs a summary per window.
+   */
+  private class Benchmark {
+    private final long[] frameTimes = new long[BENCHMARK_MAX_FRAMES];
+    private final long[] sortedFrameTimes = new long[BENCHMARK_MAX_FRAMES];
+    private int frames;
+    private int activeFrames;
+    private long frameStart;
+    private long windowStart;
+    private long windowStartCharge;
+
+    void reset() {
+      frames = 0;
+      activeFrames = 0;
+      windowStart = SystemClock.elapsedRealtimeNanos();
+      windowStartCharge =
+          batteryManager.getLongProperty(BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER);
+    }
+
+    void frameStart() {
+      frameStart = SystemClock.elapsedRealtimeNanos();
+    }
+
+    void frameEnd(boolean active) {
+      final long now = SystemClock.elapsedRealtimeNanos();
+      if (frames < frameTimes.length) {
+        frameTimes[frames] = now - frameStart;
+      }
+      frames++;
+      if (active) {
+        activeFrames++;
+      }
+
+      final long window = now - windowStart;
+      if (window >= BENCHMARK_WINDOW_MS * 1000000L) {
+        report(window);
+        reset();
+      }
+    }
+
+    private void report(long windowNanos) {
+      final int samples = Math.min(frames, frameTimes.length);
+      System.arraycopy(frameTimes, 0, sortedFrameTimes, 0, samples);
+      Arrays.sort(sortedFrameTimes, 0, samples);
+
+      long total = 0;
+      for (int i = 0; i < samples; ++i) {
+        total += sortedFrameTimes[i];
+      }
+
+      final long charge =
+          batteryManager.getLongProperty(BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER);
+      final long current =
+          batteryManager.getLongProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW);
+
+      Log.i(TAG, String.format(Locale.US,
+          "benchmark window_s=%.1f fps=%.1f frame_avg_ms=%.2f frame_p95_ms=%.2f active=%.0f%%"
+              + " target_fps=%d thermal=%d charge_drop_uah=%d current_ua=%d",
+          windowNanos / 1e9,
+          frames / (windowNanos / 1e9),
+          samples == 0 ? 0 : total / (double) samples / 1e6,
+          samples == 0 ? 0 : sortedFrameTimes[(int) (samples * 0.95)] / 1e6,
+          frames == 0 ? 0 : 100.0 * activeFrames / frames,
+          targetFps,
+          thermalStatus,
+          windowStartCharge - charge,
+          current));
+    }
+  }
+}
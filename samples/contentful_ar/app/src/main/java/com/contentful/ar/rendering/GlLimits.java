@@ -0,0 +1,83 @@
+package com.contentful.ar.rendering;
+
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.util.Log;
+
+/**
+ * Limits of the device's OpenGL ES implementation, queried once through a small offscreen
+ * context, so they are known on any thread, before the scene's surface got created.
+ */
+public final class GlLimits {
+  private static final String TAG = GlLimits.class.getSimpleName();
+  // Supported by all devices running ARCore.
+  private static final int FALLBACK_MAX_TEXTURE_SIZE = 2048;
+
+  private static int maxTextureSize = 0;
+
+  private GlLimits() {
+  }
+
+  /**
+   * @return GL_MAX_TEXTURE_SIZE, the largest width and height of a texture. May block for a few
+   *     milliseconds on the first call.
+   */
+  public static synchronized int getMaxTextureSize() {
+    if (maxTextureSize == 0) {
+      maxTextureSize = queryMaxTextureSize();
+    }
+    return maxTextureSize;
+  }
+
+  private static int queryMaxTextureSize() {
+    final EGLDisplay display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+    final int[] version = new int[2];
+    if (display == EGL14.EGL_NO_DISPLAY || !EGL14.eglInitialize(display, version, 0, version, 1)) {
+      Log.w(TAG, "Could not initialize EGL.");
+      return FALLBACK_MAX_TEXTURE_SIZE;
+    }
+
+    final EGLConfig[] configs = new EGLConfig[1];
+    final int[] configCount = new int[1];
+    final int[] configAttributes = {
+        EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+        EGL14.EGL_SURFACE_TYPE, EGL14.EGL_PBUFFER_BIT,
+        EGL14.EGL_NONE
+    };
+    if (!EGL14.eglChooseConfig(display, configAttributes, 0, configs, 0, 1, configCount, 0)
+        || configCount[0] == 0) {
+      Log.w(TAG, "No EGL config for an offscreen context.");
+      return FALLBACK_MAX_TEXTURE_SIZE;
+    }
+
+    final EGLContext context = EGL14.eglCreateContext(display, configs[0], EGL14.EGL_NO_CONTEXT,
+        new int[]{EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE}, 0);
+    final EGLSurface surface = EGL14.eglCreatePbufferSurface(display, configs[0],
+        new int[]{EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE}, 0);
+    final int[] size = new int[1];
+    if (context != EGL14.EGL_NO_CONTEXT && surface != EGL14.EGL_NO_SURFACE
+        && EGL14.eglMakeCurrent(display, surface, surface, context)) {
+      GLES20.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, size, 0);
+      EGL14.eglMakeCurrent(
+          display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+    }
+    if (surface != EGL14.EGL_NO_SURFACE) {
+      EGL14.eglDestroySurface(display, surface);
+    }
+    if (context != EGL14.EGL_NO_CONTEXT) {
+      EGL14.eglDestroyContext(display, context);
+    }
+    // The display is shared with the scene's surface, so it is not terminated.
+
+    if (size[0] <= 0) {
+      Log.w(TAG, "Could not query the maximum texture size.");
+      return FALLBACK_MAX_TEXTURE_SIZE;
+    }
+    return size[0];
+  }
+}
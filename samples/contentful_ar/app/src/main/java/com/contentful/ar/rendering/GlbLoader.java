@@ -0,0 +1,827 @@
+package com.contentful.ar.rendering;
+
+
+import com.contentful.ar.io.Streams;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads GLB files, the binary container of glTF 2.0, into meshes.
+ * <p>
+ * The binary chunk is not parsed, accessors are only checked and wrapped: a model of a single
+ * triangle primitive without transform, with float attributes and 16 bit indices as exporters
+ * write them, becomes a mesh of typed views into the chunk, which OpenGL reads directly. Files
+ * read with {@link #read(File)} are memory mapped, so their bytes are not even copied to the heap.
+ * Other models are flattened into a copy: the primitives of all mesh nodes of the scene, with
+ * their node transforms applied, one {@link Mesh.Part} per base color texture. Textures embedded
+ * in the file are handed to the renderer as slices of the chunk as well.
+ * <p>
+ * Buffer views compressed with EXT_meshopt_compression are decoded by {@link MeshoptDecoder} when
+ * an accessor of the mesh first reads them, quantized attributes of KHR_mesh_quantization are
+ * converted to floats while flattening, as are texture coordinates with KHR_texture_transform.
+ * <p>
+ * Only triangle primitives are read. Missing normals are computed, vertex colors, skins, morph
+ * targets and all material properties but the base color texture are ignored.
+ * <p>
+ * This class only depends on org.json, which is part of Android, so loading can be benchmarked on
+ * a desktop JVM.
+ */
+public final class GlbLoader {
+  private static final int MAGIC = 0x46546C67;
+  private static final int VERSION = 2;
+  private static final int HEADER_BYTES = 12;
+  private static final int CHUNK_JSON = 0x4E4F534A;
+  private static final int CHUNK_BIN = 0x004E4942;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final int BYTE = 5120;
+  private static final int UNSIGNED_BYTE = 5121;
+  private static final int SHORT = 5122;
+  private static final int UNSIGNED_SHORT = 5123;
+  private static final int UNSIGNED_INT = 5125;
+  private static final int FLOAT = 5126;
+  private static final int MODE_TRIANGLES = 4;
+  private static final String EXT_MESHOPT_COMPRESSION = "EXT_meshopt_compression";
+  private static final String KHR_MESH_QUANTIZATION = "KHR_mesh_quantization";
+  private static final String KHR_TEXTURE_TRANSFORM = "KHR_texture_transform";
+  private static final List<String> SUPPORTED_EXTENSIONS =
+      Arrays.asList(EXT_MESHOPT_COMPRESSION, KHR_MESH_QUANTIZATION, KHR_TEXTURE_TRANSFORM);
+  // Indices are narrowed to shorts for GL ES 2.0.
+  private static final int MAX_VERTICES = 65536;
+
+  private final JSONObject gltf;
+  private final ByteBuffer bin;
+  // Embedded images referenced by the mesh, by their index in the file.
+  private final List<Integer> images = new ArrayList<>();
+  // Bytes of the buffer views read so far, by their index, compressed ones decoded.
+  private final Map<Integer, ByteBuffer> bufferViews = new HashMap<>();
+
+  private GlbLoader(JSONObject gltf, ByteBuffer bin) {
+    this.gltf = gltf;
+    this.bin = bin;
+  }
+
+  /**
+   * Maps a GLB file into memory and reads it. The returned mesh keeps the mapping alive.
+   */
+  public static Mesh read(File file) throws IOException {
+    try (FileInputStream input = new FileInputStream(file);
+         FileChannel channel = input.getChannel()) {
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Reads a GLB file from a stream, e.g. while downloading it, into a direct buffer first.
+   *
+   * @param input the GLB file content, not closed by this method.
+   */
+  public static Mesh read(InputStream input) throws IOException {
+    return read(Streams.readDirect(input, input.available()));
+  }
+
+  /**
+   * Reads the remaining bytes of a buffer as GLB file, without changing its position. The
+   * returned mesh may share the buffer's content.
+   *
+   * @throws IOException if the file is not a valid GLB file or contains no triangles.
+   */
+  public static Mesh read(ByteBuffer source) throws IOException {
+    final ByteBuffer glb = source.slice().order(ByteOrder.LITTLE_ENDIAN);
+    if (glb.remaining() < HEADER_BYTES || glb.getInt(0) != MAGIC) {
+      throw new IOException("Not a GLB file.");
+    }
+    if (glb.getInt(4) != VERSION) {
+      throw new IOException("Unsupported glTF version " + glb.getInt(4) + ".");
+    }
+    final int length = glb.getInt(8);
+    if (length < HEADER_BYTES || length > glb.remaining()) {
+      throw new IOException("Truncated GLB file.");
+    }
+
+    String json = null;
+    ByteBuffer bin = null;
+    int position = HEADER_BYTES;
+    while (position + 8 <= length) {
+      final int chunkLength = glb.getInt(position);
+      final int chunkType = glb.getInt(position + 4);
+      position += 8;
+      if (chunkLength < 0 || chunkLength > length - position) {
+        throw new IOException("Truncated GLB chunk.");
+      }
+      if (chunkType == CHUNK_JSON && json == null) {
+        final byte[] bytes = new byte[chunkLength];
+        ((ByteBuffer) glb.duplicate().position(position)).get(bytes);
+        json = new String(bytes, UTF_8);
+      } else if (chunkType == CHUNK_BIN && bin == null) {
+        bin = slice(glb, position, chunkLength);
+      }
+      // Chunks are padded to 4 bytes.
+      position += (chunkLength + 3) & ~3;
+    }
+    if (json == null) {
+      throw new IOException("GLB file without JSON chunk.");
+    }
+
+    try {
+      return new GlbLoader(new JSONObject(json),
+          bin != null ? bin : ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN)).readScene();
+    } catch (JSONException e) {
+      throw new IOException("Invalid glTF: " + e.getMessage(), e);
+    }
+  }
+
+  private Mesh readScene() throws IOException, JSONException {
+    final JSONArray required = gltf.optJSONArray("extensionsRequired");
+    for (int i = 0; required != null && i < required.length(); ++i) {
+      if (!SUPPORTED_EXTENSIONS.contains(required.getString(i))) {
+        throw new IOException("Unsupported glTF extension " + required.getString(i) + ".");
+      }
+    }
+
+    final List<Primitive> primitives = new ArrayList<>();
+    final JSONArray scenes = gltf.optJSONArray("scenes");
+    if (scenes != null && scenes.length() > 0) {
+      final JSONArray nodes = scenes.getJSONObject(gltf.optInt("scene", 0)).optJSONArray("nodes");
+      for (int i = 0; nodes != null && i < nodes.length(); ++i) {
+        addNode(primitives, nodes.getInt(i), null, 0);
+      }
+    } else {
+      // Without scene, the meshes are all there is to show.
+      final JSONArray meshes = gltf.optJSONArray("meshes");
+      for (int i = 0; meshes != null && i < meshes.length(); ++i) {
+        addMesh(primitives, meshes.getJSONObject(i), null);
+      }
+    }
+    if (primitives.isEmpty()) {
+      throw new IOException("glTF without triangles.");
+    }
+
+    if (primitives.size() == 1) {
+      final Mesh view = wrap(primitives.get(0));
+      if (view != null) {
+        return view;
+      }
+    }
+    return flatten(primitives);
+  }
+
+  private void addNode(List<Primitive> primitives, int index, float[] parentMatrix, int depth)
+      throws IOException, JSONException {
+    final JSONArray nodes = gltf.getJSONArray("nodes");
+    if (depth > nodes.length()) {
+      throw new IOException("Cyclic glTF node hierarchy.");
+    }
+    final JSONObject node = nodes.getJSONObject(index);
+
+    float[] matrix = getLocalMatrix(node);
+    if (parentMatrix != null) {
+      if (matrix == null) {
+        matrix = parentMatrix;
+      } else {
+        final float[] world = new float[16];
+        MatrixMath.multiplyMM(world, 0, parentMatrix, 0, matrix, 0);
+        matrix = world;
+      }
+    }
+
+    if (node.has("mesh")) {
+      addMesh(primitives, gltf.getJSONArray("meshes").getJSONObject(node.getInt("mesh")), matrix);
+    }
+    final JSONArray children = node.optJSONArray("children");
+    for (int i = 0; children != null && i < children.length(); ++i) {
+      addNode(primitives, children.getInt(i), matrix, depth + 1);
+    }
+  }
+
+  private void addMesh(List<Primitive> primitives, JSONObject mesh, float[] matrix)
+      throws IOException, JSONException {
+    final JSONArray meshPrimitives = mesh.getJSONArray("primitives");
+    for (int i = 0; i < meshPrimitives.length(); ++i) {
+      final JSONObject primitive = meshPrimitives.getJSONObject(i);
+      if (primitive.optInt("mode", MODE_TRIANGLES) != MODE_TRIANGLES) {
+        continue;
+      }
+
+      final JSONObject attributes = primitive.getJSONObject("attributes");
+      final Accessor positions = getAccessor(attributes.getInt("POSITION"), "VEC3");
+      final Accessor normals = attributes.has("NORMAL")
+          ? getAccessor(attributes.getInt("NORMAL"), "VEC3") : null;
+      final Accessor texCoords = attributes.has("TEXCOORD_0")
+          ? getAccessor(attributes.getInt("TEXCOORD_0"), "VEC2") : null;
+      final Accessor indices = primitive.has("indices")
+          ? getAccessor(primitive.getInt("indices"), "SCALAR") : null;
+      if (normals != null && normals.count != positions.count
+          || texCoords != null && texCoords.count != positions.count) {
+        throw new IOException("glTF attributes of different counts.");
+      }
+
+      final int material = primitive.optInt("material", -1);
+      primitives.add(new Primitive(positions, normals, texCoords, indices, getTexture(material),
+          getTexCoordTransform(material), matrix));
+    }
+  }
+
+  /**
+   * @return the primitive as views into the binary chunk, or null if it needs to be converted.
+   */
+  private Mesh wrap(Primitive primitive) throws IOException {
+    if (primitive.matrix != null || primitive.texCoordTransform != null
+        || primitive.normals == null || primitive.texCoords == null || primitive.indices == null
+        || primitive.indices.componentType != UNSIGNED_SHORT
+        || !primitive.positions.isPacked(FLOAT) || !primitive.normals.isPacked(FLOAT)
+        || !primitive.texCoords.isPacked(FLOAT) || !primitive.indices.isPacked(UNSIGNED_SHORT)) {
+      return null;
+    }
+
+    final ShortBuffer indices = primitive.indices.view().asShortBuffer();
+    // OpenGL would read out of bounds of the vertex buffer.
+    for (int i = 0; i < indices.limit(); ++i) {
+      if ((indices.get(i) & 0xFFFF) >= primitive.positions.count) {
+        throw new IOException("glTF index " + (indices.get(i) & 0xFFFF) + " out of range.");
+      }
+    }
+    return new Mesh(
+        primitive.positions.view().asFloatBuffer(),
+        primitive.texCoords.view().asFloatBuffer(),
+        primitive.normals.view().asFloatBuffer(),
+        indices,
+        new Mesh.Part[]{new Mesh.Part(0, indices.limit(), primitive.texture)},
+        getTextures());
+  }
+
+  /**
+   * Copies all primitives into one mesh, ordered by texture so each texture is drawn once.
+   */
+  private Mesh flatten(List<Primitive> primitives) throws IOException {
+    Collections.sort(primitives, new Comparator<Primitive>() {
+      @Override public int compare(Primitive a, Primitive b) {
+        return a.texture < b.texture ? -1 : a.texture == b.texture ? 0 : 1;
+      }
+    });
+
+    int vertexCount = 0;
+    int indexCount = 0;
+    for (final Primitive primitive : primitives) {
+      vertexCount += primitive.positions.count;
+      indexCount += primitive.indices != null ? primitive.indices.count : primitive.positions.count;
+    }
+    if (vertexCount > MAX_VERTICES) {
+      throw new IOException("glTF with " + vertexCount + " vertices, at most " + MAX_VERTICES
+          + " are supported.");
+    }
+
+    final FloatBuffer vertices = allocate(4 * 3 * vertexCount).asFloatBuffer();
+    final FloatBuffer texCoords = allocate(4 * 2 * vertexCount).asFloatBuffer();
+    final FloatBuffer normals = allocate(4 * 3 * vertexCount).asFloatBuffer();
+    final ShortBuffer indices = allocate(2 * indexCount).asShortBuffer();
+    final List<Mesh.Part> parts = new ArrayList<>();
+    final float[] value = new float[3];
+    final float[] transformed = new float[4];
+    final float[] normalMatrix = new float[9];
+
+    for (final Primitive primitive : primitives) {
+      final int baseVertex = vertices.position() / 3;
+      final int baseIndex = indices.position();
+      final boolean mirrored =
+          primitive.matrix != null && getNormalMatrix(primitive.matrix, normalMatrix) < 0;
+
+      for (int i = 0; i < primitive.positions.count; ++i) {
+        primitive.positions.read(i, value);
+        if (primitive.matrix != null) {
+          transformPoint(primitive.matrix, value, transformed);
+          vertices.put(transformed, 0, 3);
+        } else {
+          vertices.put(value, 0, 3);
+        }
+        if (primitive.texCoords != null) {
+          primitive.texCoords.read(i, value);
+          if (primitive.texCoordTransform != null) {
+            transformTexCoord(primitive.texCoordTransform, value);
+          }
+          texCoords.put(value, 0, 2);
+        } else {
+          texCoords.put(0.0f).put(0.0f);
+        }
+      }
+
+      for (int i = 0; i < (primitive.indices != null ? primitive.indices.count
+          : primitive.positions.count); ++i) {
+        final int index = primitive.indices != null ? primitive.indices.readIndex(i) : i;
+        if (index >= primitive.positions.count) {
+          throw new IOException("glTF index " + index + " out of range.");
+        }
+        indices.put((short) (baseVertex + index));
+      }
+      if (mirrored) {
+        // Mirroring transforms flip the winding, swap two corners back.
+        for (int i = baseIndex; i + 2 < indices.position(); i += 3) {
+          final short corner = indices.get(i + 1);
+          indices.put(i + 1, indices.get(i + 2));
+          indices.put(i + 2, corner);
+        }
+      }
+
+      if (primitive.normals != null) {
+        for (int i = 0; i < primitive.positions.count; ++i) {
+          primitive.normals.read(i, value);
+          if (primitive.matrix != null) {
+            transformNormal(normalMatrix, value);
+          }
+          normals.put(value, 0, 3);
+        }
+      } else {
+        computeNormals(vertices, indices, baseVertex, primitive.positions.count, baseIndex,
+            normals);
+      }
+
+      final int count = indices.position() - baseIndex;
+      final Mesh.Part last = parts.isEmpty() ? null : parts.get(parts.size() - 1);
+      if (last != null && last.getTexture() == primitive.texture) {
+        parts.set(parts.size() - 1,
+            new Mesh.Part(last.getIndexOffset(), last.getIndexCount() + count, last.getTexture()));
+      } else {
+        parts.add(new Mesh.Part(baseIndex, count, primitive.texture));
+      }
+    }
+
+    vertices.rewind();
+    texCoords.rewind();
+    normals.rewind();
+    indices.rewind();
+    return new Mesh(vertices, texCoords, normals, indices,
+        parts.toArray(new Mesh.Part[parts.size()]), getTextures());
+  }
+
+  /**
+   * @return the index of the base color texture of the material among the mesh's textures, or
+   *     {@link Mesh.Part#TEXTURE_FILE} if it has none embedded.
+   */
+  private int getTexture(int materialIndex) throws JSONException {
+    final JSONObject baseColor = getBaseColorTexture(materialIndex);
+    final JSONArray textures = gltf.optJSONArray("textures");
+    if (baseColor == null || textures == null) {
+      return Mesh.Part.TEXTURE_FILE;
+    }
+    final int image = textures.getJSONObject(baseColor.getInt("index")).optInt("source", -1);
+    final JSONArray imageArray = gltf.optJSONArray("images");
+    if (image < 0 || imageArray == null || !imageArray.getJSONObject(image).has("bufferView")) {
+      // Images referenced by uri are not embedded.
+      return Mesh.Part.TEXTURE_FILE;
+    }
+
+    int texture = images.indexOf(image);
+    if (texture < 0) {
+      texture = images.size();
+      images.add(image);
+    }
+    return texture;
+  }
+
+  /**
+   * @return the KHR_texture_transform of the material's base color texture as affine 3x2 matrix
+   *     in column-major order, or null if it has none.
+   */
+  private float[] getTexCoordTransform(int materialIndex) throws JSONException {
+    final JSONObject baseColor = getBaseColorTexture(materialIndex);
+    final JSONObject extensions = baseColor != null ? baseColor.optJSONObject("extensions") : null;
+    final JSONObject transform =
+        extensions != null ? extensions.optJSONObject(KHR_TEXTURE_TRANSFORM) : null;
+    if (transform == null) {
+      return null;
+    }
+
+    final JSONArray offset = transform.optJSONArray("offset");
+    final JSONArray scale = transform.optJSONArray("scale");
+    final double rotation = transform.optDouble("rotation", 0.0);
+    final float cos = (float) Math.cos(rotation);
+    final float sin = (float) Math.sin(rotation);
+    final float scaleU = scale != null ? (float) scale.getDouble(0) : 1.0f;
+    final float scaleV = scale != null ? (float) scale.getDouble(1) : 1.0f;
+    return new float[]{
+        cos * scaleU, -sin * scaleU,
+        sin * scaleV, cos * scaleV,
+        offset != null ? (float) offset.getDouble(0) : 0.0f,
+        offset != null ? (float) offset.getDouble(1) : 0.0f};
+  }
+
+  private JSONObject getBaseColorTexture(int materialIndex) throws JSONException {
+    final JSONArray materials = gltf.optJSONArray("materials");
+    if (materialIndex < 0 || materials == null || materialIndex >= materials.length()) {
+      return null;
+    }
+    final JSONObject pbr = materials.getJSONObject(materialIndex)
+        .optJSONObject("pbrMetallicRoughness");
+    return pbr != null ? pbr.optJSONObject("baseColorTexture") : null;
+  }
+
+  /**
+   * @return the embedded images of all textures referenced by the mesh, null for broken ones.
+   */
+  private ByteBuffer[] getTextures() {
+    final ByteBuffer[] textures = new ByteBuffer[images.size()];
+    for (int i = 0; i < textures.length; ++i) {
+      try {
+        final JSONObject view = gltf.getJSONArray("bufferViews").getJSONObject(
+            gltf.getJSONArray("images").getJSONObject(images.get(i)).getInt("bufferView"));
+        textures[i] = slice(bin, view.optInt("byteOffset", 0), view.getInt("byteLength"));
+      } catch (JSONException | IndexOutOfBoundsException | IllegalArgumentException e) {
+        // A broken image only loses its texture, the geometry is kept.
+        textures[i] = null;
+      }
+    }
+    return textures;
+  }
+
+  private Accessor getAccessor(int index, String type) throws IOException, JSONException {
+    final JSONObject accessor = gltf.getJSONArray("accessors").getJSONObject(index);
+    if (!type.equals(accessor.getString("type"))) {
+      throw new IOException("glTF accessor " + index + " is " + accessor.getString("type")
+          + ", expected " + type + ".");
+    }
+    if (accessor.has("sparse") || !accessor.has("bufferView")) {
+      throw new IOException("glTF accessor " + index + " without plain buffer view.");
+    }
+
+    final int viewIndex = accessor.getInt("bufferView");
+    final JSONObject view = gltf.getJSONArray("bufferViews").getJSONObject(viewIndex);
+    final ByteBuffer data = getBufferView(viewIndex);
+    final int componentType = accessor.getInt("componentType");
+    final int components = "SCALAR".equals(type) ? 1 : "VEC2".equals(type) ? 2 : 3;
+    final int elementBytes = components * getComponentBytes(componentType);
+    final int stride = view.optInt("byteStride", 0) != 0 ? view.getInt("byteStride") : elementBytes;
+    final int count = accessor.getInt("count");
+    final int offset = accessor.optInt("byteOffset", 0);
+    if (count < 0 || stride < elementBytes || offset < 0
+        || count > 0 && (long) offset + (long) stride * (count - 1) + elementBytes
+        > data.capacity()) {
+      throw new IOException("glTF accessor " + index + " out of bounds.");
+    }
+    return new Accessor(data, offset, count, stride, components, componentType,
+        accessor.optBoolean("normalized", false));
+  }
+
+  /**
+   * @return the bytes of a buffer view. Compressed views are decoded when first read, so those of
+   *     data the mesh doesn't use, like animations, are never decoded.
+   */
+  private ByteBuffer getBufferView(int index) throws IOException, JSONException {
+    ByteBuffer data = bufferViews.get(index);
+    if (data != null) {
+      return data;
+    }
+
+    final JSONObject view = gltf.getJSONArray("bufferViews").getJSONObject(index);
+    final JSONObject extensions = view.optJSONObject("extensions");
+    final JSONObject meshopt =
+        extensions != null ? extensions.optJSONObject(EXT_MESHOPT_COMPRESSION) : null;
+    if (meshopt != null) {
+      data = decodeBufferView(index, meshopt, view.getInt("byteLength"));
+    } else {
+      data = getBufferSlice(index, view);
+    }
+    bufferViews.put(index, data);
+    return data;
+  }
+
+  private ByteBuffer decodeBufferView(int index, JSONObject meshopt, int byteLength)
+      throws IOException, JSONException {
+    final ByteBuffer source = getBufferSlice(index, meshopt);
+    final int count = meshopt.getInt("count");
+    final int stride = meshopt.getInt("byteStride");
+    if (count < 0 || stride <= 0 || (long) count * stride > byteLength) {
+      throw new IOException("glTF buffer view " + index + " decodes out of bounds.");
+    }
+
+    final ByteBuffer data;
+    final String mode = meshopt.getString("mode");
+    if ("ATTRIBUTES".equals(mode)) {
+      data = MeshoptDecoder.decodeVertexBuffer(source, count, stride);
+    } else if ("TRIANGLES".equals(mode)) {
+      data = MeshoptDecoder.decodeIndexBuffer(source, count, stride);
+    } else {
+      throw new IOException("Unsupported meshopt mode " + mode + ".");
+    }
+
+    final String filter = meshopt.optString("filter", "NONE");
+    if ("OCTAHEDRAL".equals(filter)) {
+      MeshoptDecoder.decodeOctahedralFilter(data, count, stride);
+    } else if ("EXPONENTIAL".equals(filter)) {
+      MeshoptDecoder.decodeExponentialFilter(data, count, stride);
+    } else if (!"NONE".equals(filter)) {
+      throw new IOException("Unsupported meshopt filter " + filter + ".");
+    }
+    return data;
+  }
+
+  /**
+   * @param range a buffer view or its compressed data, with buffer, offset and length.
+   */
+  private ByteBuffer getBufferSlice(int index, JSONObject range)
+      throws IOException, JSONException {
+    if (range.optInt("buffer", 0) != 0) {
+      throw new IOException("glTF buffer " + range.getInt("buffer") + " is not embedded.");
+    }
+    final int offset = range.optInt("byteOffset", 0);
+    final int length = range.getInt("byteLength");
+    if (offset < 0 || length < 0 || length > bin.capacity() || offset > bin.capacity() - length) {
+      throw new IOException("glTF buffer view " + index + " out of bounds.");
+    }
+    return slice(bin, offset, length);
+  }
+
+  private static float[] getLocalMatrix(JSONObject node) throws JSONException {
+    final JSONArray values = node.optJSONArray("matrix");
+    if (values != null) {
+      final float[] matrix = new float[16];
+      for (int i = 0; i < 16; ++i) {
+        matrix[i] = (float) values.getDouble(i);
+      }
+      return matrix;
+    }
+
+    final JSONArray translation = node.optJSONArray("translation");
+    final JSONArray rotation = node.optJSONArray("rotation");
+    final JSONArray scale = node.optJSONArray("scale");
+    if (translation == null && rotation == null && scale == null) {
+      return null;
+    }
+
+    final float[] matrix = new float[16];
+    MatrixMath.setIdentityM(matrix, 0);
+    if (rotation != null) {
+      final float x = (float) rotation.getDouble(0);
+      final float y = (float) rotation.getDouble(1);
+      final float z = (float) rotation.getDouble(2);
+      final float w = (float) rotation.getDouble(3);
+      matrix[0] = 1 - 2 * (y * y + z * z);
+      matrix[1] = 2 * (x * y + z * w);
+      matrix[2] = 2 * (x * z - y * w);
+      matrix[4] = 2 * (x * y - z * w);
+      matrix[5] = 1 - 2 * (x * x + z * z);
+      matrix[6] = 2 * (y * z + x * w);
+      matrix[8] = 2 * (x * z + y * w);
+      matrix[9] = 2 * (y * z - x * w);
+      matrix[10] = 1 - 2 * (x * x + y * y);
+    }
+    for (int column = 0; scale != null && column < 3; ++column) {
+      final float factor = (float) scale.getDouble(column);
+      for (int row = 0; row < 3; ++row) {
+        matrix[4 * column + row] *= factor;
+      }
+    }
+    for (int row = 0; translation != null && row < 3; ++row) {
+      matrix[12 + row] = (float) translation.getDouble(row);
+    }
+    return matrix;
+  }
+
+  /**
+   * Computes the cofactors of the upper 3x3 of the matrix, the inverse transpose scaled by the
+   * determinant, which transforms normals.
+   *
+   * @return the determinant.
+   */
+  private static float getNormalMatrix(float[] matrix, float[] normalMatrix) {
+    // The columns of the cofactor matrix are the cross products of the other two columns.
+    for (int column = 0; column < 3; ++column) {
+      final int a = 4 * ((column + 1) % 3);
+      final int b = 4 * ((column + 2) % 3);
+      normalMatrix[3 * column] = matrix[a + 1] * matrix[b + 2] - matrix[a + 2] * matrix[b + 1];
+      normalMatrix[3 * column + 1] = matrix[a + 2] * matrix[b] - matrix[a] * matrix[b + 2];
+      normalMatrix[3 * column + 2] = matrix[a] * matrix[b + 1] - matrix[a + 1] * matrix[b];
+    }
+    final float determinant = matrix[0] * normalMatrix[0] + matrix[1] * normalMatrix[1]
+        + matrix[2] * normalMatrix[2];
+    if (determinant < 0) {
+      for (int i = 0; i < 9; ++i) {
+        normalMatrix[i] = -normalMatrix[i];
+      }
+    }
+    return determinant;
+  }
+
+  private static void transformPoint(float[] matrix, float[] point, float[] result) {
+    for (int row = 0; row < 3; ++row) {
+      result[row] = matrix[row] * point[0] + matrix[4 + row] * point[1]
+          + matrix[8 + row] * point[2] + matrix[12 + row];
+    }
+  }
+
+  private static void transformTexCoord(float[] transform, float[] texCoord) {
+    final float u = texCoord[0];
+    final float v = texCoord[1];
+    texCoord[0] = transform[0] * u + transform[2] * v + transform[4];
+    texCoord[1] = transform[1] * u + transform[3] * v + transform[5];
+  }
+
+  private static void transformNormal(float[] normalMatrix, float[] normal) {
+    final float x = normal[0];
+    final float y = normal[1];
+    final float z = normal[2];
+    for (int row = 0; row < 3; ++row) {
+      normal[row] = normalMatrix[row] * x + normalMatrix[3 + row] * y + normalMatrix[6 + row] * z;
+    }
+    normalize(normal);
+  }
+
+  /**
+   * Puts the normals of a primitive without them, averaged over the faces of each vertex.
+   */
+  private static void computeNormals(FloatBuffer vertices, ShortBuffer indices, int baseVertex,
+                                     int vertexCount, int baseIndex, FloatBuffer normals) {
+    final float[] sums = new float[3 * vertexCount];
+    final int[] corners = new int[3];
+    for (int i = baseIndex; i + 2 < indices.position(); i += 3) {
+      for (int corner = 0; corner < 3; ++corner) {
+        corners[corner] = 3 * (indices.get(i + corner) & 0xFFFF);
+      }
+      final float ux = vertices.get(corners[1]) - vertices.get(corners[0]);
+      final float uy = vertices.get(corners[1] + 1) - vertices.get(corners[0] + 1);
+      final float uz = vertices.get(corners[1] + 2) - vertices.get(corners[0] + 2);
+      final float vx = vertices.get(corners[2]) - vertices.get(corners[0]);
+      final float vy = vertices.get(corners[2] + 1) - vertices.get(corners[0] + 1);
+      final float vz = vertices.get(corners[2] + 2) - vertices.get(corners[0] + 2);
+      // Weighted by the face area.
+      final float nx = uy * vz - uz * vy;
+      final float ny = uz * vx - ux * vz;
+      final float nz = ux * vy - uy * vx;
+      for (int corner = 0; corner < 3; ++corner) {
+        final int sum = corners[corner] - 3 * baseVertex;
+        sums[sum] += nx;
+        sums[sum + 1] += ny;
+        sums[sum + 2] += nz;
+      }
+    }
+
+    final float[] normal = new float[3];
+    for (int i = 0; i < vertexCount; ++i) {
+      System.arraycopy(sums, 3 * i, normal, 0, 3);
+      normalize(normal);
+      normals.put(normal);
+    }
+  }
+
+  private static void normalize(float[] vector) {
+    final float length = (float) Math.sqrt(
+        vector[0] * vector[0] + vector[1] * vector[1] + vector[2] * vector[2]);
+    if (length > 0) {
+      vector[0] /= length;
+      vector[1] /= length;
+      vector[2] /= length;
+    } else {
+      vector[0] = 0.0f;
+      vector[1] = 1.0f;
+      vector[2] = 0.0f;
+    }
+  }
+
+  private static int getComponentBytes(int componentType) throws IOException {
+    switch (componentType) {
+      case BYTE:
+      case UNSIGNED_BYTE:
+        return 1;
+      case SHORT:
+      case UNSIGNED_SHORT:
+        return 2;
+      case UNSIGNED_INT:
+      case FLOAT:
+        return 4;
+      default:
+        throw new IOException("Unknown glTF component type " + componentType + ".");
+    }
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    final ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(offset).limit(offset + length);
+    return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static ByteBuffer allocate(int bytes) {
+    return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+  }
+
+  private static final class Accessor {
+    private final ByteBuffer data;
+    private final int offset;
+    private final int count;
+    private final int stride;
+    private final int components;
+    private final int componentType;
+    private final boolean normalized;
+
+    Accessor(ByteBuffer data, int offset, int count, int stride, int components,
+             int componentType, boolean normalized) {
+      this.data = data;
+      this.offset = offset;
+      this.count = count;
+      this.stride = stride;
+      this.components = components;
+      this.componentType = componentType;
+      this.normalized = normalized;
+    }
+
+    /**
+     * @return whether the elements are consecutive values of the given type, which OpenGL can
+     *     read as they are.
+     */
+    boolean isPacked(int type) {
+      return componentType == type && !normalized
+          && stride == components * (type == FLOAT ? 4 : 2)
+          // Typed views of the chunk read in native order.
+          && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN
+          // Decoded views are on the heap, they are copied into direct buffers by flattening.
+          && data.isDirect();
+    }
+
+    ByteBuffer view() {
+      return slice(data, offset, stride * count).order(ByteOrder.nativeOrder());
+    }
+
+    void read(int element, float[] result) {
+      final int position = offset + element * stride;
+      for (int i = 0; i < components; ++i) {
+        result[i] = readComponent(data, position, i);
+      }
+    }
+
+    int readIndex(int element) {
+      final int position = offset + element * stride;
+      switch (componentType) {
+        case UNSIGNED_BYTE:
+          return data.get(position) & 0xFF;
+        case UNSIGNED_SHORT:
+          return data.getShort(position) & 0xFFFF;
+        default:
+          return data.getInt(position);
+      }
+    }
+
+    private float readComponent(ByteBuffer buffer, int position, int component) {
+      switch (componentType) {
+        case FLOAT:
+          return buffer.getFloat(position + 4 * component);
+        case BYTE: {
+          final byte value = buffer.get(position + component);
+          return normalized ? Math.max(value / 127.0f, -1.0f) : value;
+        }
+        case UNSIGNED_BYTE: {
+          final int value = buffer.get(position + component) & 0xFF;
+          return normalized ? value / 255.0f : value;
+        }
+        case SHORT: {
+          final short value = buffer.getShort(position + 2 * component);
+          return normalized ? Math.max(value / 32767.0f, -1.0f) : value;
+        }
+        case UNSIGNED_SHORT: {
+          final int value = buffer.getShort(position + 2 * component) & 0xFFFF;
+          return normalized ? value / 65535.0f : value;
+        }
+        default:
+          return buffer.getInt(position + 4 * component);
+      }
+    }
+  }
+
+  private static final class Primitive {
+    private final Accessor positions;
+    private final Accessor normals;
+    private final Accessor texCoords;
+    private final Accessor indices;
+    private final int texture;
+    private final float[] texCoordTransform;
+    private final float[] matrix;
+
+    Primitive(Accessor positions, Accessor normals, Accessor texCoords, Accessor indices,
+              int texture, float[] texCoordTransform, float[] matrix) {
+      this.positions = positions;
+      this.normals = normals;
+      this.texCoords = texCoords;
+      this.indices = indices;
+      this.texture = texture;
+      this.texCoordTransform = texCoordTransform;
+      this.matrix = matrix;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.contentful.ar.rendering;
+
+
+/**
+ * Allocation free 4x4 matrix operations on column-major float arrays, laid out like
+ * {@link android.opengl.Matrix}.
+ * <p>
+ * Unlike {@code android.opengl.Matrix}, which is implemented natively on the device, this class
+ * does not depend on Android, so the math can be benchmarked and replayed on a desktop JVM.
+ */
+public final class MatrixMath {
+  private MatrixMath() {
+  }
+
+  /**
+   * Multiplies two 4x4 matrices, {@code result = lhs * rhs}.
+   * <p>
+   * {@code result} must not overlap with {@code lhs} or {@code rhs}.
+   */
+  public static void multiplyMM(float[] result, int resultOffset,
+                                float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    for (int column = 0; column < 4; ++column) {
+      final float r0 = rhs[rhsOffset + column * 4];
+      final float r1 = rhs[rhsOffset + column * 4 + 1];
+      final float r2 = rhs[rhsOffset + column * 4 + 2];
+      final float r3 = rhs[rhsOffset + column * 4 + 3];
+      for (int row = 0; row < 4; ++row) {
+        result[resultOffset + column * 4 + row] =
+            lhs[lhsOffset + row] * r0
+                + lhs[lhsOffset + 4 + row] * r1
+                + lhs[lhsOffset + 8 + row] * r2
+                + lhs[lhsOffset + 12 + row] * r3;
+      }
+    }
+  }
+
+  /**
+   * Scales a 4x4 matrix uniformly, {@code result = matrix * scale(factor)}, without building the
+   * scale matrix.
+   */
+  public static void scaleM(float[] result, int resultOffset,
+                            float[] matrix, int matrixOffset, float factor) {
+    for (int i = 0; i < 12; ++i) {
+      result[resultOffset + i] = matrix[matrixOffset + i] * factor;
+    }
+    for (int i = 12; i < 16; ++i) {
+      result[resultOffset + i] = matrix[matrixOffset + i];
+    }
+  }
+
+  /**
+   * Multiplies a 4x4 matrix with a 4 component vector, {@code result = lhs * rhs}.
+   * <p>
+   * {@code result} must not overlap with {@code rhs}.
+   */
+  public static void multiplyMV(float[] result, int resultOffset,
+                                float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    final float x = rhs[rhsOffset];
+    final float y = rhs[rhsOffset + 1];
+    final float z = rhs[rhsOffset + 2];
+    final float w = rhs[rhsOffset + 3];
+    for (int row = 0; row < 4; ++row) {
+      result[resultOffset + row] = lhs[lhsOffset + row] * x
+          + lhs[lhsOffset + 4 + row] * y
+          + lhs[lhsOffset + 8 + row] * z
+          + lhs[lhsOffset + 12 + row] * w;
+    }
+  }
+
+  /**
+   * Sets a 4x4 matrix to the identity.
+   */
+  public static void setIdentityM(float[] matrix, int offset) {
+    for (int i = 0; i < 16; ++i) {
+      matrix[offset + i] = i % 5 == 0 ? 1.0f : 0.0f;
+    }
+  }
+}
@@ -0,0 +1,494 @@
+package com.contentful.ar.rendering;
+
+
+import com.contentful.ar.io.Streams;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import de.javagl.obj.Mtl;
+import de.javagl.obj.MtlReader;
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+
+/**
+ * Single-indexed triangle mesh in direct buffers, ready to be uploaded to OpenGL.
+ * <p>
+ * The indices are split into {@link Part parts}, each drawn with one texture: either one
+ * embedded in the model file, or the texture file of the renderer. Meshes parsed from OBJ files
+ * have one part per material, {@link #bindMaterials} then assigns the materials' textures and
+ * merges the parts sharing one.
+ * <p>
+ * This class does not depend on Android, so loading can be benchmarked on a desktop JVM.
+ */
+public class Mesh {
+  public static final String OBJ_EXTENSION = ".obj";
+  public static final String GLB_EXTENSION = ".glb";
+
+  private static final FileResolver SAME_FILE = new FileResolver() {
+    @Override public File resolve(File file) {
+      return file;
+    }
+  };
+
+  private final FloatBuffer vertices;
+  private final FloatBuffer texCoords;
+  private final FloatBuffer normals;
+  private final ShortBuffer indices;
+  private final Part[] parts;
+  private final ByteBuffer[] textures;
+  private final String materialLibrary;
+
+  public Mesh(FloatBuffer vertices, FloatBuffer texCoords, FloatBuffer normals,
+              ShortBuffer indices) {
+    this(vertices, texCoords, normals, indices,
+        new Part[]{new Part(0, indices.limit(), Part.TEXTURE_FILE)}, new ByteBuffer[0]);
+  }
+
+  /**
+   * @param parts    ranges of the indices, drawn in this order.
+   * @param textures encoded images, e.g. PNG or JPEG files, referenced by the parts.
+   */
+  public Mesh(FloatBuffer vertices, FloatBuffer texCoords, FloatBuffer normals,
+              ShortBuffer indices, Part[] parts, ByteBuffer[] textures) {
+    this(vertices, texCoords, normals, indices, parts, textures, null);
+  }
+
+  /**
+   * @param materialLibrary the file name of the OBJ material library next to the model file,
+   *     or null.
+   */
+  public Mesh(FloatBuffer vertices, FloatBuffer texCoords, FloatBuffer normals,
+              ShortBuffer indices, Part[] parts, ByteBuffer[] textures, String materialLibrary) {
+    this.vertices = vertices;
+    this.texCoords = texCoords;
+    this.normals = normals;
+    this.indices = indices;
+    this.parts = parts;
+    this.textures = textures;
+    this.materialLibrary = materialLibrary;
+  }
+
+  /**
+   * @return whether the model file is read as GLB, glTF 2.0 binary, rather than OBJ.
+   */
+  public static boolean isGlb(String fileName) {
+    return fileName.toLowerCase(Locale.US).endsWith(GLB_EXTENSION);
+  }
+
+  /**
+   * Reads a model file with the loader for its extension. GLB files are mapped into memory, see
+   * {@link GlbLoader#read(File)}. OBJ files get the textures of their material library, if it is
+   * next to them, see {@link #readMaterialTextures}.
+   */
+  public static Mesh load(File file) throws IOException {
+    return load(file, SAME_FILE);
+  }
+
+  /**
+   * Reads a model file like {@link #load(File)}, from where the resolver maps it to, like the
+   * files an OBJ file references.
+   *
+   * @param file the model file as known to the resolver, e.g. by the name it was imported as,
+   *             which the files it references are relative to.
+   */
+  public static Mesh load(File file, FileResolver resolver) throws IOException {
+    final File resolved = resolver.resolve(file);
+    if (isGlb(file.getName())) {
+      return GlbLoader.read(resolved);
+    }
+    final Mesh mesh;
+    try (InputStream input = new FileInputStream(resolved)) {
+      mesh = parseObj(input);
+    }
+    return mesh.bindMaterials(readMaterialTextures(
+        file.getAbsoluteFile().getParentFile(), mesh.getMaterialLibrary(), resolver));
+  }
+
+  /**
+   * Reads a model with the loader for the extension of its file name, e.g. while downloading it.
+   *
+   * @param input the file content, not closed by this method.
+   */
+  public static Mesh load(String fileName, InputStream input) throws IOException {
+    if (isGlb(fileName)) {
+      return GlbLoader.read(input);
+    }
+    return load(input);
+  }
+
+  /**
+   * Reads a model like {@link #load(String, InputStream)}, with the textures of an OBJ file's
+   * material library, resolved relative to the file name.
+   *
+   * @param fileName the file the model is saved as.
+   */
+  public static Mesh load(String fileName, InputStream input, FileResolver resolver)
+      throws IOException {
+    final Mesh mesh = load(fileName, input);
+    if (mesh.getMaterialLibrary() == null) {
+      return mesh;
+    }
+    return mesh.bindMaterials(readMaterialTextures(
+        new File(fileName).getAbsoluteFile().getParentFile(), mesh.getMaterialLibrary(),
+        resolver));
+  }
+
+  /**
+   * Reads an OBJ file, without a material library all of its parts use the texture file.
+   *
+   * @param input the OBJ file content, not closed by this method.
+   */
+  public static Mesh load(InputStream input) throws IOException {
+    return parseObj(input).bindMaterials(Collections.<String, ByteBuffer>emptyMap());
+  }
+
+  /**
+   * Reads an OBJ file with the {@link NativeMeshLoader}, or with {@link #readObj} where the native
+   * library is not available.
+   */
+  private static Mesh parseObj(InputStream input) throws IOException {
+    if (NativeMeshLoader.isAvailable()) {
+      return NativeMeshLoader.readObj(input);
+    }
+    return readObj(input);
+  }
+
+  /**
+   * Reads an OBJ file and converts it into a renderable mesh.
+   *
+   * @param input the OBJ file content, not closed by this method.
+   */
+  public static Mesh readObj(InputStream input) throws IOException {
+    return fromObj(ObjReader.read(input));
+  }
+
+  /**
+   * Converts a parsed OBJ into a renderable mesh, with one part per material group, in the order
+   * the materials are first used.
+   */
+  public static Mesh fromObj(Obj obj) {
+    final List<String> libraries = obj.getMtlFileNames();
+    final String materialLibrary = libraries.isEmpty() ? null : libraries.get(0);
+
+    // Prepare the Obj so that its structure is suitable for
+    // rendering with OpenGL:
+    // 1. Triangulate it
+    // 2. Make sure that texture coordinates are not ambiguous
+    // 3. Make sure that normals are not ambiguous
+    // 4. Convert it to single-indexed data
+    obj = ObjUtils.convertToRenderable(obj);
+
+    // OpenGL does not use Java arrays. ByteBuffers are used instead to provide data in a format
+    // that OpenGL understands.
+
+    // Obtain the data from the OBJ, as direct buffers:
+    IntBuffer wideIndices = ObjData.getFaceVertexIndices(obj, 3);
+    FloatBuffer vertices = ObjData.getVertices(obj);
+    FloatBuffer texCoords = ObjData.getTexCoords(obj, 2);
+    FloatBuffer normals = ObjData.getNormals(obj);
+
+    // Sort the triangles by material, keeping their order within each one, so every material is
+    // drawn from one range of the indices. Faces before the first 'usemtl' have no material.
+    final List<String> materials = new ArrayList<>();
+    final int[] faceMaterials = new int[obj.getNumFaces()];
+    String material = null;
+    for (int i = 0; i < faceMaterials.length; ++i) {
+      // Only the first face after a 'usemtl' activates its material group.
+      final String activated = obj.getActivatedMaterialGroupName(obj.getFace(i));
+      if (activated != null) {
+        material = activated;
+      }
+      int index = materials.indexOf(material);
+      if (index < 0) {
+        index = materials.size();
+        materials.add(material);
+      }
+      faceMaterials[i] = index;
+    }
+    if (materials.size() < 2) {
+      final ShortBuffer indices = narrowIndices(wideIndices);
+      return new Mesh(vertices, texCoords, normals, indices,
+          new Part[]{new Part(0, indices.limit(), Part.TEXTURE_FILE,
+              materials.isEmpty() ? null : materials.get(0))},
+          new ByteBuffer[0], materialLibrary);
+    }
+
+    final int[] next = new int[materials.size()];
+    for (final int faceMaterial : faceMaterials) {
+      next[faceMaterial] += 3;
+    }
+    final Part[] parts = new Part[materials.size()];
+    for (int i = 0, offset = 0; i < parts.length; ++i) {
+      parts[i] = new Part(offset, next[i], Part.TEXTURE_FILE, materials.get(i));
+      next[i] = offset;
+      offset += parts[i].getIndexCount();
+    }
+    final ShortBuffer indices = ByteBuffer.allocateDirect(2 * wideIndices.remaining())
+        .order(ByteOrder.nativeOrder()).asShortBuffer();
+    for (final int faceMaterial : faceMaterials) {
+      for (int corner = 0; corner < 3; ++corner) {
+        indices.put(next[faceMaterial]++, (short) wideIndices.get());
+      }
+    }
+    return new Mesh(vertices, texCoords, normals, indices, parts, new ByteBuffer[0],
+        materialLibrary);
+  }
+
+  /**
+   * Reads the diffuse textures, {@code map_Kd}, of the materials in an OBJ material library.
+   * Missing libraries and texture files are skipped, the parts of their materials use the texture
+   * file.
+   *
+   * @param directory the directory of the OBJ file, which texture and library paths are
+   *                  relative to.
+   * @param library   the file name of the material library, or null.
+   * @param resolver  maps the library and texture files to the files read.
+   * @return the encoded images by material name, materials sharing a file share the buffer.
+   */
+  public static Map<String, ByteBuffer> readMaterialTextures(
+      File directory, String library, FileResolver resolver) throws IOException {
+    final Map<String, ByteBuffer> materialTextures = new HashMap<>();
+    final File libraryFile = library != null ? resolve(directory, library, resolver) : null;
+    if (libraryFile == null) {
+      return materialTextures;
+    }
+
+    final List<Mtl> mtls;
+    try (InputStream input = new FileInputStream(libraryFile)) {
+      mtls = MtlReader.read(input);
+    }
+    final Map<File, ByteBuffer> images = new HashMap<>();
+    for (final Mtl mtl : mtls) {
+      final String map = mtl.getMapKd();
+      File imageFile = map != null ? resolve(directory, map, resolver) : null;
+      if (imageFile == null && map != null) {
+        // Options like '-s 1 1 1' precede the file name.
+        imageFile = resolve(directory, map.substring(map.trim().lastIndexOf(' ') + 1), resolver);
+      }
+      if (imageFile == null) {
+        continue;
+      }
+      ByteBuffer image = images.get(imageFile);
+      if (image == null) {
+        try (InputStream input = new FileInputStream(imageFile)) {
+          image = Streams.readDirect(input, (int) imageFile.length());
+        }
+        images.put(imageFile, image);
+      }
+      materialTextures.put(mtl.getName(), image);
+    }
+    return materialTextures;
+  }
+
+  /**
+   * @return the resolved file at the given path, which may use Windows separators, or null if it
+   *     does not exist.
+   */
+  private static File resolve(File directory, String path, FileResolver resolver) {
+    final File file = resolver.resolve(new File(directory, path.trim().replace('\\', '/')));
+    return file.isFile() ? file : null;
+  }
+
+  /**
+   * Assigns the textures of their materials to the parts using the texture file, and sorts the
+   * parts by texture, so materials sharing a texture are merged into one part, drawn in one call.
+   * The vertices are shared with this mesh.
+   *
+   * @param materialTextures encoded images by material name, see {@link #readMaterialTextures}.
+   *                         Parts of other materials keep using the texture file.
+   * @return this mesh, if nothing changed.
+   */
+  public Mesh bindMaterials(Map<String, ByteBuffer> materialTextures) {
+    final List<ByteBuffer> boundTextures = new ArrayList<>(Arrays.asList(textures));
+    final Part[] boundParts = new Part[parts.length];
+    boolean changed = false;
+    for (int i = 0; i < parts.length; ++i) {
+      final Part part = parts[i];
+      final ByteBuffer image = part.getTexture() == Part.TEXTURE_FILE
+          ? materialTextures.get(part.getMaterial()) : null;
+      if (image == null) {
+        boundParts[i] = part;
+        continue;
+      }
+      int texture = 0;
+      while (texture < boundTextures.size() && boundTextures.get(texture) != image) {
+        ++texture;
+      }
+      if (texture == boundTextures.size()) {
+        boundTextures.add(image);
+      }
+      boundParts[i] = new Part(part.getIndexOffset(), part.getIndexCount(), texture,
+          part.getMaterial());
+      changed = true;
+    }
+
+    // Stable, so materials of the same texture stay in the order of the file.
+    Arrays.sort(boundParts, new Comparator<Part>() {
+      @Override
+      public int compare(Part a, Part b) {
+        return a.getTexture() < b.getTexture() ? -1 : (a.getTexture() == b.getTexture() ? 0 : 1);
+      }
+    });
+    for (int i = 0; i < boundParts.length && !changed; ++i) {
+      changed = boundParts[i] != parts[i]
+          || (i > 0 && boundParts[i].getTexture() == boundParts[i - 1].getTexture());
+    }
+    if (!changed) {
+      return this;
+    }
+
+    final List<Part> mergedParts = new ArrayList<>();
+    final ShortBuffer boundIndices = ByteBuffer.allocateDirect(2 * indices.limit())
+        .order(ByteOrder.nativeOrder()).asShortBuffer();
+    for (final Part part : boundParts) {
+      final Part last = mergedParts.isEmpty() ? null : mergedParts.get(mergedParts.size() - 1);
+      if (last != null && last.getTexture() == part.getTexture()) {
+        mergedParts.set(mergedParts.size() - 1, new Part(last.getIndexOffset(),
+            last.getIndexCount() + part.getIndexCount(), last.getTexture(),
+            part.getMaterial() != null && part.getMaterial().equals(last.getMaterial())
+                ? last.getMaterial() : null));
+      } else {
+        mergedParts.add(new Part(boundIndices.position(), part.getIndexCount(),
+            part.getTexture(), part.getMaterial()));
+      }
+      final ShortBuffer range = indices.duplicate();
+      range.limit(part.getIndexOffset() + part.getIndexCount()).position(part.getIndexOffset());
+      boundIndices.put(range);
+    }
+    boundIndices.rewind();
+    return new Mesh(vertices, texCoords, normals, boundIndices,
+        mergedParts.toArray(new Part[mergedParts.size()]),
+        boundTextures.toArray(new ByteBuffer[boundTextures.size()]), materialLibrary);
+  }
+
+  /**
+   * Converts int indices to shorts for GL ES 2.0 compatibility.
+   */
+  public static ShortBuffer narrowIndices(IntBuffer wideIndices) {
+    ShortBuffer indices = ByteBuffer.allocateDirect(2 * wideIndices.remaining())
+        .order(ByteOrder.nativeOrder()).asShortBuffer();
+    while (wideIndices.hasRemaining()) {
+      indices.put((short) wideIndices.get());
+    }
+    indices.rewind();
+    return indices;
+  }
+
+  public FloatBuffer getVertices() {
+    return vertices;
+  }
+
+  public FloatBuffer getTexCoords() {
+    return texCoords;
+  }
+
+  public FloatBuffer getNormals() {
+    return normals;
+  }
+
+  public ShortBuffer getIndices() {
+    return indices;
+  }
+
+  public Part[] getParts() {
+    return parts;
+  }
+
+  /**
+   * @return the encoded images of the textures referenced by the parts, which must not be
+   *     modified.
+   */
+  public ByteBuffer[] getTextures() {
+    return textures;
+  }
+
+  /**
+   * @return the file name given to the first {@code mtllib} of an OBJ file, or null.
+   */
+  public String getMaterialLibrary() {
+    return materialLibrary;
+  }
+
+  /**
+   * Maps a model file and the files an OBJ file references, its material library and the textures
+   * in it, to the files to read, e.g. to the ones stored by their content.
+   */
+  public interface FileResolver {
+    /**
+     * @param file the model file, or a file it references, relative to the directory of the
+     *             model file.
+     * @return the file to read, which may not exist.
+     */
+    File resolve(File file);
+  }
+
+  /**
+   * Range of the indices drawn with one texture, of one material where read from an OBJ file.
+   */
+  public static final class Part {
+    /**
+     * Texture index of parts drawn with the texture file of the renderer.
+     */
+    public static final int TEXTURE_FILE = -1;
+
+    private final int indexOffset;
+    private final int indexCount;
+    private final int texture;
+    private final String material;
+
+    /**
+     * @param texture index into {@link #getTextures()}, or {@link #TEXTURE_FILE}.
+     */
+    public Part(int indexOffset, int indexCount, int texture) {
+      this(indexOffset, indexCount, texture, null);
+    }
+
+    /**
+     * @param material the name of the OBJ material of the range, or null.
+     */
+    public Part(int indexOffset, int indexCount, int texture, String material) {
+      this.indexOffset = indexOffset;
+      this.indexCount = indexCount;
+      this.texture = texture;
+      this.material = material;
+    }
+
+    public int getIndexOffset() {
+      return indexOffset;
+    }
+
+    public int getIndexCount() {
+      return indexCount;
+    }
+
+    public int getTexture() {
+      return texture;
+    }
+
+    /**
+     * @return the OBJ material of the range, or null if it has none or parts of several materials
+     *     got merged.
+     */
+    public String getMaterial() {
+      return material;
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.contentful.ar.rendering;
+
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Meshes decoded while their file got downloaded, handed to the first renderer of the file, so it
+ * does not read the file again.
+ * <p>
+ * Meshes are held until taken, or until newer ones exceed {@link #MAX_BYTES}, dropping the
+ * oldest first. Renderers of a file without cached mesh read it from disk.
+ * <p>
+ * This class does not depend on Android. All methods are thread safe.
+ */
+public final class MeshCache {
+  // A few typical models, without holding on to much memory for models never placed.
+  static final long MAX_BYTES = 16 * 1024 * 1024;
+
+  private static final Map<String, Mesh> meshes = new LinkedHashMap<>();
+  private static long bytes = 0;
+
+  private MeshCache() {
+  }
+
+  /**
+   * Caches the mesh of an OBJ file, replacing an older mesh of the same file.
+   *
+   * @param objectFileName the absolute path of the file.
+   */
+  public static synchronized void put(String objectFileName, Mesh mesh) {
+    final Mesh replaced = meshes.remove(objectFileName);
+    if (replaced != null) {
+      bytes -= getBytes(replaced);
+    }
+    final long meshBytes = getBytes(mesh);
+    if (meshBytes > MAX_BYTES) {
+      return;
+    }
+
+    meshes.put(objectFileName, mesh);
+    bytes += meshBytes;
+    final Iterator<Mesh> oldest = meshes.values().iterator();
+    while (bytes > MAX_BYTES) {
+      bytes -= getBytes(oldest.next());
+      oldest.remove();
+    }
+  }
+
+  /**
+   * Removes the mesh of an OBJ file from the cache.
+   *
+   * @param objectFileName the absolute path of the file.
+   * @return the mesh, or null if none is cached.
+   */
+  public static synchronized Mesh take(String objectFileName) {
+    final Mesh mesh = meshes.remove(objectFileName);
+    if (mesh != null) {
+      bytes -= getBytes(mesh);
+    }
+    return mesh;
+  }
+
+  private static long getBytes(Mesh mesh) {
+    return 4L * (mesh.getVertices().capacity() + mesh.getTexCoords().capacity()
+        + mesh.getNormals().capacity()) + 2L * mesh.getIndices().capacity();
+  }
+}
@@ -0,0 +1,167 @@
+package com.contentful.ar.rendering;
+
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Renders small flat shaded previews of meshes in software.
+ * <p>
+ * No OpenGL context is needed, so thumbnails can be rendered on any thread when a model is
+ * imported. This class does not depend on Android, so it can be benchmarked on a desktop JVM.
+ */
+public final class MeshThumbnail {
+  // The model is turned a bit to the side and tilted towards the viewer, showing its top.
+  private static final double YAW = Math.toRadians(30);
+  private static final double PITCH = Math.toRadians(20);
+  private static final float[] LIGHT_DIRECTION = normalize(new float[]{0.3f, 0.5f, 0.8f});
+  private static final float AMBIENT = 0.25f;
+
+  private MeshThumbnail() {
+  }
+
+  /**
+   * @return the axis aligned bounds of the vertices, as min x, y, z followed by max x, y, z.
+   */
+  public static float[] computeBounds(FloatBuffer vertices) {
+    final float[] bounds = new float[]{
+        Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+        -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE
+    };
+    final int count = vertices.limit() / 3;
+    for (int i = 0; i < count; ++i) {
+      for (int axis = 0; axis < 3; ++axis) {
+        final float value = vertices.get(3 * i + axis);
+        bounds[axis] = Math.min(bounds[axis], value);
+        bounds[3 + axis] = Math.max(bounds[3 + axis], value);
+      }
+    }
+    if (count == 0) {
+      for (int i = 0; i < bounds.length; ++i) {
+        bounds[i] = 0;
+      }
+    }
+    return bounds;
+  }
+
+  /**
+   * Renders the mesh into a square grayscale image, fitting its bounding sphere.
+   *
+   * @param bounds the bounds of the mesh, see {@link #computeBounds(FloatBuffer)}.
+   * @param size   the width and height of the image in pixels.
+   * @return size * size luminance values, row by row from the top, with 0 for the background and
+   *     1 to 255 for the mesh.
+   */
+  public static byte[] render(Mesh mesh, float[] bounds, int size) {
+    final byte[] pixels = new byte[size * size];
+    final float[] depth = new float[size * size];
+    for (int i = 0; i < depth.length; ++i) {
+      depth[i] = -Float.MAX_VALUE;
+    }
+
+    // Project all vertices once, into pixel coordinates with the depth towards the viewer.
+    final FloatBuffer vertices = mesh.getVertices();
+    final int vertexCount = vertices.limit() / 3;
+    final float[] projected = new float[3 * vertexCount];
+    final float centerX = (bounds[0] + bounds[3]) / 2;
+    final float centerY = (bounds[1] + bounds[4]) / 2;
+    final float centerZ = (bounds[2] + bounds[5]) / 2;
+    final float dx = bounds[3] - bounds[0];
+    final float dy = bounds[4] - bounds[1];
+    final float dz = bounds[5] - bounds[2];
+    final float radius = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) / 2;
+    final float scale = radius > 0 ? (size / 2f - 1) / radius : 0;
+    final float cosYaw = (float) Math.cos(YAW);
+    final float sinYaw = (float) Math.sin(YAW);
+    final float cosPitch = (float) Math.cos(PITCH);
+    final float sinPitch = (float) Math.sin(PITCH);
+    for (int i = 0; i < vertexCount; ++i) {
+      final float x = vertices.get(3 * i) - centerX;
+      final float y = vertices.get(3 * i + 1) - centerY;
+      final float z = vertices.get(3 * i + 2) - centerZ;
+      final float turnedX = cosYaw * x + sinYaw * z;
+      final float turnedZ = -sinYaw * x + cosYaw * z;
+      projected[3 * i] = size / 2f + scale * turnedX;
+      projected[3 * i + 1] = size / 2f - scale * (cosPitch * y - sinPitch * turnedZ);
+      projected[3 * i + 2] = scale * (sinPitch * y + cosPitch * turnedZ);
+    }
+
+    final ShortBuffer indices = mesh.getIndices();
+    final int triangleCount = indices.limit() / 3;
+    for (int i = 0; i < triangleCount; ++i) {
+      drawTriangle(projected,
+          3 * (indices.get(3 * i) & 0xFFFF),
+          3 * (indices.get(3 * i + 1) & 0xFFFF),
+          3 * (indices.get(3 * i + 2) & 0xFFFF),
+          pixels, depth, size);
+    }
+    return pixels;
+  }
+
+  private static void drawTriangle(
+      float[] p, int a, int b, int c, byte[] pixels, float[] depth, int size) {
+    final float abX = p[b] - p[a];
+    final float abY = p[b + 1] - p[a + 1];
+    final float abZ = p[b + 2] - p[a + 2];
+    final float acX = p[c] - p[a];
+    final float acY = p[c + 1] - p[a + 1];
+    final float acZ = p[c + 2] - p[a + 2];
+
+    // Twice the signed area in screen space, also the denominator of the barycentric coordinates.
+    final float area = abX * acY - abY * acX;
+    if (area == 0) {
+      return;
+    }
+
+    // Face normal, with y flipped back to point up. Both sides are lit, as winding is not
+    // consistent across OBJ files.
+    final float[] normal = normalize(new float[]{
+        -(abY * acZ - abZ * acY), abZ * acX - abX * acZ, -(abX * acY - abY * acX)
+    });
+    final float lambert = Math.abs(normal[0] * LIGHT_DIRECTION[0]
+        + normal[1] * LIGHT_DIRECTION[1] + normal[2] * LIGHT_DIRECTION[2]);
+    final byte shade = (byte) (1 + (int) (254 * (AMBIENT + (1 - AMBIENT) * lambert)));
+
+    final int minX = Math.max(0, (int) Math.floor(min(p[a], p[b], p[c])));
+    final int maxX = Math.min(size - 1, (int) Math.ceil(max(p[a], p[b], p[c])));
+    final int minY = Math.max(0, (int) Math.floor(min(p[a + 1], p[b + 1], p[c + 1])));
+    final int maxY = Math.min(size - 1, (int) Math.ceil(max(p[a + 1], p[b + 1], p[c + 1])));
+    for (int y = minY; y <= maxY; ++y) {
+      final float py = y + 0.5f - p[a + 1];
+      for (int x = minX; x <= maxX; ++x) {
+        final float px = x + 0.5f - p[a];
+        // Barycentric coordinates of the pixel center relative to b and c.
+        final float u = (px * acY - py * acX) / area;
+        final float v = (abX * py - abY * px) / area;
+        if (u < 0 || v < 0 || u + v > 1) {
+          continue;
+        }
+
+        final float z = p[a + 2] + u * abZ + v * acZ;
+        final int index = y * size + x;
+        if (z > depth[index]) {
+          depth[index] = z;
+          pixels[index] = shade;
+        }
+      }
+    }
+  }
+
+  private static float[] normalize(float[] v) {
+    final float length = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+    if (length > 0) {
+      v[0] /= length;
+      v[1] /= length;
+      v[2] /= length;
+    }
+    return v;
+  }
+
+  private static float min(float a, float b, float c) {
+    return Math.min(a, Math.min(b, c));
+  }
+
+  private static float max(float a, float b, float c) {
+    return Math.max(a, Math.max(b, c));
+  }
+}
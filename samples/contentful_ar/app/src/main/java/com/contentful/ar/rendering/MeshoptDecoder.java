@@ -0,0 +1,387 @@
+package com.contentful.ar.rendering;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Decodes vertex and index buffers compressed by meshoptimizer's codecs, as referenced by the
+ * EXT_meshopt_compression extension of glTF.
+ * <p>
+ * Vertex buffers (codec version 0) are split into blocks of up to 256 vertices. Per block and byte
+ * of the vertex, the deltas to the previous vertex are zigzag encoded and packed in groups of 16,
+ * each group with 0, 2, 4 or 8 bits per byte. Quantized attributes change little between
+ * neighbours, so most groups take 2 or 4 bits. Index buffers (codec versions 0 and 1) encode
+ * triangles as references into a FIFO of recent edges and one of recent vertices, so meshes
+ * ordered for the vertex cache take about a byte per triangle.
+ * <p>
+ * Malformed buffers throw {@link IOException}, they never read or write out of bounds. This class
+ * does not depend on Android, so decoding can be benchmarked on a desktop JVM.
+ */
+public final class MeshoptDecoder {
+  private static final int VERTEX_HEADER = 0xA0;
+  private static final int INDEX_HEADER = 0xE0;
+  private static final int VERTEX_BLOCK_SIZE_BYTES = 8192;
+  private static final int VERTEX_BLOCK_MAX_SIZE = 256;
+  private static final int BYTE_GROUP_SIZE = 16;
+  // Bytes left before a group is decoded, more than it can take, so it needs no bounds checks.
+  private static final int BYTE_GROUP_DECODE_LIMIT = 24;
+  private static final int TAIL_MAX_SIZE = 32;
+  private static final int CODE_AUX_TABLE_SIZE = 16;
+
+  private MeshoptDecoder() {
+  }
+
+  /**
+   * @param source     the encoded buffer, all of its remaining bytes. Its position is not changed.
+   * @param vertexSize the bytes of a vertex, a multiple of 4 up to 256.
+   * @return the vertices, in a little endian heap buffer.
+   */
+  public static ByteBuffer decodeVertexBuffer(ByteBuffer source, int vertexCount, int vertexSize)
+      throws IOException {
+    if (vertexCount < 0 || vertexSize <= 0 || vertexSize > 256 || vertexSize % 4 != 0
+        || (long) vertexCount * vertexSize > Integer.MAX_VALUE) {
+      throw new IOException("Invalid meshopt vertex layout of " + vertexCount + " x " + vertexSize
+          + " bytes.");
+    }
+    final byte[] data = toArray(source);
+    if (data.length < 1 + vertexSize) {
+      throw new IOException("Truncated meshopt vertex buffer.");
+    }
+    if ((data[0] & 0xF0) != VERTEX_HEADER || (data[0] & 0x0F) != 0) {
+      throw new IOException("Unsupported meshopt vertex buffer version.");
+    }
+
+    final int tailSize = Math.max(vertexSize, TAIL_MAX_SIZE);
+    final int blockSize = getVertexBlockSize(vertexSize);
+    // Every byte of a block takes at least one byte of group headers, so a count the data cannot
+    // hold is rejected before its vertices are allocated.
+    final long blockCount = ((long) vertexCount + blockSize - 1) / blockSize;
+    if (1 + blockCount * vertexSize + tailSize > data.length) {
+      throw new IOException("Truncated meshopt vertex buffer.");
+    }
+    final byte[] vertices = new byte[vertexCount * vertexSize];
+    // The first vertex ends the buffer, the deltas of the first block refer to it.
+    final byte[] lastVertex = new byte[vertexSize];
+    System.arraycopy(data, data.length - vertexSize, lastVertex, 0, vertexSize);
+    final byte[] deltas = new byte[VERTEX_BLOCK_MAX_SIZE];
+
+    int position = 1;
+    for (int first = 0; first < vertexCount; first += blockSize) {
+      final int count = Math.min(blockSize, vertexCount - first);
+      final int alignedCount = (count + BYTE_GROUP_SIZE - 1) & ~(BYTE_GROUP_SIZE - 1);
+      for (int k = 0; k < vertexSize; ++k) {
+        position = decodeBytes(data, position, deltas, alignedCount);
+        int offset = first * vertexSize + k;
+        int previous = lastVertex[k];
+        for (int i = 0; i < count; ++i) {
+          final int delta = deltas[i] & 0xFF;
+          previous += (delta >>> 1) ^ -(delta & 1);
+          vertices[offset] = (byte) previous;
+          offset += vertexSize;
+        }
+      }
+      System.arraycopy(vertices, (first + count - 1) * vertexSize, lastVertex, 0, vertexSize);
+    }
+    if (data.length - position != tailSize) {
+      throw new IOException("Malformed meshopt vertex buffer.");
+    }
+    return ByteBuffer.wrap(vertices).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * @param source    the encoded buffer, all of its remaining bytes. Its position is not changed.
+   * @param indexSize the bytes of an index, 2 or 4.
+   * @return the indices, in a little endian heap buffer. Triangles may be rotated, keeping their
+   *     winding.
+   */
+  public static ByteBuffer decodeIndexBuffer(ByteBuffer source, int indexCount, int indexSize)
+      throws IOException {
+    if (indexCount < 0 || indexCount % 3 != 0 || indexSize != 2 && indexSize != 4) {
+      throw new IOException("Invalid meshopt index layout of " + indexCount + " x " + indexSize
+          + " bytes.");
+    }
+    final byte[] data = toArray(source);
+    if (data.length < 1 + indexCount / 3 + CODE_AUX_TABLE_SIZE) {
+      throw new IOException("Truncated meshopt index buffer.");
+    }
+    final int version = data[0] & 0x0F;
+    if ((data[0] & 0xF0) != INDEX_HEADER || version > 1) {
+      throw new IOException("Unsupported meshopt index buffer version.");
+    }
+
+    final ByteBuffer indices =
+        ByteBuffer.allocate(indexCount * indexSize).order(ByteOrder.LITTLE_ENDIAN);
+    final int[] edgeFifo = new int[2 * 16];
+    final int[] vertexFifo = new int[16];
+    Arrays.fill(edgeFifo, -1);
+    Arrays.fill(vertexFifo, -1);
+    int edgeFifoOffset = 0;
+    int vertexFifoOffset = 0;
+    int next = 0;
+    int last = 0;
+    final int fecMax = version >= 1 ? 13 : 15;
+
+    // Triangle codes come first, then their extra data, then the table of common aux codes,
+    // which also pads the data so a triangle never reads past the end.
+    int code = 1;
+    final int[] position = {code + indexCount / 3};
+    final int dataSafeEnd = data.length - CODE_AUX_TABLE_SIZE;
+
+    for (int i = 0; i < indexCount; i += 3) {
+      if (position[0] > dataSafeEnd) {
+        throw new IOException("Truncated meshopt index buffer.");
+      }
+      final int codeTri = data[code++] & 0xFF;
+      final int a;
+      final int b;
+      final int c;
+
+      if (codeTri < 0xF0) {
+        // An edge of a recent triangle and a third vertex.
+        final int edge = 2 * ((edgeFifoOffset - 1 - (codeTri >> 4)) & 15);
+        a = edgeFifo[edge];
+        b = edgeFifo[edge + 1];
+        final int fec = codeTri & 15;
+        if (fec < fecMax) {
+          c = fec == 0 ? next++ : vertexFifo[(vertexFifoOffset - 1 - fec) & 15];
+          if (fec == 0) {
+            vertexFifo[vertexFifoOffset] = c;
+            vertexFifoOffset = (vertexFifoOffset + 1) & 15;
+          }
+        } else {
+          // 13 and 14 are the last free index -1 and +1.
+          c = fec != 15 ? last + (fec - (fec ^ 3)) : decodeIndex(data, position, last);
+          last = c;
+          vertexFifo[vertexFifoOffset] = c;
+          vertexFifoOffset = (vertexFifoOffset + 1) & 15;
+        }
+        edgeFifoOffset = pushEdge(edgeFifo, edgeFifoOffset, c, b);
+        edgeFifoOffset = pushEdge(edgeFifo, edgeFifoOffset, a, c);
+      } else {
+        // A triangle without known edge, its vertices are new, recent or free indices.
+        final int fea;
+        final int feb;
+        final int fec;
+        if (codeTri < 0xFE) {
+          final int codeAux = data[dataSafeEnd + (codeTri & 15)] & 0xFF;
+          fea = 0;
+          feb = codeAux >> 4;
+          fec = codeAux & 15;
+        } else {
+          final int codeAux = data[position[0]++] & 0xFF;
+          fea = codeTri == 0xFE ? 0 : 15;
+          feb = codeAux >> 4;
+          fec = codeAux & 15;
+          if (codeAux == 0) {
+            // Restart of the vertex numbering, e.g. at a concatenated mesh.
+            next = 0;
+          }
+        }
+
+        int va = fea == 0 ? next++ : 0;
+        int vb = feb == 0 ? next++ : vertexFifo[(vertexFifoOffset - feb) & 15];
+        int vc = fec == 0 ? next++ : vertexFifo[(vertexFifoOffset - fec) & 15];
+        if (fea == 15) {
+          va = last = decodeIndex(data, position, last);
+        }
+        if (feb == 15) {
+          vb = last = decodeIndex(data, position, last);
+        }
+        if (fec == 15) {
+          vc = last = decodeIndex(data, position, last);
+        }
+        a = va;
+        b = vb;
+        c = vc;
+
+        vertexFifo[vertexFifoOffset] = a;
+        vertexFifoOffset = (vertexFifoOffset + 1) & 15;
+        vertexFifo[vertexFifoOffset] = b;
+        vertexFifoOffset = (vertexFifoOffset + (feb == 0 || feb == 15 ? 1 : 0)) & 15;
+        vertexFifo[vertexFifoOffset] = c;
+        vertexFifoOffset = (vertexFifoOffset + (fec == 0 || fec == 15 ? 1 : 0)) & 15;
+        edgeFifoOffset = pushEdge(edgeFifo, edgeFifoOffset, b, a);
+        edgeFifoOffset = pushEdge(edgeFifo, edgeFifoOffset, c, b);
+        edgeFifoOffset = pushEdge(edgeFifo, edgeFifoOffset, a, c);
+      }
+
+      if (indexSize == 2) {
+        indices.putShort((short) a).putShort((short) b).putShort((short) c);
+      } else {
+        indices.putInt(a).putInt(b).putInt(c);
+      }
+    }
+    if (position[0] != dataSafeEnd) {
+      throw new IOException("Malformed meshopt index buffer.");
+    }
+    indices.rewind();
+    return indices;
+  }
+
+  /**
+   * Reverts the octahedral filter in place: signed normalized 8 or 16 bit normals, with x and y on
+   * the octahedron and z holding the scale of 1.
+   *
+   * @param stride 4 or 8 bytes, per normal.
+   */
+  public static void decodeOctahedralFilter(ByteBuffer data, int count, int stride)
+      throws IOException {
+    if (stride != 4 && stride != 8 || (long) count * stride > data.capacity()) {
+      throw new IOException("Invalid meshopt octahedral filter of " + count + " x " + stride
+          + " bytes.");
+    }
+    final int componentBytes = stride / 4;
+    final float max = (1 << (8 * componentBytes - 1)) - 1;
+    for (int i = 0; i < count; ++i) {
+      final int position = i * stride;
+      float x = readSigned(data, position, componentBytes);
+      float y = readSigned(data, position + componentBytes, componentBytes);
+      final float z = readSigned(data, position + 2 * componentBytes, componentBytes)
+          - Math.abs(x) - Math.abs(y);
+      // Unfolds the lower half of the octahedron.
+      final float t = Math.min(z, 0.0f);
+      x += x >= 0.0f ? t : -t;
+      y += y >= 0.0f ? t : -t;
+
+      final float scale = max / (float) Math.sqrt(x * x + y * y + z * z);
+      writeSigned(data, position, componentBytes, round(x * scale));
+      writeSigned(data, position + componentBytes, componentBytes, round(y * scale));
+      writeSigned(data, position + 2 * componentBytes, componentBytes, round(z * scale));
+    }
+  }
+
+  /**
+   * Reverts the exponential filter in place: each 32 bit value is a 24 bit signed mantissa and an
+   * 8 bit signed exponent, restored to a float.
+   */
+  public static void decodeExponentialFilter(ByteBuffer data, int count, int stride)
+      throws IOException {
+    if (stride % 4 != 0 || (long) count * stride > data.capacity()) {
+      throw new IOException("Invalid meshopt exponential filter of " + count + " x " + stride
+          + " bytes.");
+    }
+    for (int position = 0; position < count * stride; position += 4) {
+      final int value = data.getInt(position);
+      final int mantissa = (value << 8) >> 8;
+      final int exponent = value >> 24;
+      data.putFloat(position, mantissa * Float.intBitsToFloat((exponent + 127) << 23));
+    }
+  }
+
+  /**
+   * @return the number of vertices per block, so a block's deltas fit in 8 KB, a multiple of the
+   *     byte group size.
+   */
+  static int getVertexBlockSize(int vertexSize) {
+    final int result = Math.min(VERTEX_BLOCK_SIZE_BYTES / vertexSize, VERTEX_BLOCK_MAX_SIZE);
+    return result & ~(BYTE_GROUP_SIZE - 1);
+  }
+
+  /**
+   * Decodes the deltas of one byte of the vertices of a block.
+   *
+   * @return the position after the groups.
+   */
+  private static int decodeBytes(byte[] data, int position, byte[] buffer, int count)
+      throws IOException {
+    // A header of 2 bits per group, telling the bits per value.
+    final int headerSize = (count / BYTE_GROUP_SIZE + 3) / 4;
+    if (data.length - position < headerSize) {
+      throw new IOException("Truncated meshopt vertex buffer.");
+    }
+    final int header = position;
+    position += headerSize;
+
+    for (int i = 0; i < count; i += BYTE_GROUP_SIZE) {
+      if (data.length - position < BYTE_GROUP_DECODE_LIMIT) {
+        throw new IOException("Truncated meshopt vertex buffer.");
+      }
+      final int group = i / BYTE_GROUP_SIZE;
+      final int bitsLog2 = (data[header + group / 4] >> (2 * (group % 4))) & 3;
+      switch (bitsLog2) {
+        case 0:
+          Arrays.fill(buffer, i, i + BYTE_GROUP_SIZE, (byte) 0);
+          break;
+        case 3:
+          System.arraycopy(data, position, buffer, i, BYTE_GROUP_SIZE);
+          position += BYTE_GROUP_SIZE;
+          break;
+        default:
+          position = decodeBytesGroup(data, position, buffer, i, 1 << bitsLog2);
+          break;
+      }
+    }
+    return position;
+  }
+
+  /**
+   * Unpacks a group of 2 or 4 bit values, the highest bits first. Values of all bits set are
+   * followed by the byte they stand for, after the packed values.
+   */
+  private static int decodeBytesGroup(byte[] data, int position, byte[] buffer, int offset,
+                                      int bits) {
+    final int perByte = 8 / bits;
+    final int sentinel = (1 << bits) - 1;
+    int outliers = position + BYTE_GROUP_SIZE / perByte;
+    for (int i = 0; i < BYTE_GROUP_SIZE; ++i) {
+      final int packed = data[position + i / perByte] & 0xFF;
+      final int value = (packed >> (8 - bits - bits * (i % perByte))) & sentinel;
+      if (value == sentinel) {
+        buffer[offset + i] = data[outliers++];
+      } else {
+        buffer[offset + i] = (byte) value;
+      }
+    }
+    return outliers;
+  }
+
+  /**
+   * @return the free index after the last one, delta and zigzag encoded as variable length
+   *     integer of up to 5 bytes.
+   */
+  private static int decodeIndex(byte[] data, int[] position, int last) {
+    int lead = data[position[0]++] & 0xFF;
+    int value = lead & 127;
+    int shift = 7;
+    for (int i = 0; i < 4 && lead >= 128; ++i) {
+      lead = data[position[0]++] & 0xFF;
+      value |= (lead & 127) << shift;
+      shift += 7;
+    }
+    return last + ((value >>> 1) ^ -(value & 1));
+  }
+
+  private static int pushEdge(int[] edgeFifo, int offset, int a, int b) {
+    edgeFifo[2 * offset] = a;
+    edgeFifo[2 * offset + 1] = b;
+    return (offset + 1) & 15;
+  }
+
+  /**
+   * @return the value rounded half away from zero, as the reference decoder does.
+   */
+  private static int round(float value) {
+    return (int) (value + (value >= 0.0f ? 0.5f : -0.5f));
+  }
+
+  private static float readSigned(ByteBuffer data, int position, int bytes) {
+    return bytes == 1 ? data.get(position) : data.getShort(position);
+  }
+
+  private static void writeSigned(ByteBuffer data, int position, int bytes, int value) {
+    if (bytes == 1) {
+      data.put(position, (byte) value);
+    } else {
+      data.putShort(position, (short) value);
+    }
+  }
+
+  private static byte[] toArray(ByteBuffer source) {
+    final byte[] data = new byte[source.remaining()];
+    source.duplicate().get(data);
+    return data;
+  }
+}
@@ -0,0 +1,140 @@
+package com.contentful.ar.rendering;
+
+
+import com.contentful.ar.io.Streams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * JNI surface of the native OBJ loader in {@code libraries/mesh_loader}, shared with the C sample.
+ * <p>
+ * The native side parses the file and writes the mesh straight into direct buffers allocated here,
+ * which are then only wrapped as typed views. Meshes are single-indexed like the ones read by
+ * {@link Mesh#readObj}, with one part per material, but corners shared between faces are stored
+ * once.
+ * <p>
+ * This class does not depend on Android, so the native code can be benchmarked on a desktop JVM.
+ * If the library cannot be loaded, {@link #isAvailable()} returns false and {@link Mesh#load}
+ * falls back to the Java implementation.
+ */
+public final class NativeMeshLoader {
+  private static final String LIBRARY_NAME = "mesh_loader";
+  private static final boolean AVAILABLE = loadLibrary();
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private NativeMeshLoader() {
+  }
+
+  /**
+   * @return whether the native library is loaded on this device.
+   */
+  public static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  /**
+   * Reads an OBJ file with the native loader.
+   *
+   * @param input the OBJ file content, not closed by this method.
+   * @throws IOException if the file cannot be read or parsed.
+   */
+  public static Mesh readObj(InputStream input) throws IOException {
+    return readObj(Streams.readDirect(input, input.available()));
+  }
+
+  /**
+   * Parses the remaining bytes of a direct buffer as OBJ file, without changing its position.
+   *
+   * @throws IOException if the file cannot be parsed.
+   */
+  public static Mesh readObj(ByteBuffer source) throws IOException {
+    if (!AVAILABLE) {
+      throw new IllegalStateException("Native library '" + LIBRARY_NAME + "' is not loaded.");
+    }
+
+    final long nativeMesh = parseObj(source, source.position(), source.remaining());
+    try {
+      final int vertexCount = getVertexCount(nativeMesh);
+      final ByteBuffer vertices = allocate(4 * 3 * vertexCount);
+      final ByteBuffer texCoords = allocate(4 * 2 * vertexCount);
+      final ByteBuffer normals = allocate(4 * 3 * vertexCount);
+      final ByteBuffer indices = allocate(2 * getIndexCount(nativeMesh));
+      copyMesh(nativeMesh, vertices, texCoords, normals, indices);
+
+      final Mesh.Part[] parts = new Mesh.Part[getMaterialGroupCount(nativeMesh)];
+      final int[] ranges = new int[2 * parts.length];
+      copyMaterialGroups(nativeMesh, ranges);
+      for (int i = 0; i < parts.length; ++i) {
+        parts[i] = new Mesh.Part(ranges[2 * i], ranges[2 * i + 1], Mesh.Part.TEXTURE_FILE,
+            toName(getMaterialName(nativeMesh, i)));
+      }
+      return new Mesh(vertices.asFloatBuffer(), texCoords.asFloatBuffer(),
+          normals.asFloatBuffer(), indices.asShortBuffer(), parts, new ByteBuffer[0],
+          toName(getMaterialLibrary(nativeMesh)));
+    } finally {
+      destroyMesh(nativeMesh);
+    }
+  }
+
+  /**
+   * @return the decoded name, or null if it is empty.
+   */
+  private static String toName(byte[] name) {
+    return name.length > 0 ? new String(name, UTF_8) : null;
+  }
+
+  private static ByteBuffer allocate(int bytes) {
+    return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+  }
+
+  private static boolean loadLibrary() {
+    try {
+      System.loadLibrary(LIBRARY_NAME);
+      return true;
+    } catch (UnsatisfiedLinkError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Parses {@code length} bytes of a direct buffer, starting at {@code offset}.
+   *
+   * @return the native mesh, to be released with {@link #destroyMesh(long)}.
+   */
+  private static native long parseObj(ByteBuffer source, int offset, int length)
+      throws IOException;
+
+  private static native int getVertexCount(long nativeMesh);
+
+  private static native int getIndexCount(long nativeMesh);
+
+  /**
+   * Writes the mesh in native byte order, as float positions, texture coordinates and normals and
+   * as unsigned short indices.
+   */
+  private static native void copyMesh(long nativeMesh, ByteBuffer vertices, ByteBuffer texCoords,
+                                      ByteBuffer normals, ByteBuffer indices);
+
+  private static native int getMaterialGroupCount(long nativeMesh);
+
+  /**
+   * Writes the index offset and count of each material group, which are sorted by first use.
+   */
+  private static native void copyMaterialGroups(long nativeMesh, int[] ranges);
+
+  /**
+   * @return the material of the group, empty for faces without 'usemtl'.
+   */
+  private static native byte[] getMaterialName(long nativeMesh, int group);
+
+  /**
+   * @return the first 'mtllib' of the file, or an empty array.
+   */
+  private static native byte[] getMaterialLibrary(long nativeMesh);
+
+  private static native void destroyMesh(long nativeMesh);
+}
@@ -16,25 +16,29 @@ package com.contentful.ar.rendering;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.RectF;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
-import android.opengl.Matrix;
 
-import com.google.ar.core.Session;
+import com.contentful.ar.rendering.gl.GlBackend;
+import com.contentful.ar.rendering.gl.GlResourceTracker;
+import com.contentful.ar.rendering.gl.Gles20Backend;
+import com.contentful.ar.rendering.gl.TextureRegistry;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
-
-import de.javagl.obj.Obj;
-import de.javagl.obj.ObjData;
-import de.javagl.obj.ObjReader;
-import de.javagl.obj.ObjUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Renders an object loaded from an OBJ file in OpenGL.
@@ -54,7 +58,12 @@ public class ObjectRenderer {
   private int mIndexBufferId;
   private int mIndexCount;
   private int mProgram;
+  // The texture file's first, followed by the textures embedded in the model file, which may all
+  // be one atlas.
   private int[] mTextures = new int[1];
+  private Mesh.Part[] mParts;
+  // Keys of the textures acquired from the TextureRegistry, released on destroy.
+  private final List<String> mSharedTextureKeys = new ArrayList<>();
   // Shader location: model view projection matrix.
   private int mModelViewUniform;
   private int mModelViewProjectionUniform;
@@ -78,12 +87,15 @@ public class ObjectRenderer {
   private float mDiffuse = 1.0f;
   private float mSpecular = 1.0f;
   private float mSpecularPower = 6.0f;
-  // cache model view matrix
-  private final float[] modelMatrix = new float[16];
-  private TrackableAttachment mAttachement;
   private boolean mInitialized = false;
+  private final GlBackend mGl;
+  private final GlResourceTracker mResources;
 
   private final String mObjectFileName;
+  // The file the model is known as, which the files an OBJ model references are relative to, and
+  // where they are read from, next to the object file if null.
+  private String mModelFileName;
+  private Mesh.FileResolver mFileResolver;
   private final String mTextureFileName;
   private final String mFragmentShaderFileName;
   private final String mVertexShaderFileName;
@@ -93,7 +105,23 @@ public class ObjectRenderer {
       String textureFileName,
       String fragmentShaderFileName,
       String vertexShaderFileName) {
+    this(Gles20Backend.INSTANCE,
+        mObjectFileName, textureFileName, fragmentShaderFileName, vertexShaderFileName);
+  }
+
+  /**
+   * @param gl the OpenGL backend to issue all calls to.
+   */
+  public ObjectRenderer(
+      GlBackend gl,
+      String mObjectFileName,
+      String textureFileName,
+      String fragmentShaderFileName,
+      String vertexShaderFileName) {
+    this.mGl = gl;
+    this.mResources = GlResourceTracker.of(gl);
     this.mObjectFileName = mObjectFileName;
+    this.mModelFileName = mObjectFileName;
     this.mTextureFileName = textureFileName;
     this.mFragmentShaderFileName = fragmentShaderFileName;
     this.mVertexShaderFileName = vertexShaderFileName;
@@ -110,54 +138,45 @@ public class ObjectRenderer {
    * Creates and initializes OpenGL resources needed for rendering the model.
    */
   public void createOnGlThread() throws IOException {
-    Bitmap textureBitmap = readTexture();
-
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glGenTextures(mTextures.length, mTextures, 0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[0]);
+    // Read the model file, unless it got decoded while downloading.
+    Mesh mesh = MeshCache.take(mModelFileName);
+    if (mesh == null) {
+      mesh = mFileResolver != null
+          ? Mesh.load(new File(mModelFileName), mFileResolver)
+          : Mesh.load(new File(mObjectFileName));
+    }
 
-    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
-        GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
-    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
-        GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-    GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, textureBitmap, 0);
-    GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-
-    textureBitmap.recycle();
-
-    ShaderUtil.checkGLError(TAG, "Texture loading");
-
-    // Read the obj file.
-    Obj obj = ObjReader.read(new FileInputStream(mObjectFileName));
-
-    // Prepare the Obj so that its structure is suitable for
-    // rendering with OpenGL:
-    // 1. Triangulate it
-    // 2. Make sure that texture coordinates are not ambiguous
-    // 3. Make sure that normals are not ambiguous
-    // 4. Convert it to single-indexed data
-    obj = ObjUtils.convertToRenderable(obj);
-
-    // OpenGL does not use Java arrays. ByteBuffers are used instead to provide data in a format
-    // that OpenGL understands.
-
-    // Obtain the data from the OBJ, as direct buffers:
-    IntBuffer wideIndices = ObjData.getFaceVertexIndices(obj, 3);
-    FloatBuffer vertices = ObjData.getVertices(obj);
-    FloatBuffer texCoords = ObjData.getTexCoords(obj, 2);
-    FloatBuffer normals = ObjData.getNormals(obj);
-
-    // Convert int indices to shorts for GL ES 2.0 compatibility
-    ShortBuffer indices = ByteBuffer.allocateDirect(2 * wideIndices.limit())
-        .order(ByteOrder.nativeOrder()).asShortBuffer();
-    while (wideIndices.hasRemaining()) {
-      indices.put((short) wideIndices.get());
+    // Created again after a failure.
+    releaseTextures();
+    final ByteBuffer[] embeddedTextures = mesh.getTextures();
+    mTextures = new int[1 + embeddedTextures.length];
+    for (final Mesh.Part part : mesh.getParts()) {
+      if (part.getTexture() == Mesh.Part.TEXTURE_FILE) {
+        mTextures[0] = createTexture();
+        break;
+      }
     }
-    indices.rewind();
+    if (embeddedTextures.length < 2 || !createAtlas(mesh)) {
+      for (int i = 0; i < embeddedTextures.length; ++i) {
+        final String key = getTextureKey(mesh) + "#" + i;
+        final int shared = acquireTexture(key);
+        mTextures[1 + i] =
+            shared != 0 ? shared : uploadTexture(key, decodeTexture(embeddedTextures[i]));
+      }
+    }
+    // Parts of the same texture, e.g. of the atlas, are drawn in one call.
+    mParts = mergeParts(mesh.getParts());
+
+    ShaderUtil.checkGLError(mGl, TAG, "Texture loading");
+
+    FloatBuffer vertices = mesh.getVertices();
+    FloatBuffer texCoords = mesh.getTexCoords();
+    mapTexCoords(texCoords);
+    FloatBuffer normals = mesh.getNormals();
+    ShortBuffer indices = mesh.getIndices();
 
     int[] buffers = new int[2];
-    GLES20.glGenBuffers(2, buffers, 0);
+    mGl.glGenBuffers(2, buffers, 0);
     mVertexBufferId = buffers[0];
     mIndexBufferId = buffers[1];
 
@@ -167,65 +186,254 @@ public class ObjectRenderer {
     mNormalsBaseAddress = mTexCoordsBaseAddress + 4 * texCoords.limit();
     final int totalBytes = mNormalsBaseAddress + 4 * normals.limit();
 
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferId);
-    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, totalBytes, null, GLES20.GL_STATIC_DRAW);
-    GLES20.glBufferSubData(
+    mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferId);
+    mGl.glBufferData(GLES20.GL_ARRAY_BUFFER, totalBytes, null, GLES20.GL_STATIC_DRAW);
+    mResources.register(this, GlResourceTracker.Kind.BUFFER, mVertexBufferId, totalBytes);
+    mGl.glBufferSubData(
         GLES20.GL_ARRAY_BUFFER, mVerticesBaseAddress, 4 * vertices.limit(), vertices);
-    GLES20.glBufferSubData(
+    mGl.glBufferSubData(
         GLES20.GL_ARRAY_BUFFER, mTexCoordsBaseAddress, 4 * texCoords.limit(), texCoords);
-    GLES20.glBufferSubData(
+    mGl.glBufferSubData(
         GLES20.GL_ARRAY_BUFFER, mNormalsBaseAddress, 4 * normals.limit(), normals);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
     // Load index buffer
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferId);
+    mGl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferId);
     mIndexCount = indices.limit();
-    GLES20.glBufferData(
+    mGl.glBufferData(
         GLES20.GL_ELEMENT_ARRAY_BUFFER, 2 * mIndexCount, indices, GLES20.GL_STATIC_DRAW);
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    mResources.register(this, GlResourceTracker.Kind.BUFFER, mIndexBufferId, 2 * mIndexCount);
+    mGl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
 
-    ShaderUtil.checkGLError(TAG, "OBJ buffer load");
+    ShaderUtil.checkGLError(mGl, TAG, "OBJ buffer load");
 
-    final int vertexShader = ShaderUtil.loadGLShader(TAG,
+    final int vertexShader = ShaderUtil.loadGLShader(mGl, TAG,
         mVertexShaderFileName,
         GLES20.GL_VERTEX_SHADER);
 
-    final int fragmentShader = ShaderUtil.loadGLShader(TAG,
+    final int fragmentShader = ShaderUtil.loadGLShader(mGl, TAG,
         mFragmentShaderFileName,
         GLES20.GL_FRAGMENT_SHADER);
+    mResources.register(this, GlResourceTracker.Kind.SHADER, vertexShader, 0);
+    mResources.register(this, GlResourceTracker.Kind.SHADER, fragmentShader, 0);
 
-    mProgram = GLES20.glCreateProgram();
-    GLES20.glAttachShader(mProgram, vertexShader);
-    GLES20.glAttachShader(mProgram, fragmentShader);
-    GLES20.glLinkProgram(mProgram);
-    GLES20.glUseProgram(mProgram);
+    mProgram = mGl.glCreateProgram();
+    mResources.register(this, GlResourceTracker.Kind.PROGRAM, mProgram, 0);
+    mGl.glAttachShader(mProgram, vertexShader);
+    mGl.glAttachShader(mProgram, fragmentShader);
+    mGl.glLinkProgram(mProgram);
+    mGl.glUseProgram(mProgram);
 
-    ShaderUtil.checkGLError(TAG, "Program creation");
+    ShaderUtil.checkGLError(mGl, TAG, "Program creation");
 
-    mModelViewUniform = GLES20.glGetUniformLocation(mProgram, "u_ModelView");
+    mModelViewUniform = mGl.glGetUniformLocation(mProgram, "u_ModelView");
     mModelViewProjectionUniform =
-        GLES20.glGetUniformLocation(mProgram, "u_ModelViewProjection");
+        mGl.glGetUniformLocation(mProgram, "u_ModelViewProjection");
 
-    mPositionAttribute = GLES20.glGetAttribLocation(mProgram, "a_Position");
-    mNormalAttribute = GLES20.glGetAttribLocation(mProgram, "a_Normal");
-    mTexCoordAttribute = GLES20.glGetAttribLocation(mProgram, "a_TexCoord");
+    mPositionAttribute = mGl.glGetAttribLocation(mProgram, "a_Position");
+    mNormalAttribute = mGl.glGetAttribLocation(mProgram, "a_Normal");
+    mTexCoordAttribute = mGl.glGetAttribLocation(mProgram, "a_TexCoord");
 
-    mTextureUniform = GLES20.glGetUniformLocation(mProgram, "u_Texture");
+    mTextureUniform = mGl.glGetUniformLocation(mProgram, "u_Texture");
 
-    mLightingParametersUniform = GLES20.glGetUniformLocation(mProgram, "u_LightingParameters");
-    mMaterialParametersUniform = GLES20.glGetUniformLocation(mProgram, "u_MaterialParameters");
+    mLightingParametersUniform = mGl.glGetUniformLocation(mProgram, "u_LightingParameters");
+    mMaterialParametersUniform = mGl.glGetUniformLocation(mProgram, "u_MaterialParameters");
 
-    ShaderUtil.checkGLError(TAG, "Program parameters");
+    ShaderUtil.checkGLError(mGl, TAG, "Program parameters");
 
-    Matrix.setIdentityM(mModelMatrix, 0);
+    MatrixMath.setIdentityM(mModelMatrix, 0);
 
     mInitialized = true;
   }
 
+  /**
+   * Creates the texture of the object, from {@link #readTexture()} by default. Called on the
+   * OpenGL thread, unless all parts of the mesh use textures embedded in the model file. By
+   * default, renderers of the same texture file share one texture through the
+   * {@link TextureRegistry}.
+   *
+   * @return the texture to bind when drawing. Only textures registered to this renderer with
+   *     its {@link GlResourceTracker} are deleted by {@link #destroy()}.
+   */
+  protected int createTexture() throws IOException {
+    final int shared = acquireTexture(mTextureFileName);
+    if (shared != 0) {
+      return shared;
+    }
+    return uploadTexture(mTextureFileName, readTexture());
+  }
+
+  /**
+   * Packs the textures embedded in the model file into one {@link TextureAtlas}, shared like the
+   * other textures, and remaps the texture coordinates of their parts to its regions.
+   *
+   * @return false if a texture is not decoded, they do not fit or their texture coordinates
+   *     cannot be remapped, the textures are uploaded one by one then.
+   */
+  private boolean createAtlas(Mesh mesh) {
+    final ByteBuffer[] images = mesh.getTextures();
+    final FloatBuffer texCoords = mesh.getTexCoords();
+    if (texCoords.isReadOnly()) {
+      return false;
+    }
+
+    final Bitmap[] bitmaps = new Bitmap[images.length];
+    final int[] widths = new int[images.length];
+    final int[] heights = new int[images.length];
+    try {
+      for (int i = 0; i < images.length; ++i) {
+        bitmaps[i] = decodeTexture(images[i]);
+        if (bitmaps[i] == null) {
+          return false;
+        }
+        widths[i] = bitmaps[i].getWidth();
+        heights[i] = bitmaps[i].getHeight();
+      }
+      final TextureAtlas atlas = TextureAtlas.pack(widths, heights);
+      if (atlas == null || !atlas.mapTexCoords(mesh.getParts(), mesh.getIndices(), texCoords)) {
+        return false;
+      }
+
+      final String key = getTextureKey(mesh) + "#atlas";
+      int texture = acquireTexture(key);
+      if (texture == 0) {
+        texture = uploadTexture(key, drawAtlas(atlas, bitmaps));
+      }
+      Arrays.fill(mTextures, 1, mTextures.length, texture);
+      return true;
+    } finally {
+      for (final Bitmap bitmap : bitmaps) {
+        if (bitmap != null) {
+          bitmap.recycle();
+        }
+      }
+    }
+  }
+
+  private static Bitmap drawAtlas(TextureAtlas atlas, Bitmap[] bitmaps) {
+    final Bitmap atlasBitmap =
+        Bitmap.createBitmap(atlas.getWidth(), atlas.getHeight(), Bitmap.Config.ARGB_8888);
+    final Canvas canvas = new Canvas(atlasBitmap);
+    // Copies, rather than blends, translucent pixels.
+    final Paint copy = new Paint();
+    copy.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    final RectF padded = new RectF();
+    for (int i = 0; i < bitmaps.length; ++i) {
+      final int x = atlas.getX(i);
+      final int y = atlas.getY(i);
+      // Stretched over the padding first, so the padding roughly repeats the edges.
+      padded.set(x - TextureAtlas.PADDING, y - TextureAtlas.PADDING,
+          x + bitmaps[i].getWidth() + TextureAtlas.PADDING,
+          y + bitmaps[i].getHeight() + TextureAtlas.PADDING);
+      canvas.drawBitmap(bitmaps[i], null, padded, copy);
+      canvas.drawBitmap(bitmaps[i], x, y, copy);
+    }
+    return atlasBitmap;
+  }
+
+  /**
+   * @return the parts, with adjacent ones bound to the same texture merged.
+   */
+  private Mesh.Part[] mergeParts(Mesh.Part[] parts) {
+    final List<Mesh.Part> merged = new ArrayList<>();
+    for (final Mesh.Part part : parts) {
+      final Mesh.Part last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+      if (last != null
+          && mTextures[last.getTexture() + 1] == mTextures[part.getTexture() + 1]
+          && last.getIndexOffset() + last.getIndexCount() == part.getIndexOffset()) {
+        merged.set(merged.size() - 1, new Mesh.Part(last.getIndexOffset(),
+            last.getIndexCount() + part.getIndexCount(), last.getTexture()));
+      } else {
+        merged.add(part);
+      }
+    }
+    return merged.toArray(new Mesh.Part[merged.size()]);
+  }
+
+  private int acquireTexture(String key) {
+    final int texture = TextureRegistry.of(mGl).acquire(key);
+    if (texture != 0) {
+      mSharedTextureKeys.add(key);
+    }
+    return texture;
+  }
+
+  /**
+   * Uploads a texture and adds it to the {@link TextureRegistry}. Empty textures are not shared,
+   * so a later renderer of the same key still uploads its image.
+   *
+   * @param textureBitmap the image, recycled afterwards, or null to leave the texture empty.
+   */
+  private int uploadTexture(String key, Bitmap textureBitmap) {
+    final int[] texture = new int[1];
+
+    mGl.glActiveTexture(GLES20.GL_TEXTURE0);
+    mGl.glGenTextures(1, texture, 0);
+    mGl.glBindTexture(GLES20.GL_TEXTURE_2D, texture[0]);
+
+    mGl.glTexParameteri(GLES20.GL_TEXTURE_2D,
+        GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
+    mGl.glTexParameteri(GLES20.GL_TEXTURE_2D,
+        GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    long bytes = 0;
+    if (textureBitmap != null) {
+      // Bitmaps can only be uploaded by Android itself.
+      GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, textureBitmap, 0);
+      mGl.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+      // The mip chain adds a third.
+      bytes = textureBitmap.getByteCount() * 4L / 3;
+      textureBitmap.recycle();
+    }
+    mGl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    if (textureBitmap == null) {
+      mResources.register(this, GlResourceTracker.Kind.TEXTURE, texture[0], 0);
+    } else {
+      TextureRegistry.of(mGl).add(key, texture[0], bytes);
+      if (texture[0] != 0) {
+        mSharedTextureKeys.add(key);
+      }
+    }
+    return texture[0];
+  }
+
+  private void releaseTextures() {
+    final TextureRegistry textures = TextureRegistry.of(mGl);
+    for (final String key : mSharedTextureKeys) {
+      textures.release(key);
+    }
+    mSharedTextureKeys.clear();
+  }
+
+  /**
+   * Changes the texture coordinates of the loaded mesh in place before they are uploaded, e.g. to
+   * address a region of a shared texture. Does nothing by default.
+   */
+  protected void mapTexCoords(FloatBuffer texCoords) {
+  }
+
+  /**
+   * @return the texture to upload, or null to skip the upload, e.g. when replaying without a GPU.
+   */
   protected Bitmap readTexture() throws FileNotFoundException {
+    if (mTextureFileName == null) {
+      return null;
+    }
     return BitmapFactory.decodeStream(new FileInputStream(mTextureFileName));
   }
 
+  /**
+   * @param image an encoded image embedded in the model file, or null if it is broken.
+   * @return the texture to upload, or null to skip the upload.
+   */
+  protected Bitmap decodeTexture(ByteBuffer image) {
+    if (image == null) {
+      return null;
+    }
+    final byte[] bytes = new byte[image.remaining()];
+    image.duplicate().get(bytes);
+    return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+  }
+
   /**
    * Selects the blending mode for rendering.
    *
@@ -238,19 +446,35 @@ public class ObjectRenderer {
   /**
    * Updates the object model matrix and applies scaling.
    *
-   * @param scaleFactor A separate scaling factor to apply before the {@code modelMatrix}.
-   * @see android.opengl.Matrix
+   * @param anchorMatrix The pose of the anchor this object is placed on, as 4x4 column-major
+   *                     matrix. Computed once per anchor, as it is shared by all its objects.
+   * @param offset       The offset of the matrix in {@code anchorMatrix}.
+   * @param scaleFactor  A separate scaling factor to apply before the {@code anchorMatrix}.
    */
-  public void updateModelMatrix(float scaleFactor) {
-    mAttachement.getPose().toMatrix(modelMatrix, 0);
+  public void updateModelMatrix(float[] anchorMatrix, int offset, float scaleFactor) {
+    MatrixMath.scaleM(mModelMatrix, 0, anchorMatrix, offset, scaleFactor);
+  }
 
-    float[] scaleMatrix = new float[16];
-    Matrix.setIdentityM(scaleMatrix, 0);
-    scaleMatrix[0] = scaleFactor;
-    scaleMatrix[5] = scaleFactor;
-    scaleMatrix[10] = scaleFactor;
+  /**
+   * Reads the model, and the material library and textures an OBJ model references, through the
+   * resolver, e.g. from a content store keeping the model file apart from them. Must be set before
+   * the model is loaded.
+   *
+   * @param modelFileName the file the model is known as, e.g. the name it was imported as, which
+   *                      the files it references are relative to.
+   */
+  public void setFileResolver(String modelFileName, Mesh.FileResolver resolver) {
+    mModelFileName = modelFileName;
+    mFileResolver = resolver;
+  }
 
-    Matrix.multiplyMM(mModelMatrix, 0, modelMatrix, 0, scaleMatrix, 0);
+  /**
+   * @return the key the textures of the mesh are shared by. Textures embedded in a model file
+   *     only depend on its content, those of a material library also on the model referencing it.
+   */
+  private String getTextureKey(Mesh mesh) {
+    return mesh.getMaterialLibrary() == null
+        ? mObjectFileName : mModelFileName + "@" + mObjectFileName;
   }
 
   /**
@@ -278,9 +502,8 @@ public class ObjectRenderer {
    * @param lightIntensity    Illumination intensity.  Combined with diffuse and specular material
    *                          properties.
    * @see #setBlendMode(BlendMode)
-   * @see #updateModelMatrix(float)
+   * @see #updateModelMatrix(float[], int, float)
    * @see #setMaterialProperties(float, float, float, float)
-   * @see android.opengl.Matrix
    */
   public void draw(float[] cameraView, float[] cameraPerspective, float lightIntensity) {
     if (!isInitialized()) {
@@ -293,101 +516,120 @@ public class ObjectRenderer {
       return;
     }
 
-    ShaderUtil.checkGLError(TAG, "Before draw");
+    ShaderUtil.checkGLError(mGl, TAG, "Before draw");
 
     // Build the ModelView and ModelViewProjection matrices
     // for calculating object position and light.
-    Matrix.multiplyMM(mModelViewMatrix, 0, cameraView, 0, mModelMatrix, 0);
-    Matrix.multiplyMM(mModelViewProjectionMatrix, 0, cameraPerspective, 0, mModelViewMatrix, 0);
+    MatrixMath.multiplyMM(mModelViewMatrix, 0, cameraView, 0, mModelMatrix, 0);
+    MatrixMath.multiplyMM(
+        mModelViewProjectionMatrix, 0, cameraPerspective, 0, mModelViewMatrix, 0);
 
-    GLES20.glUseProgram(mProgram);
+    mGl.glUseProgram(mProgram);
 
     // Set the lighting environment properties.
-    Matrix.multiplyMV(mViewLightDirection, 0, mModelViewMatrix, 0, LIGHT_DIRECTION, 0);
+    MatrixMath.multiplyMV(mViewLightDirection, 0, mModelViewMatrix, 0, LIGHT_DIRECTION, 0);
     normalizeVec3(mViewLightDirection);
-    GLES20.glUniform4f(mLightingParametersUniform,
+    mGl.glUniform4f(mLightingParametersUniform,
         mViewLightDirection[0], mViewLightDirection[1], mViewLightDirection[2], lightIntensity);
 
     // Set the object material properties.
-    GLES20.glUniform4f(mMaterialParametersUniform, mAmbient, mDiffuse, mSpecular,
+    mGl.glUniform4f(mMaterialParametersUniform, mAmbient, mDiffuse, mSpecular,
         mSpecularPower);
 
-    // Attach the object texture.
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[0]);
-    GLES20.glUniform1i(mTextureUniform, 0);
+    // The textures of the parts are attached to this unit.
+    mGl.glActiveTexture(GLES20.GL_TEXTURE0);
+    mGl.glUniform1i(mTextureUniform, 0);
 
     // Set the vertex attributes.
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferId);
+    mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferId);
 
-    GLES20.glVertexAttribPointer(
+    mGl.glVertexAttribPointer(
         mPositionAttribute, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, mVerticesBaseAddress);
-    GLES20.glVertexAttribPointer(
+    mGl.glVertexAttribPointer(
         mNormalAttribute, 3, GLES20.GL_FLOAT, false, 0, mNormalsBaseAddress);
-    GLES20.glVertexAttribPointer(
+    mGl.glVertexAttribPointer(
         mTexCoordAttribute, 2, GLES20.GL_FLOAT, false, 0, mTexCoordsBaseAddress);
 
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
     // Set the ModelViewProjection matrix in the shader.
-    GLES20.glUniformMatrix4fv(
+    mGl.glUniformMatrix4fv(
         mModelViewUniform, 1, false, mModelViewMatrix, 0);
-    GLES20.glUniformMatrix4fv(
+    mGl.glUniformMatrix4fv(
         mModelViewProjectionUniform, 1, false, mModelViewProjectionMatrix, 0);
 
     // Enable vertex arrays
-    GLES20.glEnableVertexAttribArray(mPositionAttribute);
-    GLES20.glEnableVertexAttribArray(mNormalAttribute);
-    GLES20.glEnableVertexAttribArray(mTexCoordAttribute);
+    mGl.glEnableVertexAttribArray(mPositionAttribute);
+    mGl.glEnableVertexAttribArray(mNormalAttribute);
+    mGl.glEnableVertexAttribArray(mTexCoordAttribute);
 
     if (mBlendMode != null) {
-      GLES20.glDepthMask(false);
-      GLES20.glEnable(GLES20.GL_BLEND);
+      mGl.glDepthMask(false);
+      mGl.glEnable(GLES20.GL_BLEND);
       switch (mBlendMode) {
         case Shadow:
           // Multiplicative blending function for Shadow.
-          GLES20.glBlendFunc(GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+          mGl.glBlendFunc(GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA);
           break;
         case Grid:
           // Grid, additive blending function.
-          GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+          mGl.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
           break;
       }
     }
 
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferId);
-    GLES20.glDrawElements(GLES20.GL_TRIANGLES, mIndexCount, GLES20.GL_UNSIGNED_SHORT, 0);
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    mGl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferId);
+    // One draw call per part, parts of the same texture only bind it once.
+    int boundTexture = -1;
+    for (final Mesh.Part part : mParts) {
+      final int texture = mTextures[part.getTexture() + 1];
+      if (texture != boundTexture) {
+        mGl.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        boundTexture = texture;
+      }
+      mGl.glDrawElements(GLES20.GL_TRIANGLES, part.getIndexCount(), GLES20.GL_UNSIGNED_SHORT,
+          2 * part.getIndexOffset());
+      FrameProfiler.recordDrawCall(part.getIndexCount() / 3);
+    }
+    mGl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
 
     if (mBlendMode != null) {
-      GLES20.glDisable(GLES20.GL_BLEND);
-      GLES20.glDepthMask(true);
+      mGl.glDisable(GLES20.GL_BLEND);
+      mGl.glDepthMask(true);
     }
 
     // Disable vertex arrays
-    GLES20.glDisableVertexAttribArray(mPositionAttribute);
-    GLES20.glDisableVertexAttribArray(mNormalAttribute);
-    GLES20.glDisableVertexAttribArray(mTexCoordAttribute);
-
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    mGl.glDisableVertexAttribArray(mPositionAttribute);
+    mGl.glDisableVertexAttribArray(mNormalAttribute);
+    mGl.glDisableVertexAttribArray(mTexCoordAttribute);
 
-    ShaderUtil.checkGLError(TAG, "After draw");
-  }
-
-  public boolean isTracking() {
-    return mAttachement.isTracking();
-  }
+    mGl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
 
-  public void setAttachement(TrackableAttachment attachement) {
-    this.mAttachement = attachement;
+    ShaderUtil.checkGLError(mGl, TAG, "After draw");
   }
 
   public boolean isInitialized() {
     return mInitialized;
   }
 
-  public void destroy(Session session) {
-    mAttachement.getAnchor().detach();
+  /**
+   * Called on the OpenGL thread once the placement showing this renderer got removed. Deletes
+   * all OpenGL resources of this renderer, it must not be drawn afterwards. The anchor itself is
+   * shared with other renderers and detached by the {@link AnchorManager}.
+   */
+  public void destroy() {
+    releaseTextures();
+    mResources.release(this);
+  }
+
+  /**
+   * Called on the OpenGL thread once the OpenGL context got lost with all resources of this
+   * renderer, after they got forgotten by the {@link GlResourceTracker} and the
+   * {@link TextureRegistry}. The model is loaded again with the next draw.
+   */
+  public void onContextLost() {
+    mSharedTextureKeys.clear();
+    mInitialized = false;
   }
 
   /**
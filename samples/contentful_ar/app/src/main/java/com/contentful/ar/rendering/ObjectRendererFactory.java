@@ -1,7 +1,14 @@
 package com.contentful.ar.rendering;
 
 
+import android.content.Context;
+import android.support.annotation.LayoutRes;
+
+import com.contentful.ar.io.ContentStore;
+
 import java.io.File;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.contentful.ar.rendering.ShaderUtil.normalizeFileName;
 
@@ -11,22 +18,40 @@ public class ObjectRendererFactory {
   static final String DEFAULT_VERTEX_SHADER_FILE_NAME = "object_vertex.shader";
 
   private final String basepath;
+  private final ContentStore contentStore;
+  // Files are only deleted once nothing resolves to them anymore, so remembering the ones found
+  // saves most disk lookups.
+  private final Set<String> existingFiles = ConcurrentHashMap.newKeySet();
 
-  public ObjectRendererFactory(String basepath) {
+  /**
+   * @param contentStore resolves meshes and textures stored by their content.
+   */
+  public ObjectRendererFactory(String basepath, ContentStore contentStore) {
     if (!basepath.endsWith("/")) {
       basepath = basepath + "/";
     }
 
     this.basepath = basepath;
+    this.contentStore = contentStore;
   }
 
+  /**
+   * Creates the renderer of an OBJ or GLB file, with the PNG file of the same name as texture.
+   * GLB files may embed their textures instead.
+   */
   public ObjectRenderer create(String objectFileName) {
     objectFileName = normalizeFileName(objectFileName, basepath);
-    return create(
-        objectFileName,
-        objectFileNameToTextureFileName(objectFileName));
+    String textureFileName = objectFileNameToTextureFileName(objectFileName);
+    if (Mesh.isGlb(objectFileName)
+        && !checkExisting(contentStore.resolve(new File(textureFileName)).getPath())) {
+      textureFileName = null;
+    }
+    return create(objectFileName, textureFileName);
   }
 
+  /**
+   * @param textureFileName null for GLB files, which only use their embedded textures then.
+   */
   public ObjectRenderer create(String objectFileName,
                                String textureFileName) {
     return create(
@@ -40,18 +65,48 @@ public class ObjectRendererFactory {
                                String textureFileName,
                                String vertexShaderFileName,
                                String fragmentShaderFileName) {
+    final String modelFileName = objectFileName;
+    objectFileName = contentStore.resolve(new File(objectFileName)).getPath();
+    if (textureFileName != null) {
+      textureFileName = contentStore.resolve(new File(textureFileName)).getPath();
+    }
     if (!checkExisting(objectFileName)
-        || !checkExisting(textureFileName)
+        || textureFileName != null && !checkExisting(textureFileName)
         || !checkExisting(vertexShaderFileName)
         || !checkExisting(fragmentShaderFileName)) {
       return null;
     } else {
-      return new ObjectRenderer(objectFileName, textureFileName, fragmentShaderFileName, vertexShaderFileName);
+      final ObjectRenderer renderer = new ObjectRenderer(
+          objectFileName, textureFileName, fragmentShaderFileName, vertexShaderFileName);
+      // Stored models reference their materials relative to the names they got imported as.
+      renderer.setFileResolver(modelFileName, contentStore);
+      return renderer;
     }
   }
 
+  /**
+   * Creates the renderer of a panel showing an XML layout, which is inflated right away.
+   *
+   * @return the renderer, or null if the panel file or a shader is missing.
+   */
+  public XmlLayoutRenderer createPanel(Context context, @LayoutRes int xmlLayoutResource) {
+    final String objectFileName = contentStore.resolve(
+        new File(normalizeFileName(XmlLayoutRenderer.PANEL_FILE_NAME, basepath))).getPath();
+    final String vertexShaderFileName =
+        normalizeFileName(DEFAULT_VERTEX_SHADER_FILE_NAME, basepath);
+    final String fragmentShaderFileName =
+        normalizeFileName(DEFAULT_FRAGMENT_SHADER_FILE_NAME, basepath);
+    if (!checkExisting(objectFileName)
+        || !checkExisting(vertexShaderFileName)
+        || !checkExisting(fragmentShaderFileName)) {
+      return null;
+    }
+    return new XmlLayoutRenderer(context, objectFileName, fragmentShaderFileName,
+        vertexShaderFileName, xmlLayoutResource);
+  }
+
   private String objectFileNameToTextureFileName(String fileName) {
-    if (fileName.toLowerCase().endsWith(".obj")) {
+    if (fileName.toLowerCase().endsWith(Mesh.OBJ_EXTENSION) || Mesh.isGlb(fileName)) {
       return fileName.substring(0, fileName.length() - 4).concat(".png");
     } else {
       return fileName.concat(".png");
@@ -59,6 +114,15 @@ public class ObjectRendererFactory {
   }
 
   private boolean checkExisting(String fileName) {
-    return new File(fileName).exists();
+    if (existingFiles.contains(fileName)) {
+      return true;
+    }
+
+    if (new File(fileName).exists()) {
+      existingFiles.add(fileName);
+      return true;
+    } else {
+      return false;
+    }
   }
 }
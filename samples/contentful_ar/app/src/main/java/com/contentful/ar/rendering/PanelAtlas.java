@@ -0,0 +1,203 @@
+package com.contentful.ar.rendering;
+
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import com.contentful.ar.rendering.gl.GlBackend;
+import com.contentful.ar.rendering.gl.GlResourceTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs the textures of many small panels into a few shared atlas pages, so placing a panel does
+ * not allocate a texture of its own.
+ * <p>
+ * Regions are packed into shelves, rows of regions of about the same height. A shelf is reused
+ * for new regions once all of its regions are freed. All methods must be called on the OpenGL
+ * thread.
+ */
+class PanelAtlas {
+  static final int PAGE_SIZE = 1024;
+  // Keeps the filtering of one region from sampling its neighbours.
+  private static final int PADDING = 2;
+  static final int MAX_REGION_SIZE = PAGE_SIZE - 2 * PADDING;
+
+  private final GlBackend gl;
+  private final List<Page> pages = new ArrayList<>();
+  private Bitmap scratch;
+
+  PanelAtlas(GlBackend gl) {
+    this.gl = gl;
+  }
+
+  /**
+   * Reserves a region of the given size, creating a new page if no page has room left. The
+   * content of the region is undefined until it is uploaded.
+   */
+  Region allocate(int width, int height) {
+    if (width < 1 || height < 1 || width > MAX_REGION_SIZE || height > MAX_REGION_SIZE) {
+      throw new IllegalArgumentException(
+          "Region of " + width + "x" + height + " does not fit into the atlas.");
+    }
+
+    final int paddedWidth = width + 2 * PADDING;
+    final int paddedHeight = height + 2 * PADDING;
+    for (final Page page : pages) {
+      final Region region = page.allocate(width, height, paddedWidth, paddedHeight);
+      if (region != null) {
+        return region;
+      }
+    }
+
+    final Page page = new Page(createPageTexture());
+    pages.add(page);
+    return page.allocate(width, height, paddedWidth, paddedHeight);
+  }
+
+  /**
+   * Returns the region to its page. The region must not be used afterwards.
+   */
+  void free(Region region) {
+    region.shelf.free();
+  }
+
+  /**
+   * Provides a bitmap of the given size to rasterise an upload into. The same bitmap is handed
+   * out for every upload, so it must be uploaded before the next call.
+   */
+  Bitmap getScratchBitmap(int width, int height) {
+    final int bytes = width * height * 4;
+    if (scratch == null || scratch.getAllocationByteCount() < bytes) {
+      if (scratch != null) {
+        scratch.recycle();
+      }
+      scratch = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    } else {
+      scratch.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+    }
+    scratch.eraseColor(0);
+    return scratch;
+  }
+
+  /**
+   * Uploads a bitmap into a region, with its top left corner at the given texel of the region.
+   */
+  void upload(Region region, int x, int y, Bitmap bitmap) {
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, region.textureId);
+    // Bitmaps can only be uploaded by Android itself.
+    GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, region.x + x, region.y + y, bitmap);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+  }
+
+  private int createPageTexture() {
+    final int[] texture = new int[1];
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glGenTextures(1, texture, 0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, texture[0]);
+
+    // Panels are seen at about the size they are rasterised at, so no mipmaps are needed, which
+    // would have to be regenerated for the whole page on every upload.
+    gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+    gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, PAGE_SIZE, PAGE_SIZE, 0,
+        GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    // Pages are kept for the lifetime of the OpenGL context, to be reused by later panels.
+    GlResourceTracker.of(gl).register(
+        this, GlResourceTracker.Kind.TEXTURE, texture[0], PAGE_SIZE * PAGE_SIZE * 4);
+    return texture[0];
+  }
+
+  /**
+   * A rectangle of texels on one atlas page.
+   */
+  static final class Region {
+    final int textureId;
+    final int x;
+    final int y;
+    final int width;
+    final int height;
+    private final Shelf shelf;
+
+    private Region(int textureId, int x, int y, int width, int height, Shelf shelf) {
+      this.textureId = textureId;
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.height = height;
+      this.shelf = shelf;
+    }
+
+    /**
+     * Maps texture coordinates of the whole panel, with v pointing up, into this region. The
+     * outermost texel centers are kept, so filtering never reaches into the padding.
+     */
+    void mapTexCoord(float[] uv) {
+      final float left = x + 0.5f;
+      final float top = y + 0.5f;
+      uv[0] = (left + uv[0] * (width - 1)) / PAGE_SIZE;
+      // Bitmaps are uploaded top row first, the shaders flip v when sampling.
+      uv[1] = 1 - (top + (1 - uv[1]) * (height - 1)) / PAGE_SIZE;
+    }
+  }
+
+  private static final class Page {
+    private final int textureId;
+    private final List<Shelf> shelves = new ArrayList<>();
+    private int nextShelfY;
+
+    Page(int textureId) {
+      this.textureId = textureId;
+    }
+
+    Region allocate(int width, int height, int paddedWidth, int paddedHeight) {
+      for (final Shelf shelf : shelves) {
+        // Do not waste more than a quarter of a shelf on a lower region.
+        if (shelf.height >= paddedHeight && 4 * paddedHeight >= 3 * shelf.height
+            && shelf.nextX + paddedWidth <= PAGE_SIZE) {
+          return shelf.add(textureId, width, height, paddedWidth);
+        }
+      }
+
+      if (nextShelfY + paddedHeight > PAGE_SIZE) {
+        return null;
+      }
+      final Shelf shelf = new Shelf(nextShelfY, paddedHeight);
+      shelves.add(shelf);
+      nextShelfY += paddedHeight;
+      return shelf.add(textureId, width, height, paddedWidth);
+    }
+  }
+
+  private static final class Shelf {
+    private final int y;
+    private final int height;
+    private int nextX;
+    private int regionCount;
+
+    Shelf(int y, int height) {
+      this.y = y;
+      this.height = height;
+    }
+
+    Region add(int textureId, int width, int height, int paddedWidth) {
+      final Region region =
+          new Region(textureId, nextX + PADDING, y + PADDING, width, height, this);
+      nextX += paddedWidth;
+      regionCount++;
+      return region;
+    }
+
+    void free() {
+      if (--regionCount == 0) {
+        nextX = 0;
+      }
+    }
+  }
+}
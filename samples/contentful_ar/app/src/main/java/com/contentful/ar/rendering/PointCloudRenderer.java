@@ -17,9 +17,12 @@ package com.contentful.ar.rendering;
 import android.content.Context;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
 
-import com.google.ar.core.PointCloud;
+import com.contentful.ar.rendering.gl.GlBackend;
+import com.contentful.ar.rendering.gl.GlResourceTracker;
+import com.contentful.ar.rendering.gl.Gles20Backend;
+
+import java.nio.FloatBuffer;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -28,7 +31,7 @@ import javax.microedition.khronos.opengles.GL10;
  * Renders a point cloud.
  */
 public class PointCloudRenderer {
-  private static final String TAG = PointCloud.class.getSimpleName();
+  private static final String TAG = PointCloudRenderer.class.getSimpleName();
 
   private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
   private static final int FLOATS_PER_POINT = 4;  // X,Y,Z,confidence.
@@ -48,9 +51,23 @@ public class PointCloudRenderer {
 
   // Keep track of the last point cloud rendered to avoid updating the VBO if point cloud
   // was not changed.
-  private PointCloud mLastPointCloud = null;
+  private long mLastTimestamp = Long.MIN_VALUE;
+
+  private final GlBackend mGl;
+  private final GlResourceTracker mResources;
+  // Temporary matrix allocated here to reduce number of allocations for each frame.
+  private final float[] mModelViewProjection = new float[16];
 
   public PointCloudRenderer() {
+    this(Gles20Backend.INSTANCE);
+  }
+
+  /**
+   * @param gl the OpenGL backend to issue all calls to.
+   */
+  public PointCloudRenderer(GlBackend gl) {
+    mGl = gl;
+    mResources = GlResourceTracker.of(gl);
   }
 
   /**
@@ -61,75 +78,94 @@ public class PointCloudRenderer {
    * @param context Needed to access shader source.
    */
   public void createOnGlThread(Context context) {
-    ShaderUtil.checkGLError(TAG, "before create");
+    createOnGlThread(context.getExternalFilesDir(null).getAbsolutePath());
+  }
+
+  /**
+   * Allocates and initializes OpenGL resources needed by the point cloud renderer.
+   *
+   * @param basepath Directory containing the shader sources.
+   */
+  public void createOnGlThread(String basepath) {
+    ShaderUtil.checkGLError(mGl, TAG, "before create");
 
     int[] buffers = new int[1];
-    GLES20.glGenBuffers(1, buffers, 0);
+    mGl.glGenBuffers(1, buffers, 0);
     mVbo = buffers[0];
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
+    mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
 
     mVboSize = INITIAL_BUFFER_POINTS * BYTES_PER_POINT;
-    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mVboSize, null, GLES20.GL_DYNAMIC_DRAW);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    mGl.glBufferData(GLES20.GL_ARRAY_BUFFER, mVboSize, null, GLES20.GL_DYNAMIC_DRAW);
+    mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    mResources.register(this, GlResourceTracker.Kind.BUFFER, mVbo, mVboSize);
 
-    ShaderUtil.checkGLError(TAG, "buffer alloc");
+    ShaderUtil.checkGLError(mGl, TAG, "buffer alloc");
 
-    final String basepath = context.getExternalFilesDir(null).getAbsolutePath();
     int vertexShader = ShaderUtil.loadGLShader(
+        mGl,
         TAG,
         ShaderUtil.normalizeFileName("point_cloud_vertex.shader", basepath),
         GLES20.GL_VERTEX_SHADER);
 
     int passthroughShader = ShaderUtil.loadGLShader(
+        mGl,
         TAG,
         ShaderUtil.normalizeFileName("passthrough_fragment.shader", basepath),
         GLES20.GL_FRAGMENT_SHADER);
+    mResources.register(this, GlResourceTracker.Kind.SHADER, vertexShader, 0);
+    mResources.register(this, GlResourceTracker.Kind.SHADER, passthroughShader, 0);
 
-    mProgramName = GLES20.glCreateProgram();
-    GLES20.glAttachShader(mProgramName, vertexShader);
-    GLES20.glAttachShader(mProgramName, passthroughShader);
-    GLES20.glLinkProgram(mProgramName);
-    GLES20.glUseProgram(mProgramName);
+    mProgramName = mGl.glCreateProgram();
+    mResources.register(this, GlResourceTracker.Kind.PROGRAM, mProgramName, 0);
+    mGl.glAttachShader(mProgramName, vertexShader);
+    mGl.glAttachShader(mProgramName, passthroughShader);
+    mGl.glLinkProgram(mProgramName);
+    mGl.glUseProgram(mProgramName);
 
-    ShaderUtil.checkGLError(TAG, "program");
+    ShaderUtil.checkGLError(mGl, TAG, "program");
 
-    mPositionAttribute = GLES20.glGetAttribLocation(mProgramName, "a_Position");
-    mColorUniform = GLES20.glGetUniformLocation(mProgramName, "u_Color");
-    mModelViewProjectionUniform = GLES20.glGetUniformLocation(
+    mPositionAttribute = mGl.glGetAttribLocation(mProgramName, "a_Position");
+    mColorUniform = mGl.glGetUniformLocation(mProgramName, "u_Color");
+    mModelViewProjectionUniform = mGl.glGetUniformLocation(
         mProgramName, "u_ModelViewProjection");
-    mPointSizeUniform = GLES20.glGetUniformLocation(mProgramName, "u_PointSize");
+    mPointSizeUniform = mGl.glGetUniformLocation(mProgramName, "u_PointSize");
 
-    ShaderUtil.checkGLError(TAG, "program  params");
+    ShaderUtil.checkGLError(mGl, TAG, "program  params");
   }
 
   /**
    * Updates the OpenGL buffer contents to the provided point.  Repeated calls with the same
    * point cloud will be ignored.
+   *
+   * @param points    x, y, z and confidence per point, as from
+   *                  {@link com.google.ar.core.PointCloud#getPoints()}.
+   * @param timestamp the point cloud's timestamp, identifying redundant calls.
    */
-  public void update(PointCloud cloud) {
-    if (mLastPointCloud == cloud) {
+  public void update(FloatBuffer points, long timestamp) {
+    if (mLastTimestamp == timestamp) {
       // Redundant call.
       return;
     }
 
-    ShaderUtil.checkGLError(TAG, "before update");
+    ShaderUtil.checkGLError(mGl, TAG, "before update");
 
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
-    mLastPointCloud = cloud;
+    mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
+    mLastTimestamp = timestamp;
 
     // If the VBO is not large enough to fit the new point cloud, resize it.
-    mNumPoints = mLastPointCloud.getPoints().remaining() / FLOATS_PER_POINT;
+    points.rewind();
+    mNumPoints = points.remaining() / FLOATS_PER_POINT;
     if (mNumPoints * BYTES_PER_POINT > mVboSize) {
       while (mNumPoints * BYTES_PER_POINT > mVboSize) {
         mVboSize *= 2;
       }
-      GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mVboSize, null, GLES20.GL_DYNAMIC_DRAW);
+      mGl.glBufferData(GLES20.GL_ARRAY_BUFFER, mVboSize, null, GLES20.GL_DYNAMIC_DRAW);
+      mResources.resize(this, GlResourceTracker.Kind.BUFFER, mVbo, mVboSize);
     }
-    GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, mNumPoints * BYTES_PER_POINT,
-        mLastPointCloud.getPoints());
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    mGl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, mNumPoints * BYTES_PER_POINT, points);
+    mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
-    ShaderUtil.checkGLError(TAG, "after update");
+    ShaderUtil.checkGLError(mGl, TAG, "after update");
   }
 
   /**
@@ -141,24 +177,32 @@ public class PointCloudRenderer {
    *                          com.google.ar.core.Camera#getProjectionMatrix(float[], int, float, float)}.
    */
   public void draw(float[] cameraView, float[] cameraPerspective) {
-    float[] modelViewProjection = new float[16];
-    Matrix.multiplyMM(modelViewProjection, 0, cameraPerspective, 0, cameraView, 0);
+    MatrixMath.multiplyMM(mModelViewProjection, 0, cameraPerspective, 0, cameraView, 0);
 
-    ShaderUtil.checkGLError(TAG, "Before draw");
+    ShaderUtil.checkGLError(mGl, TAG, "Before draw");
 
-    GLES20.glUseProgram(mProgramName);
-    GLES20.glEnableVertexAttribArray(mPositionAttribute);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
-    GLES20.glVertexAttribPointer(
+    mGl.glUseProgram(mProgramName);
+    mGl.glEnableVertexAttribArray(mPositionAttribute);
+    mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVbo);
+    mGl.glVertexAttribPointer(
         mPositionAttribute, 4, GLES20.GL_FLOAT, false, BYTES_PER_POINT, 0);
-    GLES20.glUniform4f(mColorUniform, 31.0f / 255.0f, 188.0f / 255.0f, 210.0f / 255.0f, 1.0f);
-    GLES20.glUniformMatrix4fv(mModelViewProjectionUniform, 1, false, modelViewProjection, 0);
-    GLES20.glUniform1f(mPointSizeUniform, 5.0f);
+    mGl.glUniform4f(mColorUniform, 31.0f / 255.0f, 188.0f / 255.0f, 210.0f / 255.0f, 1.0f);
+    mGl.glUniformMatrix4fv(mModelViewProjectionUniform, 1, false, mModelViewProjection, 0);
+    mGl.glUniform1f(mPointSizeUniform, 5.0f);
 
-    GLES20.glDrawArrays(GLES20.GL_POINTS, 0, mNumPoints);
-    GLES20.glDisableVertexAttribArray(mPositionAttribute);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    mGl.glDrawArrays(GLES20.GL_POINTS, 0, mNumPoints);
+    FrameProfiler.recordDrawCall(0);
+    mGl.glDisableVertexAttribArray(mPositionAttribute);
+    mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
-    ShaderUtil.checkGLError(TAG, "Draw");
+    ShaderUtil.checkGLError(mGl, TAG, "Draw");
+  }
+
+  /**
+   * Deletes all OpenGL resources of this renderer. Must be called on the OpenGL thread, the
+   * renderer must not be drawn afterwards.
+   */
+  public void destroy() {
+    mResources.release(this);
   }
 }
@@ -0,0 +1,89 @@
+package com.contentful.ar.rendering;
+
+
+/**
+ * Single producer, single consumer queue of commands, handed from the UI thread to the GL
+ * thread without locks or allocations.
+ * <p>
+ * A command is an int code with a float value and an optional object argument, copied into
+ * parallel ring buffers, so state read by the renderers is only ever written on the GL thread.
+ * The GL thread {@link #drain drains} all queued commands at the start of each frame.
+ * <p>
+ * This class does not depend on Android.
+ */
+public class RenderCommandQueue {
+  private final int[] commands;
+  private final float[] values;
+  private final Object[] arguments;
+  private final int mask;
+
+  // Written by the producer only.
+  private volatile long tail = 0;
+  // Written by the consumer only.
+  private volatile long head = 0;
+
+  /**
+   * Runs the drained commands on the GL thread.
+   */
+  public interface Executor {
+    void execute(int command, float value, Object argument);
+  }
+
+  /**
+   * @param capacity number of commands which can be held, rounded up to the next power of two.
+   */
+  public RenderCommandQueue(int capacity) {
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+
+    commands = new int[size];
+    values = new float[size];
+    arguments = new Object[size];
+    mask = size - 1;
+  }
+
+  /**
+   * Queues a command. Must only be called from the UI thread.
+   *
+   * @return false if the queue is full and the command got dropped.
+   */
+  public boolean offer(int command, float value, Object argument) {
+    final long currentTail = tail;
+    if (currentTail - head > mask) {
+      return false;
+    }
+
+    final int index = (int) (currentTail & mask);
+    commands[index] = command;
+    values[index] = value;
+    arguments[index] = argument;
+
+    // Publish the slot only after it got written.
+    tail = currentTail + 1;
+    return true;
+  }
+
+  /**
+   * Executes all queued commands in the order they got offered. Must only be called from the GL
+   * thread. Commands offered while draining are left for the next call.
+   *
+   * @return the number of commands executed.
+   */
+  public int drain(Executor executor) {
+    final long currentHead = head;
+    final long currentTail = tail;
+    for (long i = currentHead; i < currentTail; ++i) {
+      final int index = (int) (i & mask);
+      final Object argument = arguments[index];
+      // Do not keep arguments alive until the slot gets reused.
+      arguments[index] = null;
+      executor.execute(commands[index], values[index], argument);
+    }
+
+    // Release the slots only after they got read.
+    head = currentTail;
+    return (int) (currentTail - currentHead);
+  }
+}
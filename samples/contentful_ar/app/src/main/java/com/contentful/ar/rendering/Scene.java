@@ -4,33 +4,59 @@ package com.contentful.ar.rendering;
 import android.content.Context;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.SurfaceHolder;
 
 import com.google.ar.core.Anchor;
-import com.google.ar.core.Camera;
 import com.google.ar.core.Frame;
 import com.google.ar.core.Plane;
 import com.google.ar.core.Point;
-import com.google.ar.core.PointCloud;
 import com.google.ar.core.Session;
 import com.google.ar.core.Trackable;
 import com.google.ar.core.TrackingState;
 import com.google.ar.core.exceptions.NotTrackingException;
 
+import com.contentful.ar.BuildConfig;
 import com.contentful.ar.DisplayRotationHelper;
-
+import com.contentful.ar.rendering.gl.GlResourceTracker;
+import com.contentful.ar.rendering.gl.Gles20Backend;
+import com.contentful.ar.rendering.gl.TextureRegistry;
+import com.contentful.ar.replay.FrameSnapshot;
+import com.contentful.ar.replay.LiveFrameCapture;
+import com.contentful.ar.replay.SessionRecording;
+
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 public class Scene implements GLSurfaceView.Renderer {
+  /**
+   * Multiplies the scale factor of all objects by the value.
+   */
+  public static final int COMMAND_SCALE = 0;
+  /**
+   * Sets the scale factor of all objects to the value.
+   */
+  public static final int COMMAND_SET_SCALE_FACTOR = 1;
+  /**
+   * Sets the resolution scale of the surface to the value.
+   */
+  public static final int COMMAND_SET_RESOLUTION_SCALE = 2;
+  /**
+   * Commands from this code on are passed to {@link DrawingCallback#onCommand}.
+   */
+  public static final int COMMAND_USER = 16;
+
   private static final String TAG = Scene.class.getSimpleName();
+  private static final int COMMAND_CAPACITY = 64;
+  private static final float MIN_RESOLUTION_SCALE = 0.25f;
   // Temporary matrix allocated here to reduce number of allocations for each frame.
   private CameraFeedRenderer cameraFeedRenderer = new CameraFeedRenderer();
-  private List<ObjectRenderer> objectRenderer = new ArrayList<>();
+  private AnchorManager anchorManager = new AnchorManager();
   private PlaneRenderer planeRenderer = new PlaneRenderer();
   private PointCloudRenderer pointCloudRenderer = new PointCloudRenderer();
   private Context context;
@@ -38,7 +64,40 @@ public class Scene implements GLSurfaceView.Renderer {
   private Session session;
   private DrawingCallback callback;
   private DisplayRotationHelper mDisplayRotationHelper;
+  private FrameScheduler frameScheduler;
+  private final FrameProfiler profiler = new FrameProfiler();
+  // Reused for every frame, and written to the recorder if recording.
+  private final FrameSnapshot snapshot = new FrameSnapshot();
+  private final LiveFrameCapture capture = new LiveFrameCapture();
+  private SessionRecording.Writer recorder;
+  // Written by the UI thread, drained on the GL thread at the start of every frame.
+  private final RenderCommandQueue commands = new RenderCommandQueue(COMMAND_CAPACITY);
+  private final RenderCommandQueue.Executor commandExecutor = new RenderCommandQueue.Executor() {
+    @Override
+    public void execute(int command, float value, Object argument) {
+      switch (command) {
+        case COMMAND_SCALE:
+          scaleFactor *= value;
+          break;
+        case COMMAND_SET_SCALE_FACTOR:
+          scaleFactor = value;
+          break;
+        case COMMAND_SET_RESOLUTION_SCALE:
+          resolutionScale = value;
+          break;
+        default:
+          if (callback != null) {
+            callback.onCommand(command, value, argument);
+          }
+          break;
+      }
+    }
+  };
+  // Only accessed on the GL thread.
   private float scaleFactor = 1.0f;
+  private float resolutionScale = 1.0f;
+  // The scale the size of the surface was last requested with.
+  private float appliedResolutionScale = 1.0f;
 
   public Scene(Context context, GLSurfaceView surfaceView, DrawingCallback callback) {
     // Set up renderer.
@@ -47,9 +106,11 @@ public class Scene implements GLSurfaceView.Renderer {
     surfaceView.setEGLContextClientVersion(2);
     surfaceView.setEGLConfigChooser(8, 8, 8, 8, 16, 0); // Alpha used for plane blending.
     surfaceView.setRenderer(this);
-    surfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+    // Frames are requested by the frame scheduler, not rendered at display rate.
+    surfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
     this.surfaceView = surfaceView;
     this.mDisplayRotationHelper = new DisplayRotationHelper(context);
+    this.frameScheduler = new FrameScheduler(context, surfaceView);
 
     this.callback = callback;
   }
@@ -58,15 +119,49 @@ public class Scene implements GLSurfaceView.Renderer {
     this.session = session;
     surfaceView.onResume();
     mDisplayRotationHelper.onResume();
+    frameScheduler.start();
   }
 
   public void unbind() {
+    frameScheduler.stop();
     surfaceView.onPause();
     mDisplayRotationHelper.onPause();
   }
 
+  /**
+   * Deletes the OpenGL resources of all renderers and detaches all anchors, once the scene is not
+   * shown anymore. Can be called from any thread, but only before {@link #unbind()}: the surface
+   * view only keeps the OpenGL context current on its thread while it is not paused. Debug builds
+   * fail if any resource leaked.
+   */
+  public void destroy() {
+    surfaceView.queueEvent(new Runnable() {
+      @Override public void run() {
+        anchorManager.detachAll();
+        XmlLayoutRenderer.releaseAtlas();
+        cameraFeedRenderer.destroy();
+        planeRenderer.destroy();
+        pointCloudRenderer.destroy();
+        if (BuildConfig.DEBUG) {
+          GlResourceTracker.of(Gles20Backend.INSTANCE).checkReleased();
+        }
+      }
+    });
+  }
+
   @Override
   public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+    // Called again once the context got lost, with all resources created in it. The new context
+    // may hand out their names again, so none of them must be shared or deleted anymore.
+    GlResourceTracker.of(Gles20Backend.INSTANCE).forget();
+    TextureRegistry.of(Gles20Backend.INSTANCE).forget();
+    for (int i = 0; i < anchorManager.size(); ++i) {
+      for (final ObjectRenderer renderer : anchorManager.get(i).getRenderers()) {
+        renderer.onContextLost();
+      }
+    }
+    XmlLayoutRenderer.releaseAtlas();
+
     GLES20.glClearColor(0.1f, 0.1f, 0.1f, 1.0f);
 
     // Create the texture and pass it to ARCore session to be filled during update().
@@ -79,55 +174,83 @@ public class Scene implements GLSurfaceView.Renderer {
       Log.e(TAG, "Failed to read plane texture");
     }
     pointCloudRenderer.createOnGlThread(context);
+    profiler.createOnGlThread();
   }
 
   @Override
   public void onSurfaceChanged(GL10 gl, int width, int height) {
     GLES20.glViewport(0, 0, width, height);
-    mDisplayRotationHelper.onSurfaceChanged(width, height);
+    // ARCore maps taps, which are in view coordinates, through the display geometry, so it keeps
+    // the size of the view when the surface is rendered at a lower resolution. Both have the same
+    // aspect ratio.
+    final int viewWidth = surfaceView.getWidth();
+    final int viewHeight = surfaceView.getHeight();
+    if (viewWidth > 0 && viewHeight > 0) {
+      mDisplayRotationHelper.onSurfaceChanged(viewWidth, viewHeight);
+    } else {
+      mDisplayRotationHelper.onSurfaceChanged(width, height);
+    }
   }
 
   @Override
   public void onDrawFrame(GL10 gl) {
+    commands.drain(commandExecutor);
     if (session == null) {
       return;
     }
+    updateResolutionScale();
+
+    frameScheduler.onFrameStart();
+    profiler.beginFrame();
+    final boolean tracking = drawFrame();
+    profiler.endFrame();
+    frameScheduler.onFrameEnd(tracking);
+  }
 
+  /**
+   * @return true if the camera was tracking and the 3d content got drawn.
+   */
+  private boolean drawFrame() {
     GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 
     mDisplayRotationHelper.updateSessionIfNeeded(session);
     session.setCameraTextureName(cameraFeedRenderer.getTextureId());
 
+    profiler.begin(FrameProfiler.STAGE_SESSION_UPDATE);
     final Frame frame = session.update();
+    profiler.end(FrameProfiler.STAGE_SESSION_UPDATE);
     if (callback != null) {
       callback.onDraw(frame);
     }
 
     // Draw background.
+    profiler.begin(FrameProfiler.STAGE_BACKGROUND);
     cameraFeedRenderer.draw(frame);
+    profiler.end(FrameProfiler.STAGE_BACKGROUND);
 
     // If not tracking, don't draw 3d objects.
-    Camera camera = frame.getCamera();
-    if (camera.getTrackingState() != TrackingState.TRACKING) {
-      return;
+    capture.captureCamera(frame, snapshot);
+    if (!snapshot.tracking) {
+      recordFrame();
+      return false;
     }
 
-    // Get projection matrix.
-    float[] projmtx = new float[16];
-    camera.getProjectionMatrix(projmtx, 0, 0.1f, 100.0f);
-
-    // Get camera matrix and draw.
-    float[] viewmtx = new float[16];
-    camera.getViewMatrix(viewmtx, 0);
-
-    // Compute lighting from average intensity of the image.
-    final float lightIntensity = frame.getLightEstimate().getPixelIntensity();
-
-    // Visualize tracked points.
-    PointCloud pointCloud = frame.acquirePointCloud();
-    pointCloudRenderer.update(pointCloud);
-    pointCloudRenderer.draw(viewmtx, projmtx);
-    pointCloud.release();
+    final float[] projmtx = snapshot.projectionMatrix;
+    final float[] viewmtx = snapshot.viewMatrix;
+    final float lightIntensity = snapshot.lightIntensity;
+
+    // Visualize tracked points. Once objects got placed, this is only done while the user
+    // interacts with the scene.
+    final boolean drawPlanes = frameScheduler.shouldDrawPlanes();
+    if (drawPlanes) {
+      profiler.begin(FrameProfiler.STAGE_POINT_CLOUD);
+      if (frameScheduler.shouldUpdatePointCloud()) {
+        capture.capturePointCloud(frame, snapshot);
+        pointCloudRenderer.update(snapshot.getPoints(), snapshot.pointCloudTimestamp);
+      }
+      pointCloudRenderer.draw(viewmtx, projmtx);
+      profiler.end(FrameProfiler.STAGE_POINT_CLOUD);
+    }
 
     // Check if we detected at least one plane. If so, hide the loading message.
     if (callback != null) {
@@ -148,59 +271,244 @@ public class Scene implements GLSurfaceView.Renderer {
     }
 
     // Visualize planes.
-    planeRenderer.drawPlanes(session.getAllTrackables(Plane.class), camera.getPose(), projmtx);
+    if (drawPlanes || recorder != null) {
+      profiler.begin(FrameProfiler.STAGE_PLANES);
+      capture.capturePlanes(session.getAllTrackables(Plane.class), snapshot);
+      if (drawPlanes) {
+        planeRenderer.drawPlanes(snapshot);
+      }
+      profiler.end(FrameProfiler.STAGE_PLANES);
+    }
+
+    // Release anchors ARCore gave up on, so they stop costing tracking time.
+    anchorManager.detachStopped();
 
     // Visualize anchors created by touch.
-    for (final ObjectRenderer renderer : objectRenderer) {
-      if (!renderer.isTracking()) {
+    for (int i = 0; i < anchorManager.size(); ++i) {
+      final AnchorManager.Placement placement = anchorManager.get(i);
+      if (!placement.isTracking()) {
         continue;
       }
 
-      // Update and draw each model.
-      renderer.updateModelMatrix(scaleFactor);
-      renderer.draw(viewmtx, projmtx, lightIntensity);
+      // Update and draw each model sharing this anchor. Renderers only draw once they got
+      // initialized, so check before drawing whether this frame really shows the placement.
+      final boolean firstVisible = placement.markVisible();
+      final float[] anchorMatrices = snapshot.getAnchorMatrices();
+      final int anchorOffset = snapshot.addAnchor();
+      placement.getPoseMatrix(anchorMatrices, anchorOffset);
+      for (final ObjectRenderer renderer : placement.getRenderers()) {
+        // The first draw of a renderer loads its model, which is profiled separately.
+        final int stage = renderer.isInitialized()
+            ? FrameProfiler.STAGE_OBJECTS
+            : FrameProfiler.STAGE_LOADS;
+        profiler.begin(stage);
+        renderer.updateModelMatrix(anchorMatrices, anchorOffset, scaleFactor);
+        renderer.draw(viewmtx, projmtx, lightIntensity);
+        profiler.end(stage);
+      }
+
+      if (firstVisible && callback != null) {
+        callback.placementVisible(SystemClock.uptimeMillis() - placement.getTapTime());
+      }
     }
+
+    recordFrame();
+    return true;
   }
 
-  public int getRendererCount() {
-    return objectRenderer.size();
+  private void recordFrame() {
+    if (recorder == null) {
+      return;
+    }
+
+    try {
+      recorder.write(snapshot);
+    } catch (IOException e) {
+      Log.e(TAG, "Could not record frame, stopping the recording.", e);
+      closeRecorder();
+    }
   }
 
-  public void addRenderer(ObjectRenderer renderer, Trackable trackable, Anchor anchor) {
-    // Cap the number of objects created. This avoids overloading both the
-    // rendering system and ARCore.
-    if (objectRenderer.size() >= 16) {
-      objectRenderer.get(0).destroy(session);
-      objectRenderer.remove(0);
+  private void closeRecorder() {
+    if (recorder == null) {
+      return;
     }
 
+    try {
+      recorder.close();
+      Log.i(TAG, "Recorded " + recorder.getFrameCount() + " frames.");
+    } catch (IOException e) {
+      Log.e(TAG, "Could not finish recording.", e);
+    }
+    recorder = null;
+  }
+
+  /**
+   * Records all following frames to the given file, to be replayed off-device by the benchmark
+   * module. Can be called from any thread, the recording starts with the next frame.
+   */
+  public void startRecording(final File file) {
+    surfaceView.queueEvent(new Runnable() {
+      @Override public void run() {
+        closeRecorder();
+        try {
+          recorder = new SessionRecording.Writer(new FileOutputStream(file));
+          Log.i(TAG, "Recording session to '" + file.getAbsolutePath() + "'.");
+        } catch (IOException e) {
+          Log.e(TAG, "Could not start recording.", e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Finishes the current recording, if any. Can be called from any thread.
+   */
+  public void stopRecording() {
+    surfaceView.queueEvent(new Runnable() {
+      @Override public void run() {
+        closeRecorder();
+      }
+    });
+  }
+
+  public int getRendererCount() {
+    return anchorManager.getRendererCount();
+  }
+
+  public int getLiveAnchorCount() {
+    return anchorManager.getLiveAnchorCount();
+  }
+
+  /**
+   * Places all given renderers on one anchor. The number of anchors is capped by the
+   * {@link AnchorManager}, which evicts the oldest placement. This avoids overloading both the
+   * rendering system and ARCore.
+   *
+   * @param tapTime {@link SystemClock#uptimeMillis()} of the tap, to measure placement latency.
+   */
+  public void addRenderers(
+      Trackable trackable, Anchor anchor, long tapTime, ObjectRenderer... renderers) {
     // Adding an Anchor tells ARCore that it should track this position in
     // space. This anchor will be used in PlaneAttachment to place the 3d model
     // in the correct position relative both to the world and to the plane.
     try {
-      renderer.setAttachement(
-          new TrackableAttachment(
-              trackable,
-              anchor)
-      );
+      anchorManager.attach(trackable, anchor, tapTime, renderers);
+      frameScheduler.onPlacement();
     } catch (NotTrackingException e) {
       Log.e(TAG, "Session is not tracking.");
     }
+  }
+
+  /**
+   * Resizes the surface if the resolution scale changed, e.g. as the device got hot. Every pixel
+   * drawn is saved, not only those of the background, and the compositor upscales the surface to
+   * the view without another pass of ours. Called on the GL thread.
+   */
+  private void updateResolutionScale() {
+    final float scale = Math.min(resolutionScale, frameScheduler.getResolutionScale());
+    if (scale == appliedResolutionScale) {
+      return;
+    }
+    appliedResolutionScale = scale;
+    // The surface holder may only be resized on the UI thread, which also knows the view size.
+    surfaceView.post(new Runnable() {
+      @Override public void run() {
+        final SurfaceHolder holder = surfaceView.getHolder();
+        if (scale >= 1.0f) {
+          holder.setSizeFromLayout();
+        } else if (surfaceView.getWidth() > 0 && surfaceView.getHeight() > 0) {
+          holder.setFixedSize(Math.max(1, (int) (surfaceView.getWidth() * scale)),
+              Math.max(1, (int) (surfaceView.getHeight() * scale)));
+        }
+      }
+    });
+  }
+
+  /**
+   * Renders the scene at a fraction of the view resolution, upscaled by the compositor. The frame
+   * scheduler lowers the resolution further while the device is thermally throttled.
+   *
+   * @param scale resolution scale, clamped to [0.25, 1], 1 meaning full resolution.
+   */
+  public void setResolutionScale(float scale) {
+    post(COMMAND_SET_RESOLUTION_SCALE,
+        Math.max(MIN_RESOLUTION_SCALE, Math.min(1.0f, scale)), null);
+  }
+
+  /**
+   * Queues a command for the GL thread, applied at the start of the next frame. Must only be
+   * called from the UI thread, which is the only producer of commands.
+   *
+   * @param command  one of the {@code COMMAND_} codes, or a code from {@link #COMMAND_USER} on.
+   * @param argument passed on with user commands, must not be modified after posting.
+   * @return false if too many commands are pending and this one got dropped.
+   */
+  public boolean post(int command, float value, Object argument) {
+    if (!commands.offer(command, value, argument)) {
+      Log.w(TAG, "Command queue is full, dropping command " + command + ".");
+      return false;
+    }
+    frameScheduler.onInteraction();
+    return true;
+  }
 
-    objectRenderer.add(renderer);
+  /**
+   * Records a user interaction, so the scene renders at full rate for a while. Can be called from
+   * any thread.
+   */
+  public void onInteraction() {
+    frameScheduler.onInteraction();
   }
 
-  public float getScaleFactor() {
-    return scaleFactor;
+  /**
+   * @return the per frame performance instrumentation, disabled by default.
+   */
+  public FrameProfiler getProfiler() {
+    return profiler;
   }
 
+  /**
+   * Logs frame times and battery drain periodically, to quantify power savings.
+   */
+  public void setBenchmarkEnabled(boolean enabled) {
+    frameScheduler.setBenchmarkEnabled(enabled);
+  }
+
+  /**
+   * Changes the size of all objects by the given factor with the next frame.
+   *
+   * @see #post(int, float, Object)
+   */
+  public void scaleBy(float factor) {
+    post(COMMAND_SCALE, factor, null);
+  }
+
+  /**
+   * Sets the size of all objects with the next frame.
+   *
+   * @see #post(int, float, Object)
+   */
   public void setScaleFactor(float scaleFactor) {
-    this.scaleFactor = scaleFactor;
+    post(COMMAND_SET_SCALE_FACTOR, scaleFactor, null);
   }
 
   public interface DrawingCallback {
     void onDraw(Frame frame);
 
     void trackingPlane();
+
+    /**
+     * Called on the GL thread once a placement is drawn for the first time.
+     *
+     * @param latencyMillis time from the tap to the first frame showing the placed objects.
+     */
+    void placementVisible(long latencyMillis);
+
+    /**
+     * Called on the GL thread at the start of a frame for every command posted with a code from
+     * {@link #COMMAND_USER} on, in posting order.
+     */
+    void onCommand(int command, float value, Object argument);
   }
 }
@@ -17,6 +17,9 @@ package com.contentful.ar.rendering;
 import android.opengl.GLES20;
 import android.util.Log;
 
+import com.contentful.ar.rendering.gl.GlBackend;
+import com.contentful.ar.rendering.gl.Gles20Backend;
+
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -38,6 +41,15 @@ public class ShaderUtil {
    * @return The shader object handler.
    */
   public static int loadGLShader(String tag, String file, int type) {
+    return loadGLShader(Gles20Backend.INSTANCE, tag, file, type);
+  }
+
+  /**
+   * Converts a raw text file, into an OpenGL ES shader, through the given backend.
+   *
+   * @see #loadGLShader(String, String, int)
+   */
+  public static int loadGLShader(GlBackend gl, String tag, String file, int type) {
     String code;
     try {
       code = readRawTextFile(new FileInputStream(file));
@@ -46,18 +58,18 @@ public class ShaderUtil {
       return 0;
     }
 
-    int shader = GLES20.glCreateShader(type);
-    GLES20.glShaderSource(shader, code);
-    GLES20.glCompileShader(shader);
+    int shader = gl.glCreateShader(type);
+    gl.glShaderSource(shader, code);
+    gl.glCompileShader(shader);
 
     // Get the compilation status.
     final int[] compileStatus = new int[1];
-    GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+    gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
 
     // If the compilation failed, delete the shader.
     if (compileStatus[0] == 0) {
-      Log.e(tag, "Error compiling shader: " + GLES20.glGetShaderInfoLog(shader));
-      GLES20.glDeleteShader(shader);
+      Log.e(tag, "Error compiling shader: " + gl.glGetShaderInfoLog(shader));
+      gl.glDeleteShader(shader);
       shader = 0;
     }
 
@@ -75,8 +87,17 @@ public class ShaderUtil {
    * @throws RuntimeException If an OpenGL error is detected.
    */
   public static void checkGLError(String tag, String label) {
+    checkGLError(Gles20Backend.INSTANCE, tag, label);
+  }
+
+  /**
+   * Checks if we've had an error inside of OpenGL ES, through the given backend.
+   *
+   * @see #checkGLError(String, String)
+   */
+  public static void checkGLError(GlBackend gl, String tag, String label) {
     int error;
-    while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
+    while ((error = gl.glGetError()) != GLES20.GL_NO_ERROR) {
       Log.e(tag, label + ": glError " + error);
       throw new RuntimeException(label + ": glError " + error);
     }
@@ -0,0 +1,165 @@
+package com.contentful.ar.rendering;
+
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Layout of the textures of one mesh packed into a single atlas texture, so all parts using them
+ * are drawn with one bind and one draw call. OpenGL ES 2.0 has no texture arrays, so the texture
+ * coordinates are remapped to the regions instead, which only works for coordinates that do not
+ * wrap around.
+ * <p>
+ * Regions are packed into shelves, rows of regions sorted by height, like the ones of the
+ * {@link PanelAtlas}. This class does not depend on Android, so the packing can be benchmarked on
+ * a desktop JVM.
+ */
+final class TextureAtlas {
+  // Supported by all devices running ARCore.
+  static final int MAX_SIZE = 2048;
+  // Keeps the filtering of one region from sampling its neighbours.
+  static final int PADDING = 2;
+
+  private final int width;
+  private final int height;
+  private final int[] x;
+  private final int[] y;
+  private final int[] widths;
+  private final int[] heights;
+
+  private TextureAtlas(int width, int height, int[] x, int[] y, int[] widths, int[] heights) {
+    this.width = width;
+    this.height = height;
+    this.x = x;
+    this.y = y;
+    this.widths = widths;
+    this.heights = heights;
+  }
+
+  /**
+   * Packs textures of the given sizes into the smallest atlas found, with power of two sides, as
+   * OpenGL ES 2.0 only generates mipmaps for those.
+   *
+   * @return the layout, or null if the textures do not fit into {@link #MAX_SIZE}.
+   */
+  static TextureAtlas pack(final int[] widths, final int[] heights) {
+    final Integer[] order = new Integer[widths.length];
+    int minWidth = 1;
+    for (int i = 0; i < order.length; ++i) {
+      order[i] = i;
+      minWidth = Math.max(minWidth, widths[i] + 2 * PADDING);
+    }
+    // Tallest first, so the regions of each shelf are about the same height.
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return heights[b] - heights[a];
+      }
+    });
+
+    TextureAtlas best = null;
+    final int[] x = new int[widths.length];
+    final int[] y = new int[widths.length];
+    for (int width = powerOfTwo(minWidth); width <= MAX_SIZE; width *= 2) {
+      int shelfX = 0;
+      int shelfY = 0;
+      int shelfHeight = 0;
+      for (final int i : order) {
+        final int paddedWidth = widths[i] + 2 * PADDING;
+        if (shelfX + paddedWidth > width) {
+          shelfY += shelfHeight;
+          shelfX = 0;
+          shelfHeight = 0;
+        }
+        x[i] = shelfX + PADDING;
+        y[i] = shelfY + PADDING;
+        shelfX += paddedWidth;
+        shelfHeight = Math.max(shelfHeight, heights[i] + 2 * PADDING);
+      }
+
+      final int height = powerOfTwo(shelfY + shelfHeight);
+      if (height <= MAX_SIZE
+          && (best == null || (long) width * height < (long) best.width * best.height)) {
+        best = new TextureAtlas(width, height, x.clone(), y.clone(), widths, heights);
+      }
+    }
+    return best;
+  }
+
+  private static int powerOfTwo(int size) {
+    return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+  }
+
+  int getWidth() {
+    return width;
+  }
+
+  int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return the left column of the region of the texture.
+   */
+  int getX(int texture) {
+    return x[texture];
+  }
+
+  /**
+   * @return the top row of the region of the texture.
+   */
+  int getY(int texture) {
+    return y[texture];
+  }
+
+  /**
+   * Remaps the texture coordinates of the parts drawn with the packed textures to their regions.
+   * The object shader flips v, so the rows of the regions count from the top of the atlas.
+   *
+   * @return false, leaving the coordinates unchanged, if a vertex is shared by parts of different
+   *     textures or a coordinate is outside of [0, 1], e.g. of a repeated texture.
+   */
+  boolean mapTexCoords(Mesh.Part[] parts, ShortBuffer indices, FloatBuffer texCoords) {
+    final int vertexCount = texCoords.limit() / 2;
+    final int[] vertexTextures = new int[vertexCount];
+    Arrays.fill(vertexTextures, -2);
+    for (final Mesh.Part part : parts) {
+      final int end = part.getIndexOffset() + part.getIndexCount();
+      for (int i = part.getIndexOffset(); i < end; ++i) {
+        final int vertex = indices.get(i) & 0xFFFF;
+        if (vertex >= vertexCount) {
+          return false;
+        }
+        if (vertexTextures[vertex] != -2 && vertexTextures[vertex] != part.getTexture()) {
+          return false;
+        }
+        vertexTextures[vertex] = part.getTexture();
+      }
+    }
+    for (int vertex = 0; vertex < vertexCount; ++vertex) {
+      if (vertexTextures[vertex] >= 0 && (!isInUnitRange(texCoords.get(2 * vertex))
+          || !isInUnitRange(texCoords.get(2 * vertex + 1)))) {
+        return false;
+      }
+    }
+
+    for (int vertex = 0; vertex < vertexCount; ++vertex) {
+      final int texture = vertexTextures[vertex];
+      if (texture < 0) {
+        continue;
+      }
+      final float u = texCoords.get(2 * vertex);
+      final float v = texCoords.get(2 * vertex + 1);
+      texCoords.put(2 * vertex, (x[texture] + u * widths[texture]) / width);
+      texCoords.put(2 * vertex + 1,
+          1.0f - (y[texture] + (1.0f - v) * heights[texture]) / height);
+    }
+    return true;
+  }
+
+  private static boolean isInUnitRange(float value) {
+    return value >= 0.0f && value <= 1.0f;
+  }
+}
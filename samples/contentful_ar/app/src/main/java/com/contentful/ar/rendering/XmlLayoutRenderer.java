@@ -4,57 +4,200 @@ package com.contentful.ar.rendering;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.hardware.display.DisplayManager;
+import android.graphics.Rect;
 import android.support.annotation.LayoutRes;
-import android.util.DisplayMetrics;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 
-import java.io.FileNotFoundException;
+import com.contentful.ar.rendering.gl.GlResourceTracker;
+import com.contentful.ar.rendering.gl.Gles20Backend;
 
-import static com.contentful.ar.rendering.ShaderUtil.normalizeFileName;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+/**
+ * Shows an XML layout on a panel in the world.
+ * <p>
+ * The layout is laid out at a fixed density per meter of the panel and rasterised at the
+ * resolution the panel needs when seen from about an arm's length, into a region of a
+ * {@link PanelAtlas} shared by all panels. Changes to the views have to be {@link #post posted};
+ * only the region of the views invalidated by them is rasterised and uploaded again. Panels are
+ * created by the {@link ObjectRendererFactory}, which resolves their mesh.
+ */
 public class XmlLayoutRenderer extends ObjectRenderer {
-  private Bitmap bitmap;
+  static final String PANEL_FILE_NAME = "plane.obj";
+  // Size of the panel file.
+  private static final float PANEL_WIDTH_METERS = 0.17f;
+  private static final float PANEL_HEIGHT_METERS = 0.17f;
+  // About the texels a panel covers on the screen when seen from half a meter away.
+  private static final float TEXELS_PER_METER = 2048;
+  // Lays a panel out like a 544dp screen, so layouts written for phones fit onto it.
+  private static final float LAYOUT_DP_PER_METER = 3200;
 
-  public XmlLayoutRenderer(Context context, @LayoutRes int xmlLayoutResource) {
-    super(
-        normalizeFileName("plane.obj", basepath(context)),
-        "",
-        normalizeFileName(ObjectRendererFactory.DEFAULT_FRAGMENT_SHADER_FILE_NAME, basepath(context)),
-        normalizeFileName(ObjectRendererFactory.DEFAULT_VERTEX_SHADER_FILE_NAME, basepath(context)));
+  // Panels are only drawn on the OpenGL thread, which all of them share. Released with the
+  // context, see releaseAtlas().
+  private static PanelAtlas atlas;
 
-    loadTexture(context, xmlLayoutResource);
+  private final View view;
+  private final int textureWidth;
+  private final int textureHeight;
+  private final float textureScale;
+  private final ConcurrentLinkedQueue<Runnable> pendingUpdates = new ConcurrentLinkedQueue<>();
+  private final Rect dirty = new Rect();
+  private final Rect bounds = new Rect();
+  private PanelAtlas.Region region;
+
+  /**
+   * @param objectFileName the panel file, as stored.
+   */
+  XmlLayoutRenderer(Context context, String objectFileName, String fragmentShaderFileName,
+                    String vertexShaderFileName, @LayoutRes int xmlLayoutResource) {
+    super(objectFileName, "", fragmentShaderFileName, vertexShaderFileName);
+
+    final float density = context.getResources().getDisplayMetrics().density;
+    final int width = Math.round(PANEL_WIDTH_METERS * LAYOUT_DP_PER_METER * density);
+    final int height = Math.round(PANEL_HEIGHT_METERS * LAYOUT_DP_PER_METER * density);
+    textureWidth = Math.min(PanelAtlas.MAX_REGION_SIZE,
+        (int) Math.ceil(PANEL_WIDTH_METERS * TEXELS_PER_METER));
+    textureHeight = Math.min(PanelAtlas.MAX_REGION_SIZE,
+        (int) Math.ceil(PANEL_HEIGHT_METERS * TEXELS_PER_METER));
+    textureScale = Math.min((float) textureWidth / width, (float) textureHeight / height);
+
+    view = LayoutInflater.from(context).inflate(xmlLayoutResource, null, false);
+    view.measure(
+        View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+        View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+    view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
 
     setBlendMode(BlendMode.Grid);
   }
 
-  private static String basepath(Context context) {
-    return context.getExternalFilesDir(null).getAbsolutePath();
+  /**
+   * Drops the atlas of all panels, deleting its pages unless they got lost with the OpenGL context
+   * and forgotten already. Must be called on the OpenGL thread once all panels got destroyed or
+   * {@link #onContextLost() lost their context}, the next panel creates a new atlas.
+   */
+  static void releaseAtlas() {
+    if (atlas != null) {
+      GlResourceTracker.of(Gles20Backend.INSTANCE).release(atlas);
+      atlas = null;
+    }
   }
 
-  @Override protected Bitmap readTexture() throws FileNotFoundException {
-    return bitmap;
+  /**
+   * Runs a change of the views on the OpenGL thread before the next draw of this panel. The
+   * views are not attached to a window, so they must not be touched from any other thread.
+   */
+  public void post(Runnable update) {
+    pendingUpdates.offer(update);
   }
 
-  private void loadTexture(Context context, @LayoutRes int layout) {
-    final DisplayMetrics displayMetrics = new DisplayMetrics();
-    final DisplayManager manager = context.getSystemService(DisplayManager.class);
-    manager.getDisplays()[0].getMetrics(displayMetrics);
-    final int height = displayMetrics.heightPixels;
-    final int width = displayMetrics.widthPixels;
+  @Override protected int createTexture() {
+    if (atlas == null) {
+      atlas = new PanelAtlas(Gles20Backend.INSTANCE);
+    }
+    region = atlas.allocate(textureWidth, textureHeight);
+    dirty.set(0, 0, view.getWidth(), view.getHeight());
+    updateTexture();
+    return region.textureId;
+  }
 
-    bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-    final Canvas canvas = new Canvas(bitmap);
+  @Override protected void mapTexCoords(FloatBuffer texCoords) {
+    final float[] uv = new float[2];
+    for (int i = 0; i + 1 < texCoords.limit(); i += 2) {
+      uv[0] = texCoords.get(i);
+      uv[1] = texCoords.get(i + 1);
+      region.mapTexCoord(uv);
+      texCoords.put(i, uv[0]);
+      texCoords.put(i + 1, uv[1]);
+    }
+  }
+
+  @Override
+  public void draw(float[] cameraView, float[] cameraPerspective, float lightIntensity) {
+    if (isInitialized()) {
+      Runnable update;
+      while ((update = pendingUpdates.poll()) != null) {
+        update.run();
+      }
+      collectDirtyRegion();
+      if (!dirty.isEmpty()) {
+        updateTexture();
+      }
+    }
+    super.draw(cameraView, cameraPerspective, lightIntensity);
+  }
 
-    int measuredWidth = View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY);
-    int measuredHeight = View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY);
+  @Override public void onContextLost() {
+    super.onContextLost();
+    // Gone with the pages of the atlas.
+    region = null;
+  }
 
-    LayoutInflater inflater = LayoutInflater.from(context);
-    View view = inflater.inflate(layout, null, false);
+  @Override public void destroy() {
+    super.destroy();
+    if (region != null) {
+      atlas.free(region);
+      region = null;
+    }
+  }
 
-    view.measure(measuredWidth, measuredHeight);
-    view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+  /**
+   * Unites the bounds of all invalidated views into {@link #dirty}, in layout pixels. Detached
+   * views only flag themselves as dirty, instead of invalidating their parents.
+   */
+  private void collectDirtyRegion() {
+    if (view.isLayoutRequested()) {
+      // Views may move anywhere when laid out again, so everything is redrawn.
+      view.measure(
+          View.MeasureSpec.makeMeasureSpec(view.getWidth(), View.MeasureSpec.EXACTLY),
+          View.MeasureSpec.makeMeasureSpec(view.getHeight(), View.MeasureSpec.EXACTLY));
+      view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+      dirty.set(0, 0, view.getWidth(), view.getHeight());
+      return;
+    }
+    collectDirtyViews(view, 0, 0);
+  }
+
+  private void collectDirtyViews(View child, int parentX, int parentY) {
+    final int x = parentX + child.getLeft();
+    final int y = parentY + child.getTop();
+    if (child.isDirty()) {
+      bounds.set(x, y, x + child.getWidth(), y + child.getHeight());
+      dirty.union(bounds);
+      // Drawing the view draws all of its children.
+      return;
+    }
+    if (child instanceof ViewGroup) {
+      final ViewGroup group = (ViewGroup) child;
+      for (int i = 0; i < group.getChildCount(); ++i) {
+        collectDirtyViews(group.getChildAt(i), x - child.getScrollX(), y - child.getScrollY());
+      }
+    }
+  }
+
+  /**
+   * Rasterises the views within {@link #dirty} and uploads only the texels covering them.
+   */
+  private void updateTexture() {
+    // One more texel on each side, as filtering reaches into the neighbouring texels.
+    final int left = Math.max(0, (int) Math.floor(dirty.left * textureScale) - 1);
+    final int top = Math.max(0, (int) Math.floor(dirty.top * textureScale) - 1);
+    final int right = Math.min(textureWidth, (int) Math.ceil(dirty.right * textureScale) + 1);
+    final int bottom = Math.min(textureHeight, (int) Math.ceil(dirty.bottom * textureScale) + 1);
+    dirty.setEmpty();
+    if (right <= left || bottom <= top) {
+      return;
+    }
+
+    final Bitmap bitmap = atlas.getScratchBitmap(right - left, bottom - top);
+    final Canvas canvas = new Canvas(bitmap);
+    canvas.translate(-left, -top);
+    canvas.scale(textureScale, textureScale);
+    canvas.clipRect(left / textureScale, top / textureScale,
+        right / textureScale, bottom / textureScale);
     view.draw(canvas);
+    atlas.upload(region, left, top, bitmap);
   }
 }
@@ -0,0 +1,488 @@
+package com.contentful.ar.rendering.gl;
+
+
+import java.nio.Buffer;
+import java.util.Locale;
+
+/**
+ * A {@link GlBackend} without a GPU, which only counts the calls made to it.
+ * <p>
+ * Calls are counted per section, so the cost of every renderer can be told apart: the caller
+ * selects the current section through {@link #setSection(String)} before invoking a renderer.
+ * Names for buffers, textures, framebuffers, shaders and programs are handed out sequentially
+ * and counted until they are deleted, so leaks show up. Every shader compiles. Counting does not
+ * allocate, so allocations measured around a replayed frame belong to the renderers only.
+ * <p>
+ * This class does not depend on Android and is not thread safe.
+ */
+public class CountingGlBackend implements GlBackend {
+  public static final String DEFAULT_SECTION = "other";
+  private static final int MAX_SECTIONS = 16;
+
+  private static final int CALL_GET_ERROR = 0;
+  private static final int CALL_CLEAR = 1;
+  private static final int CALL_CLEAR_COLOR = 2;
+  private static final int CALL_COLOR_MASK = 3;
+  private static final int CALL_DEPTH_MASK = 4;
+  private static final int CALL_ENABLE = 5;
+  private static final int CALL_DISABLE = 6;
+  private static final int CALL_BLEND_FUNC = 7;
+  private static final int CALL_BLEND_FUNC_SEPARATE = 8;
+  private static final int CALL_GEN_BUFFERS = 9;
+  private static final int CALL_BIND_BUFFER = 10;
+  private static final int CALL_BUFFER_DATA = 11;
+  private static final int CALL_BUFFER_SUB_DATA = 12;
+  private static final int CALL_DELETE_BUFFERS = 13;
+  private static final int CALL_ACTIVE_TEXTURE = 14;
+  private static final int CALL_GEN_TEXTURES = 15;
+  private static final int CALL_BIND_TEXTURE = 16;
+  private static final int CALL_TEX_PARAMETERI = 17;
+  private static final int CALL_TEX_IMAGE_2D = 18;
+  private static final int CALL_GENERATE_MIPMAP = 19;
+  private static final int CALL_DELETE_TEXTURES = 20;
+  private static final int CALL_CREATE_SHADER = 21;
+  private static final int CALL_SHADER_SOURCE = 22;
+  private static final int CALL_COMPILE_SHADER = 23;
+  private static final int CALL_GET_SHADERIV = 24;
+  private static final int CALL_GET_SHADER_INFO_LOG = 25;
+  private static final int CALL_DELETE_SHADER = 26;
+  private static final int CALL_CREATE_PROGRAM = 27;
+  private static final int CALL_ATTACH_SHADER = 28;
+  private static final int CALL_LINK_PROGRAM = 29;
+  private static final int CALL_DELETE_PROGRAM = 30;
+  private static final int CALL_USE_PROGRAM = 31;
+  private static final int CALL_GET_ATTRIB_LOCATION = 32;
+  private static final int CALL_GET_UNIFORM_LOCATION = 33;
+  private static final int CALL_UNIFORM1I = 34;
+  private static final int CALL_UNIFORM1F = 35;
+  private static final int CALL_UNIFORM4F = 36;
+  private static final int CALL_UNIFORM4FV = 37;
+  private static final int CALL_UNIFORM_MATRIX2FV = 38;
+  private static final int CALL_UNIFORM_MATRIX4FV = 39;
+  private static final int CALL_ENABLE_VERTEX_ATTRIB_ARRAY = 40;
+  private static final int CALL_DISABLE_VERTEX_ATTRIB_ARRAY = 41;
+  private static final int CALL_VERTEX_ATTRIB_POINTER = 42;
+  private static final int CALL_DRAW_ARRAYS = 43;
+  private static final int CALL_DRAW_ELEMENTS = 44;
+  private static final int CALL_GEN_FRAMEBUFFERS = 45;
+  private static final int CALL_DELETE_FRAMEBUFFERS = 46;
+
+  private static final String[] CALL_NAMES = {
+      "glGetError",
+      "glClear",
+      "glClearColor",
+      "glColorMask",
+      "glDepthMask",
+      "glEnable",
+      "glDisable",
+      "glBlendFunc",
+      "glBlendFuncSeparate",
+      "glGenBuffers",
+      "glBindBuffer",
+      "glBufferData",
+      "glBufferSubData",
+      "glDeleteBuffers",
+      "glActiveTexture",
+      "glGenTextures",
+      "glBindTexture",
+      "glTexParameteri",
+      "glTexImage2D",
+      "glGenerateMipmap",
+      "glDeleteTextures",
+      "glCreateShader",
+      "glShaderSource",
+      "glCompileShader",
+      "glGetShaderiv",
+      "glGetShaderInfoLog",
+      "glDeleteShader",
+      "glCreateProgram",
+      "glAttachShader",
+      "glLinkProgram",
+      "glDeleteProgram",
+      "glUseProgram",
+      "glGetAttribLocation",
+      "glGetUniformLocation",
+      "glUniform1i",
+      "glUniform1f",
+      "glUniform4f",
+      "glUniform4fv",
+      "glUniformMatrix2fv",
+      "glUniformMatrix4fv",
+      "glEnableVertexAttribArray",
+      "glDisableVertexAttribArray",
+      "glVertexAttribPointer",
+      "glDrawArrays",
+      "glDrawElements",
+      "glGenFramebuffers",
+      "glDeleteFramebuffers"
+  };
+
+  private final String[] sections = new String[MAX_SECTIONS];
+  private final long[][] counts = new long[MAX_SECTIONS][CALL_NAMES.length];
+  private final long[] uploadedBytes = new long[MAX_SECTIONS];
+  private int sectionCount = 1;
+  private int section = 0;
+  private int nextName = 1;
+  private int liveNames = 0;
+  private int nextLocation = 0;
+
+  public CountingGlBackend() {
+    sections[0] = DEFAULT_SECTION;
+  }
+
+  /**
+   * Attributes all following calls to the given section, until the next call of this method.
+   *
+   * @throws IllegalStateException if more than 16 sections got used.
+   */
+  public void setSection(String name) {
+    for (int i = 0; i < sectionCount; ++i) {
+      if (sections[i].equals(name)) {
+        section = i;
+        return;
+      }
+    }
+
+    if (sectionCount == MAX_SECTIONS) {
+      throw new IllegalStateException("Too many sections, cannot add '" + name + "'.");
+    }
+    sections[sectionCount] = name;
+    section = sectionCount++;
+  }
+
+  /**
+   * @return the number of calls counted in the given section, 0 for unknown sections.
+   */
+  public long getCallCount(String sectionName) {
+    final int index = indexOf(sectionName);
+    if (index < 0) {
+      return 0;
+    }
+
+    long total = 0;
+    for (final long count : counts[index]) {
+      total += count;
+    }
+    return total;
+  }
+
+  /**
+   * @return the number of calls of one entry point in the given section, e.g. "glDrawElements".
+   */
+  public long getCallCount(String sectionName, String call) {
+    final int index = indexOf(sectionName);
+    for (int i = 0; index >= 0 && i < CALL_NAMES.length; ++i) {
+      if (CALL_NAMES[i].equals(call)) {
+        return counts[index][i];
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * @return the bytes passed to glBufferData and glBufferSubData in the given section.
+   */
+  public long getUploadedBytes(String sectionName) {
+    final int index = indexOf(sectionName);
+    return index < 0 ? 0 : uploadedBytes[index];
+  }
+
+  /**
+   * Forgets all counts, keeping the sections and handed out names.
+   */
+  public void reset() {
+    for (int i = 0; i < sectionCount; ++i) {
+      for (int j = 0; j < CALL_NAMES.length; ++j) {
+        counts[i][j] = 0;
+      }
+      uploadedBytes[i] = 0;
+    }
+  }
+
+  /**
+   * @return the number of buffers, textures, framebuffers, shaders and programs created and not
+   *     deleted yet, which are leaked once all renderers got destroyed. Deleting name 0 is
+   *     ignored, as in OpenGL.
+   */
+  public int getLiveNameCount() {
+    return liveNames;
+  }
+
+  /**
+   * Appends the calls per section, followed by the non zero calls per entry point.
+   *
+   * @param frames number of frames counted, to report averages per frame.
+   */
+  public void appendReport(StringBuilder out, int frames) {
+    final double divisor = Math.max(1, frames);
+    for (int i = 0; i < sectionCount; ++i) {
+      final long total = getCallCount(sections[i]);
+      if (total == 0) {
+        continue;
+      }
+
+      out.append(String.format(Locale.US, "%-12s %8.1f calls/frame %10.1f bytes/frame\n",
+          sections[i], total / divisor, uploadedBytes[i] / divisor));
+      for (int j = 0; j < CALL_NAMES.length; ++j) {
+        if (counts[i][j] > 0) {
+          out.append(String.format(Locale.US, "  %-26s %8.1f\n",
+              CALL_NAMES[j], counts[i][j] / divisor));
+        }
+      }
+    }
+  }
+
+  private int indexOf(String sectionName) {
+    for (int i = 0; i < sectionCount; ++i) {
+      if (sections[i].equals(sectionName)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void count(int call) {
+    counts[section][call]++;
+  }
+
+  private void generateNames(int n, int[] names, int offset) {
+    for (int i = 0; i < n; ++i) {
+      names[offset + i] = nextName++;
+    }
+    liveNames += n;
+  }
+
+  private void deleteNames(int n, int[] names, int offset) {
+    for (int i = 0; i < n; ++i) {
+      deleteName(names[offset + i]);
+    }
+  }
+
+  private void deleteName(int name) {
+    if (name != 0) {
+      liveNames--;
+    }
+  }
+
+  @Override public int glGetError() {
+    count(CALL_GET_ERROR);
+    return 0; // GL_NO_ERROR
+  }
+
+  @Override public void glClear(int mask) {
+    count(CALL_CLEAR);
+  }
+
+  @Override public void glClearColor(float red, float green, float blue, float alpha) {
+    count(CALL_CLEAR_COLOR);
+  }
+
+  @Override public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+    count(CALL_COLOR_MASK);
+  }
+
+  @Override public void glDepthMask(boolean flag) {
+    count(CALL_DEPTH_MASK);
+  }
+
+  @Override public void glEnable(int cap) {
+    count(CALL_ENABLE);
+  }
+
+  @Override public void glDisable(int cap) {
+    count(CALL_DISABLE);
+  }
+
+  @Override public void glBlendFunc(int sfactor, int dfactor) {
+    count(CALL_BLEND_FUNC);
+  }
+
+  @Override public void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+    count(CALL_BLEND_FUNC_SEPARATE);
+  }
+
+  @Override public void glGenBuffers(int n, int[] buffers, int offset) {
+    count(CALL_GEN_BUFFERS);
+    generateNames(n, buffers, offset);
+  }
+
+  @Override public void glBindBuffer(int target, int buffer) {
+    count(CALL_BIND_BUFFER);
+  }
+
+  @Override public void glBufferData(int target, int size, Buffer data, int usage) {
+    count(CALL_BUFFER_DATA);
+    uploadedBytes[section] += size;
+  }
+
+  @Override public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    count(CALL_BUFFER_SUB_DATA);
+    uploadedBytes[section] += size;
+  }
+
+  @Override public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    count(CALL_DELETE_BUFFERS);
+    deleteNames(n, buffers, offset);
+  }
+
+  @Override public void glActiveTexture(int texture) {
+    count(CALL_ACTIVE_TEXTURE);
+  }
+
+  @Override public void glGenTextures(int n, int[] textures, int offset) {
+    count(CALL_GEN_TEXTURES);
+    generateNames(n, textures, offset);
+  }
+
+  @Override public void glBindTexture(int target, int texture) {
+    count(CALL_BIND_TEXTURE);
+  }
+
+  @Override public void glTexParameteri(int target, int pname, int param) {
+    count(CALL_TEX_PARAMETERI);
+  }
+
+  @Override public void glTexImage2D(int target, int level, int internalformat, int width,
+                                     int height, int border, int format, int type,
+                                     Buffer pixels) {
+    count(CALL_TEX_IMAGE_2D);
+  }
+
+  @Override public void glGenerateMipmap(int target) {
+    count(CALL_GENERATE_MIPMAP);
+  }
+
+  @Override public void glDeleteTextures(int n, int[] textures, int offset) {
+    count(CALL_DELETE_TEXTURES);
+    deleteNames(n, textures, offset);
+  }
+
+  @Override public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+    count(CALL_GEN_FRAMEBUFFERS);
+    generateNames(n, framebuffers, offset);
+  }
+
+  @Override public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+    count(CALL_DELETE_FRAMEBUFFERS);
+    deleteNames(n, framebuffers, offset);
+  }
+
+  @Override public int glCreateShader(int type) {
+    count(CALL_CREATE_SHADER);
+    liveNames++;
+    return nextName++;
+  }
+
+  @Override public void glShaderSource(int shader, String string) {
+    count(CALL_SHADER_SOURCE);
+  }
+
+  @Override public void glCompileShader(int shader) {
+    count(CALL_COMPILE_SHADER);
+  }
+
+  @Override public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    count(CALL_GET_SHADERIV);
+    // Every shader compiles successfully.
+    params[offset] = 1;
+  }
+
+  @Override public String glGetShaderInfoLog(int shader) {
+    count(CALL_GET_SHADER_INFO_LOG);
+    return "";
+  }
+
+  @Override public void glDeleteShader(int shader) {
+    count(CALL_DELETE_SHADER);
+    deleteName(shader);
+  }
+
+  @Override public int glCreateProgram() {
+    count(CALL_CREATE_PROGRAM);
+    liveNames++;
+    return nextName++;
+  }
+
+  @Override public void glAttachShader(int program, int shader) {
+    count(CALL_ATTACH_SHADER);
+  }
+
+  @Override public void glLinkProgram(int program) {
+    count(CALL_LINK_PROGRAM);
+  }
+
+  @Override public void glDeleteProgram(int program) {
+    count(CALL_DELETE_PROGRAM);
+    deleteName(program);
+  }
+
+  @Override public void glUseProgram(int program) {
+    count(CALL_USE_PROGRAM);
+  }
+
+  @Override public int glGetAttribLocation(int program, String name) {
+    count(CALL_GET_ATTRIB_LOCATION);
+    return nextLocation++;
+  }
+
+  @Override public int glGetUniformLocation(int program, String name) {
+    count(CALL_GET_UNIFORM_LOCATION);
+    return nextLocation++;
+  }
+
+  @Override public void glUniform1i(int location, int x) {
+    count(CALL_UNIFORM1I);
+  }
+
+  @Override public void glUniform1f(int location, float x) {
+    count(CALL_UNIFORM1F);
+  }
+
+  @Override public void glUniform4f(int location, float x, float y, float z, float w) {
+    count(CALL_UNIFORM4F);
+  }
+
+  @Override public void glUniform4fv(int location, int count, float[] v, int offset) {
+    count(CALL_UNIFORM4FV);
+  }
+
+  @Override public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    count(CALL_UNIFORM_MATRIX2FV);
+  }
+
+  @Override public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    count(CALL_UNIFORM_MATRIX4FV);
+  }
+
+  @Override public void glEnableVertexAttribArray(int index) {
+    count(CALL_ENABLE_VERTEX_ATTRIB_ARRAY);
+  }
+
+  @Override public void glDisableVertexAttribArray(int index) {
+    count(CALL_DISABLE_VERTEX_ATTRIB_ARRAY);
+  }
+
+  @Override public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+    count(CALL_VERTEX_ATTRIB_POINTER);
+  }
+
+  @Override public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset) {
+    count(CALL_VERTEX_ATTRIB_POINTER);
+  }
+
+  @Override public void glDrawArrays(int mode, int first, int count) {
+    count(CALL_DRAW_ARRAYS);
+  }
+
+  @Override public void glDrawElements(int mode, int count, int type, Buffer indices) {
+    count(CALL_DRAW_ELEMENTS);
+  }
+
+  @Override public void glDrawElements(int mode, int count, int type, int offset) {
+    count(CALL_DRAW_ELEMENTS);
+  }
+}
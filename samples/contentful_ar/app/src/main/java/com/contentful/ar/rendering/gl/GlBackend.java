@@ -0,0 +1,122 @@
+package com.contentful.ar.rendering.gl;
+
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES 2.0 entry points used by the renderers to draw the scene.
+ * <p>
+ * Renderers issue their calls through this interface instead of {@code GLES20} directly, so the
+ * render loop can run on a desktop JVM without a GPU, e.g. against a {@link CountingGlBackend}
+ * replaying a recorded session. On the device {@link Gles20Backend} forwards every call as is.
+ * This interface does not depend on Android.
+ */
+public interface GlBackend {
+  // State.
+  int glGetError();
+
+  void glClear(int mask);
+
+  void glClearColor(float red, float green, float blue, float alpha);
+
+  void glColorMask(boolean red, boolean green, boolean blue, boolean alpha);
+
+  void glDepthMask(boolean flag);
+
+  void glEnable(int cap);
+
+  void glDisable(int cap);
+
+  void glBlendFunc(int sfactor, int dfactor);
+
+  void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha);
+
+  // Buffers.
+  void glGenBuffers(int n, int[] buffers, int offset);
+
+  void glBindBuffer(int target, int buffer);
+
+  void glBufferData(int target, int size, Buffer data, int usage);
+
+  void glBufferSubData(int target, int offset, int size, Buffer data);
+
+  void glDeleteBuffers(int n, int[] buffers, int offset);
+
+  // Textures.
+  void glActiveTexture(int texture);
+
+  void glGenTextures(int n, int[] textures, int offset);
+
+  void glBindTexture(int target, int texture);
+
+  void glTexParameteri(int target, int pname, int param);
+
+  void glTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                    int format, int type, Buffer pixels);
+
+  void glGenerateMipmap(int target);
+
+  void glDeleteTextures(int n, int[] textures, int offset);
+
+  // Framebuffers.
+  void glGenFramebuffers(int n, int[] framebuffers, int offset);
+
+  void glDeleteFramebuffers(int n, int[] framebuffers, int offset);
+
+  // Shaders and programs.
+  int glCreateShader(int type);
+
+  void glShaderSource(int shader, String string);
+
+  void glCompileShader(int shader);
+
+  void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+  String glGetShaderInfoLog(int shader);
+
+  void glDeleteShader(int shader);
+
+  int glCreateProgram();
+
+  void glAttachShader(int program, int shader);
+
+  void glLinkProgram(int program);
+
+  void glDeleteProgram(int program);
+
+  void glUseProgram(int program);
+
+  int glGetAttribLocation(int program, String name);
+
+  int glGetUniformLocation(int program, String name);
+
+  // Uniforms.
+  void glUniform1i(int location, int x);
+
+  void glUniform1f(int location, float x);
+
+  void glUniform4f(int location, float x, float y, float z, float w);
+
+  void glUniform4fv(int location, int count, float[] v, int offset);
+
+  void glUniformMatrix2fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  // Vertex attributes and drawing.
+  void glEnableVertexAttribArray(int index);
+
+  void glDisableVertexAttribArray(int index);
+
+  void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer ptr);
+
+  void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset);
+
+  void glDrawArrays(int mode, int first, int count);
+
+  void glDrawElements(int mode, int count, int type, Buffer indices);
+
+  void glDrawElements(int mode, int count, int type, int offset);
+}
@@ -0,0 +1,209 @@
+package com.contentful.ar.rendering.gl;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keeps track of the buffers, textures, framebuffers, shaders and programs created through one
+ * {@link GlBackend}, and of the renderers owning them.
+ * <p>
+ * Renderers register every resource they create, with the bytes it takes on the GPU, and
+ * {@link #release(Object) release} all of them at once when they are destroyed. Whatever is
+ * still registered is live, so leaks show up in {@link #appendReport(StringBuilder)} and fail
+ * {@link #checkReleased()} once a scene got torn down.
+ * <p>
+ * Resources must be registered and released on the OpenGL thread, reports can be taken from any
+ * thread. This class does not depend on Android.
+ */
+public class GlResourceTracker {
+  public enum Kind {
+    BUFFER, TEXTURE, FRAMEBUFFER, SHADER, PROGRAM
+  }
+
+  private static final Map<GlBackend, GlResourceTracker> TRACKERS = new IdentityHashMap<>();
+
+  private final GlBackend gl;
+  // Resources in the order they got registered, per owner.
+  private final Map<Object, List<Resource>> resources = new IdentityHashMap<>();
+  private final long[] liveBytes = new long[Kind.values().length];
+  private final int[] liveCounts = new int[Kind.values().length];
+  private final int[] name = new int[1];
+
+  /**
+   * @param gl the backend the resources are created with, and deleted through.
+   */
+  public GlResourceTracker(GlBackend gl) {
+    this.gl = gl;
+  }
+
+  /**
+   * @return the tracker shared by all renderers drawing through the given backend.
+   */
+  public static GlResourceTracker of(GlBackend gl) {
+    synchronized (TRACKERS) {
+      GlResourceTracker tracker = TRACKERS.get(gl);
+      if (tracker == null) {
+        tracker = new GlResourceTracker(gl);
+        TRACKERS.put(gl, tracker);
+      }
+      return tracker;
+    }
+  }
+
+  /**
+   * Registers a resource, to be deleted once its owner gets released. Name 0, as returned for
+   * failed creations, is ignored.
+   *
+   * @param bytes the memory the resource takes on the GPU, 0 if unknown or negligible.
+   */
+  public synchronized void register(Object owner, Kind kind, int name, long bytes) {
+    if (name == 0) {
+      return;
+    }
+
+    List<Resource> owned = resources.get(owner);
+    if (owned == null) {
+      owned = new ArrayList<>();
+      resources.put(owner, owned);
+    }
+    owned.add(new Resource(kind, name, bytes));
+    liveBytes[kind.ordinal()] += bytes;
+    liveCounts[kind.ordinal()]++;
+  }
+
+  /**
+   * Updates the size of a registered resource, e.g. after a buffer got reallocated.
+   */
+  public synchronized void resize(Object owner, Kind kind, int name, long bytes) {
+    final List<Resource> owned = resources.get(owner);
+    for (int i = 0; owned != null && i < owned.size(); ++i) {
+      final Resource resource = owned.get(i);
+      if (resource.kind == kind && resource.name == name) {
+        liveBytes[kind.ordinal()] += bytes - resource.bytes;
+        resource.bytes = bytes;
+        return;
+      }
+    }
+    throw new IllegalArgumentException(
+        kind + " " + name + " is not registered to " + describe(owner) + ".");
+  }
+
+  /**
+   * Deletes all resources of the owner, latest first, so programs are deleted before their
+   * shaders. Must be called on the OpenGL thread.
+   */
+  public synchronized void release(Object owner) {
+    final List<Resource> owned = resources.remove(owner);
+    if (owned == null) {
+      return;
+    }
+
+    for (int i = owned.size() - 1; i >= 0; --i) {
+      final Resource resource = owned.get(i);
+      delete(resource);
+      liveBytes[resource.kind.ordinal()] -= resource.bytes;
+      liveCounts[resource.kind.ordinal()]--;
+    }
+  }
+
+  /**
+   * Forgets all resources without deleting them, once the OpenGL context they got created in is
+   * lost with all of them. Must be called on the OpenGL thread before creating resources in the
+   * new context, which may hand out the same names again.
+   */
+  public synchronized void forget() {
+    resources.clear();
+    Arrays.fill(liveBytes, 0);
+    Arrays.fill(liveCounts, 0);
+  }
+
+  public synchronized long getLiveBytes(Kind kind) {
+    return liveBytes[kind.ordinal()];
+  }
+
+  public synchronized int getLiveCount(Kind kind) {
+    return liveCounts[kind.ordinal()];
+  }
+
+  /**
+   * @return the number of owners with at least one live resource.
+   */
+  public synchronized int getOwnerCount() {
+    return resources.size();
+  }
+
+  /**
+   * Appends the number of live resources and their bytes per kind.
+   */
+  public synchronized void appendReport(StringBuilder out) {
+    for (final Kind kind : Kind.values()) {
+      out.append(String.format(Locale.US, "%-11s %4d live %10.1f KB\n",
+          kind.name().toLowerCase(Locale.US),
+          liveCounts[kind.ordinal()], liveBytes[kind.ordinal()] / 1024.0));
+    }
+  }
+
+  /**
+   * Leak detection for debug builds and the replay, to be called once all renderers got
+   * destroyed.
+   *
+   * @throws IllegalStateException listing the owners and resources still alive.
+   */
+  public synchronized void checkReleased() {
+    if (resources.isEmpty()) {
+      return;
+    }
+
+    final StringBuilder message = new StringBuilder("Leaked GL resources:");
+    for (final Map.Entry<Object, List<Resource>> entry : resources.entrySet()) {
+      message.append("\n  ").append(describe(entry.getKey())).append(':');
+      for (final Resource resource : entry.getValue()) {
+        message.append(' ').append(resource.kind).append(' ').append(resource.name);
+      }
+    }
+    throw new IllegalStateException(message.toString());
+  }
+
+  private void delete(Resource resource) {
+    name[0] = resource.name;
+    switch (resource.kind) {
+      case BUFFER:
+        gl.glDeleteBuffers(1, name, 0);
+        break;
+      case TEXTURE:
+        gl.glDeleteTextures(1, name, 0);
+        break;
+      case FRAMEBUFFER:
+        gl.glDeleteFramebuffers(1, name, 0);
+        break;
+      case SHADER:
+        gl.glDeleteShader(resource.name);
+        break;
+      case PROGRAM:
+        gl.glDeleteProgram(resource.name);
+        break;
+    }
+  }
+
+  private static String describe(Object owner) {
+    return owner.getClass().getName() + "@" + Integer.toHexString(
+        System.identityHashCode(owner));
+  }
+
+  private static final class Resource {
+    private final Kind kind;
+    private final int name;
+    private long bytes;
+
+    Resource(Kind kind, int name, long bytes) {
+      this.kind = kind;
+      this.name = name;
+      this.bytes = bytes;
+    }
+  }
+}
@@ -0,0 +1,219 @@
+package com.contentful.ar.rendering.gl;
+
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+
+/**
+ * Forwards every call to {@link GLES20}, used by the renderers on the device.
+ */
+public final class Gles20Backend implements GlBackend {
+  public static final Gles20Backend INSTANCE = new Gles20Backend();
+
+  private Gles20Backend() {
+  }
+
+  @Override public int glGetError() {
+    return GLES20.glGetError();
+  }
+
+  @Override public void glClear(int mask) {
+    GLES20.glClear(mask);
+  }
+
+  @Override public void glClearColor(float red, float green, float blue, float alpha) {
+    GLES20.glClearColor(red, green, blue, alpha);
+  }
+
+  @Override public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+    GLES20.glColorMask(red, green, blue, alpha);
+  }
+
+  @Override public void glDepthMask(boolean flag) {
+    GLES20.glDepthMask(flag);
+  }
+
+  @Override public void glEnable(int cap) {
+    GLES20.glEnable(cap);
+  }
+
+  @Override public void glDisable(int cap) {
+    GLES20.glDisable(cap);
+  }
+
+  @Override public void glBlendFunc(int sfactor, int dfactor) {
+    GLES20.glBlendFunc(sfactor, dfactor);
+  }
+
+  @Override public void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+    GLES20.glBlendFuncSeparate(srcRGB, dstRGB, srcAlpha, dstAlpha);
+  }
+
+  @Override public void glGenBuffers(int n, int[] buffers, int offset) {
+    GLES20.glGenBuffers(n, buffers, offset);
+  }
+
+  @Override public void glBindBuffer(int target, int buffer) {
+    GLES20.glBindBuffer(target, buffer);
+  }
+
+  @Override public void glBufferData(int target, int size, Buffer data, int usage) {
+    GLES20.glBufferData(target, size, data, usage);
+  }
+
+  @Override public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    GLES20.glBufferSubData(target, offset, size, data);
+  }
+
+  @Override public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    GLES20.glDeleteBuffers(n, buffers, offset);
+  }
+
+  @Override public void glActiveTexture(int texture) {
+    GLES20.glActiveTexture(texture);
+  }
+
+  @Override public void glGenTextures(int n, int[] textures, int offset) {
+    GLES20.glGenTextures(n, textures, offset);
+  }
+
+  @Override public void glBindTexture(int target, int texture) {
+    GLES20.glBindTexture(target, texture);
+  }
+
+  @Override public void glTexParameteri(int target, int pname, int param) {
+    GLES20.glTexParameteri(target, pname, param);
+  }
+
+  @Override public void glTexImage2D(int target, int level, int internalformat, int width,
+                                     int height, int border, int format, int type,
+                                     Buffer pixels) {
+    GLES20.glTexImage2D(
+        target, level, internalformat, width, height, border, format, type, pixels);
+  }
+
+  @Override public void glGenerateMipmap(int target) {
+    GLES20.glGenerateMipmap(target);
+  }
+
+  @Override public void glDeleteTextures(int n, int[] textures, int offset) {
+    GLES20.glDeleteTextures(n, textures, offset);
+  }
+
+  @Override public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+    GLES20.glGenFramebuffers(n, framebuffers, offset);
+  }
+
+  @Override public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+    GLES20.glDeleteFramebuffers(n, framebuffers, offset);
+  }
+
+  @Override public int glCreateShader(int type) {
+    return GLES20.glCreateShader(type);
+  }
+
+  @Override public void glShaderSource(int shader, String string) {
+    GLES20.glShaderSource(shader, string);
+  }
+
+  @Override public void glCompileShader(int shader) {
+    GLES20.glCompileShader(shader);
+  }
+
+  @Override public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    GLES20.glGetShaderiv(shader, pname, params, offset);
+  }
+
+  @Override public String glGetShaderInfoLog(int shader) {
+    return GLES20.glGetShaderInfoLog(shader);
+  }
+
+  @Override public void glDeleteShader(int shader) {
+    GLES20.glDeleteShader(shader);
+  }
+
+  @Override public int glCreateProgram() {
+    return GLES20.glCreateProgram();
+  }
+
+  @Override public void glAttachShader(int program, int shader) {
+    GLES20.glAttachShader(program, shader);
+  }
+
+  @Override public void glLinkProgram(int program) {
+    GLES20.glLinkProgram(program);
+  }
+
+  @Override public void glDeleteProgram(int program) {
+    GLES20.glDeleteProgram(program);
+  }
+
+  @Override public void glUseProgram(int program) {
+    GLES20.glUseProgram(program);
+  }
+
+  @Override public int glGetAttribLocation(int program, String name) {
+    return GLES20.glGetAttribLocation(program, name);
+  }
+
+  @Override public int glGetUniformLocation(int program, String name) {
+    return GLES20.glGetUniformLocation(program, name);
+  }
+
+  @Override public void glUniform1i(int location, int x) {
+    GLES20.glUniform1i(location, x);
+  }
+
+  @Override public void glUniform1f(int location, float x) {
+    GLES20.glUniform1f(location, x);
+  }
+
+  @Override public void glUniform4f(int location, float x, float y, float z, float w) {
+    GLES20.glUniform4f(location, x, y, z, w);
+  }
+
+  @Override public void glUniform4fv(int location, int count, float[] v, int offset) {
+    GLES20.glUniform4fv(location, count, v, offset);
+  }
+
+  @Override public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    GLES20.glUniformMatrix2fv(location, count, transpose, value, offset);
+  }
+
+  @Override public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+  }
+
+  @Override public void glEnableVertexAttribArray(int index) {
+    GLES20.glEnableVertexAttribArray(index);
+  }
+
+  @Override public void glDisableVertexAttribArray(int index) {
+    GLES20.glDisableVertexAttribArray(index);
+  }
+
+  @Override public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+    GLES20.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+  }
+
+  @Override public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset) {
+    GLES20.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+  }
+
+  @Override public void glDrawArrays(int mode, int first, int count) {
+    GLES20.glDrawArrays(mode, first, count);
+  }
+
+  @Override public void glDrawElements(int mode, int count, int type, Buffer indices) {
+    GLES20.glDrawElements(mode, count, type, indices);
+  }
+
+  @Override public void glDrawElements(int mode, int count, int type, int offset) {
+    GLES20.glDrawElements(mode, count, type, offset);
+  }
+}
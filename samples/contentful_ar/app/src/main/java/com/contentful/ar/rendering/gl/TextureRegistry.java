@@ -0,0 +1,138 @@
+package com.contentful.ar.rendering.gl;
+
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Textures shared by all renderers drawing the same content through one {@link GlBackend}, so
+ * each is uploaded once however many renderers use it.
+ * <p>
+ * Textures are keyed by their content, e.g. the stored file they got read from. Every renderer
+ * {@link #acquire acquires} the texture of its key, or uploads and {@link #add adds} it if there
+ * is none, and {@link #release releases} it when destroyed. The last release deletes the texture
+ * through the {@link GlResourceTracker}, which also lists it while it is live.
+ * <p>
+ * Textures must be acquired, added and released on the OpenGL thread, reports can be taken from
+ * any thread. This class does not depend on Android.
+ */
+public class TextureRegistry {
+  private static final Map<GlBackend, TextureRegistry> REGISTRIES = new IdentityHashMap<>();
+
+  private final GlResourceTracker resources;
+  private final Map<String, Texture> textures = new HashMap<>();
+  // Uploads saved by acquiring a shared texture instead.
+  private int sharedCount = 0;
+  private long sharedBytes = 0;
+
+  public TextureRegistry(GlResourceTracker resources) {
+    this.resources = resources;
+  }
+
+  /**
+   * @return the registry shared by all renderers drawing through the given backend.
+   */
+  public static TextureRegistry of(GlBackend gl) {
+    synchronized (REGISTRIES) {
+      TextureRegistry registry = REGISTRIES.get(gl);
+      if (registry == null) {
+        registry = new TextureRegistry(GlResourceTracker.of(gl));
+        REGISTRIES.put(gl, registry);
+      }
+      return registry;
+    }
+  }
+
+  /**
+   * Takes another reference to the texture of the given key.
+   *
+   * @return the texture, or 0 if there is none and it needs to be {@link #add added}.
+   */
+  public synchronized int acquire(String key) {
+    final Texture texture = textures.get(key);
+    if (texture == null) {
+      return 0;
+    }
+
+    texture.references++;
+    sharedCount++;
+    sharedBytes += texture.bytes;
+    return texture.name;
+  }
+
+  /**
+   * Adds an uploaded texture with one reference, taken by the caller. Name 0, as returned for
+   * failed creations, is ignored.
+   *
+   * @param bytes the memory the texture takes on the GPU, 0 if unknown.
+   */
+  public synchronized void add(String key, int name, long bytes) {
+    if (name == 0) {
+      return;
+    }
+    if (textures.containsKey(key)) {
+      throw new IllegalStateException("Texture of '" + key + "' is added already.");
+    }
+
+    final Texture texture = new Texture(name, bytes);
+    textures.put(key, texture);
+    resources.register(texture, GlResourceTracker.Kind.TEXTURE, name, bytes);
+  }
+
+  /**
+   * Drops a reference to the texture of the given key, deleting it with the last one.
+   */
+  public synchronized void release(String key) {
+    final Texture texture = textures.get(key);
+    if (texture == null || --texture.references > 0) {
+      return;
+    }
+
+    textures.remove(key);
+    resources.release(texture);
+  }
+
+  /**
+   * Forgets all textures without deleting them, once the OpenGL context they got uploaded to is
+   * lost. Renderers have to forget the keys they hold as well, which may get added again in the
+   * new context.
+   */
+  public synchronized void forget() {
+    textures.clear();
+  }
+
+  /**
+   * @return the number of uploads saved by sharing textures.
+   */
+  public synchronized int getSharedCount() {
+    return sharedCount;
+  }
+
+  /**
+   * @return the bytes not uploaded by sharing textures.
+   */
+  public synchronized long getSharedBytes() {
+    return sharedBytes;
+  }
+
+  /**
+   * Appends the number of shared textures, and the uploads sharing them saved.
+   */
+  public synchronized void appendReport(StringBuilder out) {
+    out.append(String.format(Locale.US, "shared      %4d live %4d reused %6.1f KB saved\n",
+        textures.size(), sharedCount, sharedBytes / 1024.0));
+  }
+
+  private static final class Texture {
+    private final int name;
+    private final long bytes;
+    private int references = 1;
+
+    Texture(int name, long bytes) {
+      this.name = name;
+      this.bytes = bytes;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package com.contentful.ar.replay;
+
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything the renderers need from one ARCore frame, copied into plain arrays and buffers.
+ * <p>
+ * On the device a snapshot is filled from the live session by {@link LiveFrameCapture}, on a
+ * desktop JVM from a {@link SessionRecording}. Snapshots are meant to be reused for every frame,
+ * so capturing does not allocate once the largest frame got seen. This class does not depend on
+ * Android.
+ */
+public class FrameSnapshot {
+  private static final int INITIAL_POINT_FLOATS = 4 * 1000;
+  private static final int INITIAL_ANCHORS = 16;
+
+  public long timestamp;
+  public boolean tracking;
+  public float lightIntensity;
+  public final float[] viewMatrix = new float[16];
+  public final float[] projectionMatrix = new float[16];
+  public final float[] cameraPosition = new float[3];
+
+  /**
+   * Timestamp of the point cloud, changes whenever ARCore updated the points.
+   */
+  public long pointCloudTimestamp;
+  private FloatBuffer points = PlaneSnapshot.allocate(INITIAL_POINT_FLOATS);
+
+  private final List<PlaneSnapshot> planes = new ArrayList<>();
+  private int planeCount = 0;
+
+  private float[] anchorMatrices = new float[16 * INITIAL_ANCHORS];
+  private int anchorCount = 0;
+
+  /**
+   * Drops planes and anchors of the previous frame, keeping their storage for reuse.
+   */
+  public void clear() {
+    tracking = false;
+    planeCount = 0;
+    anchorCount = 0;
+  }
+
+  /**
+   * Copies the point cloud, x, y, z and confidence per point.
+   */
+  public void setPoints(FloatBuffer source, long timestamp) {
+    source.rewind();
+    ensurePointCapacity(source.remaining());
+    points.put(source);
+    points.flip();
+    source.rewind();
+    pointCloudTimestamp = timestamp;
+  }
+
+  FloatBuffer ensurePointCapacity(int floats) {
+    if (points.capacity() < floats) {
+      int size = points.capacity();
+      while (size < floats) {
+        size *= 2;
+      }
+      points = PlaneSnapshot.allocate(size);
+    }
+    points.clear();
+    return points;
+  }
+
+  public FloatBuffer getPoints() {
+    return points;
+  }
+
+  /**
+   * @return a reused plane snapshot to be filled by the caller.
+   */
+  public PlaneSnapshot addPlane() {
+    if (planeCount == planes.size()) {
+      planes.add(new PlaneSnapshot());
+    }
+    return planes.get(planeCount++);
+  }
+
+  public int getPlaneCount() {
+    return planeCount;
+  }
+
+  public PlaneSnapshot getPlane(int index) {
+    if (index < 0 || index >= planeCount) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of " + planeCount + ".");
+    }
+    return planes.get(index);
+  }
+
+  /**
+   * Adds the pose of a tracked anchor, objects are placed on.
+   *
+   * @return the offset of the new anchor's 4x4 matrix in {@link #getAnchorMatrices()}, to be
+   * filled by the caller.
+   */
+  public int addAnchor() {
+    if (16 * (anchorCount + 1) > anchorMatrices.length) {
+      final float[] grown = new float[anchorMatrices.length * 2];
+      System.arraycopy(anchorMatrices, 0, grown, 0, anchorMatrices.length);
+      anchorMatrices = grown;
+    }
+    return 16 * anchorCount++;
+  }
+
+  public int getAnchorCount() {
+    return anchorCount;
+  }
+
+  /**
+   * @return the column-major anchor pose matrices, 16 floats per anchor.
+   */
+  public float[] getAnchorMatrices() {
+    return anchorMatrices;
+  }
+}
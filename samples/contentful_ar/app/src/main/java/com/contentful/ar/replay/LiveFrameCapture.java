@@ -0,0 +1,89 @@
+package com.contentful.ar.replay;
+
+
+import com.google.ar.core.Camera;
+import com.google.ar.core.Frame;
+import com.google.ar.core.Plane;
+import com.google.ar.core.PointCloud;
+import com.google.ar.core.Pose;
+import com.google.ar.core.TrackingState;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fills {@link FrameSnapshot}s from the live ARCore session. Must only be used from the OpenGL
+ * thread, between {@code Session.update()} calls.
+ */
+public class LiveFrameCapture {
+  public static final float NEAR_PLANE_M = 0.1f;
+  public static final float FAR_PLANE_M = 100.0f;
+
+  // Keep a map to assign the same ids to the same planes.
+  private final Map<Plane, Integer> planeIds = new HashMap<>();
+
+  /**
+   * Copies camera matrices, position and light of the frame, dropping planes and anchors of the
+   * previous frame.
+   */
+  public void captureCamera(Frame frame, FrameSnapshot out) {
+    out.clear();
+    out.timestamp = frame.getTimestamp();
+
+    final Camera camera = frame.getCamera();
+    out.tracking = camera.getTrackingState() == TrackingState.TRACKING;
+    if (!out.tracking) {
+      return;
+    }
+
+    camera.getProjectionMatrix(out.projectionMatrix, 0, NEAR_PLANE_M, FAR_PLANE_M);
+    camera.getViewMatrix(out.viewMatrix, 0);
+    final Pose pose = camera.getPose();
+    out.cameraPosition[0] = pose.tx();
+    out.cameraPosition[1] = pose.ty();
+    out.cameraPosition[2] = pose.tz();
+
+    // Compute lighting from average intensity of the image.
+    out.lightIntensity = frame.getLightEstimate().getPixelIntensity();
+  }
+
+  /**
+   * Copies the current point cloud, releasing it right away.
+   */
+  public void capturePointCloud(Frame frame, FrameSnapshot out) {
+    final PointCloud pointCloud = frame.acquirePointCloud();
+    try {
+      if (pointCloud.getTimestamp() != out.pointCloudTimestamp) {
+        out.setPoints(pointCloud.getPoints(), pointCloud.getTimestamp());
+      }
+    } finally {
+      pointCloud.release();
+    }
+  }
+
+  /**
+   * Copies all tracked, horizontal upward facing planes.
+   */
+  public void capturePlanes(Collection<Plane> planes, FrameSnapshot out) {
+    for (final Plane plane : planes) {
+      if (plane.getType() != Plane.Type.HORIZONTAL_UPWARD_FACING ||
+          plane.getTrackingState() != TrackingState.TRACKING) {
+        continue;
+      }
+
+      Integer id = planeIds.get(plane);
+      if (id == null) {
+        id = planeIds.size();
+        planeIds.put(plane, id);
+      }
+
+      final PlaneSnapshot snapshot = out.addPlane();
+      snapshot.id = id;
+      plane.getCenterPose().toMatrix(snapshot.centerMatrix, 0);
+      snapshot.extentX = plane.getExtentX();
+      snapshot.extentZ = plane.getExtentZ();
+      snapshot.setPolygon(plane.getPolygon());
+    }
+  }
+}
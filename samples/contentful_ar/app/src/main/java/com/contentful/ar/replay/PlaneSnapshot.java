@@ -0,0 +1,74 @@
+package com.contentful.ar.replay;
+
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Copy of the state of one tracked, horizontal upward facing plane in a {@link FrameSnapshot}.
+ * Instances are reused between frames.
+ */
+public class PlaneSnapshot {
+  private static final int INITIAL_POLYGON_FLOATS = 64;
+
+  /**
+   * Stable id of the plane across frames, starting at 0.
+   */
+  public int id;
+  /**
+   * The plane's center pose as a 4x4 column-major matrix.
+   */
+  public final float[] centerMatrix = new float[16];
+  public float extentX;
+  public float extentZ;
+
+  private FloatBuffer polygon = allocate(INITIAL_POLYGON_FLOATS);
+
+  /**
+   * Copies the boundary polygon, x and z pairs in the plane's local coordinate system.
+   */
+  public void setPolygon(FloatBuffer source) {
+    source.rewind();
+    ensurePolygonCapacity(source.remaining());
+    polygon.put(source);
+    polygon.flip();
+    source.rewind();
+  }
+
+  /**
+   * Prepares the polygon buffer for {@code floats} values to be put by the caller, e.g. when
+   * reading a recording.
+   */
+  FloatBuffer ensurePolygonCapacity(int floats) {
+    if (polygon.capacity() < floats) {
+      int size = polygon.capacity();
+      while (size < floats) {
+        size *= 2;
+      }
+      polygon = allocate(size);
+    }
+    polygon.clear();
+    return polygon;
+  }
+
+  public FloatBuffer getPolygon() {
+    return polygon;
+  }
+
+  /**
+   * @return the signed distance of the camera to this plane, negative if it is back-facing.
+   */
+  public float distanceTo(float[] cameraPosition) {
+    // Dot product of the plane's normal, its transformed Y axis, with the vector from the plane
+    // center to the camera.
+    return (cameraPosition[0] - centerMatrix[12]) * centerMatrix[4]
+        + (cameraPosition[1] - centerMatrix[13]) * centerMatrix[5]
+        + (cameraPosition[2] - centerMatrix[14]) * centerMatrix[6];
+  }
+
+  static FloatBuffer allocate(int floats) {
+    return ByteBuffer.allocateDirect(Float.SIZE / 8 * floats)
+        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+  }
+}
@@ -0,0 +1,179 @@
+package com.contentful.ar.replay;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.FloatBuffer;
+
+/**
+ * Binary format of a recorded AR session, one {@link FrameSnapshot} after the other.
+ * <p>
+ * A recording starts with a header of {@link #MAGIC} and {@link #VERSION}. Each frame stores
+ * camera, light, planes and anchors; the point cloud is only stored when ARCore updated it, so
+ * recordings stay small. This class does not depend on Android, so recordings taken on a device
+ * can be replayed on a desktop JVM.
+ */
+public final class SessionRecording {
+  static final int MAGIC = 0x41524543; // "AREC"
+  static final int VERSION = 1;
+
+  private SessionRecording() {
+  }
+
+  /**
+   * Appends frames to a recording.
+   */
+  public static class Writer implements Closeable {
+    private final DataOutputStream output;
+    private long lastPointCloudTimestamp = Long.MIN_VALUE;
+    private int frames = 0;
+
+    public Writer(OutputStream output) throws IOException {
+      this.output = new DataOutputStream(new BufferedOutputStream(output));
+      this.output.writeInt(MAGIC);
+      this.output.writeInt(VERSION);
+    }
+
+    public void write(FrameSnapshot frame) throws IOException {
+      output.writeLong(frame.timestamp);
+      output.writeBoolean(frame.tracking);
+      output.writeFloat(frame.lightIntensity);
+      writeFloats(frame.viewMatrix, 0, 16);
+      writeFloats(frame.projectionMatrix, 0, 16);
+      writeFloats(frame.cameraPosition, 0, 3);
+
+      final boolean pointsChanged = frame.pointCloudTimestamp != lastPointCloudTimestamp;
+      output.writeBoolean(pointsChanged);
+      if (pointsChanged) {
+        lastPointCloudTimestamp = frame.pointCloudTimestamp;
+        output.writeLong(frame.pointCloudTimestamp);
+        writeBuffer(frame.getPoints());
+      }
+
+      output.writeInt(frame.getPlaneCount());
+      for (int i = 0; i < frame.getPlaneCount(); ++i) {
+        final PlaneSnapshot plane = frame.getPlane(i);
+        output.writeInt(plane.id);
+        writeFloats(plane.centerMatrix, 0, 16);
+        output.writeFloat(plane.extentX);
+        output.writeFloat(plane.extentZ);
+        writeBuffer(plane.getPolygon());
+      }
+
+      output.writeInt(frame.getAnchorCount());
+      writeFloats(frame.getAnchorMatrices(), 0, 16 * frame.getAnchorCount());
+      frames++;
+    }
+
+    public int getFrameCount() {
+      return frames;
+    }
+
+    @Override public void close() throws IOException {
+      output.close();
+    }
+
+    private void writeFloats(float[] values, int offset, int count) throws IOException {
+      for (int i = offset; i < offset + count; ++i) {
+        output.writeFloat(values[i]);
+      }
+    }
+
+    private void writeBuffer(FloatBuffer buffer) throws IOException {
+      output.writeInt(buffer.limit());
+      for (int i = 0; i < buffer.limit(); ++i) {
+        output.writeFloat(buffer.get(i));
+      }
+    }
+  }
+
+  /**
+   * Reads frames of a recording, in the order they were written.
+   */
+  public static class Reader implements Closeable {
+    private final DataInputStream input;
+
+    /**
+     * @throws IOException if the input is not a recording of a supported version.
+     */
+    public Reader(InputStream input) throws IOException {
+      this.input = new DataInputStream(new BufferedInputStream(input));
+      final int magic = this.input.readInt();
+      final int version = this.input.readInt();
+      if (magic != MAGIC || version != VERSION) {
+        throw new IOException("Not a session recording of version " + VERSION + ".");
+      }
+    }
+
+    /**
+     * Reads the next frame into the given snapshot. The point cloud of the snapshot is only
+     * replaced if it changed in this frame, like on the device.
+     *
+     * @return false once the end of the recording got reached.
+     */
+    public boolean read(FrameSnapshot frame) throws IOException {
+      final long timestamp;
+      try {
+        timestamp = input.readLong();
+      } catch (EOFException e) {
+        return false;
+      }
+
+      frame.clear();
+      frame.timestamp = timestamp;
+      frame.tracking = input.readBoolean();
+      frame.lightIntensity = input.readFloat();
+      readFloats(frame.viewMatrix, 0, 16);
+      readFloats(frame.projectionMatrix, 0, 16);
+      readFloats(frame.cameraPosition, 0, 3);
+
+      if (input.readBoolean()) {
+        frame.pointCloudTimestamp = input.readLong();
+        final int floats = input.readInt();
+        readBuffer(frame.ensurePointCapacity(floats), floats);
+      }
+
+      final int planes = input.readInt();
+      for (int i = 0; i < planes; ++i) {
+        final PlaneSnapshot plane = frame.addPlane();
+        plane.id = input.readInt();
+        readFloats(plane.centerMatrix, 0, 16);
+        plane.extentX = input.readFloat();
+        plane.extentZ = input.readFloat();
+        final int floats = input.readInt();
+        readBuffer(plane.ensurePolygonCapacity(floats), floats);
+      }
+
+      final int anchors = input.readInt();
+      for (int i = 0; i < anchors; ++i) {
+        final int offset = frame.addAnchor();
+        readFloats(frame.getAnchorMatrices(), offset, 16);
+      }
+      return true;
+    }
+
+    @Override public void close() throws IOException {
+      input.close();
+    }
+
+    private void readFloats(float[] values, int offset, int count) throws IOException {
+      for (int i = offset; i < offset + count; ++i) {
+        values[i] = input.readFloat();
+      }
+    }
+
+    private void readBuffer(FloatBuffer buffer, int floats) throws IOException {
+      for (int i = 0; i < floats; ++i) {
+        buffer.put(input.readFloat());
+      }
+      buffer.flip();
+    }
+  }
+}
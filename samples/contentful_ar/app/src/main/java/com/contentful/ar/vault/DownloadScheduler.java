@@ -0,0 +1,187 @@
+package com.contentful.ar.vault;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Maybe;
+import io.reactivex.MaybeEmitter;
+import io.reactivex.MaybeOnSubscribe;
+import io.reactivex.functions.Cancellable;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+/**
+ * Runs downloads on a few threads, highest priority first, and cancels them when their
+ * subscription is disposed.
+ * <p>
+ * Every download is handed a tag of its own, which has to be the tag of all of its requests,
+ * made through this scheduler as {@link Call.Factory}. Disposing the {@link Maybe} of a download
+ * removes it from the queue, or cancels its calls if it is already running, also while their
+ * response bodies are read. Queued downloads can be moved to the front by their key with
+ * {@link #prioritize(String)}, e.g. once the user picked their model.
+ * <p>
+ * This class does not depend on Android.
+ */
+class DownloadScheduler implements Call.Factory {
+  private static final long IDLE_THREAD_SECONDS = 30;
+
+  private final OkHttpClient client;
+  private final ThreadPoolExecutor executor;
+  // By the tag of their requests, unique even for downloads of the same key.
+  private final Map<Long, Task<?>> tasks = new ConcurrentHashMap<>();
+  // Orders tasks of equal priority by their scheduling, and hands out increasing priorities.
+  private final AtomicLong sequence = new AtomicLong();
+
+  /**
+   * @param client                 the client all requests of the downloads are made with.
+   * @param maxConcurrentDownloads number of downloads running at the same time.
+   */
+  DownloadScheduler(OkHttpClient client, int maxConcurrentDownloads) {
+    this.client = client;
+    executor = new ThreadPoolExecutor(
+        maxConcurrentDownloads, maxConcurrentDownloads,
+        IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+        new PriorityBlockingQueue<Runnable>());
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Creates a call, cancelled with the download its request is tagged with.
+   */
+  @Override public Call newCall(Request request) {
+    final Call call = client.newCall(request);
+    final Task<?> task = tasks.get(request.tag());
+    if (task != null) {
+      task.addCall(call);
+    }
+    return call;
+  }
+
+  /**
+   * Creates a download, queued once subscribed to. Every subscription is a download of its own.
+   *
+   * @param key      identifies the download for {@link #prioritize(String)}, e.g. its file name.
+   * @param download run on one of the download threads.
+   */
+  <T> Maybe<T> schedule(final String key, final Download<T> download) {
+    return Maybe.create(new MaybeOnSubscribe<T>() {
+      @Override public void subscribe(MaybeEmitter<T> emitter) throws Exception {
+        final Task<T> task = new Task<>(key, download, emitter, sequence.incrementAndGet());
+        emitter.setCancellable(task);
+        tasks.put(task.order, task);
+        executor.execute(task);
+      }
+    });
+  }
+
+  /**
+   * Moves the queued downloads of the given key ahead of all others. Does nothing for downloads
+   * which are not queued, e.g. because they are already running.
+   */
+  void prioritize(String key) {
+    for (final Task<?> task : tasks.values()) {
+      // Only requeue the task if no download thread took it in the meantime.
+      if (task.key.equals(key) && executor.remove(task)) {
+        task.priority = sequence.incrementAndGet();
+        executor.execute(task);
+      }
+    }
+  }
+
+  /**
+   * The work of one download.
+   */
+  interface Download<T> {
+    /**
+     * @param tag the tag all requests of the download have to be made with, so they are
+     *            cancelled with it.
+     * @return the result of the download, or null to complete without one.
+     */
+    T run(Object tag) throws Exception;
+  }
+
+  private final class Task<T> implements Runnable, Comparable<Task<?>>, Cancellable {
+    private final String key;
+    private final Download<T> download;
+    private final MaybeEmitter<T> emitter;
+    private final long order;
+    // Only changed while the task is not queued.
+    private volatile long priority;
+    private volatile boolean finished;
+    // Guarded by itself.
+    private final List<Call> calls = new ArrayList<>();
+
+    Task(String key, Download<T> download, MaybeEmitter<T> emitter, long order) {
+      this.key = key;
+      this.download = download;
+      this.emitter = emitter;
+      this.order = order;
+    }
+
+    @Override public void run() {
+      if (emitter.isDisposed()) {
+        tasks.remove(order, this);
+        return;
+      }
+
+      T result = null;
+      Exception error = null;
+      try {
+        result = download.run(order);
+      } catch (Exception e) {
+        error = e;
+      }
+      // Emitting disposes the emitter, which cancels this task.
+      finished = true;
+      tasks.remove(order, this);
+      if (error != null) {
+        emitter.onError(error);
+      } else if (result != null) {
+        emitter.onSuccess(result);
+      } else {
+        emitter.onComplete();
+      }
+    }
+
+    void addCall(Call call) {
+      synchronized (calls) {
+        calls.add(call);
+      }
+      // Cancelled while the call got created.
+      if (emitter.isDisposed()) {
+        call.cancel();
+      }
+    }
+
+    @Override public void cancel() {
+      if (finished) {
+        return;
+      }
+      if (executor.remove(this)) {
+        tasks.remove(order, this);
+      } else {
+        // Already running, calls made from now on are cancelled as they are created.
+        synchronized (calls) {
+          for (final Call call : calls) {
+            call.cancel();
+          }
+        }
+      }
+    }
+
+    @Override public int compareTo(Task<?> other) {
+      if (priority != other.priority) {
+        return priority > other.priority ? -1 : 1;
+      }
+      return order < other.order ? -1 : order == other.order ? 0 : 1;
+    }
+  }
+}
@@ -5,6 +5,8 @@ import android.content.Context;
 import android.util.Log;
 
 import com.contentful.ar.io.AssetsSaver;
+import com.contentful.ar.io.ContentStore;
+import com.contentful.ar.io.ModelIndex;
 import com.contentful.ar.vault.models.Model;
 import com.contentful.ar.vault.models.VaultSpace;
 import com.contentful.vault.SyncCallback;
@@ -12,11 +14,13 @@ import com.contentful.vault.SyncConfig;
 import com.contentful.vault.SyncResult;
 import com.contentful.vault.Vault;
 
+import io.reactivex.MaybeSource;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
 import io.reactivex.schedulers.Schedulers;
+import okhttp3.OkHttpClient;
 
 public class VaultManager {
 
@@ -29,7 +33,13 @@ public class VaultManager {
   }
 
   private static final String TAG = VaultManager.class.getSimpleName();
+  // Models are downloaded in the background, so a few in parallel hide the latency of each.
+  private static final int MAX_CONCURRENT_DOWNLOADS = 3;
 
+  private final ContentStore contentStore;
+  private final ModelIndex modelIndex;
+  private final DownloadScheduler downloads =
+      new DownloadScheduler(new OkHttpClient(), MAX_CONCURRENT_DOWNLOADS);
   private Vault vault;
   private SyncConfig config;
   private Listener listener;
@@ -43,6 +53,15 @@ public class VaultManager {
     }
   };
 
+  /**
+   * @param contentStore stores the meshes and textures of all downloaded models.
+   * @param modelIndex   receives the entries of all downloaded models.
+   */
+  public VaultManager(ContentStore contentStore, ModelIndex modelIndex) {
+    this.contentStore = contentStore;
+    this.modelIndex = modelIndex;
+  }
+
   public void bind(final Context context, Listener listener) {
     this.listener = listener;
 
@@ -65,12 +84,20 @@ public class VaultManager {
       }
     });
 
+    // Downloads are queued as soon as their model is read, and run by the download scheduler,
+    // which bounds their concurrency.
     disposable = vault.observe(Model.class)
         .all()
-        .map(new Function<Model, Model>() {
-          @Override public Model apply(Model model) throws Exception {
-            AssetsSaver.downloadContentfulAssetsToSdCard(context, model);
-            return model;
+        .flatMapMaybe(new Function<Model, MaybeSource<Model>>() {
+          @Override public MaybeSource<Model> apply(final Model model) {
+            return downloads.schedule(AssetsSaver.getContentfulFileName(model),
+                new DownloadScheduler.Download<Model>() {
+                  @Override public Model run(Object tag) {
+                    AssetsSaver.downloadContentfulAssetsToSdCard(
+                        context, downloads, tag, contentStore, model, modelIndex);
+                    return model;
+                  }
+                });
           }
         })
         .subscribeOn(Schedulers.io())
@@ -78,10 +105,22 @@ public class VaultManager {
         .subscribe(modelConsumer);
   }
 
+  /**
+   * Cancels all queued and running downloads.
+   */
   public void unbind() {
-    if (disposable != null && disposable.isDisposed()) {
+    if (disposable != null && !disposable.isDisposed()) {
       disposable.dispose();
     }
+    disposable = null;
+  }
+
+  /**
+   * Downloads the model of the given file name before all other queued models, e.g. once the
+   * user picked it.
+   */
+  public void prioritize(String fileName) {
+    downloads.prioritize(fileName);
   }
 
   private void info(String message) {
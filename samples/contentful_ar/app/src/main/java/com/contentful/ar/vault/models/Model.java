@@ -13,9 +13,16 @@ public class Model extends Resource {
   @Field
   String description;
 
+  // OBJ or GLB file, told apart by content type or file name.
   @Field
   Asset model;
 
+  // Optional GLB file of the same mesh, quantized and compressed with EXT_meshopt_compression,
+  // downloaded instead of the model when set.
+  @Field
+  Asset compressedModel;
+
+  // Optional for GLB files embedding their textures.
   @Field
   Asset texture;
 
@@ -34,6 +41,10 @@ public class Model extends Resource {
     return model;
   }
 
+  public Asset compressedModel() {
+    return compressedModel;
+  }
+
   public Asset texture() {
     return texture;
   }
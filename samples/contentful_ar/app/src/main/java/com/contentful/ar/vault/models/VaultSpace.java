@@ -2,7 +2,8 @@ package com.contentful.ar.vault.models;
 
 import com.contentful.vault.Space;
 
-@Space(value = VaultSpace.SPACE_ID, locales = "en-US", models = Model.class)
+// The database version is raised with every field added to a model.
+@Space(value = VaultSpace.SPACE_ID, locales = "en-US", models = Model.class, dbVersion = 2)
 public class VaultSpace {
   public static final String SPACE_ID = "bfhowwi93zm1";
   public static final String ACCESS_TOKEN = "d51541d8b19ee60ad8229ee17141286ac8d8bbc120092d5b5a8bb7934f6faf5a";
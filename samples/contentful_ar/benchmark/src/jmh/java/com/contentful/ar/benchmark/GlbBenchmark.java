@@ -0,0 +1,174 @@
+package com.contentful.ar.benchmark;
+
+
+import com.contentful.ar.rendering.GlbLoader;
+import com.contentful.ar.rendering.Mesh;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading a model from a GLB file with loading it from its OBJ file, both as done by
+ * {@link com.contentful.ar.rendering.ObjectRenderer}. The GLB file is written from the mesh of
+ * the OBJ file, so both hold the same vertices.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GlbBenchmark {
+  @Param({"andy.obj", "parrot.obj"})
+  public String model;
+
+  private File directory;
+  private File objFile;
+  private File glbFile;
+  private ByteBuffer glbBytes;
+
+  @Setup
+  public void setUp() throws IOException, JSONException {
+    directory = Files.createTempDirectory("glb").toFile();
+    objFile = new File(directory, model);
+    try (InputStream input = GlbBenchmark.class.getResourceAsStream("/" + model)) {
+      if (input == null) {
+        throw new IOException("Missing benchmark resource '" + model + "'.");
+      }
+      Files.copy(input, objFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    glbBytes = writeGlb(Mesh.load(objFile));
+    glbFile = new File(directory, model.replace(".obj", ".glb"));
+    try (OutputStream output = new FileOutputStream(glbFile)) {
+      output.write(glbBytes.array(), 0, glbBytes.limit());
+    }
+    final ByteBuffer direct = ByteBuffer.allocateDirect(glbBytes.limit());
+    direct.put(glbBytes).flip();
+    glbBytes = direct;
+  }
+
+  @TearDown
+  public void tearDown() {
+    objFile.delete();
+    glbFile.delete();
+    directory.delete();
+  }
+
+  @Benchmark
+  public Mesh loadObj() throws IOException {
+    return Mesh.load(objFile);
+  }
+
+  /**
+   * Maps the file, wrapping the accessors without copying them.
+   */
+  @Benchmark
+  public Mesh loadGlb() throws IOException {
+    return Mesh.load(glbFile);
+  }
+
+  @Benchmark
+  public Mesh readGlbBuffer() throws IOException {
+    return GlbLoader.read(glbBytes);
+  }
+
+  /**
+   * Writes a mesh as GLB file of a single primitive with tightly packed accessors, as exporters
+   * do.
+   */
+  static ByteBuffer writeGlb(Mesh mesh) throws JSONException {
+    final int vertexCount = mesh.getVertices().limit() / 3;
+    final int indexCount = mesh.getIndices().limit();
+    final int positionsOffset = 0;
+    final int normalsOffset = positionsOffset + 12 * vertexCount;
+    final int texCoordsOffset = normalsOffset + 12 * vertexCount;
+    final int indicesOffset = texCoordsOffset + 8 * vertexCount;
+    final int binLength = (indicesOffset + 2 * indexCount + 3) & ~3;
+
+    final float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+    final float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+    for (int i = 0; i < 3 * vertexCount; ++i) {
+      min[i % 3] = Math.min(min[i % 3], mesh.getVertices().get(i));
+      max[i % 3] = Math.max(max[i % 3], mesh.getVertices().get(i));
+    }
+
+    final JSONObject gltf = new JSONObject()
+        .put("asset", new JSONObject().put("version", "2.0"))
+        .put("scene", 0)
+        .put("scenes", new JSONArray().put(new JSONObject().put("nodes", new JSONArray().put(0))))
+        .put("nodes", new JSONArray().put(new JSONObject().put("mesh", 0)))
+        .put("meshes", new JSONArray().put(new JSONObject().put("primitives", new JSONArray().put(
+            new JSONObject()
+                .put("attributes", new JSONObject()
+                    .put("POSITION", 0).put("NORMAL", 1).put("TEXCOORD_0", 2))
+                .put("indices", 3)))))
+        .put("buffers", new JSONArray().put(new JSONObject().put("byteLength", binLength)))
+        .put("bufferViews", new JSONArray()
+            .put(bufferView(positionsOffset, 12 * vertexCount))
+            .put(bufferView(normalsOffset, 12 * vertexCount))
+            .put(bufferView(texCoordsOffset, 8 * vertexCount))
+            .put(bufferView(indicesOffset, 2 * indexCount)))
+        .put("accessors", new JSONArray()
+            .put(accessor(0, 5126, vertexCount, "VEC3")
+                .put("min", new JSONArray().put(min[0]).put(min[1]).put(min[2]))
+                .put("max", new JSONArray().put(max[0]).put(max[1]).put(max[2])))
+            .put(accessor(1, 5126, vertexCount, "VEC3"))
+            .put(accessor(2, 5126, vertexCount, "VEC2"))
+            .put(accessor(3, 5123, indexCount, "SCALAR")));
+
+    final byte[] json = gltf.toString().getBytes(Charset.forName("UTF-8"));
+    final int jsonLength = (json.length + 3) & ~3;
+    final ByteBuffer glb = ByteBuffer.allocate(12 + 8 + jsonLength + 8 + binLength)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    glb.putInt(0x46546C67).putInt(2).putInt(glb.capacity());
+    glb.putInt(jsonLength).putInt(0x4E4F534A).put(json);
+    while (glb.position() % 4 != 0) {
+      glb.put((byte) ' ');
+    }
+    glb.putInt(binLength).putInt(0x004E4942);
+    for (int i = 0; i < 3 * vertexCount; ++i) {
+      glb.putFloat(mesh.getVertices().get(i));
+    }
+    for (int i = 0; i < 3 * vertexCount; ++i) {
+      glb.putFloat(mesh.getNormals().get(i));
+    }
+    for (int i = 0; i < 2 * vertexCount; ++i) {
+      glb.putFloat(mesh.getTexCoords().get(i));
+    }
+    for (int i = 0; i < indexCount; ++i) {
+      glb.putShort(mesh.getIndices().get(i));
+    }
+    glb.position(glb.capacity()).flip();
+    return glb;
+  }
+
+  private static JSONObject bufferView(int offset, int length) throws JSONException {
+    return new JSONObject().put("buffer", 0).put("byteOffset", offset).put("byteLength", length);
+  }
+
+  private static JSONObject accessor(int bufferView, int componentType, int count, String type)
+      throws JSONException {
+    return new JSONObject().put("bufferView", bufferView).put("componentType", componentType)
+        .put("count", count).put("type", type);
+  }
+}
@@ -0,0 +1,87 @@
+package com.contentful.ar.benchmark;
+
+
+import com.google.ar.core.examples.java.computervision.utility.BoxBlur;
+import com.google.ar.core.examples.java.computervision.utility.ImageFilter;
+import com.google.ar.core.examples.java.computervision.utility.ImageKernel;
+import com.google.ar.core.examples.java.computervision.utility.Scharr;
+import com.google.ar.core.examples.java.computervision.utility.Sobel;
+import com.google.ar.core.examples.java.computervision.utility.Threshold;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the image filters of the computer vision sample on camera sized grayscale images, read
+ * from a direct buffer like the mapped pixel buffers of the texture reader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ImageFilterBenchmark {
+  @Param({"640x480", "1024x512", "1920x1080"})
+  public String size;
+
+  @Param({"sobel", "scharr", "blur", "threshold"})
+  public String kernel;
+
+  @Param({"false", "true"})
+  public boolean parallel;
+
+  private int width;
+  private int height;
+  private ByteBuffer input;
+  private ByteBuffer output;
+  private ImageFilter filter;
+
+  @Setup
+  public void setUp() {
+    final String[] dimensions = size.split("x");
+    width = Integer.parseInt(dimensions[0]);
+    height = Integer.parseInt(dimensions[1]);
+
+    // Noise on top of a gradient, so both branches of the threshold are taken.
+    final Random random = new Random(42);
+    input = ByteBuffer.allocateDirect(width * height);
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        input.put((byte) ((x * 255 / width + random.nextInt(64)) & 0xFF));
+      }
+    }
+    output = ByteBuffer.allocate(width * height);
+
+    filter = new ImageFilter(createKernel(kernel), parallel ? ForkJoinPool.commonPool() : null);
+  }
+
+  @Benchmark
+  public ByteBuffer filter() {
+    filter.apply(output, input, width, height);
+    return output;
+  }
+
+  private static ImageKernel createKernel(String name) {
+    switch (name) {
+      case "sobel":
+        return new Sobel();
+      case "scharr":
+        return new Scharr();
+      case "blur":
+        return new BoxBlur();
+      case "threshold":
+        return new Threshold(128);
+      default:
+        throw new IllegalArgumentException("Unknown kernel " + name + ".");
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package com.contentful.ar.benchmark;
+
+
+import com.contentful.ar.rendering.MatrixMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the matrix math done per object and frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MatrixBenchmark {
+  private final float[] model = new float[16];
+  private final float[] view = new float[16];
+  private final float[] projection = new float[16];
+  private final float[] modelView = new float[16];
+  private final float[] modelViewProjection = new float[16];
+  private final float[] scaled = new float[16];
+
+  @Setup
+  public void setUp() {
+    final Random random = new Random(42);
+    for (int i = 0; i < 16; ++i) {
+      model[i] = random.nextFloat();
+      view[i] = random.nextFloat();
+      projection[i] = random.nextFloat();
+    }
+  }
+
+  @Benchmark
+  public float[] multiply() {
+    MatrixMath.multiplyMM(modelView, 0, view, 0, model, 0);
+    return modelView;
+  }
+
+  @Benchmark
+  public float[] scale() {
+    MatrixMath.scaleM(scaled, 0, model, 0, 0.75f);
+    return scaled;
+  }
+
+  /**
+   * The full per object update of {@link com.contentful.ar.rendering.ObjectRenderer}.
+   */
+  @Benchmark
+  public float[] modelViewProjection() {
+    MatrixMath.scaleM(scaled, 0, model, 0, 0.75f);
+    MatrixMath.multiplyMM(modelView, 0, view, 0, scaled, 0);
+    MatrixMath.multiplyMM(modelViewProjection, 0, projection, 0, modelView, 0);
+    return modelViewProjection;
+  }
+}
@@ -0,0 +1,75 @@
+package com.contentful.ar.benchmark;
+
+
+import com.contentful.ar.rendering.Mesh;
+import com.contentful.ar.tools.ModelCompressor;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading a model compressed by {@link ModelCompressor}, decoding and dequantizing it on
+ * the worker thread, with parsing its OBJ file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MeshoptBenchmark {
+  @Param({"andy.obj", "parrot.obj"})
+  public String model;
+
+  private File directory;
+  private File objFile;
+  private File compressedFile;
+
+  @Setup
+  public void setUp() throws IOException, JSONException {
+    directory = Files.createTempDirectory("meshopt").toFile();
+    objFile = new File(directory, model);
+    try (InputStream input = MeshoptBenchmark.class.getResourceAsStream("/" + model)) {
+      if (input == null) {
+        throw new IOException("Missing benchmark resource '" + model + "'.");
+      }
+      Files.copy(input, objFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    compressedFile = new File(directory, model.replace(".obj", ".glb"));
+    try (OutputStream output = new FileOutputStream(compressedFile)) {
+      output.write(ModelCompressor.compress(Mesh.load(objFile), model.replace(".obj", ".png")));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    objFile.delete();
+    compressedFile.delete();
+    directory.delete();
+  }
+
+  @Benchmark
+  public Mesh loadObj() throws IOException {
+    return Mesh.load(objFile);
+  }
+
+  @Benchmark
+  public Mesh loadCompressed() throws IOException {
+    return Mesh.load(compressedFile);
+  }
+}
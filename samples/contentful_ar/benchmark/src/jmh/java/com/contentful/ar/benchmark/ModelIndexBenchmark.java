@@ -0,0 +1,68 @@
+package com.contentful.ar.benchmark;
+
+
+import com.contentful.ar.io.ModelIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what opening a model picker costs with the {@link ModelIndex}: loading it once at
+ * startup, and listing the entries of one source per dialog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModelIndexBenchmark {
+  @Param({"10", "500"})
+  public int models;
+
+  private File file;
+  private ModelIndex index;
+
+  @Setup
+  public void setUp() throws IOException {
+    file = File.createTempFile("benchmark", ".idx");
+    file.delete();
+    index = new ModelIndex(file);
+    index.load();
+
+    final Random random = new Random(42);
+    final byte[] thumbnail = new byte[ModelIndex.THUMBNAIL_SIZE * ModelIndex.THUMBNAIL_SIZE];
+    for (int i = 0; i < models; ++i) {
+      random.nextBytes(thumbnail);
+      index.put(new ModelIndex.Entry("model" + i + ".obj", "Model " + i,
+          ModelIndex.Source.CONTENTFUL, "1", 100000, 1000, new float[6], thumbnail.clone()));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  public ModelIndex load() throws IOException {
+    final ModelIndex loaded = new ModelIndex(file);
+    loaded.load();
+    return loaded;
+  }
+
+  @Benchmark
+  public List<ModelIndex.Entry> getEntries() {
+    return index.getEntries(ModelIndex.Source.CONTENTFUL);
+  }
+}
@@ -0,0 +1,102 @@
+package com.contentful.ar.benchmark;
+
+
+import com.contentful.ar.rendering.Mesh;
+import com.contentful.ar.rendering.NativeMeshLoader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+
+/**
+ * Measures the steps of loading an OBJ model, as done by
+ * {@link com.contentful.ar.rendering.ObjectRenderer}, on the models shipped with the app.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ObjBenchmark {
+  @Param({"andy.obj", "parrot.obj"})
+  public String model;
+
+  private byte[] objBytes;
+  private Obj obj;
+  private Obj renderable;
+  private IntBuffer wideIndices;
+  private ByteBuffer directObjBytes;
+
+  @Setup
+  public void setUp() throws IOException {
+    objBytes = readResource(model);
+    obj = ObjReader.read(new ByteArrayInputStream(objBytes));
+    renderable = ObjUtils.convertToRenderable(obj);
+    wideIndices = ObjData.getFaceVertexIndices(renderable, 3);
+    directObjBytes = ByteBuffer.allocateDirect(objBytes.length);
+    directObjBytes.put(objBytes).flip();
+  }
+
+  @Benchmark
+  public Obj parse() throws IOException {
+    return ObjReader.read(new ByteArrayInputStream(objBytes));
+  }
+
+  @Benchmark
+  public Obj convertToRenderable() {
+    return ObjUtils.convertToRenderable(obj);
+  }
+
+  @Benchmark
+  public ShortBuffer narrowIndices() {
+    wideIndices.rewind();
+    return Mesh.narrowIndices(wideIndices);
+  }
+
+  @Benchmark
+  public Mesh readObj() throws IOException {
+    return Mesh.readObj(new ByteArrayInputStream(objBytes));
+  }
+
+  /**
+   * Runs only if the native library was built for the desktop, otherwise fails with an
+   * {@link IllegalStateException}.
+   */
+  @Benchmark
+  public Mesh nativeReadObj() throws IOException {
+    return NativeMeshLoader.readObj(directObjBytes);
+  }
+
+  private static byte[] readResource(String name) throws IOException {
+    try (InputStream input = ObjBenchmark.class.getResourceAsStream("/" + name)) {
+      if (input == null) {
+        throw new IOException("Missing benchmark resource '" + name + "'.");
+      }
+
+      final ByteArrayOutputStream output = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        output.write(buffer, 0, read);
+      }
+      return output.toByteArray();
+    }
+  }
+}
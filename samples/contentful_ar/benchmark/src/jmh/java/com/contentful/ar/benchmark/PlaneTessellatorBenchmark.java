@@ -0,0 +1,57 @@
+package com.contentful.ar.benchmark;
+
+
+import com.contentful.ar.rendering.PlaneTessellator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per frame tessellation of plane boundaries done by
+ * {@link com.contentful.ar.rendering.PlaneRenderer}, for polygons of growing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlaneTessellatorBenchmark {
+  private static final float EXTENT_M = 2.0f;
+
+  @Param({"16", "64", "256"})
+  public int boundaryVertices;
+
+  private final PlaneTessellator tessellator = new PlaneTessellator();
+  private FloatBuffer boundary;
+
+  @Setup
+  public void setUp() {
+    // Circular boundary, as x, z pairs around the plane's center.
+    boundary = ByteBuffer.allocateDirect(Float.SIZE / 8 * 2 * boundaryVertices)
+        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    for (int i = 0; i < boundaryVertices; ++i) {
+      final double angle = 2 * Math.PI * i / boundaryVertices;
+      boundary.put((float) Math.cos(angle) * EXTENT_M / 2);
+      boundary.put((float) Math.sin(angle) * EXTENT_M / 2);
+    }
+
+    // Grow the buffers once, like after the first frame on a device.
+    tessellator.tessellate(EXTENT_M, EXTENT_M, boundary);
+  }
+
+  @Benchmark
+  public ShortBuffer tessellate() {
+    tessellator.tessellate(EXTENT_M, EXTENT_M, boundary);
+    return tessellator.getIndexBuffer();
+  }
+}
@@ -0,0 +1,62 @@
+package com.contentful.ar.benchmark;
+
+
+import com.contentful.ar.io.Streams;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the file copy throughput of {@link com.contentful.ar.io.AssetsSaver}, which copies
+ * assets and downloads to external storage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StreamCopyBenchmark {
+  @Param({"1", "16"})
+  public int megabytes;
+
+  private File source;
+  private File target;
+
+  @Setup
+  public void setUp() throws IOException {
+    source = File.createTempFile("benchmark", ".src");
+    target = File.createTempFile("benchmark", ".dst");
+
+    final byte[] chunk = new byte[1024 * 1024];
+    new Random(42).nextBytes(chunk);
+    try (OutputStream output = new FileOutputStream(source)) {
+      for (int i = 0; i < megabytes; ++i) {
+        output.write(chunk);
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    source.delete();
+    target.delete();
+  }
+
+  @Benchmark
+  public long copy() throws IOException {
+    return Streams.copy(new FileInputStream(source), new FileOutputStream(target));
+  }
+}
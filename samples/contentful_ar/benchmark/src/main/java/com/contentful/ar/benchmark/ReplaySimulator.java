@@ -0,0 +1,256 @@
+package com.contentful.ar.benchmark;
+
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import com.contentful.ar.rendering.ObjectRenderer;
+import com.contentful.ar.rendering.PlaneRenderer;
+import com.contentful.ar.rendering.PointCloudRenderer;
+import com.contentful.ar.rendering.gl.CountingGlBackend;
+import com.contentful.ar.rendering.gl.GlResourceTracker;
+import com.contentful.ar.rendering.gl.TextureRegistry;
+import com.contentful.ar.replay.FrameSnapshot;
+import com.contentful.ar.replay.SessionRecording;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays a recorded session through the app's renderers on a desktop JVM, without a GPU.
+ * <p>
+ * Every frame runs the same renderer calls as {@code Scene#drawFrame} on the device, against a
+ * {@link CountingGlBackend}. The camera background is not replayed, it only consists of
+ * ARCore's camera texture. Reported are the CPU time per frame and stage, the bytes allocated
+ * per frame, the GL calls every renderer issues and the GL resources alive at the end. Once
+ * reported, all renderers are destroyed and the replay fails if any GL resource leaked.
+ * <p>
+ * Usage: {@code ReplaySimulator [recording.rec] [--assets dir] [--model name.obj]
+ * [--synthetic frames]}. Recordings are taken on the device by starting the app with the
+ * boolean extra {@code record}; without one, a synthetic session is replayed.
+ */
+public class ReplaySimulator {
+  // Stages, also used as sections of the GL calls.
+  private static final int STAGE_CLEAR = 0;
+  private static final int STAGE_POINT_CLOUD = 1;
+  private static final int STAGE_PLANES = 2;
+  private static final int STAGE_OBJECTS = 3;
+  private static final int STAGE_LOADS = 4;
+  private static final String[] STAGES = {"clear", "point_cloud", "planes", "objects", "loads"};
+
+  private static final int DEFAULT_SYNTHETIC_FRAMES = 30 * 60;
+  private static final float SCALE_FACTOR = 1.0f;
+
+  private final CountingGlBackend gl = new CountingGlBackend();
+  private final PlaneRenderer planeRenderer = new PlaneRenderer(gl);
+  private final PointCloudRenderer pointCloudRenderer = new PointCloudRenderer(gl);
+  private final List<ObjectRenderer> objectRenderers = new ArrayList<>();
+  private final String basepath;
+  private final String modelName;
+  private long lastPointCloudTimestamp = Long.MIN_VALUE;
+
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final long[] stageNanos = new long[STAGES.length];
+  private long stageStart;
+  private long[] frameNanos = new long[1024];
+  private long allocatedBytes = 0;
+  private int frames = 0;
+  private int trackingFrames = 0;
+
+  /**
+   * @param basepath  Directory of the app's assets, containing shaders and models.
+   * @param modelName The model placed on every anchor.
+   */
+  public ReplaySimulator(String basepath, String modelName) {
+    this.basepath = basepath;
+    this.modelName = modelName;
+
+    // Textures are skipped, they can only be uploaded by Android.
+    planeRenderer.createOnGlThread(basepath, null);
+    pointCloudRenderer.createOnGlThread(basepath);
+    gl.reset();
+  }
+
+  /**
+   * Replays all frames of the recording.
+   */
+  public void replay(InputStream recording) throws IOException {
+    final FrameSnapshot frame = new FrameSnapshot();
+    try (SessionRecording.Reader reader = new SessionRecording.Reader(recording)) {
+      while (reader.read(frame)) {
+        renderFrame(frame);
+      }
+    }
+  }
+
+  /**
+   * Renders one frame like the device would, measuring time and allocations.
+   */
+  public void renderFrame(FrameSnapshot frame) {
+    final long allocatedBefore = allocatedBytes();
+    final long frameStart = System.nanoTime();
+
+    begin(STAGE_CLEAR);
+    gl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+    end(STAGE_CLEAR);
+
+    if (frame.tracking) {
+      trackingFrames++;
+
+      begin(STAGE_POINT_CLOUD);
+      if (frame.pointCloudTimestamp != lastPointCloudTimestamp) {
+        lastPointCloudTimestamp = frame.pointCloudTimestamp;
+        pointCloudRenderer.update(frame.getPoints(), frame.pointCloudTimestamp);
+      }
+      pointCloudRenderer.draw(frame.viewMatrix, frame.projectionMatrix);
+      end(STAGE_POINT_CLOUD);
+
+      begin(STAGE_PLANES);
+      planeRenderer.drawPlanes(frame);
+      end(STAGE_PLANES);
+
+      final float[] anchorMatrices = frame.getAnchorMatrices();
+      for (int i = 0; i < frame.getAnchorCount(); ++i) {
+        final ObjectRenderer renderer = getObjectRenderer(i);
+        final int stage = renderer.isInitialized() ? STAGE_OBJECTS : STAGE_LOADS;
+        begin(stage);
+        renderer.updateModelMatrix(anchorMatrices, 16 * i, SCALE_FACTOR);
+        renderer.draw(frame.viewMatrix, frame.projectionMatrix, frame.lightIntensity);
+        end(stage);
+      }
+    }
+
+    if (frames == frameNanos.length) {
+      frameNanos = Arrays.copyOf(frameNanos, 2 * frames);
+    }
+    frameNanos[frames++] = System.nanoTime() - frameStart;
+    allocatedBytes += allocatedBytes() - allocatedBefore;
+  }
+
+  private ObjectRenderer getObjectRenderer(int index) {
+    while (objectRenderers.size() <= index) {
+      objectRenderers.add(new ObjectRenderer(gl,
+          new File(basepath, modelName).getPath(), "",
+          new File(basepath, "object_fragment.shader").getPath(),
+          new File(basepath, "object_vertex.shader").getPath()) {
+        @Override protected Bitmap readTexture() {
+          return null;
+        }
+      });
+    }
+    return objectRenderers.get(index);
+  }
+
+  private void begin(int stage) {
+    gl.setSection(STAGES[stage]);
+    stageStart = System.nanoTime();
+  }
+
+  private void end(int stage) {
+    stageNanos[stage] += System.nanoTime() - stageStart;
+    gl.setSection(CountingGlBackend.DEFAULT_SECTION);
+  }
+
+  private long allocatedBytes() {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+
+  /**
+   * Appends frame times, stage times, allocations and GL calls per frame.
+   */
+  public void appendReport(StringBuilder out) {
+    final long[] sorted = Arrays.copyOf(frameNanos, frames);
+    Arrays.sort(sorted);
+    final int divisor = Math.max(1, frames);
+
+    out.append(String.format(Locale.US, "frames %d, tracking %d\n", frames, trackingFrames));
+    if (frames > 0) {
+      out.append(String.format(Locale.US, "cpu p50 %.3f p95 %.3f p99 %.3f max %.3f ms\n",
+          sorted[(int) (frames * 0.50)] / 1e6,
+          sorted[(int) (frames * 0.95)] / 1e6,
+          sorted[(int) (frames * 0.99)] / 1e6,
+          sorted[frames - 1] / 1e6));
+    }
+    for (int i = 0; i < STAGES.length; ++i) {
+      out.append(String.format(Locale.US, "%-12s %.4f ms/frame\n",
+          STAGES[i], stageNanos[i] / (double) divisor / 1e6));
+    }
+    out.append(String.format(Locale.US, "allocated %.1f bytes/frame\n",
+        allocatedBytes / (double) divisor));
+    gl.appendReport(out, frames);
+    GlResourceTracker.of(gl).appendReport(out);
+    TextureRegistry.of(gl).appendReport(out);
+  }
+
+  public CountingGlBackend getGl() {
+    return gl;
+  }
+
+  /**
+   * Destroys all renderers, like tearing down the scene on the device.
+   */
+  public void destroy() {
+    for (final ObjectRenderer renderer : objectRenderers) {
+      renderer.destroy();
+    }
+    objectRenderers.clear();
+    planeRenderer.destroy();
+    pointCloudRenderer.destroy();
+  }
+
+  public static void main(String[] args) throws IOException {
+    String recording = null;
+    String basepath = "../app/src/main/assets";
+    String modelName = "andy.obj";
+    int syntheticFrames = DEFAULT_SYNTHETIC_FRAMES;
+    for (int i = 0; i < args.length; ++i) {
+      switch (args[i]) {
+        case "--assets":
+          basepath = args[++i];
+          break;
+        case "--model":
+          modelName = args[++i];
+          break;
+        case "--synthetic":
+          syntheticFrames = Integer.parseInt(args[++i]);
+          break;
+        default:
+          recording = args[i];
+          break;
+      }
+    }
+
+    final InputStream input;
+    if (recording != null) {
+      input = new FileInputStream(recording);
+    } else {
+      final ByteArrayOutputStream output = new ByteArrayOutputStream();
+      new SyntheticSession().record(output, syntheticFrames);
+      input = new ByteArrayInputStream(output.toByteArray());
+    }
+
+    final ReplaySimulator simulator = new ReplaySimulator(basepath, modelName);
+    simulator.replay(input);
+
+    final StringBuilder report = new StringBuilder();
+    simulator.appendReport(report);
+    System.out.print(report);
+
+    simulator.destroy();
+    GlResourceTracker.of(simulator.getGl()).checkReleased();
+  }
+}
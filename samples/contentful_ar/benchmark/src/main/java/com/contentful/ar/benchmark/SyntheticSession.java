@@ -0,0 +1,167 @@
+package com.contentful.ar.benchmark;
+
+
+import com.contentful.ar.replay.FrameSnapshot;
+import com.contentful.ar.replay.PlaneSnapshot;
+import com.contentful.ar.replay.SessionRecording;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * Generates a deterministic session recording, for replaying without a recording from a device.
+ * <p>
+ * The camera circles the origin at eye height while planes grow, the point cloud is updated every
+ * other frame and an object gets placed every second, like in a typical session.
+ */
+public class SyntheticSession {
+  private static final int FPS = 30;
+  private static final int PLANES = 3;
+  private static final int POINTS = 400;
+  private static final int MAX_BOUNDARY_VERTICES = 96;
+  private static final int MAX_ANCHORS = 16;
+
+  private final Random random = new Random(42);
+  private final FloatBuffer points = FloatBuffer.allocate(4 * POINTS);
+  private final FloatBuffer polygon = FloatBuffer.allocate(2 * MAX_BOUNDARY_VERTICES);
+
+  /**
+   * Writes the given number of frames as a recording.
+   */
+  public void record(OutputStream output, int frames) throws IOException {
+    final FrameSnapshot frame = new FrameSnapshot();
+    try (SessionRecording.Writer writer = new SessionRecording.Writer(output)) {
+      for (int i = 0; i < frames; ++i) {
+        generate(i, frame);
+        writer.write(frame);
+      }
+    }
+  }
+
+  private void generate(int index, FrameSnapshot frame) {
+    frame.clear();
+    frame.timestamp = index * 1000000000L / FPS;
+    // The first half second, tracking is not established yet.
+    frame.tracking = index >= FPS / 2;
+    frame.lightIntensity = 0.5f + 0.1f * (float) Math.sin(index * 0.01);
+    if (!frame.tracking) {
+      return;
+    }
+
+    // Camera orbiting the origin, looking at it.
+    final double angle = index * 2 * Math.PI / (20 * FPS);
+    frame.cameraPosition[0] = (float) (2 * Math.cos(angle));
+    frame.cameraPosition[1] = 1.5f;
+    frame.cameraPosition[2] = (float) (2 * Math.sin(angle));
+    lookAt(frame.viewMatrix, frame.cameraPosition);
+    perspective(frame.projectionMatrix, 60, 9.0f / 16.0f, 0.1f, 100.0f);
+
+    if (index % 2 == 0) {
+      points.clear();
+      for (int i = 0; i < POINTS; ++i) {
+        points.put(random.nextFloat() * 4 - 2);
+        points.put(random.nextFloat());
+        points.put(random.nextFloat() * 4 - 2);
+        points.put(random.nextFloat());
+      }
+      points.flip();
+      frame.setPoints(points, frame.timestamp);
+    }
+
+    // Planes grow over the first ten seconds, getting more boundary vertices.
+    final float growth = Math.min(1.0f, index / (10.0f * FPS));
+    for (int i = 0; i < PLANES; ++i) {
+      final PlaneSnapshot plane = frame.addPlane();
+      plane.id = i;
+      plane.extentX = 0.5f + 1.5f * growth;
+      plane.extentZ = 0.5f + growth;
+      identity(plane.centerMatrix);
+      plane.centerMatrix[12] = i - 1.0f;
+      plane.centerMatrix[13] = -0.2f * i;
+      plane.centerMatrix[14] = 0.5f * i;
+
+      final int vertices = 8 + (int) ((MAX_BOUNDARY_VERTICES - 8) * growth);
+      polygon.clear();
+      for (int v = 0; v < vertices; ++v) {
+        final double vertexAngle = 2 * Math.PI * v / vertices;
+        polygon.put((float) Math.cos(vertexAngle) * plane.extentX / 2);
+        polygon.put((float) Math.sin(vertexAngle) * plane.extentZ / 2);
+      }
+      polygon.flip();
+      plane.setPolygon(polygon);
+    }
+
+    // One more object every second.
+    final int anchors = Math.min(MAX_ANCHORS, index / FPS);
+    for (int i = 0; i < anchors; ++i) {
+      final int offset = frame.addAnchor();
+      final float[] matrices = frame.getAnchorMatrices();
+      for (int j = 0; j < 16; ++j) {
+        matrices[offset + j] = j % 5 == 0 ? 1.0f : 0.0f;
+      }
+      matrices[offset + 12] = (i % 4) * 0.3f - 0.45f;
+      matrices[offset + 14] = (i / 4) * 0.3f - 0.45f;
+    }
+  }
+
+  private static void identity(float[] matrix) {
+    for (int i = 0; i < 16; ++i) {
+      matrix[i] = i % 5 == 0 ? 1.0f : 0.0f;
+    }
+  }
+
+  private static void lookAt(float[] matrix, float[] eye) {
+    // Forward, right and up axes of a camera looking at the origin.
+    float fx = -eye[0];
+    float fy = -eye[1];
+    float fz = -eye[2];
+    final float fLength = (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+    fx /= fLength;
+    fy /= fLength;
+    fz /= fLength;
+
+    // Side axis, forward cross world up (0, 1, 0).
+    float sx = -fz;
+    float sy = 0;
+    float sz = fx;
+    final float sLength = (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+    sx /= sLength;
+    sy /= sLength;
+    sz /= sLength;
+
+    final float ux = sy * fz - sz * fy;
+    final float uy = sz * fx - sx * fz;
+    final float uz = sx * fy - sy * fx;
+
+    matrix[0] = sx;
+    matrix[1] = ux;
+    matrix[2] = -fx;
+    matrix[3] = 0;
+    matrix[4] = sy;
+    matrix[5] = uy;
+    matrix[6] = -fy;
+    matrix[7] = 0;
+    matrix[8] = sz;
+    matrix[9] = uz;
+    matrix[10] = -fz;
+    matrix[11] = 0;
+    matrix[12] = -(sx * eye[0] + sy * eye[1] + sz * eye[2]);
+    matrix[13] = -(ux * eye[0] + uy * eye[1] + uz * eye[2]);
+    matrix[14] = fx * eye[0] + fy * eye[1] + fz * eye[2];
+    matrix[15] = 1;
+  }
+
+  private static void perspective(
+      float[] matrix, float fovYDegrees, float aspect, float near, float far) {
+    final float f = 1.0f / (float) Math.tan(Math.toRadians(fovYDegrees) / 2);
+    identity(matrix);
+    matrix[0] = f / aspect;
+    matrix[5] = f;
+    matrix[10] = (far + near) / (near - far);
+    matrix[11] = -1;
+    matrix[14] = 2 * far * near / (near - far);
+    matrix[15] = 0;
+  }
+}
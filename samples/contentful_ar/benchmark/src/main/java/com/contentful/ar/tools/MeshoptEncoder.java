@@ -0,0 +1,352 @@
+package com.contentful.ar.tools;
+
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Encodes vertex and index buffers with meshoptimizer's codecs, vertex codec version 0 and index
+ * codec version 1, for {@link com.contentful.ar.rendering.MeshoptDecoder} or any other decoder of
+ * EXT_meshopt_compression.
+ * <p>
+ * Every byte group of the vertex codec is packed with the fewest bytes, as meshoptimizer does.
+ * Both codecs work best on vertices ordered by first use in the indices, see
+ * {@link ModelCompressor}.
+ */
+public final class MeshoptEncoder {
+  private static final int VERTEX_HEADER = 0xA0;
+  private static final int INDEX_HEADER = 0xE1;
+  private static final int BYTE_GROUP_SIZE = 16;
+  private static final int VERTEX_BLOCK_MAX_SIZE = 256;
+  private static final int VERTEX_BLOCK_SIZE_BYTES = 8192;
+  private static final int TAIL_MAX_SIZE = 32;
+  private static final int FEC_MAX = 13;
+
+  // Triangle order after rotating the triangle by 0, 1 or 2 corners.
+  private static final int[][] TRIANGLE_INDEX_ORDER = {{0, 1, 2}, {1, 2, 0}, {2, 0, 1}};
+  // meshoptimizer's table of the most frequent aux codes, stored with every index buffer.
+  private static final int[] CODE_AUX_TABLE = {
+      0x00, 0x76, 0x87, 0x56, 0x67, 0x78, 0xa9, 0x86, 0x65, 0x89, 0x68, 0x98, 0x01, 0x69, 0, 0};
+
+  private MeshoptEncoder() {
+  }
+
+  /**
+   * @param vertices   the vertices, of {@code vertexSize} bytes each.
+   * @param vertexSize a multiple of 4, up to 256.
+   */
+  public static byte[] encodeVertexBuffer(byte[] vertices, int vertexCount, int vertexSize) {
+    if (vertexSize <= 0 || vertexSize > 256 || vertexSize % 4 != 0
+        || vertices.length < vertexCount * vertexSize) {
+      throw new IllegalArgumentException("Invalid vertex layout of " + vertexCount + " x "
+          + vertexSize + " bytes.");
+    }
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    output.write(VERTEX_HEADER);
+
+    final byte[] firstVertex = Arrays.copyOf(vertices, vertexSize);
+    final byte[] lastVertex = firstVertex.clone();
+    final byte[] deltas = new byte[VERTEX_BLOCK_MAX_SIZE];
+    final int blockSize = Math.min(VERTEX_BLOCK_SIZE_BYTES / vertexSize, VERTEX_BLOCK_MAX_SIZE)
+        & ~(BYTE_GROUP_SIZE - 1);
+
+    for (int first = 0; first < vertexCount; first += blockSize) {
+      final int count = Math.min(blockSize, vertexCount - first);
+      final int alignedCount = (count + BYTE_GROUP_SIZE - 1) & ~(BYTE_GROUP_SIZE - 1);
+      for (int k = 0; k < vertexSize; ++k) {
+        // Deltas past the block's vertices are encoded as 0.
+        Arrays.fill(deltas, (byte) 0);
+        int previous = lastVertex[k];
+        for (int i = 0; i < count; ++i) {
+          final int value = vertices[(first + i) * vertexSize + k];
+          final byte delta = (byte) (value - previous);
+          deltas[i] = (byte) ((delta >> 7) ^ (delta << 1));
+          previous = value;
+        }
+        encodeBytes(output, deltas, alignedCount);
+      }
+      System.arraycopy(vertices, (first + count - 1) * vertexSize, lastVertex, 0, vertexSize);
+    }
+
+    // The first vertex, padded to the tail size, so decoders can skip bounds checks.
+    for (int i = vertexSize; i < TAIL_MAX_SIZE; ++i) {
+      output.write(0);
+    }
+    output.write(firstVertex, 0, vertexSize);
+    return output.toByteArray();
+  }
+
+  /**
+   * @param indices a triangle list.
+   */
+  public static byte[] encodeIndexBuffer(int[] indices) {
+    if (indices.length % 3 != 0) {
+      throw new IllegalArgumentException("Index count " + indices.length + " is no triangle list.");
+    }
+    final int triangleCount = indices.length / 3;
+    final byte[] codes = new byte[triangleCount];
+    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+    final int[] edgeFifo = new int[2 * 16];
+    final int[] vertexFifo = new int[16];
+    Arrays.fill(edgeFifo, -1);
+    Arrays.fill(vertexFifo, -1);
+    int edgeFifoOffset = 0;
+    int vertexFifoOffset = 0;
+    int next = 0;
+    int last = 0;
+
+    for (int i = 0; i < indices.length; i += 3) {
+      final int fer = getEdgeFifo(edgeFifo, indices[i], indices[i + 1], indices[i + 2],
+          edgeFifoOffset);
+      if (fer >= 0 && (fer >> 2) < 15) {
+        // The triangle shares an edge with a recent one, rotated so the edge comes first.
+        final int[] order = TRIANGLE_INDEX_ORDER[fer & 3];
+        final int a = indices[i + order[0]];
+        final int b = indices[i + order[1]];
+        final int c = indices[i + order[2]];
+
+        final int fe = fer >> 2;
+        final int fc = getVertexFifo(vertexFifo, c, vertexFifoOffset);
+        int fec;
+        if (fc >= 1 && fc < FEC_MAX) {
+          fec = fc;
+        } else if (c == next) {
+          next++;
+          fec = 0;
+        } else {
+          fec = 15;
+        }
+        if (fec == 15 && c + 1 == last) {
+          fec = 13;
+          last = c;
+        } else if (fec == 15 && c == last + 1) {
+          fec = 14;
+          last = c;
+        }
+
+        codes[i / 3] = (byte) ((fe << 4) | fec);
+        if (fec == 15) {
+          encodeIndex(data, c, last);
+          last = c;
+        }
+        if (fec == 0 || fec >= FEC_MAX) {
+          vertexFifo[vertexFifoOffset] = c;
+          vertexFifoOffset = (vertexFifoOffset + 1) & 15;
+        }
+        edgeFifoOffset = pushEdge(edgeFifo, edgeFifoOffset, c, b);
+        edgeFifoOffset = pushEdge(edgeFifo, edgeFifoOffset, a, c);
+      } else {
+        final int rotation = indices[i + 1] == next ? 1 : indices[i + 2] == next ? 2 : 0;
+        final int[] order = TRIANGLE_INDEX_ORDER[rotation];
+        final int a = indices[i + order[0]];
+        final int b = indices[i + order[1]];
+        final int c = indices[i + order[2]];
+
+        // A triangle of 0, 1 and 2 restarts the numbering, as concatenated meshes do.
+        boolean reset = false;
+        if (a == 0 && b == 1 && c == 2 && next > 0) {
+          reset = true;
+          next = 0;
+          Arrays.fill(vertexFifo, -1);
+        }
+
+        final int fb = getVertexFifo(vertexFifo, b, vertexFifoOffset);
+        final int fc = getVertexFifo(vertexFifo, c, vertexFifoOffset);
+        final int fea = a == next ? 0 : 15;
+        if (fea == 0) {
+          next++;
+        }
+        final int feb = fb >= 0 && fb < 14 ? fb + 1 : b == next ? 0 : 15;
+        if (feb == 0) {
+          next++;
+        }
+        final int fec = fc >= 0 && fc < 14 ? fc + 1 : c == next ? 0 : 15;
+        if (fec == 0) {
+          next++;
+        }
+
+        final int codeAux = (feb << 4) | fec;
+        final int codeAuxIndex = getCodeAuxIndex(codeAux);
+        if (fea == 0 && codeAuxIndex >= 0 && codeAuxIndex < 14 && !reset) {
+          codes[i / 3] = (byte) ((15 << 4) | codeAuxIndex);
+        } else {
+          codes[i / 3] = (byte) ((15 << 4) | 14 | fea);
+          data.write(codeAux);
+        }
+
+        if (fea == 15) {
+          encodeIndex(data, a, last);
+          last = a;
+        }
+        if (feb == 15) {
+          encodeIndex(data, b, last);
+          last = b;
+        }
+        if (fec == 15) {
+          encodeIndex(data, c, last);
+          last = c;
+        }
+
+        if (fea == 0 || fea == 15) {
+          vertexFifo[vertexFifoOffset] = a;
+          vertexFifoOffset = (vertexFifoOffset + 1) & 15;
+        }
+        if (feb == 0 || feb == 15) {
+          vertexFifo[vertexFifoOffset] = b;
+          vertexFifoOffset = (vertexFifoOffset + 1) & 15;
+        }
+        if (fec == 0 || fec == 15) {
+          vertexFifo[vertexFifoOffset] = c;
+          vertexFifoOffset = (vertexFifoOffset + 1) & 15;
+        }
+        edgeFifoOffset = pushEdge(edgeFifo, edgeFifoOffset, b, a);
+        edgeFifoOffset = pushEdge(edgeFifo, edgeFifoOffset, c, b);
+        edgeFifoOffset = pushEdge(edgeFifo, edgeFifoOffset, a, c);
+      }
+    }
+
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    output.write(INDEX_HEADER);
+    output.write(codes, 0, codes.length);
+    final byte[] extra = data.toByteArray();
+    output.write(extra, 0, extra.length);
+    for (final int codeAux : CODE_AUX_TABLE) {
+      output.write(codeAux);
+    }
+    return output.toByteArray();
+  }
+
+  /**
+   * Writes the header of a block's deltas for one byte and their groups, each packed with the
+   * fewest bytes.
+   */
+  private static void encodeBytes(ByteArrayOutputStream output, byte[] deltas, int count) {
+    final byte[] header = new byte[(count / BYTE_GROUP_SIZE + 3) / 4];
+    final ByteArrayOutputStream groups = new ByteArrayOutputStream();
+    for (int i = 0; i < count; i += BYTE_GROUP_SIZE) {
+      int bestBitsLog2 = 3;
+      int bestSize = BYTE_GROUP_SIZE;
+      for (int bitsLog2 = 0; bitsLog2 < 3; ++bitsLog2) {
+        final int size = measureGroup(deltas, i, bitsLog2);
+        if (size < bestSize) {
+          bestBitsLog2 = bitsLog2;
+          bestSize = size;
+        }
+      }
+      final int group = i / BYTE_GROUP_SIZE;
+      header[group / 4] |= bestBitsLog2 << (2 * (group % 4));
+      encodeGroup(groups, deltas, i, bestBitsLog2);
+    }
+    output.write(header, 0, header.length);
+    final byte[] packed = groups.toByteArray();
+    output.write(packed, 0, packed.length);
+  }
+
+  /**
+   * @return the bytes a group takes packed with 0, 2 or 4 bits, {@link Integer#MAX_VALUE} if it
+   *     can't be packed with 0.
+   */
+  private static int measureGroup(byte[] deltas, int offset, int bitsLog2) {
+    if (bitsLog2 == 0) {
+      for (int i = 0; i < BYTE_GROUP_SIZE; ++i) {
+        if (deltas[offset + i] != 0) {
+          return Integer.MAX_VALUE;
+        }
+      }
+      return 0;
+    }
+    final int bits = 1 << bitsLog2;
+    final int sentinel = (1 << bits) - 1;
+    int size = BYTE_GROUP_SIZE * bits / 8;
+    for (int i = 0; i < BYTE_GROUP_SIZE; ++i) {
+      if ((deltas[offset + i] & 0xFF) >= sentinel) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  private static void encodeGroup(ByteArrayOutputStream output, byte[] deltas, int offset,
+                                  int bitsLog2) {
+    if (bitsLog2 == 0) {
+      return;
+    }
+    if (bitsLog2 == 3) {
+      output.write(deltas, offset, BYTE_GROUP_SIZE);
+      return;
+    }
+    final int bits = 1 << bitsLog2;
+    final int sentinel = (1 << bits) - 1;
+    for (int i = 0; i < BYTE_GROUP_SIZE; i += 8 / bits) {
+      int packed = 0;
+      for (int k = 0; k < 8 / bits; ++k) {
+        packed = (packed << bits) | Math.min(deltas[offset + i + k] & 0xFF, sentinel);
+      }
+      output.write(packed);
+    }
+    for (int i = 0; i < BYTE_GROUP_SIZE; ++i) {
+      if ((deltas[offset + i] & 0xFF) >= sentinel) {
+        output.write(deltas[offset + i]);
+      }
+    }
+  }
+
+  /**
+   * @return the age of the recent edge matching an edge of the triangle shifted left by 2, ored
+   *     with the rotation of the triangle starting with that edge, or -1 if there is none.
+   */
+  private static int getEdgeFifo(int[] edgeFifo, int a, int b, int c, int offset) {
+    for (int i = 0; i < 16; ++i) {
+      final int index = 2 * ((offset - 1 - i) & 15);
+      final int e0 = edgeFifo[index];
+      final int e1 = edgeFifo[index + 1];
+      if (e0 == a && e1 == b) {
+        return i << 2;
+      }
+      if (e0 == b && e1 == c) {
+        return (i << 2) | 1;
+      }
+      if (e0 == c && e1 == a) {
+        return (i << 2) | 2;
+      }
+    }
+    return -1;
+  }
+
+  private static int getVertexFifo(int[] vertexFifo, int vertex, int offset) {
+    for (int i = 0; i < 16; ++i) {
+      if (vertexFifo[(offset - 1 - i) & 15] == vertex) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int getCodeAuxIndex(int codeAux) {
+    for (int i = 0; i < CODE_AUX_TABLE.length; ++i) {
+      if (CODE_AUX_TABLE[i] == codeAux) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int pushEdge(int[] edgeFifo, int offset, int a, int b) {
+    edgeFifo[2 * offset] = a;
+    edgeFifo[2 * offset + 1] = b;
+    return (offset + 1) & 15;
+  }
+
+  /**
+   * Writes the delta to the last free index, zigzag encoded as variable length integer.
+   */
+  private static void encodeIndex(ByteArrayOutputStream output, int index, int last) {
+    final int delta = index - last;
+    int value = (delta << 1) ^ (delta >> 31);
+    do {
+      output.write((value & 127) | (Integer.compareUnsigned(value, 127) > 0 ? 128 : 0));
+      value >>>= 7;
+    } while (value != 0);
+  }
+}
@@ -0,0 +1,294 @@
+package com.contentful.ar.tools;
+
+
+import com.contentful.ar.rendering.Mesh;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Compresses a model for publishing on Contentful, as compressed model of the model content type.
+ * <p>
+ * The mesh is written as GLB file with meshoptimizer's codecs (EXT_meshopt_compression) and
+ * quantized attributes (KHR_mesh_quantization): positions as 16 bit integers scaled back by the
+ * node transform, normals as 8 bit and texture coordinates as 16 bit normalized integers, scaled
+ * back by the texture transform (KHR_texture_transform). Vertices are ordered by their first use
+ * in the indices first, which both codecs are made for. The texture is not embedded, it stays a
+ * separate asset, so it is still requested in the size fitting the device.
+ * <p>
+ * Usage: {@code ModelCompressor input.obj output.glb [--texture name.png]}. The input may be any
+ * model the app loads, of a single part drawn with the texture file.
+ */
+public class ModelCompressor {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int UNSIGNED_SHORT_MAX = 65535;
+  private static final int BYTE = 5120;
+  private static final int UNSIGNED_SHORT = 5123;
+  private static final int ELEMENT_ARRAY_BUFFER = 34963;
+  private static final int ARRAY_BUFFER = 34962;
+
+  // Bytes per vertex of the streams, multiples of 4 as vertex attributes and the codec need.
+  private static final int POSITION_STRIDE = 8;
+  private static final int NORMAL_STRIDE = 4;
+  private static final int TEX_COORD_STRIDE = 4;
+
+  private final JSONArray bufferViews = new JSONArray();
+  private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+  private int fallbackLength = 0;
+
+  /**
+   * @param textureName the texture file of the model, referenced by the material.
+   * @return the GLB file.
+   */
+  public static byte[] compress(Mesh mesh, String textureName) throws JSONException {
+    return new ModelCompressor().write(mesh, textureName);
+  }
+
+  private byte[] write(Mesh mesh, String textureName) throws JSONException {
+    final Mesh.Part[] parts = mesh.getParts();
+    if (parts.length != 1 || parts[0].getTexture() != Mesh.Part.TEXTURE_FILE) {
+      throw new IllegalArgumentException("Only models of one part with a texture file are "
+          + "compressed, this one has " + parts.length + " parts.");
+    }
+
+    // Renumbers the vertices by first use, dropping unused ones.
+    final int[] indices = new int[parts[0].getIndexCount()];
+    final int[] remap = new int[mesh.getVertices().limit() / 3];
+    Arrays.fill(remap, -1);
+    int vertexCount = 0;
+    for (int i = 0; i < indices.length; ++i) {
+      final int index = mesh.getIndices().get(parts[0].getIndexOffset() + i) & 0xFFFF;
+      if (remap[index] < 0) {
+        remap[index] = vertexCount++;
+      }
+      indices[i] = remap[index];
+    }
+    final int[] order = new int[vertexCount];
+    for (int i = 0; i < remap.length; ++i) {
+      if (remap[i] >= 0) {
+        order[remap[i]] = i;
+      }
+    }
+
+    // Positions are scaled uniformly, so the normals stay valid.
+    final float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+    final float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+    for (final int vertex : order) {
+      for (int k = 0; k < 3; ++k) {
+        min[k] = Math.min(min[k], mesh.getVertices().get(3 * vertex + k));
+        max[k] = Math.max(max[k], mesh.getVertices().get(3 * vertex + k));
+      }
+    }
+    final float extent = Math.max(max[0] - min[0], Math.max(max[1] - min[1], max[2] - min[2]));
+    final float positionScale = extent > 0 ? extent / UNSIGNED_SHORT_MAX : 1.0f;
+    final ByteBuffer positions = allocate(vertexCount * POSITION_STRIDE);
+    final int[] quantizedMax = new int[3];
+    for (final int vertex : order) {
+      for (int k = 0; k < 3; ++k) {
+        final int value = quantize(
+            (mesh.getVertices().get(3 * vertex + k) - min[k]) / positionScale, UNSIGNED_SHORT_MAX);
+        quantizedMax[k] = Math.max(quantizedMax[k], value);
+        positions.putShort((short) value);
+      }
+      positions.putShort((short) 0);
+    }
+
+    final ByteBuffer normals = allocate(vertexCount * NORMAL_STRIDE);
+    for (final int vertex : order) {
+      for (int k = 0; k < 3; ++k) {
+        normals.put((byte) Math.round(
+            Math.max(-1.0f, Math.min(1.0f, mesh.getNormals().get(3 * vertex + k))) * 127.0f));
+      }
+      normals.put((byte) 0);
+    }
+
+    final float[] texCoordMin = {Float.MAX_VALUE, Float.MAX_VALUE};
+    final float[] texCoordRange = {-Float.MAX_VALUE, -Float.MAX_VALUE};
+    for (final int vertex : order) {
+      for (int k = 0; k < 2; ++k) {
+        texCoordMin[k] = Math.min(texCoordMin[k], mesh.getTexCoords().get(2 * vertex + k));
+        texCoordRange[k] = Math.max(texCoordRange[k], mesh.getTexCoords().get(2 * vertex + k));
+      }
+    }
+    for (int k = 0; k < 2; ++k) {
+      texCoordRange[k] -= texCoordMin[k];
+      if (texCoordRange[k] <= 0) {
+        texCoordRange[k] = 1.0f;
+      }
+    }
+    final ByteBuffer texCoords = allocate(vertexCount * TEX_COORD_STRIDE);
+    for (final int vertex : order) {
+      for (int k = 0; k < 2; ++k) {
+        texCoords.putShort((short) quantize((mesh.getTexCoords().get(2 * vertex + k)
+            - texCoordMin[k]) / texCoordRange[k] * UNSIGNED_SHORT_MAX, UNSIGNED_SHORT_MAX));
+      }
+    }
+
+    final int positionView = addVertexStream(positions.array(), vertexCount, POSITION_STRIDE);
+    final int normalView = addVertexStream(normals.array(), vertexCount, NORMAL_STRIDE);
+    final int texCoordView = addVertexStream(texCoords.array(), vertexCount, TEX_COORD_STRIDE);
+    final int indexView = addBufferView(MeshoptEncoder.encodeIndexBuffer(indices),
+        indices.length, 2, "TRIANGLES", ELEMENT_ARRAY_BUFFER);
+
+    final JSONObject meshopt = new JSONObject().put("fallback", true);
+    final JSONObject gltf = new JSONObject()
+        .put("asset", new JSONObject().put("version", "2.0").put("generator", "ModelCompressor"))
+        .put("extensionsUsed", new JSONArray().put("EXT_meshopt_compression")
+            .put("KHR_mesh_quantization").put("KHR_texture_transform"))
+        .put("extensionsRequired", new JSONArray().put("EXT_meshopt_compression")
+            .put("KHR_mesh_quantization"))
+        .put("scene", 0)
+        .put("scenes", new JSONArray().put(new JSONObject().put("nodes", new JSONArray().put(0))))
+        .put("nodes", new JSONArray().put(new JSONObject()
+            .put("mesh", 0)
+            .put("translation", new JSONArray().put(min[0]).put(min[1]).put(min[2]))
+            .put("scale", new JSONArray()
+                .put(positionScale).put(positionScale).put(positionScale))))
+        .put("meshes", new JSONArray().put(new JSONObject().put("primitives", new JSONArray().put(
+            new JSONObject()
+                .put("attributes", new JSONObject()
+                    .put("POSITION", 0).put("NORMAL", 1).put("TEXCOORD_0", 2))
+                .put("indices", 3)
+                .put("material", 0)))))
+        .put("materials", new JSONArray().put(new JSONObject().put("pbrMetallicRoughness",
+            new JSONObject().put("baseColorTexture", new JSONObject()
+                .put("index", 0)
+                .put("extensions", new JSONObject().put("KHR_texture_transform",
+                    new JSONObject()
+                        .put("offset", new JSONArray().put(texCoordMin[0]).put(texCoordMin[1]))
+                        .put("scale",
+                            new JSONArray().put(texCoordRange[0]).put(texCoordRange[1]))))))))
+        .put("textures", new JSONArray().put(new JSONObject().put("source", 0)))
+        .put("images", new JSONArray().put(new JSONObject().put("uri", textureName)))
+        .put("buffers", new JSONArray()
+            .put(new JSONObject().put("byteLength", compressed.size()))
+            .put(new JSONObject().put("byteLength", fallbackLength)
+                .put("extensions", new JSONObject().put("EXT_meshopt_compression", meshopt))))
+        .put("bufferViews", bufferViews)
+        .put("accessors", new JSONArray()
+            .put(accessor(positionView, UNSIGNED_SHORT, false, vertexCount, "VEC3")
+                .put("min", new JSONArray().put(0).put(0).put(0))
+                .put("max", new JSONArray()
+                    .put(quantizedMax[0]).put(quantizedMax[1]).put(quantizedMax[2])))
+            .put(accessor(normalView, BYTE, true, vertexCount, "VEC3"))
+            .put(accessor(texCoordView, UNSIGNED_SHORT, true, vertexCount, "VEC2"))
+            .put(accessor(indexView, UNSIGNED_SHORT, false, indices.length, "SCALAR")));
+
+    return toGlb(gltf, compressed.toByteArray());
+  }
+
+  private int addVertexStream(byte[] vertices, int count, int stride) throws JSONException {
+    return addBufferView(MeshoptEncoder.encodeVertexBuffer(vertices, count, stride), count, stride,
+        "ATTRIBUTES", ARRAY_BUFFER);
+  }
+
+  /**
+   * Adds a compressed buffer view, aligned to 4 bytes in the binary chunk and in the fallback
+   * buffer, which has no data.
+   *
+   * @return the index of the view.
+   */
+  private int addBufferView(byte[] data, int count, int stride, String mode, int target)
+      throws JSONException {
+    final JSONObject extension = new JSONObject()
+        .put("buffer", 0)
+        .put("byteOffset", compressed.size())
+        .put("byteLength", data.length)
+        .put("byteStride", stride)
+        .put("count", count)
+        .put("mode", mode);
+    compressed.write(data, 0, data.length);
+    while (compressed.size() % 4 != 0) {
+      compressed.write(0);
+    }
+
+    final JSONObject view = new JSONObject()
+        .put("buffer", 1)
+        .put("byteOffset", fallbackLength)
+        .put("byteLength", count * stride)
+        .put("target", target)
+        .put("extensions", new JSONObject().put("EXT_meshopt_compression", extension));
+    if (target == ARRAY_BUFFER) {
+      view.put("byteStride", stride);
+    }
+    fallbackLength += (count * stride + 3) & ~3;
+    bufferViews.put(view);
+    return bufferViews.length() - 1;
+  }
+
+  private static JSONObject accessor(int bufferView, int componentType, boolean normalized,
+                                     int count, String type) throws JSONException {
+    final JSONObject accessor = new JSONObject().put("bufferView", bufferView)
+        .put("componentType", componentType).put("count", count).put("type", type);
+    return normalized ? accessor.put("normalized", true) : accessor;
+  }
+
+  /**
+   * @return the GLB container of the JSON and binary chunk, both padded to 4 bytes.
+   */
+  private static byte[] toGlb(JSONObject gltf, byte[] bin) {
+    final byte[] json = gltf.toString().getBytes(UTF_8);
+    final int jsonLength = (json.length + 3) & ~3;
+    final int binLength = (bin.length + 3) & ~3;
+    final ByteBuffer glb = ByteBuffer.allocate(12 + 8 + jsonLength + 8 + binLength)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    glb.putInt(0x46546C67).putInt(2).putInt(glb.capacity());
+    glb.putInt(jsonLength).putInt(0x4E4F534A).put(json);
+    while (glb.position() % 4 != 0) {
+      glb.put((byte) ' ');
+    }
+    glb.putInt(binLength).putInt(0x004E4942).put(bin);
+    return glb.array();
+  }
+
+  private static int quantize(float value, int max) {
+    return Math.max(0, Math.min(max, Math.round(value)));
+  }
+
+  private static ByteBuffer allocate(int bytes) {
+    return ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  public static void main(String[] args) throws IOException, JSONException {
+    String input = null;
+    String output = null;
+    String textureName = null;
+    for (int i = 0; i < args.length; ++i) {
+      if ("--texture".equals(args[i])) {
+        textureName = args[++i];
+      } else if (input == null) {
+        input = args[i];
+      } else {
+        output = args[i];
+      }
+    }
+    if (input == null || output == null) {
+      System.err.println("Usage: ModelCompressor input.obj output.glb [--texture name.png]");
+      System.exit(1);
+    }
+
+    final File inputFile = new File(input);
+    if (textureName == null) {
+      // Next to the model, as the app finds it.
+      textureName = inputFile.getName().replaceFirst("\\.[^.]*$", "") + ".png";
+    }
+    final byte[] glb = compress(Mesh.load(inputFile), textureName);
+    try (OutputStream out = new FileOutputStream(output)) {
+      out.write(glb);
+    }
+    System.out.print(String.format(Locale.US, "%s: %d bytes, %s: %d bytes (%.1f%%)\n",
+        input, inputFile.length(), output, glb.length, 100.0 * glb.length / inputFile.length()));
+  }
+}
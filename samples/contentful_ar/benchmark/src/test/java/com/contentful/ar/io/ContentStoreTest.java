@@ -0,0 +1,184 @@
+package com.contentful.ar.io;
+
+
+import com.contentful.ar.rendering.Mesh;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Stores OBJ models with their material libraries and textures, like the assets of the apk, and
+ * loads them back through the aliases.
+ */
+public class ContentStoreTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final String OBJ = "mtllib model.mtl\n"
+      + "v 0 0 0\nv 1 0 0\nv 0 1 0\n"
+      + "vt 0 0\nvt 1 0\nvt 0 1\n"
+      + "vn 0 0 1\n"
+      + "usemtl Red\n"
+      + "f 1/1/1 2/2/1 3/3/1\n";
+  private static final String MTL = "newmtl Red\nKd 1 0 0\nmap_Kd red.png\n";
+  // Only read as bytes, not decoded.
+  private static final byte[] IMAGE = {(byte) 0x89, 'P', 'N', 'G', 1, 2, 3, 4};
+  private static final byte[] OTHER_IMAGE = {(byte) 0x89, 'P', 'N', 'G', 5, 6, 7, 8};
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File directory;
+  private ContentStore store;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = folder.getRoot();
+    store = new ContentStore(directory);
+    store.load();
+  }
+
+  @Test
+  public void resolvesFilesReferencedByStoredFiles() throws IOException {
+    final File storedObj = add("model.obj", OBJ.getBytes(UTF_8));
+    final File storedMtl = add("model.mtl", MTL.getBytes(UTF_8));
+    final File storedImage = add("red.png", IMAGE);
+
+    final File contentDirectory = new File(directory, ContentStore.DIRECTORY_NAME);
+    assertEquals(contentDirectory, storedObj.getParentFile());
+    assertNotEquals("model.obj", storedObj.getName());
+    assertEquals(storedObj, store.resolve(new File(directory, "model.obj")));
+    // As referenced by the OBJ file, relative to its alias.
+    assertEquals(storedMtl, store.resolve(new File(directory, "model.mtl")));
+    assertEquals(storedImage, store.resolve(new File(directory, "red.png")));
+    // Not stored, or not in the import directory.
+    assertEquals(new File(directory, "blue.png"),
+        store.resolve(new File(directory, "blue.png")));
+    assertEquals(new File(contentDirectory, "model.mtl"),
+        store.resolve(new File(contentDirectory, "model.mtl")));
+    final File other = new File(folder.newFolder(), "model.obj");
+    assertEquals(other, store.resolve(other));
+  }
+
+  @Test
+  public void loadsMaterialTexturesOfStoredModels() throws IOException {
+    final File storedObj = add("model.obj", OBJ.getBytes(UTF_8));
+    add("model.mtl", MTL.getBytes(UTF_8));
+    add("red.png", IMAGE);
+
+    // The stored files are named by their content, so nothing is found next to the model.
+    assertEquals(0, Mesh.load(storedObj).getTextures().length);
+    assertMaterialTexture(Mesh.load(new File(directory, "model.obj"), store), IMAGE);
+  }
+
+  @Test
+  public void resolvesReferencesOfEachModelRelativeToItsAlias() throws IOException {
+    // Both models have the same content, so they are stored once, but their material libraries
+    // and textures of the same name differ.
+    final File first = add("first/model.obj", OBJ.getBytes(UTF_8));
+    final File second = add("second/model.obj", OBJ.getBytes(UTF_8));
+    add("first/model.mtl", MTL.getBytes(UTF_8));
+    add("first/red.png", IMAGE);
+    add("second/model.mtl", (MTL + "newmtl Unused\n").getBytes(UTF_8));
+    add("second/red.png", OTHER_IMAGE);
+    assertEquals(first, second);
+
+    assertMaterialTexture(Mesh.load(new File(directory, "first/model.obj"), store), IMAGE);
+    assertMaterialTexture(Mesh.load(new File(directory, "second/model.obj"), store),
+        OTHER_IMAGE);
+
+    // Also once loaded again.
+    final ContentStore loaded = new ContentStore(directory);
+    loaded.load();
+    assertMaterialTexture(Mesh.load(new File(directory, "first/model.obj"), loaded), IMAGE);
+    assertMaterialTexture(Mesh.load(new File(directory, "second/model.obj"), loaded),
+        OTHER_IMAGE);
+  }
+
+  @Test
+  public void loadsMaterialTexturesOfDownloadedModels() throws IOException {
+    add("model.mtl", MTL.getBytes(UTF_8));
+    add("red.png", IMAGE);
+
+    assertMaterialTexture(Mesh.load(new File(directory, "model.obj").getPath(),
+        new ByteArrayInputStream(OBJ.getBytes(UTF_8)), store), IMAGE);
+  }
+
+  @Test
+  public void keepsStoredFilesAddedBeforeLoading() throws IOException {
+    final File storedObj = add("model.obj", OBJ.getBytes(UTF_8));
+
+    final ContentStore unloaded = new ContentStore(directory);
+    try {
+      unloaded.add("other.obj", folder.newFile("other.obj.part"), new byte[32]);
+      fail("Adding to an unloaded store drops the files stored before.");
+    } catch (IllegalStateException expected) {
+      // Not loaded yet.
+    }
+
+    unloaded.load();
+    assertTrue(storedObj.isFile());
+    assertEquals(storedObj, unloaded.resolve(new File(directory, "model.obj")));
+  }
+
+  @Test
+  public void linksAliasesToStoredVariants() throws IOException {
+    final File low = add("andy.low.png", IMAGE);
+    final File high = add("andy.high.png", OTHER_IMAGE);
+    final File texture = new File(directory, "andy.png");
+
+    assertEquals(low, store.link("andy.png", "andy.low.png"));
+    assertEquals(low, store.resolve(texture));
+    assertEquals(high, store.link("andy.png", "andy.high.png"));
+    assertEquals(high, store.resolve(texture));
+    // Switching back keeps the other variant, it is still stored for its own alias.
+    assertEquals(low, store.link("andy.png", "andy.low.png"));
+    assertTrue(high.exists());
+
+    store.load();
+    assertEquals(low, store.resolve(texture));
+    assertEquals(high, store.resolve(new File(directory, "andy.high.png")));
+    try {
+      store.link("andy.png", "andy.medium.png");
+      fail("Linked to a variant not stored.");
+    } catch (FileNotFoundException e) {
+      assertEquals(low, store.resolve(texture));
+    }
+  }
+
+  private static void assertMaterialTexture(Mesh mesh, byte[] image) {
+    assertEquals(1, mesh.getTextures().length);
+    assertEquals(ByteBuffer.wrap(image), mesh.getTextures()[0]);
+    assertEquals(1, mesh.getParts().length);
+    assertEquals(0, mesh.getParts()[0].getTexture());
+  }
+
+  /**
+   * Stores the bytes like an import, written to a partial file first.
+   */
+  private File add(String alias, byte[] bytes) throws IOException {
+    final File partFile = new File(directory, alias + ".part");
+    partFile.getParentFile().mkdirs();
+    final MessageDigest digest = ContentStore.newDigest();
+    try (OutputStream output = new DigestOutputStream(new FileOutputStream(partFile), digest)) {
+      output.write(bytes);
+    }
+    return store.add(alias, partFile, digest.digest());
+  }
+}
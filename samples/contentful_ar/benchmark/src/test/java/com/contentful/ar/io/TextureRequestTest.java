@@ -0,0 +1,136 @@
+package com.contentful.ar.io;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Requests texture variants from a local stand-in for the Images API and checks the query
+ * parameters it receives.
+ */
+public class TextureRequestTest {
+  private static final String IMAGE_URL = "//images.ctfassets.net/space/asset/token/texture.png";
+
+  private MockWebServer server;
+  private OkHttpClient client;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+    // Sends the requests for the Images API host to the stand-in, keeping path and query.
+    client = new OkHttpClient.Builder()
+        .addInterceptor(new Interceptor() {
+          @Override
+          public Response intercept(Chain chain) throws IOException {
+            final HttpUrl url = chain.request().url();
+            return chain.proceed(chain.request().newBuilder()
+                .url(url.newBuilder()
+                    .scheme("http")
+                    .host(server.getHostName())
+                    .port(server.getPort())
+                    .build())
+                .build());
+          }
+        })
+        .build();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void scalesBothSidesByOneFactor() throws Exception {
+    final RecordedRequest request = fetch(new TextureRequest(4096, TextureRequest.Quality.HIGH),
+        "image/jpeg", 3000, 1500);
+
+    assertEquals("2048", request.getRequestUrl().queryParameter("w"));
+    assertEquals("1024", request.getRequestUrl().queryParameter("h"));
+    assertEquals("scale", request.getRequestUrl().queryParameter("fit"));
+    assertEquals("jpg", request.getRequestUrl().queryParameter("fm"));
+    assertEquals("85", request.getRequestUrl().queryParameter("q"));
+  }
+
+  @Test
+  public void keepsTheAspectRatioOfSidesThatAreNoPowerOfTwo() throws Exception {
+    final RecordedRequest request = fetch(new TextureRequest(4096, TextureRequest.Quality.LOW),
+        "image/png", 300, 200);
+
+    assertEquals("256", request.getRequestUrl().queryParameter("w"));
+    assertEquals("171", request.getRequestUrl().queryParameter("h"));
+    assertEquals("webp", request.getRequestUrl().queryParameter("fm"));
+    assertEquals("60", request.getRequestUrl().queryParameter("q"));
+  }
+
+  @Test
+  public void limitsToTheDeviceTextureSize() throws Exception {
+    final RecordedRequest request = fetch(new TextureRequest(1024, TextureRequest.Quality.HIGH),
+        "image/png", 512, 4096);
+
+    assertEquals("128", request.getRequestUrl().queryParameter("w"));
+    assertEquals("1024", request.getRequestUrl().queryParameter("h"));
+  }
+
+  @Test
+  public void roundsTheLimitOfUnknownSizesToAPowerOfTwo() throws Exception {
+    // Limited to the maximum of the Images API, 4000.
+    final RecordedRequest request = fetch(new TextureRequest(16384, TextureRequest.Quality.HIGH),
+        null, 0, 0);
+
+    assertEquals("2048", request.getRequestUrl().queryParameter("w"));
+    assertEquals("2048", request.getRequestUrl().queryParameter("h"));
+    assertNull(request.getRequestUrl().queryParameter("fit"));
+    assertEquals("webp", request.getRequestUrl().queryParameter("fm"));
+  }
+
+  @Test
+  public void appendsToAnExistingQuery() throws Exception {
+    final RecordedRequest request = fetch(new TextureRequest(4096, TextureRequest.Quality.MEDIUM),
+        IMAGE_URL + "?v=2", "image/jpeg", 0, 0);
+
+    assertEquals("2", request.getRequestUrl().queryParameter("v"));
+    assertEquals("2048", request.getRequestUrl().queryParameter("w"));
+    assertEquals("75", request.getRequestUrl().queryParameter("q"));
+  }
+
+  @Test
+  public void leavesOtherHostsUnchanged() {
+    final String url = "https://assets.ctfassets.net/space/asset/token/model.obj";
+    assertEquals(url, new TextureRequest(4096, TextureRequest.Quality.HIGH)
+        .buildUrl(url, "image/png", 1024, 1024));
+  }
+
+  /**
+   * Requests the variant of the texture chosen by the given request from the stand-in.
+   */
+  private RecordedRequest fetch(TextureRequest textureRequest, String mimeType, int width,
+                                int height) throws Exception {
+    return fetch(textureRequest, IMAGE_URL, mimeType, width, height);
+  }
+
+  private RecordedRequest fetch(TextureRequest textureRequest, String imageUrl, String mimeType,
+                                int width, int height) throws Exception {
+    server.enqueue(new MockResponse().setBody("image"));
+    // Contentful urls come without scheme.
+    final String url = textureRequest.buildUrl(imageUrl, mimeType, width, height);
+    client.newCall(new Request.Builder().url("https:" + url).build()).execute().close();
+    return server.takeRequest();
+  }
+}
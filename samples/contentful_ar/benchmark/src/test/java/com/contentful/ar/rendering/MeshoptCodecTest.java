@@ -0,0 +1,280 @@
+package com.contentful.ar.rendering;
+
+
+import com.contentful.ar.tools.MeshoptEncoder;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks {@link MeshoptDecoder} against the test vectors of meshoptimizer, and against
+ * {@link MeshoptEncoder} with generated buffers, intact and damaged.
+ */
+public class MeshoptCodecTest {
+  // meshoptimizer's kIndexBuffer and kIndexDataV0, its encoding by index codec version 0.
+  private static final int[] REFERENCE_INDICES = {0, 1, 2, 2, 1, 3, 4, 6, 5, 7, 8, 9};
+  private static final byte[] REFERENCE_INDEX_DATA_V0 = toBytes(
+      0xe0, 0xf0, 0x10, 0xfe, 0xff, 0xf0, 0x0c, 0xff, 0x02, 0x02, 0x02, 0x00, 0x76, 0x87, 0x56,
+      0x67, 0x78, 0xa9, 0x86, 0x65, 0x89, 0x68, 0x98, 0x01, 0x69, 0x00, 0x00);
+  // Version 1 only differs in the header here: none of the triangles reuses an edge with the last
+  // free index +-1, or restarts the vertex numbering.
+  private static final byte[] REFERENCE_INDEX_DATA_V1 = withHeader(REFERENCE_INDEX_DATA_V0, 0xe1);
+  // Not multiples of the 16 vertices of a byte group, and beyond one block of 256.
+  private static final int[] VERTEX_COUNTS = {1, 15, 16, 17, 255, 1000};
+  private static final int[] VERTEX_SIZES = {4, 12, 16, 32, 64, 256};
+
+  @Test
+  public void decodesReferenceIndexBuffers() throws IOException {
+    assertArrayEquals(REFERENCE_INDICES, decodeIndices(REFERENCE_INDEX_DATA_V0, 12, 4));
+    assertArrayEquals(REFERENCE_INDICES, decodeIndices(REFERENCE_INDEX_DATA_V1, 12, 4));
+    assertArrayEquals(REFERENCE_INDICES, decodeIndices(REFERENCE_INDEX_DATA_V1, 12, 2));
+  }
+
+  @Test
+  public void encodesReferenceIndexBuffer() {
+    assertArrayEquals(REFERENCE_INDEX_DATA_V1,
+        MeshoptEncoder.encodeIndexBuffer(REFERENCE_INDICES));
+  }
+
+  @Test
+  public void roundTripsVertexBuffers() throws IOException {
+    final Random random = new Random(1);
+    for (int vertexSize : VERTEX_SIZES) {
+      for (int vertexCount : VERTEX_COUNTS) {
+        final byte[] vertices = newVertices(random, vertexCount, vertexSize);
+        final byte[] encoded =
+            MeshoptEncoder.encodeVertexBuffer(vertices, vertexCount, vertexSize);
+        final ByteBuffer decoded =
+            MeshoptDecoder.decodeVertexBuffer(ByteBuffer.wrap(encoded), vertexCount, vertexSize);
+        assertEquals(ByteOrder.LITTLE_ENDIAN, decoded.order());
+        assertArrayEquals(vertexCount + " x " + vertexSize, vertices, toArray(decoded));
+      }
+    }
+  }
+
+  @Test
+  public void roundTripsIndexBuffers() throws IOException {
+    final Random random = new Random(2);
+    for (int[] indices : new int[][] {new int[0], REFERENCE_INDICES, newGridIndices(17, 9),
+        newRandomIndices(random, 3000, 70000)}) {
+      final byte[] encoded = MeshoptEncoder.encodeIndexBuffer(indices);
+      final int[] decoded = decodeIndices(encoded, indices.length, 4);
+      assertArrayEquals(normalizeTriangles(indices), normalizeTriangles(decoded));
+    }
+    final int[] shortIndices = newGridIndices(40, 30);
+    final int[] decoded =
+        decodeIndices(MeshoptEncoder.encodeIndexBuffer(shortIndices), shortIndices.length, 2);
+    assertArrayEquals(normalizeTriangles(shortIndices), normalizeTriangles(decoded));
+  }
+
+  @Test
+  public void rejectsTruncatedVertexBuffers() {
+    final byte[] encoded = MeshoptEncoder.encodeVertexBuffer(
+        newVertices(new Random(3), 300, 12), 300, 12);
+    for (int length = 0; length < encoded.length; ++length) {
+      try {
+        MeshoptDecoder.decodeVertexBuffer(
+            ByteBuffer.wrap(Arrays.copyOf(encoded, length)), 300, 12);
+        fail("Decoded a vertex buffer truncated to " + length + " bytes.");
+      } catch (IOException e) {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void rejectsTruncatedIndexBuffers() {
+    final int[] indices = newGridIndices(9, 7);
+    final byte[] encoded = MeshoptEncoder.encodeIndexBuffer(indices);
+    for (int length = 0; length < encoded.length; ++length) {
+      try {
+        MeshoptDecoder.decodeIndexBuffer(
+            ByteBuffer.wrap(Arrays.copyOf(encoded, length)), indices.length, 4);
+        fail("Decoded an index buffer truncated to " + length + " bytes.");
+      } catch (IOException e) {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void decodesCorruptedVertexBuffersOrThrowsIOException() {
+    final byte[] encoded = MeshoptEncoder.encodeVertexBuffer(
+        newVertices(new Random(4), 300, 12), 300, 12);
+    final Random random = new Random(5);
+    for (int i = 0; i < encoded.length; ++i) {
+      for (int flip : new int[] {0x01, 0x80, 0xFF, 1 + random.nextInt(0xFF)}) {
+        final byte[] corrupted = encoded.clone();
+        corrupted[i] ^= flip;
+        try {
+          MeshoptDecoder.decodeVertexBuffer(ByteBuffer.wrap(corrupted), 300, 12);
+        } catch (IOException e) {
+          // Expected, unless the damage only changed values.
+        } catch (RuntimeException e) {
+          throw new AssertionError("Byte " + i + " ^ " + flip + " threw " + e, e);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void decodesCorruptedIndexBuffersOrThrowsIOException() {
+    final int[] indices = newRandomIndices(new Random(6), 200, 500);
+    final byte[] encoded = MeshoptEncoder.encodeIndexBuffer(indices);
+    final Random random = new Random(7);
+    for (int i = 0; i < encoded.length; ++i) {
+      for (int flip : new int[] {0x01, 0x80, 0xFF, 1 + random.nextInt(0xFF)}) {
+        final byte[] corrupted = encoded.clone();
+        corrupted[i] ^= flip;
+        for (int indexSize : new int[] {2, 4}) {
+          try {
+            MeshoptDecoder.decodeIndexBuffer(ByteBuffer.wrap(corrupted), indices.length,
+                indexSize);
+          } catch (IOException e) {
+            // Expected, unless the damage only changed indices.
+          } catch (RuntimeException e) {
+            throw new AssertionError("Byte " + i + " ^ " + flip + " threw " + e, e);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void rejectsInvalidLayouts() {
+    final byte[] vertices = MeshoptEncoder.encodeVertexBuffer(new byte[16], 1, 16);
+    final byte[] indices = MeshoptEncoder.encodeIndexBuffer(REFERENCE_INDICES);
+    final int[][] vertexLayouts = {{-1, 16}, {1, 0}, {1, 6}, {1, 260}, {Integer.MAX_VALUE, 16}};
+    for (int[] layout : vertexLayouts) {
+      try {
+        MeshoptDecoder.decodeVertexBuffer(ByteBuffer.wrap(vertices), layout[0], layout[1]);
+        fail("Decoded vertices of " + layout[0] + " x " + layout[1] + " bytes.");
+      } catch (IOException e) {
+        // Expected.
+      }
+    }
+    final int[][] indexLayouts = {{-3, 4}, {13, 4}, {12, 3}, {Integer.MAX_VALUE - 1, 4}};
+    for (int[] layout : indexLayouts) {
+      try {
+        MeshoptDecoder.decodeIndexBuffer(ByteBuffer.wrap(indices), layout[0], layout[1]);
+        fail("Decoded indices of " + layout[0] + " x " + layout[1] + " bytes.");
+      } catch (IOException e) {
+        // Expected.
+      }
+    }
+  }
+
+  private static int[] decodeIndices(byte[] encoded, int indexCount, int indexSize)
+      throws IOException {
+    final ByteBuffer decoded =
+        MeshoptDecoder.decodeIndexBuffer(ByteBuffer.wrap(encoded), indexCount, indexSize);
+    assertEquals(ByteOrder.LITTLE_ENDIAN, decoded.order());
+    final int[] indices = new int[indexCount];
+    for (int i = 0; i < indexCount; ++i) {
+      indices[i] = indexSize == 2 ? decoded.getShort() & 0xFFFF : decoded.getInt();
+    }
+    return indices;
+  }
+
+  /**
+   * @return vertices of slowly changing quantized values, like those of a mesh ordered by first
+   *     use, with some noise and the odd jump.
+   */
+  private static byte[] newVertices(Random random, int vertexCount, int vertexSize) {
+    final byte[] vertices = new byte[vertexCount * vertexSize];
+    for (int k = 0; k < vertexSize; ++k) {
+      int value = random.nextInt(256);
+      for (int i = 0; i < vertexCount; ++i) {
+        value += random.nextInt(20) == 0 ? random.nextInt(256) : random.nextInt(7) - 3;
+        vertices[i * vertexSize + k] = (byte) value;
+      }
+    }
+    return vertices;
+  }
+
+  /**
+   * @return the triangles of a grid of quads, the vertex cache friendly order the codec is made
+   *     for.
+   */
+  private static int[] newGridIndices(int width, int height) {
+    final int[] indices = new int[6 * (width - 1) * (height - 1)];
+    int offset = 0;
+    for (int y = 0; y + 1 < height; ++y) {
+      for (int x = 0; x + 1 < width; ++x) {
+        final int corner = y * width + x;
+        indices[offset++] = corner;
+        indices[offset++] = corner + width;
+        indices[offset++] = corner + 1;
+        indices[offset++] = corner + 1;
+        indices[offset++] = corner + width;
+        indices[offset++] = corner + width + 1;
+      }
+    }
+    return indices;
+  }
+
+  /**
+   * @return triangles of random vertices, none of them degenerate.
+   */
+  private static int[] newRandomIndices(Random random, int triangleCount, int vertexCount) {
+    final int[] indices = new int[3 * triangleCount];
+    for (int i = 0; i < indices.length; i += 3) {
+      do {
+        indices[i] = random.nextInt(vertexCount);
+        indices[i + 1] = random.nextInt(vertexCount);
+        indices[i + 2] = random.nextInt(vertexCount);
+      } while (indices[i] == indices[i + 1] || indices[i] == indices[i + 2]
+          || indices[i + 1] == indices[i + 2]);
+    }
+    return indices;
+  }
+
+  /**
+   * @return the triangles, each rotated to start with its smallest index, keeping its winding.
+   */
+  private static int[] normalizeTriangles(int[] indices) {
+    final int[] normalized = new int[indices.length];
+    for (int i = 0; i < indices.length; i += 3) {
+      int first = i;
+      if (indices[i + 1] < indices[first]) {
+        first = i + 1;
+      }
+      if (indices[i + 2] < indices[first]) {
+        first = i + 2;
+      }
+      for (int k = 0; k < 3; ++k) {
+        normalized[i + k] = indices[i + (first - i + k) % 3];
+      }
+    }
+    return normalized;
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    final byte[] array = new byte[buffer.remaining()];
+    buffer.duplicate().get(array);
+    return array;
+  }
+
+  private static byte[] withHeader(byte[] data, int header) {
+    final byte[] copy = data.clone();
+    copy[0] = (byte) header;
+    return copy;
+  }
+
+  private static byte[] toBytes(int... values) {
+    final byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; ++i) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+}
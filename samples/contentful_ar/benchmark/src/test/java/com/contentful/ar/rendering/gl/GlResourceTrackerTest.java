@@ -0,0 +1,146 @@
+package com.contentful.ar.rendering.gl;
+
+
+import android.graphics.Bitmap;
+
+import com.contentful.ar.rendering.ObjectRenderer;
+import com.contentful.ar.rendering.PlaneRenderer;
+import com.contentful.ar.rendering.PointCloudRenderer;
+import com.contentful.ar.replay.FrameSnapshot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Creates, draws and destroys the renderers of the scene against a {@link CountingGlBackend},
+ * which counts every name created and not deleted, whether registered or not.
+ */
+public class GlResourceTrackerTest {
+  private static final String ASSETS = "../app/src/main/assets";
+  private static final float[] IDENTITY = {
+      1, 0, 0, 0,
+      0, 1, 0, 0,
+      0, 0, 1, 0,
+      0, 0, 0, 1
+  };
+
+  private CountingGlBackend gl;
+  private GlResourceTracker resources;
+
+  @Before
+  public void setUp() {
+    gl = new CountingGlBackend();
+    resources = GlResourceTracker.of(gl);
+  }
+
+  @Test
+  public void deletesAllResourcesOfDestroyedRenderers() {
+    final PlaneRenderer planeRenderer = new PlaneRenderer(gl);
+    final PointCloudRenderer pointCloudRenderer = new PointCloudRenderer(gl);
+    final ObjectRenderer first = newObjectRenderer("andy.obj");
+    final ObjectRenderer second = newObjectRenderer("andy.obj");
+    planeRenderer.createOnGlThread(ASSETS, null);
+    pointCloudRenderer.createOnGlThread(ASSETS);
+    drawTwice(first);
+    drawTwice(second);
+    // Grows the buffer of the point cloud.
+    pointCloudRenderer.update(newPoints(1000), 1);
+    pointCloudRenderer.draw(IDENTITY, IDENTITY);
+    planeRenderer.drawPlanes(new FrameSnapshot());
+    assertTrue(resources.getOwnerCount() > 0);
+
+    first.destroy();
+    second.destroy();
+    planeRenderer.destroy();
+    pointCloudRenderer.destroy();
+
+    resources.checkReleased();
+    assertEquals(0, gl.getLiveNameCount());
+    assertEquals(0, resources.getLiveBytes(GlResourceTracker.Kind.BUFFER));
+  }
+
+  @Test
+  public void reportsRenderersNotDestroyed() {
+    final ObjectRenderer destroyed = newObjectRenderer("andy.obj");
+    final ObjectRenderer leaked = newObjectRenderer("andy_shadow.obj");
+    drawTwice(destroyed);
+    drawTwice(leaked);
+    destroyed.destroy();
+
+    try {
+      resources.checkReleased();
+      fail("The renderer not destroyed is not reported.");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains(describe(leaked)));
+      assertTrue(!e.getMessage().contains(describe(destroyed)));
+    }
+    assertTrue(gl.getLiveNameCount() > 0);
+
+    leaked.destroy();
+    resources.checkReleased();
+    assertEquals(0, gl.getLiveNameCount());
+  }
+
+  @Test
+  public void forgetsResourcesOfALostContext() {
+    final ObjectRenderer renderer = newObjectRenderer("andy.obj");
+    drawTwice(renderer);
+    final int lostNames = gl.getLiveNameCount();
+
+    resources.forget();
+    TextureRegistry.of(gl).forget();
+    renderer.onContextLost();
+    assertEquals(0, resources.getOwnerCount());
+    assertTrue(!renderer.isInitialized());
+
+    // Created again in the new context, and only those are deleted.
+    drawTwice(renderer);
+    assertTrue(renderer.isInitialized());
+    renderer.destroy();
+    resources.checkReleased();
+    assertEquals(lostNames, gl.getLiveNameCount());
+  }
+
+  private ObjectRenderer newObjectRenderer(String model) {
+    return new ObjectRenderer(gl,
+        new File(ASSETS, model).getPath(), "",
+        new File(ASSETS, "object_fragment.shader").getPath(),
+        new File(ASSETS, "object_vertex.shader").getPath()) {
+      @Override protected Bitmap readTexture() {
+        // Bitmaps can only be decoded by Android.
+        return null;
+      }
+    };
+  }
+
+  /**
+   * Draws the renderer once to load its model, and once more to draw it.
+   */
+  private static void drawTwice(ObjectRenderer renderer) {
+    renderer.updateModelMatrix(IDENTITY, 0, 1.0f);
+    renderer.draw(IDENTITY, IDENTITY, 1.0f);
+    renderer.draw(IDENTITY, IDENTITY, 1.0f);
+  }
+
+  private static FloatBuffer newPoints(int count) {
+    final FloatBuffer points = ByteBuffer.allocateDirect(4 * 4 * count)
+        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    for (int i = 0; i < 4 * count; ++i) {
+      points.put(i, i % 4 == 3 ? 1.0f : 0.1f * (i % 7));
+    }
+    return points;
+  }
+
+  private static String describe(Object owner) {
+    return Integer.toHexString(System.identityHashCode(owner));
+  }
+}
@@ -0,0 +1,212 @@
+package com.contentful.ar.vault;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs downloads against a local stand-in for the Contentful asset server.
+ */
+public class DownloadSchedulerTest {
+  private static final long TIMEOUT_SECONDS = 10;
+  // Sent slowly enough that reading it takes far longer than the timeout.
+  private static final int SLOW_BODY_BYTES = 1024 * 1024;
+
+  private MockWebServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void runsPrioritizedDownloadsFirst() throws Exception {
+    final DownloadScheduler scheduler = new DownloadScheduler(new OkHttpClient(), 1);
+    for (int i = 0; i < 4; ++i) {
+      server.enqueue(new MockResponse().setBody("model"));
+    }
+
+    // Keeps the only download thread busy until all others are queued.
+    final CountDownLatch queued = new CountDownLatch(1);
+    final TestObserver<String> first = scheduler.schedule("first.obj",
+        new DownloadScheduler.Download<String>() {
+          @Override public String run(Object tag) throws Exception {
+            queued.await();
+            return fetch(scheduler, tag, "/first.obj");
+          }
+        }).test();
+    final List<TestObserver<String>> others = new ArrayList<>();
+    for (final String name : new String[]{"a.obj", "b.obj", "c.obj"}) {
+      others.add(scheduler.schedule(name, new DownloadScheduler.Download<String>() {
+        @Override public String run(Object tag) throws Exception {
+          return fetch(scheduler, tag, "/" + name);
+        }
+      }).test());
+    }
+    scheduler.prioritize("c.obj");
+    queued.countDown();
+
+    first.awaitDone(TIMEOUT_SECONDS, TimeUnit.SECONDS).assertValue("model");
+    for (final TestObserver<String> other : others) {
+      other.awaitDone(TIMEOUT_SECONDS, TimeUnit.SECONDS).assertValue("model");
+    }
+    assertEquals("/first.obj", server.takeRequest().getPath());
+    assertEquals("/c.obj", server.takeRequest().getPath());
+    assertEquals("/a.obj", server.takeRequest().getPath());
+    assertEquals("/b.obj", server.takeRequest().getPath());
+  }
+
+  @Test
+  public void cancelsWhileReadingTheBody() throws Exception {
+    final DownloadScheduler scheduler = new DownloadScheduler(new OkHttpClient(), 1);
+    server.enqueue(slowResponse());
+
+    final SlowDownload download = new SlowDownload(scheduler, "/model.obj", new CountDownLatch(0));
+    final TestObserver<Long> observer = scheduler.schedule("model.obj", download).test();
+    assertTrue(download.reading.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    observer.dispose();
+
+    assertTrue(download.done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertTrue(download.error instanceof IOException);
+    assertTrue(download.bytesRead < SLOW_BODY_BYTES);
+    observer.assertNoValues().assertNoErrors().assertNotComplete();
+  }
+
+  @Test
+  public void cancelsOnlyTheDisposedDownloadOfTheSameKey() throws Exception {
+    final DownloadScheduler scheduler = new DownloadScheduler(new OkHttpClient(), 2);
+    server.enqueue(slowResponse());
+    server.enqueue(new MockResponse().setBody("model"));
+
+    // Requests only once a second download of the same file, e.g. after the model changed, got
+    // scheduled as well.
+    final CountDownLatch bothScheduled = new CountDownLatch(1);
+    final SlowDownload cancelled = new SlowDownload(scheduler, "/model.obj", bothScheduled);
+    final TestObserver<Long> cancelledObserver = scheduler.schedule("model.obj", cancelled).test();
+    final CountDownLatch cancelledFirst = new CountDownLatch(1);
+    final TestObserver<String> kept = scheduler.schedule("model.obj",
+        new DownloadScheduler.Download<String>() {
+          @Override public String run(Object tag) throws Exception {
+            cancelledFirst.await();
+            return fetch(scheduler, tag, "/model.obj");
+          }
+        }).test();
+    bothScheduled.countDown();
+    assertTrue(cancelled.reading.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    cancelledObserver.dispose();
+    assertTrue(cancelled.done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertTrue(cancelled.error instanceof IOException);
+    cancelledFirst.countDown();
+    kept.awaitDone(TIMEOUT_SECONDS, TimeUnit.SECONDS).assertValue("model");
+  }
+
+  @Test
+  public void dropsQueuedDownloadsWithoutRequests() throws Exception {
+    final DownloadScheduler scheduler = new DownloadScheduler(new OkHttpClient(), 1);
+    server.enqueue(new MockResponse().setBody("model"));
+
+    final CountDownLatch queued = new CountDownLatch(1);
+    final TestObserver<String> first = scheduler.schedule("first.obj",
+        new DownloadScheduler.Download<String>() {
+          @Override public String run(Object tag) throws Exception {
+            queued.await();
+            return fetch(scheduler, tag, "/first.obj");
+          }
+        }).test();
+    final TestObserver<String> dropped = scheduler.schedule("dropped.obj",
+        new DownloadScheduler.Download<String>() {
+          @Override public String run(Object tag) throws Exception {
+            return fetch(scheduler, tag, "/dropped.obj");
+          }
+        }).test();
+    dropped.dispose();
+    queued.countDown();
+
+    first.awaitDone(TIMEOUT_SECONDS, TimeUnit.SECONDS).assertValue("model");
+    assertEquals("/first.obj", server.takeRequest().getPath());
+    assertNull(server.takeRequest(100, TimeUnit.MILLISECONDS));
+    assertEquals(1, server.getRequestCount());
+  }
+
+  private static MockResponse slowResponse() {
+    return new MockResponse()
+        .setBody(new Buffer().write(new byte[SLOW_BODY_BYTES]))
+        .throttleBody(1024, 100, TimeUnit.MILLISECONDS);
+  }
+
+  private String fetch(DownloadScheduler scheduler, Object tag, String path) throws IOException {
+    try (Response response = scheduler.newCall(
+        new Request.Builder().url(server.url(path)).tag(tag).build()).execute()) {
+      return response.body().string();
+    }
+  }
+
+  /**
+   * Reads a slowly sent body, recording how it ended.
+   */
+  private final class SlowDownload implements DownloadScheduler.Download<Long> {
+    final CountDownLatch reading = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    private final DownloadScheduler scheduler;
+    private final String path;
+    private final CountDownLatch start;
+    volatile long bytesRead;
+    volatile Exception error;
+
+    /**
+     * @param start released once the download may make its request.
+     */
+    SlowDownload(DownloadScheduler scheduler, String path, CountDownLatch start) {
+      this.scheduler = scheduler;
+      this.path = path;
+      this.start = start;
+    }
+
+    @Override public Long run(Object tag) throws Exception {
+      start.await();
+      try (Response response = scheduler.newCall(
+          new Request.Builder().url(server.url(path)).tag(tag).build()).execute();
+           InputStream body = response.body().byteStream()) {
+        final byte[] buffer = new byte[1024];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+          bytesRead += read;
+          reading.countDown();
+        }
+        return bytesRead;
+      } catch (Exception e) {
+        error = e;
+        throw e;
+      } finally {
+        done.countDown();
+      }
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package com.google.ar.core.examples.java.computervision.utility;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the striped, parallel output of {@link ImageFilter} with a naive serial filter of the
+ * whole image, for every kernel, direct and heap buffers and sizes that are not multiples of the
+ * stripe height.
+ */
+public class ImageFilterTest {
+  private static final int THRESHOLD_LEVEL = 100;
+  // Heights of one row, of stripes of 32 rows plus a few, and of many uneven stripes.
+  private static final int[][] SIZES = {
+      {1, 1}, {2, 3}, {3, 2}, {7, 1}, {1, 9}, {17, 33}, {31, 65}, {64, 97}, {333, 331}, {97, 1001}
+  };
+
+  private final Random random = new Random(1);
+  private ForkJoinPool pool;
+
+  @Before
+  public void setUp() {
+    pool = new ForkJoinPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test
+  public void matchesSerialSobel() {
+    assertMatchesReference(new Sobel(), Sobel.DEFAULT_THRESHOLD);
+  }
+
+  @Test
+  public void matchesSerialScharr() {
+    assertMatchesReference(new Scharr(), Scharr.DEFAULT_THRESHOLD);
+  }
+
+  @Test
+  public void matchesSerialBoxBlur() {
+    assertMatchesReference(new BoxBlur(), 0);
+  }
+
+  @Test
+  public void matchesSerialThreshold() {
+    assertMatchesReference(new Threshold(THRESHOLD_LEVEL), THRESHOLD_LEVEL);
+  }
+
+  @Test
+  public void reusesRowWindowsAcrossWidths() {
+    // The same pool threads filter wide, narrow and wider images again, so their row windows are
+    // reused, grown and partly stale.
+    final ImageFilter filter = new ImageFilter(new BoxBlur(), pool);
+    for (int width : new int[] {301, 13, 301, 640, 5}) {
+      final byte[] image = newImage(width, 203);
+      final ByteBuffer output = ByteBuffer.allocateDirect(image.length);
+      filter.apply(output, toDirect(image), width, 203);
+      assertArrayEquals("Width " + width, filterSerially(new BoxBlur(), 0, image, width, 203),
+          toArray(output));
+    }
+  }
+
+  @Test
+  public void keepsInputPosition() {
+    final byte[] image = newImage(40, 70);
+    final ByteBuffer input = toDirect(image);
+    input.position(123);
+    new ImageFilter(new Sobel(), pool).apply(ByteBuffer.allocate(image.length), input, 40, 70);
+    assertEquals(123, input.position());
+  }
+
+  /**
+   * Filters every size with the pool and on the calling thread, from heap and direct input into
+   * heap output written in place, a heap slice at an offset and direct output, all of them
+   * starting with garbage so cleared border rows are checked too.
+   */
+  private void assertMatchesReference(ImageKernel kernel, int threshold) {
+    final ImageFilter[] filters = {new ImageFilter(kernel, pool), new ImageFilter(kernel, null)};
+    for (int[] size : SIZES) {
+      final int width = size[0];
+      final int height = size[1];
+      final byte[] image = newImage(width, height);
+      final byte[] expected = filterSerially(kernel, threshold, image, width, height);
+
+      for (ImageFilter filter : filters) {
+        for (ByteBuffer input : new ByteBuffer[] {ByteBuffer.wrap(image), toDirect(image)}) {
+          final String message = kernel.getClass().getSimpleName() + " of " + width + "x" + height
+              + (filter == filters[1] ? " serially" : "")
+              + (input.isDirect() ? " from direct input" : "");
+
+          final byte[] heap = newImage(width, height);
+          final ByteBuffer heapOutput = ByteBuffer.wrap(heap);
+          filter.apply(heapOutput, input, width, height);
+          assertArrayEquals(message + " into a heap buffer", expected, heap);
+
+          // A slice one row into its array, with the rows around it left alone.
+          final byte[] padded = newImage(width, height + 2);
+          final byte[] paddedBefore = padded.clone();
+          final ByteBuffer sliced = ByteBuffer.wrap(padded, width, width * height).slice();
+          filter.apply(sliced, input, width, height);
+          assertArrayEquals(message + " into a heap slice", expected,
+              Arrays.copyOfRange(padded, width, width + width * height));
+          assertArrayEquals(Arrays.copyOf(paddedBefore, width), Arrays.copyOf(padded, width));
+          assertArrayEquals(
+              Arrays.copyOfRange(paddedBefore, width + width * height, padded.length),
+              Arrays.copyOfRange(padded, width + width * height, padded.length));
+
+          final ByteBuffer directOutput = toDirect(newImage(width, height));
+          filter.apply(directOutput, input, width, height);
+          assertArrayEquals(message + " into a direct buffer", expected, toArray(directOutput));
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the image filtered pixel by pixel from the whole input, with the formulas of the
+   *     kernels written out again, and borders of kernels with a radius of 1 cleared.
+   */
+  private static byte[] filterSerially(
+      ImageKernel kernel, int threshold, byte[] image, int width, int height) {
+    final byte[] output = new byte[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        if (kernel instanceof Threshold) {
+          output[y * width + x] = (image[y * width + x] & 0xFF) >= threshold ? (byte) 0xFF : 0;
+          continue;
+        }
+        if (x == 0 || y == 0 || x == width - 1 || y == height - 1) {
+          continue;
+        }
+        final int[][] p = new int[3][3];
+        for (int dy = -1; dy <= 1; dy++) {
+          for (int dx = -1; dx <= 1; dx++) {
+            p[dy + 1][dx + 1] = image[(y + dy) * width + x + dx] & 0xFF;
+          }
+        }
+        if (kernel instanceof BoxBlur) {
+          int sum = 0;
+          for (int[] row : p) {
+            for (int value : row) {
+              sum += value;
+            }
+          }
+          output[y * width + x] = (byte) (sum * 7282 >> 16);
+          continue;
+        }
+        final int side = kernel instanceof Scharr ? 3 : 1;
+        final int middle = kernel instanceof Scharr ? 10 : 2;
+        final int gx =
+            side * (p[0][2] - p[0][0] + p[2][2] - p[2][0]) + middle * (p[1][2] - p[1][0]);
+        final int gy =
+            side * (p[0][0] - p[2][0] + p[0][2] - p[2][2]) + middle * (p[0][1] - p[2][1]);
+        output[y * width + x] =
+            gx * gx + gy * gy > threshold * threshold ? (byte) 0xFF : (byte) 0x1F;
+      }
+    }
+    return output;
+  }
+
+  /** @return random pixels, smoothed a little so the edge filters see edges and flat areas. */
+  private byte[] newImage(int width, int height) {
+    final byte[] image = new byte[width * height];
+    for (int i = 0; i < image.length; i++) {
+      image[i] = (byte) (random.nextInt(8) == 0 ? random.nextInt(256)
+          : (i > 0 ? image[i - 1] : 0) + random.nextInt(41) - 20);
+    }
+    return image;
+  }
+
+  private static ByteBuffer toDirect(byte[] image) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(image.length);
+    buffer.put(image).rewind();
+    return buffer;
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    final byte[] array = new byte[buffer.capacity()];
+    final ByteBuffer view = buffer.duplicate();
+    view.rewind();
+    view.get(array);
+    return array;
+  }
+}